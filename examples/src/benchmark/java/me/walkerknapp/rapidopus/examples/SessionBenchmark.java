@@ -0,0 +1,279 @@
+package me.walkerknapp.rapidopus.examples;
+
+import me.walkerknapp.rapidopus.OpusApplicationMode;
+import me.walkerknapp.rapidopus.OpusEncoder;
+import me.walkerknapp.rapidopus.OpusSession;
+import me.walkerknapp.rapidopus.OpusSessionExecutor;
+import me.walkerknapp.rapidopus.RapidOpus;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes on many virtual threads at once, one encoder per thread, and reports how busy that keeps the virtual thread
+ * carriers.
+ *
+ * In {@code direct} mode every virtual thread calls {@link OpusEncoder#encode(ByteBuffer, int, ByteBuffer)} itself,
+ * so each JNI call holds its carrier until it returns. In {@code session} mode every virtual thread calls
+ * {@link OpusSession#encode(ByteBuffer, int, ByteBuffer)} and joins the future, so the native calls run on the
+ * executor's platform threads and the carriers are free while they wait.
+ *
+ * For each mode this prints the CPU time spent on carrier threads and on executor threads, the operations per batch
+ * the executor achieved, and how late a virtual thread that sleeps for 1 ms wakes up while the encodes run, which is
+ * what other virtual threads, such as those handling network IO, see of the load.
+ *
+ * Results depend heavily on the machine, so every run first prints its arguments, JVM, OS, core count, libopus version
+ * and backend. Arguments are {@code key=value} pairs:
+ * <ul>
+ *     <li>{@code mode}: {@code session}, {@code direct} or {@code both} (default both)</li>
+ *     <li>{@code sessions}: the number of virtual threads and encoders (default 10000)</li>
+ *     <li>{@code frames}: the 20 ms frames each thread encodes (default 50)</li>
+ *     <li>{@code threads}: the executor's platform threads (default the number of cores)</li>
+ *     <li>{@code batch}: the executor's batch size (default 64)</li>
+ * </ul>
+ */
+public class SessionBenchmark {
+    private static final int SAMPLE_RATE = 48000;
+    private static final int CHANNELS = 1;
+    private static final int FRAME_SIZE = 960;
+
+    private static final String CARRIER_PREFIX = "ForkJoinPool-";
+    private static final String CARRIER_INFIX = "-worker-";
+    private static final String EXECUTOR_PREFIX = "rapidopus-session-";
+
+    private final int sessions;
+    private final int frames;
+    private final int threads;
+    private final int batch;
+
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final short[] frame = new short[FRAME_SIZE * CHANNELS];
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split < 0) {
+                throw new IllegalArgumentException("Arguments must be key=value pairs: " + arg);
+            }
+            options.put(arg.substring(0, split), arg.substring(split + 1));
+        }
+
+        String mode = options.getOrDefault("mode", "both");
+        SessionBenchmark benchmark = new SessionBenchmark(
+                Integer.parseInt(options.getOrDefault("sessions", "10000")),
+                Integer.parseInt(options.getOrDefault("frames", "50")),
+                Integer.parseInt(options.getOrDefault("threads", String.valueOf(Runtime.getRuntime().availableProcessors()))),
+                Integer.parseInt(options.getOrDefault("batch", "64")));
+
+        // Everything needed to reproduce a run, to keep alongside its results with the CPU model
+        System.out.printf("arguments: mode=%s sessions=%d frames=%d threads=%d batch=%d%n", mode, benchmark.sessions,
+                benchmark.frames, benchmark.threads, benchmark.batch);
+        System.out.printf("%s %s, %s %s %s, %d cores%n", System.getProperty("java.vm.name"),
+                System.getProperty("java.runtime.version"), System.getProperty("os.name"),
+                System.getProperty("os.version"), System.getProperty("os.arch"), Runtime.getRuntime().availableProcessors());
+        System.out.printf("%s, %s backend%n", RapidOpus.getVersion(), RapidOpus.getBackend());
+
+        switch (mode) {
+            case "direct" -> benchmark.run(false);
+            case "session" -> benchmark.run(true);
+            case "both" -> {
+                // A short run of each first, so that neither mode pays for class loading and JIT compilation
+                new SessionBenchmark(Math.min(benchmark.sessions, 1000), 5, benchmark.threads, benchmark.batch).warmUp();
+                benchmark.run(false);
+                benchmark.run(true);
+            }
+            default -> throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+    }
+
+    SessionBenchmark(int sessions, int frames, int threads, int batch) {
+        this.sessions = sessions;
+        this.frames = frames;
+        this.threads = threads;
+        this.batch = batch;
+
+        // A rising tone, so that the encoder has something to do
+        for (int i = 0; i < frame.length; i++) {
+            double t = (double) i / SAMPLE_RATE;
+            frame[i] = (short) (8000 * Math.sin(2 * Math.PI * (300 + 2000 * t) * t));
+        }
+
+        if (!threadBean.isThreadCpuTimeSupported()) {
+            throw new IllegalStateException("Thread CPU time is not supported on this JVM");
+        }
+        threadBean.setThreadCpuTimeEnabled(true);
+    }
+
+    private void warmUp() throws InterruptedException {
+        run(false, false);
+        run(true, false);
+    }
+
+    private void run(boolean useSessions) throws InterruptedException {
+        run(useSessions, true);
+    }
+
+    private void run(boolean useSessions, boolean print) throws InterruptedException {
+        OpusSessionExecutor executor = useSessions ? new OpusSessionExecutor(threads, batch, sessions) : null;
+        CountDownLatch ready = new CountDownLatch(sessions);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(sessions);
+
+        try (ExecutorService virtualThreads = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < sessions; i++) {
+                virtualThreads.submit(() -> {
+                    boolean started = false;
+                    try (OpusEncoder encoder = new OpusEncoder(SAMPLE_RATE, CHANNELS, OpusApplicationMode.VOIP)) {
+                        OpusSession session = useSessions ? executor.openSession(encoder, null) : null;
+                        ByteBuffer pcm = ByteBuffer.allocateDirect(frame.length * Short.BYTES).order(ByteOrder.nativeOrder());
+                        pcm.asShortBuffer().put(frame);
+                        ByteBuffer packet = ByteBuffer.allocateDirect(OpusSessionExecutor.MAX_PACKET_SIZE);
+
+                        ready.countDown();
+                        started = true;
+                        start.await();
+
+                        for (int f = 0; f < frames; f++) {
+                            if (useSessions) {
+                                session.encode(pcm, FRAME_SIZE, packet).join();
+                            } else {
+                                encoder.encode(pcm, FRAME_SIZE, packet);
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    } finally {
+                        if (!started) {
+                            ready.countDown();
+                        }
+                        done.countDown();
+                    }
+                });
+            }
+
+            ready.await();
+            LatencyProbe probe = new LatencyProbe();
+            Thread probeThread = Thread.ofVirtual().name("latency-probe").start(probe);
+            Map<Long, Long> before = cpuTimes();
+            long startTime = System.nanoTime();
+
+            start.countDown();
+            done.await();
+
+            long wall = System.nanoTime() - startTime;
+            Map<Long, Long> after = cpuTimes();
+            probe.stop();
+            probeThread.join();
+
+            if (print) {
+                report(useSessions ? "session" : "direct", wall, before, after, executor, probe);
+            }
+        } finally {
+            if (executor != null) {
+                executor.close();
+            }
+        }
+    }
+
+    private void report(String mode, long wall, Map<Long, Long> before, Map<Long, Long> after,
+                        OpusSessionExecutor executor, LatencyProbe probe) {
+        long carrierCpu = 0;
+        long executorCpu = 0;
+        int carriers = 0;
+        for (ThreadInfo info : threadBean.getThreadInfo(after.keySet().stream().mapToLong(Long::longValue).toArray())) {
+            if (info == null) {
+                continue;
+            }
+            long cpu = after.get(info.getThreadId()) - before.getOrDefault(info.getThreadId(), 0L);
+            String name = info.getThreadName();
+            if (name.startsWith(CARRIER_PREFIX) && name.contains(CARRIER_INFIX)) {
+                carrierCpu += cpu;
+                carriers++;
+            } else if (name.startsWith(EXECUTOR_PREFIX)) {
+                executorCpu += cpu;
+            }
+        }
+
+        long encodes = (long) sessions * frames;
+        System.out.printf("%n%s: %.2f s, %.0f encodes/s%n", mode, wall / 1e9, encodes / (wall / 1e9));
+        System.out.printf("  carrier threads:  %d, %.2f s CPU, %.2f cores busy%n", carriers, carrierCpu / 1e9, (double) carrierCpu / wall);
+        if (executor != null) {
+            System.out.printf("  executor threads: %d, %.2f s CPU, %.2f cores busy%n", threads, executorCpu / 1e9, (double) executorCpu / wall);
+            System.out.printf("  batches: %d operations / %d batches = %.1f per batch%n", executor.getOperationCount(),
+                    executor.getBatchCount(), (double) executor.getOperationCount() / Math.max(executor.getBatchCount(), 1));
+        } else {
+            System.out.printf("  JNI transitions: %d, one per encode%n", encodes);
+        }
+        System.out.printf("  1 ms sleep overshoot: p50 %.2f ms, p99 %.2f ms, max %.2f ms (%d samples)%n",
+                probe.percentile(0.5) / 1e6, probe.percentile(0.99) / 1e6, probe.percentile(1) / 1e6, probe.count());
+    }
+
+    private Map<Long, Long> cpuTimes() {
+        Map<Long, Long> times = new HashMap<>();
+        for (long id : threadBean.getAllThreadIds()) {
+            long cpu = threadBean.getThreadCpuTime(id);
+            if (cpu >= 0) {
+                times.put(id, cpu);
+            }
+        }
+        return times;
+    }
+
+    /**
+     * Sleeps for 1 ms at a time on a virtual thread and records how much later than that it wakes up, which grows
+     * when every carrier is busy.
+     */
+    private static class LatencyProbe implements Runnable {
+        private final List<Long> overshoots = new ArrayList<>();
+        private volatile boolean stopped;
+        private long[] sorted;
+
+        @Override
+        public void run() {
+            while (!stopped) {
+                long start = System.nanoTime();
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                overshoots.add(System.nanoTime() - start - TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+
+        void stop() {
+            stopped = true;
+        }
+
+        int count() {
+            return overshoots.size();
+        }
+
+        long percentile(double fraction) {
+            if (sorted == null) {
+                sorted = overshoots.stream().mapToLong(Long::longValue).toArray();
+                Arrays.sort(sorted);
+            }
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(fraction * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+        }
+    }
+}
@@ -4,6 +4,12 @@ plugins {
     id("java-gradle-plugin")
 }
 
+// Kotlin targets Java 8 by default, and Gradle 8 requires Java and Kotlin to target the same version
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
 gradlePlugin {
     plugins.create("opus-build") {
         id = "opus-build"
@@ -1,13 +1,10 @@
-import java.util.Properties
-
 pluginManagement {
     plugins {
-        id("org.jetbrains.kotlin.jvm") version "1.4.30"
+        id("org.jetbrains.kotlin.jvm") version "1.9.25"
     }
 
     repositories {
         gradlePluginPortal()
         google()
-        maven("https://dl.bintray.com/jetbrains/kotlin-native-dependencies")
     }
 }
\ No newline at end of file
@@ -7,11 +7,27 @@ plugins {
     signing
 }
 
-base.archivesBaseName = "rapidopus"
+base.archivesName.set("rapidopus")
 java.sourceCompatibility = JavaVersion.VERSION_1_9
 
+// Classes that replace their main counterparts on JDK 22 and newer, packaged into a multi-release jar.
+// These use the Foreign Function and Memory API to call libopus without going through JNI.
+val java22: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+}
+
+tasks.named<JavaCompile>(java22.compileJavaTaskName) {
+    javaCompiler.set(javaToolchains.compilerFor {
+        languageVersion.set(JavaLanguageVersion.of(22))
+    })
+    options.release.set(22)
+}
+
 val sourceJar by tasks.creating(Jar::class) {
     from(sourceSets.main.get().allJava)
+    into("META-INF/versions/22") {
+        from(java22.allJava)
+    }
     this.archiveClassifier.set("sources")
 }
 
@@ -135,7 +151,55 @@ dependencies {
     nativeDependency(project(":rapidopus-natives", "nativeArtifacts"))
 }
 
+// Tests load the same natives as the jar, straight from the native artifacts jar on the classpath.
+
+repositories {
+    mavenCentral()
+}
+
+dependencies {
+    testImplementation("org.junit.jupiter:junit-jupiter:5.10.2")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+sourceSets.test {
+    runtimeClasspath += nativeDependency
+}
+
+tasks.test {
+    useJUnitPlatform()
+}
+
+// Run the tests again on JDK 22 with the java22 classes ahead of main, like the multi-release jar loads them.
+val testJava22 by tasks.registering(Test::class) {
+    description = "Runs the tests on JDK 22 against the Foreign Function and Memory backend."
+    group = "verification"
+
+    useJUnitPlatform()
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = java22.output + sourceSets.test.get().runtimeClasspath
+    javaLauncher.set(javaToolchains.launcherFor {
+        languageVersion.set(JavaLanguageVersion.of(22))
+    })
+    jvmArgs("--enable-native-access=ALL-UNNAMED")
+    systemProperty("rapidopus.expectedBackend", "ffm")
+}
+
+// testJava22 needs a JDK 22 toolchain, so it only runs as part of check when asked for with -PtestJava22
+if (providers.gradleProperty("testJava22").isPresent) {
+    tasks.check {
+        dependsOn(testJava22)
+    }
+}
+
 tasks.jar {
     dependsOn(nativeDependency)
     from(nativeDependency.map { zipTree(it) })
+
+    into("META-INF/versions/22") {
+        from(java22.output)
+    }
+    manifest {
+        attributes("Multi-Release" to "true")
+    }
 }
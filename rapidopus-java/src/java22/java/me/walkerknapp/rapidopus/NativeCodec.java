@@ -0,0 +1,387 @@
+package me.walkerknapp.rapidopus;
+
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.invoke.MethodHandle;
+import java.lang.ref.Reference;
+import java.nio.ByteBuffer;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+
+/**
+ * Routes the per-frame encode and decode calls of {@link OpusEncoder} and {@link OpusDecoder} into libopus.
+ *
+ * This implementation downcalls the libopus symbols exported by the natives library directly through the Foreign
+ * Function and Memory API. If libopus can't be linked (e.g. native access is denied, or the symbols aren't exported on
+ * this platform), a warning with the reason is logged through {@link System.Logger}, and every call falls back to JNI.
+ * Every call also goes through JNI if the system property "rapidopus.backend" is set to "jni".
+ *
+ * Calls on heap arrays are linked as critical, which lets libopus read the array in place rather than having it
+ * copied, like the JNI backend's critical arrays. A critical call holds off safepoints, and so garbage collection,
+ * until it returns. Decoding a frame takes microseconds, but encoding a long frame at a high complexity can take a
+ * millisecond or more. Like the JNI backend, heap arrays are only accessed critically unless the system property
+ * "rapidopus.criticalArrays" is set to "false", in which case calls on heap arrays go through JNI. Calls on direct
+ * buffers and addresses are never critical.
+ */
+final class NativeCodec {
+    /**
+     * The name of the backend in use, as reported by {@link RapidOpus#getBackend()}.
+     */
+    static final String BACKEND;
+
+    private static final MethodHandle OPUS_ENCODE;
+    private static final MethodHandle OPUS_ENCODE_FLOAT;
+    private static final MethodHandle OPUS_DECODE;
+    private static final MethodHandle OPUS_DECODE_FLOAT;
+
+    // Critical variants for heap arrays, or null if heap arrays go through JNI
+    private static final MethodHandle OPUS_ENCODE_HEAP;
+    private static final MethodHandle OPUS_ENCODE_FLOAT_HEAP;
+    private static final MethodHandle OPUS_DECODE_HEAP;
+    private static final MethodHandle OPUS_DECODE_FLOAT_HEAP;
+
+    static {
+        // Every caller holds an encoder or decoder, so RapidOpus has already loaded the natives library by now,
+        // which makes libopus visible to the loader lookup.
+        MethodHandle encode = null;
+        MethodHandle encodeFloat = null;
+        MethodHandle decode = null;
+        MethodHandle decodeFloat = null;
+        MethodHandle encodeHeap = null;
+        MethodHandle encodeFloatHeap = null;
+        MethodHandle decodeHeap = null;
+        MethodHandle decodeFloatHeap = null;
+
+        if (!"jni".equalsIgnoreCase(System.getProperty("rapidopus.backend"))) {
+            try {
+                Linker linker = Linker.nativeLinker();
+                SymbolLookup lookup = SymbolLookup.loaderLookup();
+                Linker.Option critical = Linker.Option.critical(true);
+                boolean criticalArrays = !"false".equalsIgnoreCase(System.getProperty("rapidopus.criticalArrays"));
+
+                // opus_int32 opus_encode(OpusEncoder *st, const opus_int16 *pcm, int frame_size, unsigned char *data, opus_int32 max_data_bytes)
+                FunctionDescriptor encodeDescriptor = FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, JAVA_INT, ADDRESS, JAVA_INT);
+                // int opus_decode(OpusDecoder *st, const unsigned char *data, opus_int32 len, opus_int16 *pcm, int frame_size, int decode_fec)
+                FunctionDescriptor decodeDescriptor = FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, JAVA_INT, ADDRESS, JAVA_INT, JAVA_INT);
+
+                MemorySegment encodeSymbol = find(lookup, "opus_encode");
+                MemorySegment encodeFloatSymbol = find(lookup, "opus_encode_float");
+                MemorySegment decodeSymbol = find(lookup, "opus_decode");
+                MemorySegment decodeFloatSymbol = find(lookup, "opus_decode_float");
+
+                encode = linker.downcallHandle(encodeSymbol, encodeDescriptor);
+                encodeFloat = linker.downcallHandle(encodeFloatSymbol, encodeDescriptor);
+                decode = linker.downcallHandle(decodeSymbol, decodeDescriptor);
+                decodeFloat = linker.downcallHandle(decodeFloatSymbol, decodeDescriptor);
+
+                if (criticalArrays) {
+                    encodeHeap = linker.downcallHandle(encodeSymbol, encodeDescriptor, critical);
+                    encodeFloatHeap = linker.downcallHandle(encodeFloatSymbol, encodeDescriptor, critical);
+                    decodeHeap = linker.downcallHandle(decodeSymbol, decodeDescriptor, critical);
+                    decodeFloatHeap = linker.downcallHandle(decodeFloatSymbol, decodeDescriptor, critical);
+                }
+            } catch (RuntimeException e) {
+                System.getLogger(NativeCodec.class.getName()).log(System.Logger.Level.WARNING,
+                        "libopus could not be linked through the Foreign Function and Memory API, falling back to JNI", e);
+
+                encode = null;
+                encodeFloat = null;
+                decode = null;
+                decodeFloat = null;
+                encodeHeap = null;
+                encodeFloatHeap = null;
+                decodeHeap = null;
+                decodeFloatHeap = null;
+            }
+        }
+
+        OPUS_ENCODE = encode;
+        OPUS_ENCODE_FLOAT = encodeFloat;
+        OPUS_DECODE = decode;
+        OPUS_DECODE_FLOAT = decodeFloat;
+        OPUS_ENCODE_HEAP = encodeHeap;
+        OPUS_ENCODE_FLOAT_HEAP = encodeFloatHeap;
+        OPUS_DECODE_HEAP = decodeHeap;
+        OPUS_DECODE_FLOAT_HEAP = decodeFloatHeap;
+        BACKEND = decodeFloat != null ? "ffm" : "jni";
+    }
+
+    private NativeCodec() {
+    }
+
+    static int encode(long pEncoder, short[] inputData, int frameSize, ByteBuffer outputData) {
+        if (OPUS_ENCODE_HEAP == null) {
+            return OpusEncoder.encode(pEncoder, inputData, frameSize, outputData);
+        }
+
+        try {
+            return (int) OPUS_ENCODE_HEAP.invokeExact(MemorySegment.ofAddress(pEncoder), MemorySegment.ofArray(inputData),
+                    frameSize, bufferStart(outputData), outputData.capacity());
+        } catch (Throwable t) {
+            throw rethrow(t);
+        } finally {
+            Reference.reachabilityFence(outputData);
+        }
+    }
+
+    static int encode(long pEncoder, ByteBuffer inputData, int frameSize, ByteBuffer outputData) {
+        if (OPUS_ENCODE == null) {
+            return OpusEncoder.encode(pEncoder, inputData, frameSize, outputData);
+        }
+
+        try {
+            return (int) OPUS_ENCODE.invokeExact(MemorySegment.ofAddress(pEncoder), bufferStart(inputData),
+                    frameSize, bufferStart(outputData), outputData.capacity());
+        } catch (Throwable t) {
+            throw rethrow(t);
+        } finally {
+            Reference.reachabilityFence(inputData);
+            Reference.reachabilityFence(outputData);
+        }
+    }
+
+    static int encodeFloat(long pEncoder, float[] inputData, int frameSize, ByteBuffer outputData) {
+        if (OPUS_ENCODE_FLOAT_HEAP == null) {
+            return OpusEncoder.encodeFloat(pEncoder, inputData, frameSize, outputData);
+        }
+
+        try {
+            return (int) OPUS_ENCODE_FLOAT_HEAP.invokeExact(MemorySegment.ofAddress(pEncoder), MemorySegment.ofArray(inputData),
+                    frameSize, bufferStart(outputData), outputData.capacity());
+        } catch (Throwable t) {
+            throw rethrow(t);
+        } finally {
+            Reference.reachabilityFence(outputData);
+        }
+    }
+
+    static int encodeFloat(long pEncoder, ByteBuffer inputData, int frameSize, ByteBuffer outputData) {
+        if (OPUS_ENCODE_FLOAT == null) {
+            return OpusEncoder.encodeFloat(pEncoder, inputData, frameSize, outputData);
+        }
+
+        try {
+            return (int) OPUS_ENCODE_FLOAT.invokeExact(MemorySegment.ofAddress(pEncoder), bufferStart(inputData),
+                    frameSize, bufferStart(outputData), outputData.capacity());
+        } catch (Throwable t) {
+            throw rethrow(t);
+        } finally {
+            Reference.reachabilityFence(inputData);
+            Reference.reachabilityFence(outputData);
+        }
+    }
+
+    static int decode(long pDecoder, byte[] inputData, ByteBuffer outData, int frameSize, int decodeFec) {
+        if (OPUS_DECODE_HEAP == null) {
+            return OpusDecoder.decode(pDecoder, inputData, outData, frameSize, decodeFec);
+        }
+
+        try {
+            return (int) OPUS_DECODE_HEAP.invokeExact(MemorySegment.ofAddress(pDecoder), MemorySegment.ofArray(inputData),
+                    inputData.length, bufferStart(outData), frameSize, decodeFec);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        } finally {
+            Reference.reachabilityFence(outData);
+        }
+    }
+
+    static int decode(long pDecoder, ByteBuffer inputData, ByteBuffer outData, int frameSize, int decodeFec) {
+        if (OPUS_DECODE == null) {
+            return OpusDecoder.decode(pDecoder, inputData, outData, frameSize, decodeFec);
+        }
+
+        try {
+            return (int) OPUS_DECODE.invokeExact(MemorySegment.ofAddress(pDecoder), bufferStart(inputData),
+                    inputData.capacity(), bufferStart(outData), frameSize, decodeFec);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        } finally {
+            Reference.reachabilityFence(inputData);
+            Reference.reachabilityFence(outData);
+        }
+    }
+
+    static int decodeFloat(long pDecoder, byte[] inputData, ByteBuffer outData, int frameSize, int decodeFec) {
+        if (OPUS_DECODE_FLOAT_HEAP == null) {
+            return OpusDecoder.decodeFloat(pDecoder, inputData, outData, frameSize, decodeFec);
+        }
+
+        try {
+            return (int) OPUS_DECODE_FLOAT_HEAP.invokeExact(MemorySegment.ofAddress(pDecoder), MemorySegment.ofArray(inputData),
+                    inputData.length, bufferStart(outData), frameSize, decodeFec);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        } finally {
+            Reference.reachabilityFence(outData);
+        }
+    }
+
+    static int decodeFloat(long pDecoder, ByteBuffer inputData, ByteBuffer outData, int frameSize, int decodeFec) {
+        if (OPUS_DECODE_FLOAT == null) {
+            return OpusDecoder.decodeFloat(pDecoder, inputData, outData, frameSize, decodeFec);
+        }
+
+        try {
+            return (int) OPUS_DECODE_FLOAT.invokeExact(MemorySegment.ofAddress(pDecoder), bufferStart(inputData),
+                    inputData.capacity(), bufferStart(outData), frameSize, decodeFec);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        } finally {
+            Reference.reachabilityFence(inputData);
+            Reference.reachabilityFence(outData);
+        }
+    }
+
+    static int encode(long pEncoder, ByteBuffer inputData, int inputOffset, int frameSize, ByteBuffer outputData, int outputOffset, int maxDataBytes) {
+        if (OPUS_ENCODE == null) {
+            return OpusEncoder.encode(pEncoder, inputData, inputOffset, frameSize, outputData, outputOffset, maxDataBytes);
+        }
+
+        try {
+            return (int) OPUS_ENCODE.invokeExact(MemorySegment.ofAddress(pEncoder), bufferAt(inputData, inputOffset),
+                    frameSize, bufferAt(outputData, outputOffset), maxDataBytes);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        } finally {
+            Reference.reachabilityFence(inputData);
+            Reference.reachabilityFence(outputData);
+        }
+    }
+
+    static int encodeFloat(long pEncoder, ByteBuffer inputData, int inputOffset, int frameSize, ByteBuffer outputData, int outputOffset, int maxDataBytes) {
+        if (OPUS_ENCODE_FLOAT == null) {
+            return OpusEncoder.encodeFloat(pEncoder, inputData, inputOffset, frameSize, outputData, outputOffset, maxDataBytes);
+        }
+
+        try {
+            return (int) OPUS_ENCODE_FLOAT.invokeExact(MemorySegment.ofAddress(pEncoder), bufferAt(inputData, inputOffset),
+                    frameSize, bufferAt(outputData, outputOffset), maxDataBytes);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        } finally {
+            Reference.reachabilityFence(inputData);
+            Reference.reachabilityFence(outputData);
+        }
+    }
+
+    static int encodeAddress(long pEncoder, long inputAddress, int frameSize, long outputAddress, int maxDataBytes) {
+        if (OPUS_ENCODE == null) {
+            return OpusEncoder.encodeAddress(pEncoder, inputAddress, frameSize, outputAddress, maxDataBytes);
+        }
+
+        try {
+            return (int) OPUS_ENCODE.invokeExact(MemorySegment.ofAddress(pEncoder), MemorySegment.ofAddress(inputAddress),
+                    frameSize, MemorySegment.ofAddress(outputAddress), maxDataBytes);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static int encodeFloatAddress(long pEncoder, long inputAddress, int frameSize, long outputAddress, int maxDataBytes) {
+        if (OPUS_ENCODE_FLOAT == null) {
+            return OpusEncoder.encodeFloatAddress(pEncoder, inputAddress, frameSize, outputAddress, maxDataBytes);
+        }
+
+        try {
+            return (int) OPUS_ENCODE_FLOAT.invokeExact(MemorySegment.ofAddress(pEncoder), MemorySegment.ofAddress(inputAddress),
+                    frameSize, MemorySegment.ofAddress(outputAddress), maxDataBytes);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static int decode(long pDecoder, ByteBuffer inputData, int inputOffset, int inputLength, ByteBuffer outData, int outOffset, int frameSize, int decodeFec) {
+        if (OPUS_DECODE == null) {
+            return OpusDecoder.decode(pDecoder, inputData, inputOffset, inputLength, outData, outOffset, frameSize, decodeFec);
+        }
+
+        try {
+            return (int) OPUS_DECODE.invokeExact(MemorySegment.ofAddress(pDecoder), bufferAt(inputData, inputOffset),
+                    inputLength, bufferAt(outData, outOffset), frameSize, decodeFec);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        } finally {
+            Reference.reachabilityFence(inputData);
+            Reference.reachabilityFence(outData);
+        }
+    }
+
+    static int decodeFloat(long pDecoder, ByteBuffer inputData, int inputOffset, int inputLength, ByteBuffer outData, int outOffset, int frameSize, int decodeFec) {
+        if (OPUS_DECODE_FLOAT == null) {
+            return OpusDecoder.decodeFloat(pDecoder, inputData, inputOffset, inputLength, outData, outOffset, frameSize, decodeFec);
+        }
+
+        try {
+            return (int) OPUS_DECODE_FLOAT.invokeExact(MemorySegment.ofAddress(pDecoder), bufferAt(inputData, inputOffset),
+                    inputLength, bufferAt(outData, outOffset), frameSize, decodeFec);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        } finally {
+            Reference.reachabilityFence(inputData);
+            Reference.reachabilityFence(outData);
+        }
+    }
+
+    static int decodeAddress(long pDecoder, long inputAddress, int inputLength, long outAddress, int frameSize, int decodeFec) {
+        if (OPUS_DECODE == null) {
+            return OpusDecoder.decodeAddress(pDecoder, inputAddress, inputLength, outAddress, frameSize, decodeFec);
+        }
+
+        try {
+            return (int) OPUS_DECODE.invokeExact(MemorySegment.ofAddress(pDecoder), MemorySegment.ofAddress(inputAddress),
+                    inputLength, MemorySegment.ofAddress(outAddress), frameSize, decodeFec);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static int decodeFloatAddress(long pDecoder, long inputAddress, int inputLength, long outAddress, int frameSize, int decodeFec) {
+        if (OPUS_DECODE_FLOAT == null) {
+            return OpusDecoder.decodeFloatAddress(pDecoder, inputAddress, inputLength, outAddress, frameSize, decodeFec);
+        }
+
+        try {
+            return (int) OPUS_DECODE_FLOAT.invokeExact(MemorySegment.ofAddress(pDecoder), MemorySegment.ofAddress(inputAddress),
+                    inputLength, MemorySegment.ofAddress(outAddress), frameSize, decodeFec);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    private static MemorySegment find(SymbolLookup lookup, String name) {
+        return lookup.find(name).orElseThrow(() ->
+                new IllegalStateException("The natives library does not export " + name));
+    }
+
+    /**
+     * Gets the address of the start of a direct buffer, ignoring its position and limit to match the JNI backend.
+     */
+    private static MemorySegment bufferStart(ByteBuffer buffer) {
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("Buffer must be direct");
+        }
+
+        return MemorySegment.ofAddress(MemorySegment.ofBuffer(buffer).address() - buffer.position());
+    }
+
+    /**
+     * Gets the address of an offset into a direct buffer, ignoring its position and limit.
+     */
+    private static MemorySegment bufferAt(ByteBuffer buffer, int offset) {
+        return MemorySegment.ofAddress(MemorySegment.ofBuffer(buffer).address() - buffer.position() + offset);
+    }
+
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new IllegalStateException(t);
+    }
+}
@@ -0,0 +1,84 @@
+package me.walkerknapp.rapidopus;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Routes the per-frame encode and decode calls of {@link OpusEncoder} and {@link OpusDecoder} into libopus.
+ *
+ * This implementation calls through JNI, and is used on Android and JDKs older than 22. On JDK 22 and newer, the
+ * multi-release jar replaces this class with one that downcalls libopus directly through the Foreign Function and
+ * Memory API, falling back to these JNI calls if libopus can't be linked.
+ */
+final class NativeCodec {
+    /**
+     * The name of the backend in use, as reported by {@link RapidOpus#getBackend()}.
+     */
+    static final String BACKEND = "jni";
+
+    private NativeCodec() {
+    }
+
+    static int encode(long pEncoder, short[] inputData, int frameSize, ByteBuffer outputData) {
+        return OpusEncoder.encode(pEncoder, inputData, frameSize, outputData);
+    }
+
+    static int encode(long pEncoder, ByteBuffer inputData, int frameSize, ByteBuffer outputData) {
+        return OpusEncoder.encode(pEncoder, inputData, frameSize, outputData);
+    }
+
+    static int encodeFloat(long pEncoder, float[] inputData, int frameSize, ByteBuffer outputData) {
+        return OpusEncoder.encodeFloat(pEncoder, inputData, frameSize, outputData);
+    }
+
+    static int encodeFloat(long pEncoder, ByteBuffer inputData, int frameSize, ByteBuffer outputData) {
+        return OpusEncoder.encodeFloat(pEncoder, inputData, frameSize, outputData);
+    }
+
+    static int decode(long pDecoder, byte[] inputData, ByteBuffer outData, int frameSize, int decodeFec) {
+        return OpusDecoder.decode(pDecoder, inputData, outData, frameSize, decodeFec);
+    }
+
+    static int decode(long pDecoder, ByteBuffer inputData, ByteBuffer outData, int frameSize, int decodeFec) {
+        return OpusDecoder.decode(pDecoder, inputData, outData, frameSize, decodeFec);
+    }
+
+    static int decodeFloat(long pDecoder, byte[] inputData, ByteBuffer outData, int frameSize, int decodeFec) {
+        return OpusDecoder.decodeFloat(pDecoder, inputData, outData, frameSize, decodeFec);
+    }
+
+    static int decodeFloat(long pDecoder, ByteBuffer inputData, ByteBuffer outData, int frameSize, int decodeFec) {
+        return OpusDecoder.decodeFloat(pDecoder, inputData, outData, frameSize, decodeFec);
+    }
+
+    static int encode(long pEncoder, ByteBuffer inputData, int inputOffset, int frameSize, ByteBuffer outputData, int outputOffset, int maxDataBytes) {
+        return OpusEncoder.encode(pEncoder, inputData, inputOffset, frameSize, outputData, outputOffset, maxDataBytes);
+    }
+
+    static int encodeFloat(long pEncoder, ByteBuffer inputData, int inputOffset, int frameSize, ByteBuffer outputData, int outputOffset, int maxDataBytes) {
+        return OpusEncoder.encodeFloat(pEncoder, inputData, inputOffset, frameSize, outputData, outputOffset, maxDataBytes);
+    }
+
+    static int encodeAddress(long pEncoder, long inputAddress, int frameSize, long outputAddress, int maxDataBytes) {
+        return OpusEncoder.encodeAddress(pEncoder, inputAddress, frameSize, outputAddress, maxDataBytes);
+    }
+
+    static int encodeFloatAddress(long pEncoder, long inputAddress, int frameSize, long outputAddress, int maxDataBytes) {
+        return OpusEncoder.encodeFloatAddress(pEncoder, inputAddress, frameSize, outputAddress, maxDataBytes);
+    }
+
+    static int decode(long pDecoder, ByteBuffer inputData, int inputOffset, int inputLength, ByteBuffer outData, int outOffset, int frameSize, int decodeFec) {
+        return OpusDecoder.decode(pDecoder, inputData, inputOffset, inputLength, outData, outOffset, frameSize, decodeFec);
+    }
+
+    static int decodeFloat(long pDecoder, ByteBuffer inputData, int inputOffset, int inputLength, ByteBuffer outData, int outOffset, int frameSize, int decodeFec) {
+        return OpusDecoder.decodeFloat(pDecoder, inputData, inputOffset, inputLength, outData, outOffset, frameSize, decodeFec);
+    }
+
+    static int decodeAddress(long pDecoder, long inputAddress, int inputLength, long outAddress, int frameSize, int decodeFec) {
+        return OpusDecoder.decodeAddress(pDecoder, inputAddress, inputLength, outAddress, frameSize, decodeFec);
+    }
+
+    static int decodeFloatAddress(long pDecoder, long inputAddress, int inputLength, long outAddress, int frameSize, int decodeFec) {
+        return OpusDecoder.decodeFloatAddress(pDecoder, inputAddress, inputLength, outAddress, frameSize, decodeFec);
+    }
+}
@@ -0,0 +1,176 @@
+package me.walkerknapp.rapidopus;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Ranks many Opus streams by speech activity from their packet headers alone, so that only the most active streams
+ * need to be decoded, e.g. to pick the speakers to mix in a large room.
+ *
+ * Each packet is scored from what can be read without decoding it: DTX and missing packets score nothing, SILK and
+ * hybrid packets are scored mostly by the voice activity flag the encoder set (see
+ * {@link OpusPacketInspector#getVoiceActivity(ByteBuffer, int, int)}), and every packet is scored in part by its
+ * bitrate relative to the stream's own average, which with VBR follows how much is going on in the signal. CELT only
+ * packets, which carry no voice activity flag, are scored by their bitrate alone. Scores are smoothed so that
+ * activity is picked up quickly and let go of slowly, and streams already selected are favored, so the selection
+ * does not flap between speakers of similar loudness.
+ *
+ * Streams are identified by an index between 0 and the capacity. A detector is not thread-safe.
+ */
+public class OpusActivityDetector {
+    private static final float ATTACK = 0.5f;
+    private static final float RELEASE = 0.05f;
+    private static final float BITRATE_SMOOTHING = 0.02f;
+    private static final float HYSTERESIS = 0.1f;
+    private static final float MIN_ACTIVITY = 0.05f;
+
+    private final float[] activity;
+    private final float[] averageBitrate;
+    private final boolean[] selected;
+    private final boolean[] picked;
+
+    /**
+     * Creates a detector with every stream inactive.
+     *
+     * @param capacity The number of streams.
+     */
+    public OpusActivityDetector(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+
+        this.activity = new float[capacity];
+        this.averageBitrate = new float[capacity];
+        this.selected = new boolean[capacity];
+        this.picked = new boolean[capacity];
+    }
+
+    /**
+     * Scores a stream's packet for the current tick.
+     * The buffer is read with absolute gets, so it may be a heap or direct buffer, and its position is unchanged.
+     *
+     * @param stream The stream's index.
+     * @param packet A ByteBuffer holding the packet.
+     * @param offset The offset of the packet in the buffer.
+     * @param length The length of the packet, in bytes.
+     */
+    public void update(int stream, ByteBuffer packet, int offset, int length) {
+        if (length <= 2) {
+            // A DTX packet, which only keeps the stream alive
+            smooth(stream, 0);
+            return;
+        }
+
+        int voice = OpusPacketInspector.getVoiceActivity(packet, offset, length);
+        int samples;
+        try {
+            samples = OpusPacketInspector.getSampleCount(packet, offset, length, 48000);
+        } catch (IllegalStateException e) {
+            smooth(stream, 0);
+            return;
+        }
+        if (samples == 0) {
+            smooth(stream, 0);
+            return;
+        }
+
+        float bitrate = (float) length * 48000 / samples;
+        if (averageBitrate[stream] == 0) {
+            averageBitrate[stream] = bitrate;
+        } else {
+            averageBitrate[stream] += (bitrate - averageBitrate[stream]) * BITRATE_SMOOTHING;
+        }
+        float relative = Math.min(bitrate / averageBitrate[stream], 2) / 2;
+
+        float level;
+        if (voice < 0) {
+            level = relative;
+        } else if (voice > 0) {
+            level = 0.5f + relative / 2;
+        } else {
+            level = relative / 10;
+        }
+        smooth(stream, level);
+    }
+
+    /**
+     * Records that a stream had no packet for the current tick, because it was lost or is not being sent.
+     *
+     * @param stream The stream's index.
+     */
+    public void updateLost(int stream) {
+        smooth(stream, 0);
+    }
+
+    /**
+     * Forgets everything about a stream, e.g. when its index is reused for a new stream.
+     *
+     * @param stream The stream's index.
+     */
+    public void reset(int stream) {
+        activity[stream] = 0;
+        averageBitrate[stream] = 0;
+        selected[stream] = false;
+    }
+
+    /**
+     * Gets a stream's smoothed activity.
+     *
+     * @param stream The stream's index.
+     * @return The activity, between 0 for silence and 1.
+     */
+    public float getActivity(int stream) {
+        return activity[stream];
+    }
+
+    /**
+     * Selects the most active streams. Streams that were already selected are favored over streams with only
+     * slightly higher activity, and streams that are barely active are never selected.
+     *
+     * @param k The maximum number of streams to select.
+     * @return The number of streams selected.
+     */
+    public int select(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("K must not be negative: " + k);
+        }
+
+        for (int i = 0; i < picked.length; i++) {
+            picked[i] = false;
+        }
+
+        int count = 0;
+        for (; count < k; count++) {
+            int best = -1;
+            float bestScore = MIN_ACTIVITY;
+            for (int i = 0; i < activity.length; i++) {
+                float score = selected[i] ? activity[i] + HYSTERESIS : activity[i];
+                if (!picked[i] && activity[i] >= MIN_ACTIVITY && score > bestScore) {
+                    best = i;
+                    bestScore = score;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            picked[best] = true;
+        }
+
+        System.arraycopy(picked, 0, selected, 0, picked.length);
+        return count;
+    }
+
+    /**
+     * Checks if a stream was selected by the last call to {@link #select(int)}.
+     *
+     * @param stream The stream's index.
+     * @return True if the stream is selected.
+     */
+    public boolean isSelected(int stream) {
+        return selected[stream];
+    }
+
+    private void smooth(int stream, float level) {
+        float current = activity[stream];
+        activity[stream] = current + (level - current) * (level > current ? ATTACK : RELEASE);
+    }
+}
@@ -0,0 +1,421 @@
+package me.walkerknapp.rapidopus;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, thread-safe pool of encoders and decoders, keyed by sample rate, channel count and (for encoders)
+ * application mode.
+ *
+ * Acquiring from the pool reuses an idle instance with a matching configuration when one is available, instead of
+ * allocating a new native state and registering it with the cleaner. Instances are reset when they are released back
+ * to the pool, so the next user starts from a fresh stream. Resetting keeps an instance's settings, so an encoder's
+ * settings (e.g. its bitrate) are also restored to the ones it was created with, and a decoder's gain is cleared.
+ * Idle instances are closed once they have been idle for longer than the idle timeout, or if their key already holds
+ * the maximum number of idle instances.
+ *
+ * Pooled instances must be released instead of closed, and must not be used after they are released. Releasing an
+ * instance that wasn't acquired from the pool, or releasing one twice, throws an {@link IllegalStateException}.
+ */
+public class OpusCodecPool implements AutoCloseable {
+    private static final int[] SAMPLE_RATES = {8000, 12000, 16000, 24000, 48000};
+    private static final OpusApplicationMode[] APPLICATION_MODES = OpusApplicationMode.values();
+
+    private final long idleTimeoutNanos;
+
+    private final Slot[] encoderSlots;
+    private final Slot[] decoderSlots;
+    private final EncoderDefaults[] encoderDefaults;
+
+    private final LongAdder created = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    private volatile boolean closed;
+
+    /**
+     * Creates an empty pool.
+     *
+     * @param maxIdlePerKey The maximum number of idle instances kept for each configuration.
+     * @param idleTimeoutNanos How long an instance may stay idle before it is closed, in nanoseconds.
+     */
+    public OpusCodecPool(int maxIdlePerKey, long idleTimeoutNanos) {
+        if (maxIdlePerKey < 0) {
+            throw new IllegalArgumentException("Max idle per key must not be negative: " + maxIdlePerKey);
+        }
+        if (idleTimeoutNanos <= 0) {
+            throw new IllegalArgumentException("Idle timeout must be positive: " + idleTimeoutNanos);
+        }
+
+        this.idleTimeoutNanos = idleTimeoutNanos;
+
+        this.encoderSlots = new Slot[SAMPLE_RATES.length * 2 * APPLICATION_MODES.length];
+        for (int i = 0; i < encoderSlots.length; i++) {
+            encoderSlots[i] = new Slot(maxIdlePerKey);
+        }
+        this.encoderDefaults = new EncoderDefaults[encoderSlots.length];
+
+        this.decoderSlots = new Slot[SAMPLE_RATES.length * 2];
+        for (int i = 0; i < decoderSlots.length; i++) {
+            decoderSlots[i] = new Slot(maxIdlePerKey);
+        }
+    }
+
+    /**
+     * Gets an encoder from the pool, creating one if no idle encoder with this configuration is available.
+     *
+     * @param sampleRate Sample rate in Hz. This must be 8000, 12000, 16000, 24000, or 48000
+     * @param channels Number of channels. Must be 1 or 2
+     * @param applicationMode Application mode.
+     * @return An encoder in a freshly reset state.
+     */
+    public OpusEncoder acquireEncoder(int sampleRate, int channels, OpusApplicationMode applicationMode) {
+        checkOpen();
+
+        int index = encoderSlot(sampleRate, channels, applicationMode);
+        Slot slot = encoderSlots[index];
+        OpusEncoder encoder = (OpusEncoder) slot.pop();
+
+        if (encoder != null) {
+            reused.increment();
+            return encoder;
+        }
+
+        created.increment();
+        encoder = new OpusEncoder(sampleRate, channels, applicationMode);
+        // Every encoder with this configuration starts with the same settings, so the first one is enough
+        if (encoderDefaults[index] == null) {
+            encoderDefaults[index] = new EncoderDefaults(encoder);
+        }
+        slot.lend(encoder);
+        return encoder;
+    }
+
+    /**
+     * Gets a decoder from the pool, creating one if no idle decoder with this configuration is available.
+     *
+     * @param sampleRate Sample rate to decode at, in Hz
+     * @param channels Number of channels (Must be 1 or 2) to decode.
+     * @return A decoder in a freshly reset state.
+     */
+    public OpusDecoder acquireDecoder(int sampleRate, int channels) {
+        checkOpen();
+
+        Slot slot = decoderSlots[decoderSlot(sampleRate, channels)];
+        OpusDecoder decoder = (OpusDecoder) slot.pop();
+
+        if (decoder != null) {
+            reused.increment();
+            return decoder;
+        }
+
+        created.increment();
+        decoder = new OpusDecoder(sampleRate, channels);
+        slot.lend(decoder);
+        return decoder;
+    }
+
+    /**
+     * Resets an encoder, restores the settings it was created with, and returns it to the pool, or closes it if the
+     * pool is closed or already holds enough idle encoders with its configuration.
+     *
+     * @param encoder The encoder to release. It must not be used afterwards.
+     * @throws IllegalStateException If the encoder wasn't acquired from this pool, or has already been released.
+     */
+    public void release(OpusEncoder encoder) {
+        int index = encoderSlot(encoder.sampleRate, encoder.channels, encoder.applicationMode);
+        Slot slot = encoderSlots[index];
+        slot.takeBack(encoder);
+
+        encoder.resetState();
+        encoderDefaults[index].restore(encoder);
+
+        push(slot, encoder);
+    }
+
+    /**
+     * Resets a decoder and returns it to the pool, or closes it if the pool is closed or already holds enough idle
+     * decoders with its configuration.
+     *
+     * @param decoder The decoder to release. It must not be used afterwards.
+     * @throws IllegalStateException If the decoder wasn't acquired from this pool, or has already been released.
+     */
+    public void release(OpusDecoder decoder) {
+        Slot slot = decoderSlots[decoderSlot(decoder.sampleRate, decoder.channels)];
+        slot.takeBack(decoder);
+
+        decoder.resetState();
+        // Resetting keeps the gain, which e.g. an Ogg Opus header sets for its own stream only
+        if (decoder.getGain() != 0) {
+            decoder.setGain(0);
+        }
+
+        push(slot, decoder);
+    }
+
+    /**
+     * Closes every instance that has been idle for longer than the idle timeout.
+     * Eviction also happens as instances are released, but this catches configurations that are no longer in use.
+     *
+     * @return The number of instances closed.
+     */
+    public int evictIdle() {
+        long deadline = System.nanoTime() - idleTimeoutNanos;
+        int count = 0;
+
+        for (Slot slot : encoderSlots) {
+            count += slot.evict(deadline);
+        }
+        for (Slot slot : decoderSlots) {
+            count += slot.evict(deadline);
+        }
+
+        evicted.add(count);
+        return count;
+    }
+
+    /**
+     * Gets the number of instances currently idle in the pool.
+     *
+     * @return The number of idle encoders and decoders.
+     */
+    public int getIdleCount() {
+        int count = 0;
+
+        for (Slot slot : encoderSlots) {
+            count += slot.size();
+        }
+        for (Slot slot : decoderSlots) {
+            count += slot.size();
+        }
+
+        return count;
+    }
+
+    /**
+     * Gets the number of instances the pool has had to create.
+     *
+     * @return The number of encoders and decoders created.
+     */
+    public long getCreatedCount() {
+        return created.sum();
+    }
+
+    /**
+     * Gets the number of acquisitions that were served by an idle instance.
+     *
+     * @return The number of encoders and decoders reused.
+     */
+    public long getReusedCount() {
+        return reused.sum();
+    }
+
+    /**
+     * Gets the number of idle instances that were closed for timing out.
+     *
+     * @return The number of encoders and decoders evicted.
+     */
+    public long getEvictedCount() {
+        return evicted.sum();
+    }
+
+    /**
+     * Closes every idle instance. Instances released after this are closed immediately.
+     */
+    @Override
+    public void close() {
+        closed = true;
+
+        for (Slot slot : encoderSlots) {
+            slot.clear();
+        }
+        for (Slot slot : decoderSlots) {
+            slot.clear();
+        }
+    }
+
+    private void push(Slot slot, AutoCloseable codec) {
+        long now = System.nanoTime();
+
+        evicted.add(slot.evict(now - idleTimeoutNanos));
+
+        if (closed || !slot.push(codec, now)) {
+            closeCodec(codec);
+        } else if (closed) {
+            // The pool was closed while this instance was being pushed, so it may have missed being cleared.
+            slot.clear();
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Pool is closed");
+        }
+    }
+
+    private static int encoderSlot(int sampleRate, int channels, OpusApplicationMode applicationMode) {
+        return decoderSlot(sampleRate, channels) * APPLICATION_MODES.length + applicationMode.ordinal();
+    }
+
+    private static int decoderSlot(int sampleRate, int channels) {
+        if (channels != 1 && channels != 2) {
+            throw new IllegalArgumentException("Channels must be 1 or 2: " + channels);
+        }
+
+        for (int i = 0; i < SAMPLE_RATES.length; i++) {
+            if (SAMPLE_RATES[i] == sampleRate) {
+                return i * 2 + (channels - 1);
+            }
+        }
+
+        throw new IllegalArgumentException("Unsupported sample rate: " + sampleRate);
+    }
+
+    private static void closeCodec(AutoCloseable codec) {
+        try {
+            codec.close();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The settings an encoder is created with, which resetting it keeps as they were last set.
+     * The bitrate and bandwidth read back as the values in use rather than as set, so they are restored to automatic,
+     * which is how every encoder starts.
+     */
+    private static final class EncoderDefaults {
+        private final OpusApplicationMode application;
+        private final int complexity;
+        private final boolean vbr;
+        private final boolean vbrConstraint;
+        private final int forceChannels;
+        private final OpusBandwidth maxBandwidth;
+        private final OpusSignal signal;
+        private final boolean inbandFec;
+        private final int packetLossPercentage;
+        private final boolean dtx;
+        private final int lsbDepth;
+        private final OpusFrameDuration expertFrameDuration;
+        private final boolean predictionDisabled;
+        private final boolean phaseInversionDisabled;
+
+        EncoderDefaults(OpusEncoder encoder) {
+            this.application = encoder.applicationMode;
+            this.complexity = encoder.getComplexity();
+            this.vbr = encoder.isVbr();
+            this.vbrConstraint = encoder.isVbrConstraint();
+            this.forceChannels = encoder.getForceChannels();
+            this.maxBandwidth = encoder.getMaxBandwidth();
+            this.signal = encoder.getSignal();
+            this.inbandFec = encoder.isInbandFec();
+            this.packetLossPercentage = encoder.getPacketLossPercentage();
+            this.dtx = encoder.isDtx();
+            this.lsbDepth = encoder.getLsbDepth();
+            this.expertFrameDuration = encoder.getExpertFrameDuration();
+            this.predictionDisabled = encoder.isPredictionDisabled();
+            this.phaseInversionDisabled = encoder.isPhaseInversionDisabled();
+        }
+
+        void restore(OpusEncoder encoder) {
+            encoder.setApplication(application);
+            encoder.setBitrate(OpusEncoder.AUTO);
+            encoder.setBandwidth(null);
+            encoder.setComplexity(complexity);
+            encoder.setVbr(vbr);
+            encoder.setVbrConstraint(vbrConstraint);
+            encoder.setForceChannels(forceChannels);
+            encoder.setMaxBandwidth(maxBandwidth);
+            encoder.setSignal(signal);
+            encoder.setInbandFec(inbandFec);
+            encoder.setPacketLossPercentage(packetLossPercentage);
+            encoder.setDtx(dtx);
+            encoder.setLsbDepth(lsbDepth);
+            encoder.setExpertFrameDuration(expertFrameDuration);
+            encoder.setPredictionDisabled(predictionDisabled);
+            encoder.setPhaseInversionDisabled(phaseInversionDisabled);
+        }
+    }
+
+    /**
+     * The idle instances of a single configuration, as a stack, so that the most recently used (and most likely cached)
+     * instance is handed out first, and the longest idle instances sit at the bottom to be evicted.
+     * The instances that are currently handed out are tracked too, so that only those can be released.
+     */
+    private static final class Slot {
+        private final AutoCloseable[] idle;
+        private final long[] idleSince;
+        private final Map<AutoCloseable, Boolean> lent = new IdentityHashMap<>();
+        private int count;
+
+        Slot(int capacity) {
+            this.idle = new AutoCloseable[capacity];
+            this.idleSince = new long[capacity];
+        }
+
+        synchronized AutoCloseable pop() {
+            if (count == 0) {
+                return null;
+            }
+
+            AutoCloseable codec = idle[--count];
+            idle[count] = null;
+            lent.put(codec, Boolean.TRUE);
+            return codec;
+        }
+
+        synchronized void lend(AutoCloseable codec) {
+            lent.put(codec, Boolean.TRUE);
+        }
+
+        synchronized void takeBack(AutoCloseable codec) {
+            // Instances the pool closed were taken back before, so releasing them again never touches freed memory
+            if (lent.remove(codec) == null) {
+                throw new IllegalStateException("Instance was not acquired from this pool, or has already been released");
+            }
+        }
+
+        synchronized boolean push(AutoCloseable codec, long now) {
+            if (count == idle.length) {
+                return false;
+            }
+
+            idle[count] = codec;
+            idleSince[count] = now;
+            count++;
+            return true;
+        }
+
+        synchronized int evict(long deadline) {
+            int expired = 0;
+            while (expired < count && idleSince[expired] - deadline < 0) {
+                closeCodec(idle[expired]);
+                expired++;
+            }
+
+            if (expired > 0) {
+                System.arraycopy(idle, expired, idle, 0, count - expired);
+                System.arraycopy(idleSince, expired, idleSince, 0, count - expired);
+                for (int i = count - expired; i < count; i++) {
+                    idle[i] = null;
+                }
+                count -= expired;
+            }
+
+            return expired;
+        }
+
+        synchronized void clear() {
+            for (int i = 0; i < count; i++) {
+                closeCodec(idle[i]);
+                idle[i] = null;
+            }
+            count = 0;
+        }
+
+        synchronized int size() {
+            return count;
+        }
+    }
+}
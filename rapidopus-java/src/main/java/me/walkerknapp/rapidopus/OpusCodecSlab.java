@@ -0,0 +1,249 @@
+package me.walkerknapp.rapidopus;
+
+import java.lang.ref.Cleaner;
+
+/**
+ * A single native allocation holding the states of many encoders or decoders side by side.
+ *
+ * Instead of a separate malloc per codec, states are initialized in place in fixed-size, cache line aligned slots of
+ * one slab, using opus_encoder_init and opus_decoder_init. This keeps thousands of states contiguous in memory, and
+ * returns all of their memory to the system at once when the slab is freed, instead of fragmenting the native heap.
+ *
+ * Closing an encoder or decoder created by a slab returns its slot to the slab. The slab itself is freed when it is
+ * closed, or once it and every codec created from it are unreachable.
+ */
+public class OpusCodecSlab implements AutoCloseable {
+    /**
+     * The alignment of every slot, in bytes.
+     */
+    static final int SLOT_ALIGNMENT = 64;
+
+    static class State implements Runnable {
+        private long pointer;
+
+        State(long pointer) {
+            this.pointer = pointer;
+        }
+
+        public void run() {
+            slabFree(pointer);
+        }
+    }
+
+    private final State state;
+    private final Cleaner.Cleanable cleanable;
+
+    private final boolean encoders;
+    private final int channels;
+    private final int slotBytes;
+    private final long basePointer;
+
+    private final int[] freeSlots;
+    private int freeCount;
+    private boolean closed;
+
+    private OpusCodecSlab(boolean encoders, int capacity, int channels) {
+        // This line needs to be here, since RapidOpus must be forced to load before native methods can be called.
+        Cleaner cleaner = RapidOpus.cleaner;
+
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        if (channels != 1 && channels != 2) {
+            throw new IllegalArgumentException("Channels must be 1 or 2: " + channels);
+        }
+
+        int stateBytes = encoders ? encoderGetSize(channels) : decoderGetSize(channels);
+        long slotBytes = (stateBytes + SLOT_ALIGNMENT - 1) & -SLOT_ALIGNMENT;
+        long totalBytes = slotBytes * capacity + SLOT_ALIGNMENT - 1;
+
+        long pointer = slabAllocate(totalBytes);
+        if (pointer == 0) {
+            throw new OutOfMemoryError("Could not allocate a slab of " + totalBytes + " bytes");
+        }
+
+        this.encoders = encoders;
+        this.channels = channels;
+        this.slotBytes = (int) slotBytes;
+        this.basePointer = (pointer + SLOT_ALIGNMENT - 1) & -SLOT_ALIGNMENT;
+
+        // Slots are handed out from the start of the slab first, so a partly used slab stays compact.
+        this.freeSlots = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            freeSlots[i] = capacity - 1 - i;
+        }
+        this.freeCount = capacity;
+
+        this.state = new State(pointer);
+        this.cleanable = cleaner.register(this, state);
+    }
+
+    /**
+     * Allocates a slab for encoders.
+     *
+     * @param capacity The number of encoders the slab can hold.
+     * @param channels The maximum number of channels of the encoders, 1 or 2. Each slot is sized for this channel count.
+     * @return The slab.
+     */
+    public static OpusCodecSlab forEncoders(int capacity, int channels) {
+        return new OpusCodecSlab(true, capacity, channels);
+    }
+
+    /**
+     * Allocates a slab for decoders.
+     *
+     * @param capacity The number of decoders the slab can hold.
+     * @param channels The maximum number of channels of the decoders, 1 or 2. Each slot is sized for this channel count.
+     * @return The slab.
+     */
+    public static OpusCodecSlab forDecoders(int capacity, int channels) {
+        return new OpusCodecSlab(false, capacity, channels);
+    }
+
+    /**
+     * Initializes an encoder in a free slot of the slab.
+     *
+     * @param sampleRate Sample rate in Hz. This must be 8000, 12000, 16000, 24000, or 48000
+     * @param channels Number of channels. Must be 1 or 2, and no more than the slab was sized for.
+     * @param applicationMode Application mode.
+     * @return The encoder. Closing it returns its slot to the slab.
+     */
+    public OpusEncoder createEncoder(int sampleRate, int channels, OpusApplicationMode applicationMode) {
+        if (!encoders) {
+            throw new IllegalStateException("This slab holds decoders");
+        }
+        checkChannels(channels);
+
+        int slot = allocateSlot();
+        long pointer = slotPointer(slot);
+
+        int res = encoderInit(pointer, sampleRate, channels, applicationMode.id);
+        if (res < RapidOpusErrorCodes.OPUS_OK) {
+            freeSlot(slot);
+            throw new IllegalArgumentException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return new OpusEncoder(pointer, sampleRate, channels, applicationMode, new SlotRelease(this, slot));
+    }
+
+    /**
+     * Initializes a decoder in a free slot of the slab.
+     *
+     * @param sampleRate Sample rate to decode at, in Hz
+     * @param channels Number of channels to decode. Must be 1 or 2, and no more than the slab was sized for.
+     * @return The decoder. Closing it returns its slot to the slab.
+     */
+    public OpusDecoder createDecoder(int sampleRate, int channels) {
+        if (encoders) {
+            throw new IllegalStateException("This slab holds encoders");
+        }
+        checkChannels(channels);
+
+        int slot = allocateSlot();
+        long pointer = slotPointer(slot);
+
+        int res = decoderInit(pointer, sampleRate, channels);
+        if (res < RapidOpusErrorCodes.OPUS_OK) {
+            freeSlot(slot);
+            throw new IllegalArgumentException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return new OpusDecoder(pointer, sampleRate, channels, new SlotRelease(this, slot));
+    }
+
+    /**
+     * Gets the number of codecs the slab can hold.
+     *
+     * @return The capacity of the slab.
+     */
+    public int capacity() {
+        return freeSlots.length;
+    }
+
+    /**
+     * Gets the number of codecs currently open in the slab.
+     *
+     * @return The number of slots in use.
+     */
+    public synchronized int size() {
+        return freeSlots.length - freeCount;
+    }
+
+    /**
+     * Gets the size of each slot, which is the codec state size rounded up to {@value #SLOT_ALIGNMENT} bytes.
+     *
+     * @return The slot size, in bytes.
+     */
+    public int getSlotBytes() {
+        return slotBytes;
+    }
+
+    /**
+     * Frees the slab. Every codec created from it must already be closed.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (freeCount != freeSlots.length) {
+                throw new IllegalStateException("Slab still has " + (freeSlots.length - freeCount) + " open codecs");
+            }
+            closed = true;
+        }
+
+        cleanable.clean();
+    }
+
+    private synchronized int allocateSlot() {
+        if (closed) {
+            throw new IllegalStateException("Slab is closed");
+        }
+        if (freeCount == 0) {
+            throw new IllegalStateException("Slab is full: " + freeSlots.length);
+        }
+
+        return freeSlots[--freeCount];
+    }
+
+    private synchronized void freeSlot(int slot) {
+        freeSlots[freeCount++] = slot;
+    }
+
+    private long slotPointer(int slot) {
+        return basePointer + (long) slot * slotBytes;
+    }
+
+    private void checkChannels(int channels) {
+        if (channels < 1 || channels > this.channels) {
+            throw new IllegalArgumentException("Channels must be between 1 and " + this.channels + ": " + channels);
+        }
+    }
+
+    /**
+     * Returns a codec's slot to its slab. This keeps the slab reachable, and so allocated, while the codec is open.
+     */
+    private static final class SlotRelease implements Runnable {
+        private final OpusCodecSlab slab;
+        private final int slot;
+
+        SlotRelease(OpusCodecSlab slab, int slot) {
+            this.slab = slab;
+            this.slot = slot;
+        }
+
+        public void run() {
+            slab.freeSlot(slot);
+        }
+    }
+
+    // Native Methods
+
+    private static native long slabAllocate(long bytes);
+    private static native void slabFree(long pointer);
+    private static native int encoderGetSize(int channels);
+    private static native int decoderGetSize(int channels);
+    private static native int encoderInit(long pEncoder, int sampleRate, int channels, int applicationMode);
+    private static native int decoderInit(long pDecoder, int sampleRate, int channels);
+}
@@ -0,0 +1,332 @@
+package me.walkerknapp.rapidopus;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A feedback controller that scales the complexity of a group of encoders to keep their total encode time within a
+ * per-tick CPU budget.
+ *
+ * Encodes run through the governor are timed and accumulated over a tick. When {@link #endTick()} is called, the
+ * complexity of every registered encoder is stepped down if the tick went over budget, or stepped back up after
+ * enough consecutive ticks with headroom. This trades encoding quality for CPU time gracefully under overload,
+ * instead of missing ticks.
+ *
+ * Encodes may be run through the governor from multiple threads, but {@link #endTick()} must not be called while any
+ * encode is in flight, since it reconfigures the registered encoders. Encoders may be registered and unregistered from
+ * any thread, even while a tick is ending. An encoder must be unregistered before it is closed, since the governor
+ * sets the complexity of every registered encoder.
+ */
+public class OpusComplexityGovernor {
+    /**
+     * A listener that is notified of the complexity decisions made by a governor.
+     */
+    public interface Listener {
+        /**
+         * Called when the governor changes the complexity of its encoders.
+         *
+         * @param previousComplexity The complexity before the change.
+         * @param complexity The complexity after the change.
+         * @param tickNanos The encode time of the tick that caused the change, in nanoseconds.
+         */
+        void onComplexityChanged(int previousComplexity, int complexity, long tickNanos);
+    }
+
+    private final long tickBudgetNanos;
+    private final int minComplexity;
+    private final int maxComplexity;
+    private final double headroom;
+    private final int stepUpTicks;
+
+    private final Set<OpusEncoder> encoders = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final LongAdder tickNanos = new LongAdder();
+
+    private volatile Listener listener;
+    private volatile int complexity;
+
+    private int ticksWithHeadroom;
+
+    private volatile long lastTickNanos;
+    private volatile long ticks;
+    private volatile long overBudgetTicks;
+    private volatile long stepDowns;
+    private volatile long stepUps;
+
+    /**
+     * Creates a governor that scales complexity between 0 and 10, stepping up after 10 consecutive ticks that use
+     * less than half of the budget.
+     *
+     * @param tickBudgetNanos The total encode time allowed per tick, in nanoseconds.
+     */
+    public OpusComplexityGovernor(long tickBudgetNanos) {
+        this(tickBudgetNanos, 0, 10, 0.5, 10);
+    }
+
+    /**
+     * Creates a governor.
+     *
+     * @param tickBudgetNanos The total encode time allowed per tick, in nanoseconds.
+     * @param minComplexity The lowest complexity the governor will step down to, from 0 to 10 inclusive.
+     * @param maxComplexity The highest complexity the governor will step up to, and the initial complexity.
+     * @param headroom The fraction of the budget a tick must stay under to count towards stepping up, from 0 to 1.
+     * @param stepUpTicks The number of consecutive ticks with headroom required before stepping up.
+     */
+    public OpusComplexityGovernor(long tickBudgetNanos, int minComplexity, int maxComplexity, double headroom, int stepUpTicks) {
+        if (tickBudgetNanos <= 0) {
+            throw new IllegalArgumentException("Tick budget must be positive: " + tickBudgetNanos);
+        }
+        if (minComplexity < 0 || maxComplexity > 10 || minComplexity > maxComplexity) {
+            throw new IllegalArgumentException("Invalid complexity range: " + minComplexity + " to " + maxComplexity);
+        }
+        if (headroom <= 0 || headroom > 1) {
+            throw new IllegalArgumentException("Headroom must be in (0, 1]: " + headroom);
+        }
+        if (stepUpTicks < 1) {
+            throw new IllegalArgumentException("Step up ticks must be positive: " + stepUpTicks);
+        }
+
+        this.tickBudgetNanos = tickBudgetNanos;
+        this.minComplexity = minComplexity;
+        this.maxComplexity = maxComplexity;
+        this.headroom = headroom;
+        this.stepUpTicks = stepUpTicks;
+        this.complexity = maxComplexity;
+    }
+
+    /**
+     * Adds an encoder to the group governed by this governor, and sets it to the current complexity.
+     *
+     * @param encoder The encoder to govern.
+     */
+    public synchronized void register(OpusEncoder encoder) {
+        encoder.setComplexity(complexity);
+        encoders.add(encoder);
+    }
+
+    /**
+     * Removes an encoder from the group governed by this governor. Its complexity is left as-is.
+     * Once this returns, the governor no longer uses the encoder, so it may be closed.
+     *
+     * @param encoder The encoder to stop governing.
+     */
+    public synchronized void unregister(OpusEncoder encoder) {
+        encoders.remove(encoder);
+    }
+
+    /**
+     * Sets the listener to notify of complexity changes.
+     *
+     * @param listener The listener, or null to remove it.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Encodes an opus frame with {@link OpusEncoder#encode(short[], int, ByteBuffer)}, counting its time towards the current tick.
+     *
+     * @param encoder The encoder to encode with.
+     * @param inputData The 16s PCM data (interleaved if 2 channels). Must be size frameSize * channels
+     * @param frameSize Number of samples per channel in the input signal.
+     * @param outputData A direct ByteBuffer to store the output.
+     * @return The length of the encoded packet
+     */
+    public int encode(OpusEncoder encoder, short[] inputData, int frameSize, ByteBuffer outputData) {
+        long start = System.nanoTime();
+        try {
+            return encoder.encode(inputData, frameSize, outputData);
+        } finally {
+            tickNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Encodes an opus frame with {@link OpusEncoder#encode(ByteBuffer, int, ByteBuffer)}, counting its time towards the current tick.
+     *
+     * @param encoder The encoder to encode with.
+     * @param inputData A direct ByteBuffer of 16s PCM data (interleaved if 2 channels). Must be size frameSize * channels * Short.BYTES
+     * @param frameSize Number of samples per channel in the input signal.
+     * @param outputData A direct ByteBuffer to store the output.
+     * @return The length of the encoded packet
+     */
+    public int encode(OpusEncoder encoder, ByteBuffer inputData, int frameSize, ByteBuffer outputData) {
+        long start = System.nanoTime();
+        try {
+            return encoder.encode(inputData, frameSize, outputData);
+        } finally {
+            tickNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Encodes an opus frame with {@link OpusEncoder#encodeFloat(float[], int, ByteBuffer)}, counting its time towards the current tick.
+     *
+     * @param encoder The encoder to encode with.
+     * @param inputData The floating-point PCM data (interleaved if 2 channels). Must be size frameSize * channels
+     * @param frameSize The number of samples per channel in the input signal.
+     * @param outputData A direct ByteBuffer to store the output.
+     * @return The length of the encoded packet.
+     */
+    public int encodeFloat(OpusEncoder encoder, float[] inputData, int frameSize, ByteBuffer outputData) {
+        long start = System.nanoTime();
+        try {
+            return encoder.encodeFloat(inputData, frameSize, outputData);
+        } finally {
+            tickNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Encodes an opus frame with {@link OpusEncoder#encodeFloat(ByteBuffer, int, ByteBuffer)}, counting its time towards the current tick.
+     *
+     * @param encoder The encoder to encode with.
+     * @param inputData A direct ByteBuffer of the floating-point PCM data (interleaved if 2 channels). Must be size frameSize * channels * Float.BYTES
+     * @param frameSize The number of samples per channel in the input signal.
+     * @param outputData A direct ByteBuffer to store the output.
+     * @return The length of the encoded packet.
+     */
+    public int encodeFloat(OpusEncoder encoder, ByteBuffer inputData, int frameSize, ByteBuffer outputData) {
+        long start = System.nanoTime();
+        try {
+            return encoder.encodeFloat(inputData, frameSize, outputData);
+        } finally {
+            tickNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Counts encode time that was measured outside of the governor (e.g. for an {@link OpusEncoderBatch}) towards the current tick.
+     *
+     * @param nanos The encode time, in nanoseconds.
+     */
+    public void recordEncodeTime(long nanos) {
+        tickNanos.add(nanos);
+    }
+
+    /**
+     * Ends the current tick, and adjusts the complexity of every registered encoder based on its encode time.
+     * This must not be called while any governed encode is in flight.
+     *
+     * @return The complexity for the next tick.
+     */
+    public int endTick() {
+        long elapsed = tickNanos.sumThenReset();
+        int previous = complexity;
+        int next = previous;
+
+        if (elapsed > tickBudgetNanos) {
+            overBudgetTicks++;
+            ticksWithHeadroom = 0;
+
+            if (previous > minComplexity) {
+                next = previous - 1;
+                stepDowns++;
+            }
+        } else if (elapsed < tickBudgetNanos * headroom) {
+            if (++ticksWithHeadroom >= stepUpTicks && previous < maxComplexity) {
+                next = previous + 1;
+                ticksWithHeadroom = 0;
+                stepUps++;
+            }
+        } else {
+            ticksWithHeadroom = 0;
+        }
+
+        lastTickNanos = elapsed;
+        ticks++;
+
+        if (next != previous) {
+            // Registering reads the complexity and adds the encoder under the same lock, so an encoder added while
+            // the tick ends is either set to the new complexity here, or registered with it
+            synchronized (this) {
+                complexity = next;
+
+                for (OpusEncoder encoder : encoders) {
+                    encoder.setComplexity(next);
+                }
+            }
+
+            Listener currentListener = listener;
+            if (currentListener != null) {
+                currentListener.onComplexityChanged(previous, next, elapsed);
+            }
+        }
+
+        return next;
+    }
+
+    /**
+     * Gets the complexity the registered encoders are currently set to.
+     *
+     * @return The current complexity.
+     */
+    public int getComplexity() {
+        return complexity;
+    }
+
+    /**
+     * Gets the total encode time allowed per tick.
+     *
+     * @return The tick budget, in nanoseconds.
+     */
+    public long getTickBudgetNanos() {
+        return tickBudgetNanos;
+    }
+
+    /**
+     * Gets the total encode time of the last completed tick.
+     *
+     * @return The encode time, in nanoseconds.
+     */
+    public long getLastTickNanos() {
+        return lastTickNanos;
+    }
+
+    /**
+     * Gets the number of ticks completed.
+     *
+     * @return The number of ticks.
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Gets the number of completed ticks that went over budget.
+     *
+     * @return The number of ticks over budget.
+     */
+    public long getOverBudgetTicks() {
+        return overBudgetTicks;
+    }
+
+    /**
+     * Gets the number of times the governor has lowered the complexity.
+     *
+     * @return The number of step downs.
+     */
+    public long getStepDowns() {
+        return stepDowns;
+    }
+
+    /**
+     * Gets the number of times the governor has raised the complexity.
+     *
+     * @return The number of step ups.
+     */
+    public long getStepUps() {
+        return stepUps;
+    }
+
+    /**
+     * Gets the number of encoders currently governed.
+     *
+     * @return The number of registered encoders.
+     */
+    public int getEncoderCount() {
+        return encoders.size();
+    }
+}
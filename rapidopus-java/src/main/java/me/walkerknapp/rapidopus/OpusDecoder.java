@@ -1,7 +1,9 @@
 package me.walkerknapp.rapidopus;
 
 import java.lang.ref.Cleaner;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
 
 /**
  * An object that decodes an audio stream encoded in opus, returning decoded packets of audio data.
@@ -20,10 +22,17 @@ public class OpusDecoder implements AutoCloseable {
         }
     }
 
-    private final State state;
+    /**
+     * The largest useful frame size, the maximum packet duration (120ms) at 48kHz.
+     */
+    private static final int MAX_FRAME_SIZE = 5760;
+
+    private final Runnable state;
     private final Cleaner.Cleanable cleanable;
 
-    private final long structPointer;
+    final long structPointer;
+    final int sampleRate;
+    final int channels;
 
     /**
      * Creates and initializes an opus decoder.
@@ -44,11 +53,31 @@ public class OpusDecoder implements AutoCloseable {
         Cleaner cleaner = RapidOpus.cleaner;
 
         this.structPointer = decoderCreate(sampleRate, channels);
+        this.sampleRate = sampleRate;
+        this.channels = channels;
 
         this.state = new State(structPointer);
         this.cleanable = cleaner.register(this, state);
     }
 
+    /**
+     * Wraps a decoder state that was initialized in memory owned by something else, such as an {@link OpusCodecSlab}.
+     *
+     * @param structPointer The initialized decoder state.
+     * @param release Run instead of destroying the state when this decoder is closed or becomes unreachable.
+     *                It must not reference the decoder.
+     */
+    OpusDecoder(long structPointer, int sampleRate, int channels, Runnable release) {
+        Cleaner cleaner = RapidOpus.cleaner;
+
+        this.structPointer = structPointer;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+
+        this.state = release;
+        this.cleanable = cleaner.register(this, state);
+    }
+
     /**
      * Creates and initializes an opus decoder.
      *
@@ -88,6 +117,15 @@ public class OpusDecoder implements AutoCloseable {
         return decoderGetSampleRate(structPointer);
     }
 
+    /**
+     * Gets the number of channels the decoder outputs.
+     *
+     * @return The number of channels, 1 or 2.
+     */
+    public int getChannels() {
+        return channels;
+    }
+
     // Decoder CTLs
 
     /**
@@ -145,7 +183,7 @@ public class OpusDecoder implements AutoCloseable {
      * @return The number of decoded samples.
      */
     public int decode(byte[] inputData, ByteBuffer outData, int frameSize, int decodeFec) {
-        int res = decode(structPointer, inputData, outData, frameSize, decodeFec);
+        int res = NativeCodec.decode(structPointer, inputData, outData, frameSize, decodeFec);
 
         if(res < RapidOpusErrorCodes.OPUS_OK) {
             throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
@@ -169,7 +207,7 @@ public class OpusDecoder implements AutoCloseable {
      * @return The number of decoded samples.
      */
     public int decode(ByteBuffer inputData, ByteBuffer outData, int frameSize, int decodeFec) {
-        int res = decode(structPointer, inputData, outData, frameSize, decodeFec);
+        int res = NativeCodec.decode(structPointer, inputData, outData, frameSize, decodeFec);
 
         if(res < RapidOpusErrorCodes.OPUS_OK) {
             throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
@@ -193,7 +231,7 @@ public class OpusDecoder implements AutoCloseable {
      * @return The number of decoded samples.
      */
     public int decodeFloat(byte[] inputData, ByteBuffer outData, int frameSize, int decodeFec) {
-        int res = decodeFloat(structPointer, inputData, outData, frameSize, decodeFec);
+        int res = NativeCodec.decodeFloat(structPointer, inputData, outData, frameSize, decodeFec);
 
         if(res < RapidOpusErrorCodes.OPUS_OK) {
             throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
@@ -217,7 +255,88 @@ public class OpusDecoder implements AutoCloseable {
      * @return The number of decoded samples.
      */
     public int decodeFloat(ByteBuffer inputData, ByteBuffer outData, int frameSize, int decodeFec) {
-        int res = decodeFloat(structPointer, inputData, outData, frameSize, decodeFec);
+        int res = NativeCodec.decodeFloat(structPointer, inputData, outData, frameSize, decodeFec);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return res;
+    }
+
+    /**
+     * Decodes an opus packet from a region of a direct buffer into 16s samples in a region of another, ignoring their
+     * positions and limits. This allows many packets and frames to share one large buffer without slicing it.
+     *
+     * @param inputData A direct ByteBuffer holding the packet data.
+     * @param inputOffset The offset, in bytes, of the packet in the input buffer.
+     * @param inputLength The length of the packet, in bytes. A length of 0 marks the packet as lost.
+     * @param outData A direct ByteBuffer to write the decoded samples to.
+     * @param outOffset The offset, in bytes, in the output buffer to write the decoded samples to.
+     *                  The buffer must hold frameSize * channels * Short.BYTES bytes from this offset.
+     * @param frameSize Number of samples per channel of available space in outData, no more than 5760.
+     *                  In the case of PLC or FEC, this needs to be exactly the duration of audio that is missing.
+     * @param decodeFec Either 0 or 1 to request that any in-band forward error correction data be decoded
+     * @return The number of decoded samples.
+     */
+    public int decode(ByteBuffer inputData, int inputOffset, int inputLength, ByteBuffer outData, int outOffset, int frameSize, int decodeFec) {
+        checkRegion(inputData, inputOffset, inputLength);
+        checkRegion(outData, outOffset, outputLength(frameSize, Short.BYTES));
+
+        int res = NativeCodec.decode(structPointer, inputData, inputOffset, inputLength, outData, outOffset, frameSize, decodeFec);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return res;
+    }
+
+    /**
+     * Decodes an opus packet from a region of a direct buffer into floating point samples in a region of another,
+     * ignoring their positions and limits. This allows many packets and frames to share one large buffer without slicing it.
+     *
+     * @param inputData A direct ByteBuffer holding the packet data.
+     * @param inputOffset The offset, in bytes, of the packet in the input buffer.
+     * @param inputLength The length of the packet, in bytes. A length of 0 marks the packet as lost.
+     * @param outData A direct ByteBuffer to write the decoded samples to.
+     * @param outOffset The offset, in bytes, in the output buffer to write the decoded samples to.
+     *                  The buffer must hold frameSize * channels * Float.BYTES bytes from this offset.
+     * @param frameSize Number of samples per channel of available space in outData, no more than 5760.
+     *                  In the case of PLC or FEC, this needs to be exactly the duration of audio that is missing.
+     * @param decodeFec Either 0 or 1 to request that any in-band forward error correction data be decoded
+     * @return The number of decoded samples.
+     */
+    public int decodeFloat(ByteBuffer inputData, int inputOffset, int inputLength, ByteBuffer outData, int outOffset, int frameSize, int decodeFec) {
+        checkRegion(inputData, inputOffset, inputLength);
+        checkRegion(outData, outOffset, outputLength(frameSize, Float.BYTES));
+
+        int res = NativeCodec.decodeFloat(structPointer, inputData, inputOffset, inputLength, outData, outOffset, frameSize, decodeFec);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return res;
+    }
+
+    /**
+     * Decodes an opus packet into 16s samples between two raw native addresses, such as those of a native
+     * MemorySegment (from MemorySegment.address()) or memory shared with other native code.
+     *
+     * No bounds checking is possible, so the caller must ensure that both regions are valid and stay allocated for the
+     * duration of the call.
+     *
+     * @param inputAddress The address of the packet data.
+     * @param inputLength The length of the packet, in bytes. A length of 0 marks the packet as lost.
+     * @param outAddress The address to write the decoded samples to, with room for frameSize * channels samples.
+     * @param frameSize Number of samples per channel of available space at outAddress.
+     *                  In the case of PLC or FEC, this needs to be exactly the duration of audio that is missing.
+     * @param decodeFec Either 0 or 1 to request that any in-band forward error correction data be decoded
+     * @return The number of decoded samples.
+     */
+    public int decode(long inputAddress, int inputLength, long outAddress, int frameSize, int decodeFec) {
+        int res = NativeCodec.decodeAddress(structPointer, inputAddress, inputLength, outAddress, frameSize, decodeFec);
 
         if(res < RapidOpusErrorCodes.OPUS_OK) {
             throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
@@ -226,6 +345,87 @@ public class OpusDecoder implements AutoCloseable {
         return res;
     }
 
+    /**
+     * Decodes an opus packet into floating point samples between two raw native addresses, such as those of a native
+     * MemorySegment (from MemorySegment.address()) or memory shared with other native code.
+     *
+     * No bounds checking is possible, so the caller must ensure that both regions are valid and stay allocated for the
+     * duration of the call.
+     *
+     * @param inputAddress The address of the packet data.
+     * @param inputLength The length of the packet, in bytes. A length of 0 marks the packet as lost.
+     * @param outAddress The address to write the decoded samples to, with room for frameSize * channels samples.
+     * @param frameSize Number of samples per channel of available space at outAddress.
+     *                  In the case of PLC or FEC, this needs to be exactly the duration of audio that is missing.
+     * @param decodeFec Either 0 or 1 to request that any in-band forward error correction data be decoded
+     * @return The number of decoded samples.
+     */
+    public int decodeFloat(long inputAddress, int inputLength, long outAddress, int frameSize, int decodeFec) {
+        int res = NativeCodec.decodeFloatAddress(structPointer, inputAddress, inputLength, outAddress, frameSize, decodeFec);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return res;
+    }
+
+    /**
+     * Decodes the packet between the input buffer's position and limit into 16s samples at the output buffer's position,
+     * like an NIO channel. The input's position is advanced to its limit, and the output's position is advanced past the
+     * decoded samples. This allows decoding straight out of a buffer filled by a DatagramChannel and flipped.
+     *
+     * If the input has no remaining bytes, the packet is treated as lost. If the output doesn't have enough remaining
+     * space, neither buffer is modified.
+     *
+     * @param inputData A direct ByteBuffer whose remaining bytes are the opus packet.
+     * @param outData A direct ByteBuffer with at least frameSize * channels * Short.BYTES bytes remaining.
+     * @param frameSize Number of samples per channel of available space in outData.
+     *                  In the case of PLC or FEC, this needs to be exactly the duration of audio that is missing.
+     * @param decodeFec Either 0 or 1 to request that any in-band forward error correction data be decoded
+     * @return The number of decoded samples.
+     * @throws BufferOverflowException If the output has less than frameSize samples of space remaining.
+     */
+    public int decodeRelative(ByteBuffer inputData, ByteBuffer outData, int frameSize, int decodeFec) {
+        int sampleBytes = channels * Short.BYTES;
+        checkRelative(outData, outputLength(frameSize, Short.BYTES));
+
+        int res = decode(inputData, inputData.position(), inputData.remaining(), outData, outData.position(), frameSize, decodeFec);
+
+        inputData.position(inputData.limit());
+        outData.position(outData.position() + res * sampleBytes);
+
+        return res;
+    }
+
+    /**
+     * Decodes the packet between the input buffer's position and limit into floating point samples at the output
+     * buffer's position, like an NIO channel. The input's position is advanced to its limit, and the output's position is
+     * advanced past the decoded samples. This allows decoding straight out of a buffer filled by a DatagramChannel and flipped.
+     *
+     * If the input has no remaining bytes, the packet is treated as lost. If the output doesn't have enough remaining
+     * space, neither buffer is modified.
+     *
+     * @param inputData A direct ByteBuffer whose remaining bytes are the opus packet.
+     * @param outData A direct ByteBuffer with at least frameSize * channels * Float.BYTES bytes remaining.
+     * @param frameSize Number of samples per channel of available space in outData.
+     *                  In the case of PLC or FEC, this needs to be exactly the duration of audio that is missing.
+     * @param decodeFec Either 0 or 1 to request that any in-band forward error correction data be decoded
+     * @return The number of decoded samples.
+     * @throws BufferOverflowException If the output has less than frameSize samples of space remaining.
+     */
+    public int decodeFloatRelative(ByteBuffer inputData, ByteBuffer outData, int frameSize, int decodeFec) {
+        int sampleBytes = channels * Float.BYTES;
+        checkRelative(outData, outputLength(frameSize, Float.BYTES));
+
+        int res = decodeFloat(inputData, inputData.position(), inputData.remaining(), outData, outData.position(), frameSize, decodeFec);
+
+        inputData.position(inputData.limit());
+        outData.position(outData.position() + res * sampleBytes);
+
+        return res;
+    }
+
     /**
      * Get the number of samples in a packet in the context of the decoder.
      *
@@ -428,6 +628,61 @@ public class OpusDecoder implements AutoCloseable {
         return res;
     }
 
+    /**
+     * Parses an opus packet into its TOC, frame layout, and header fields, all in a single native call.
+     *
+     * @param packet Binary data of the input packet
+     * @param sampleRate The sample rate in Hz to count samples per frame at. Must be a multiple of 400.
+     * @param info The object to store the parsed fields in. This is overwritten.
+     * @return The info object passed in.
+     */
+    public static OpusPacketInfo parsePacket(byte[] packet, int sampleRate, OpusPacketInfo info) {
+        int res = packetParse(packet, sampleRate, info.table);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return info;
+    }
+
+    /**
+     * Parses an opus packet into its TOC, frame layout, and header fields, all in a single native call.
+     *
+     * @param packet A direct ByteBuffer of the opus packet data
+     * @param sampleRate The sample rate in Hz to count samples per frame at. Must be a multiple of 400.
+     * @param info The object to store the parsed fields in. This is overwritten.
+     * @return The info object passed in.
+     */
+    public static OpusPacketInfo parsePacket(ByteBuffer packet, int sampleRate, OpusPacketInfo info) {
+        return parsePacket(packet, 0, packet.capacity(), sampleRate, info);
+    }
+
+    /**
+     * Parses an opus packet into its TOC, frame layout, and header fields, all in a single native call.
+     * Frame offsets are relative to the start of the packet, not the start of the buffer.
+     *
+     * @param packet A direct ByteBuffer holding the opus packet data
+     * @param offset The offset of the packet in the buffer, in bytes.
+     * @param length The length of the packet, in bytes.
+     * @param sampleRate The sample rate in Hz to count samples per frame at. Must be a multiple of 400.
+     * @param info The object to store the parsed fields in. This is overwritten.
+     * @return The info object passed in.
+     */
+    public static OpusPacketInfo parsePacket(ByteBuffer packet, int offset, int length, int sampleRate, OpusPacketInfo info) {
+        if (offset < 0 || length < 0 || offset > packet.capacity() - length) {
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + offset + " + " + length + ") is out of bounds for capacity " + packet.capacity());
+        }
+
+        int res = packetParse(packet, offset, length, sampleRate, info.table);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return info;
+    }
+
     /**
      * Applies soft-clipping to bring a float signal to the [-1, 1] range.
      * If the signal is already in that range, nothing happens, but if it is outside,
@@ -484,6 +739,36 @@ public class OpusDecoder implements AutoCloseable {
         nPcmSoftClip(pcm, frameSize, channels, softClipMemory);
     }
 
+    /**
+     * Gets the size, in bytes, of a frame of decoded samples. The frame size is checked against the maximum packet
+     * duration first, since a larger one could wrap the size around to one that passes the bounds checks.
+     */
+    private int outputLength(int frameSize, int sampleBytes) {
+        if (frameSize > MAX_FRAME_SIZE) {
+            throw new IllegalArgumentException("Frame size must not exceed " + MAX_FRAME_SIZE + ": " + frameSize);
+        }
+
+        return frameSize * channels * sampleBytes;
+    }
+
+    private static void checkRelative(ByteBuffer outData, int outLength) {
+        if (outData.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+        if (outData.remaining() < outLength) {
+            throw new BufferOverflowException();
+        }
+    }
+
+    private static void checkRegion(ByteBuffer buffer, int offset, int length) {
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("Buffer must be direct");
+        }
+        if (offset < 0 || length < 0 || offset > buffer.capacity() - length) {
+            throw new IndexOutOfBoundsException("Region [" + offset + ", " + offset + " + " + length + ") is out of bounds for capacity " + buffer.capacity());
+        }
+    }
+
     // Native Methods
 
     private static native long decoderCreate(int sampleRate, int channels);
@@ -496,10 +781,17 @@ public class OpusDecoder implements AutoCloseable {
     private static native int decoderGetLastPacketDuration(long pDecoder);
     private static native void decoderDestroy(long pDecoder);
 
-    private static native int decode(long pDecoder, byte[] inputData, ByteBuffer outData, int frameSize, int decodeFec);
-    private static native int decode(long pDecoder, ByteBuffer inputData, ByteBuffer outData, int frameSize, int decodeFec);
-    private static native int decodeFloat(long pDecoder, byte[] inputData, ByteBuffer outData, int frameSize, int decodeFec);
-    private static native int decodeFloat(long pDecoder, ByteBuffer inputData, ByteBuffer outData, int frameSize, int decodeFec);
+    static native int decode(long pDecoder, byte[] inputData, ByteBuffer outData, int frameSize, int decodeFec);
+    static native int decode(long pDecoder, ByteBuffer inputData, ByteBuffer outData, int frameSize, int decodeFec);
+    static native int decodeFloat(long pDecoder, byte[] inputData, ByteBuffer outData, int frameSize, int decodeFec);
+    static native int decodeFloat(long pDecoder, ByteBuffer inputData, ByteBuffer outData, int frameSize, int decodeFec);
+    static native int decode(long pDecoder, ByteBuffer inputData, int inputOffset, int inputLength, ByteBuffer outData, int outOffset, int frameSize, int decodeFec);
+    static native int decodeFloat(long pDecoder, ByteBuffer inputData, int inputOffset, int inputLength, ByteBuffer outData, int outOffset, int frameSize, int decodeFec);
+    static native int decodeAddress(long pDecoder, long inputAddress, int inputLength, long outAddress, int frameSize, int decodeFec);
+    static native int decodeFloatAddress(long pDecoder, long inputAddress, int inputLength, long outAddress, int frameSize, int decodeFec);
+
+    static native void decodeBatch(ByteBuffer entries, int count, ByteBuffer inputData, ByteBuffer outData, ByteBuffer results);
+    static native void decodeFloatBatch(ByteBuffer entries, int count, ByteBuffer inputData, ByteBuffer outData, ByteBuffer results);
 
     private static native int decoderGetNbSamples(long pDecoder, byte[] packet);
     private static native int decoderGetNbSamples(long pDecoder, ByteBuffer packet);
@@ -514,7 +806,8 @@ public class OpusDecoder implements AutoCloseable {
     private static native int packetGetNbSamples(ByteBuffer packet, int sampleRate);
     private static native int packetGetSamplesPerFrame(byte[] packet, int sampleRate);
     private static native int packetGetSamplesPerFrame(ByteBuffer packet, int sampleRate);
-    // TODO: Opus_packet_parse
+    private static native int packetParse(byte[] packet, int sampleRate, int[] table);
+    private static native int packetParse(ByteBuffer packet, int offset, int length, int sampleRate, int[] table);
 
     private static native void nPcmSoftClip(float[] pcm, int frameSize, int channels, float[] softclipMem);
     private static native void nPcmSoftClip(ByteBuffer pcm, int frameSize, int channels, float[] softclipMem);
@@ -0,0 +1,214 @@
+package me.walkerknapp.rapidopus;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A reusable table of decode operations that are all run in a single native call.
+ *
+ * Each entry pairs an {@link OpusDecoder} with a packet at an offset in one shared input buffer, and a region of one
+ * shared output buffer to decode the PCM to. Entries for lost packets carry no payload and are run through packet
+ * loss concealment (or FEC, if requested). This lets every inbound stream of a tick be decoded with one JNI
+ * transition, instead of one per packet.
+ *
+ * A batch is not thread-safe, and the decoders added to it must not be closed until the batch is cleared.
+ */
+public class OpusDecoderBatch {
+    /**
+     * The size, in bytes, of a single entry in the native entry table.
+     */
+    static final int ENTRY_BYTES = 32;
+
+    /**
+     * The largest frame size an entry may have, the maximum packet duration (120ms) at 48kHz.
+     */
+    static final int MAX_FRAME_SIZE = 5760;
+
+    private final ByteBuffer entries;
+    private final ByteBuffer results;
+    private final OpusDecoder[] decoders;
+
+    private int count;
+
+    private int inputEnd;
+    private int shortOutputEnd;
+    private int floatOutputEnd;
+
+    /**
+     * Creates an empty batch.
+     *
+     * @param capacity The maximum number of entries the batch can hold.
+     */
+    public OpusDecoderBatch(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative: " + capacity);
+        }
+
+        this.entries = ByteBuffer.allocateDirect(capacity * ENTRY_BYTES).order(ByteOrder.nativeOrder());
+        this.results = ByteBuffer.allocateDirect(capacity * Integer.BYTES).order(ByteOrder.nativeOrder());
+        this.decoders = new OpusDecoder[capacity];
+    }
+
+    /**
+     * Adds a decode operation to the batch.
+     *
+     * @param decoder The decoder to decode the packet with.
+     * @param packetOffset The offset, in bytes, of the packet in the input buffer.
+     * @param packetLength The length of the packet, in bytes. A length of 0 marks the packet as lost.
+     * @param outputOffset The offset, in bytes, in the output buffer to write the decoded samples to.
+     * @param frameSize Number of samples per channel of available space in the output, no more than 5760.
+     *                  In the case of PLC or FEC, this needs to be exactly the duration of audio that is missing.
+     * @param decodeFec Either 0 or 1 to request that any in-band forward error correction data be decoded.
+     * @return The index of the entry, to be used with {@link #getResult(int)}.
+     */
+    public int add(OpusDecoder decoder, int packetOffset, int packetLength, int outputOffset, int frameSize, int decodeFec) {
+        if (count == decoders.length) {
+            throw new IllegalStateException("Batch is full: " + count);
+        }
+        if (packetOffset < 0 || packetLength < 0 || outputOffset < 0 || frameSize < 0) {
+            throw new IllegalArgumentException("Offsets and sizes must not be negative");
+        }
+        if (frameSize > MAX_FRAME_SIZE) {
+            throw new IllegalArgumentException("Frame size must not exceed " + MAX_FRAME_SIZE + ": " + frameSize);
+        }
+
+        // Computed in long so that large offsets can't wrap around and slip past the buffer checks
+        long samples = (long) frameSize * decoder.channels;
+        long packetEnd = checkEnd((long) packetOffset + packetLength);
+        long shortEnd = checkEnd(outputOffset + samples * Short.BYTES);
+        long floatEnd = checkEnd(outputOffset + samples * Float.BYTES);
+
+        int index = count++;
+        int base = index * ENTRY_BYTES;
+
+        entries.putLong(base, decoder.structPointer);
+        entries.putInt(base + 8, packetOffset);
+        entries.putInt(base + 12, packetLength);
+        entries.putInt(base + 16, outputOffset);
+        entries.putInt(base + 20, frameSize);
+        entries.putInt(base + 24, decodeFec);
+        entries.putInt(base + 28, 0);
+        decoders[index] = decoder;
+
+        inputEnd = Math.max(inputEnd, (int) packetEnd);
+        shortOutputEnd = Math.max(shortOutputEnd, (int) shortEnd);
+        floatOutputEnd = Math.max(floatOutputEnd, (int) floatEnd);
+
+        return index;
+    }
+
+    /**
+     * Adds a lost packet to the batch, to be filled in with packet loss concealment.
+     *
+     * @param decoder The decoder that lost the packet.
+     * @param outputOffset The offset, in bytes, in the output buffer to write the concealed samples to.
+     * @param frameSize Number of samples per channel that are missing. Must be a multiple of 2.5 ms.
+     * @return The index of the entry, to be used with {@link #getResult(int)}.
+     */
+    public int addLost(OpusDecoder decoder, int outputOffset, int frameSize) {
+        return add(decoder, 0, 0, outputOffset, frameSize, 0);
+    }
+
+    /**
+     * Removes all entries from the batch, so that it can be refilled.
+     */
+    public void clear() {
+        for (int i = 0; i < count; i++) {
+            decoders[i] = null;
+        }
+
+        count = 0;
+        inputEnd = 0;
+        shortOutputEnd = 0;
+        floatOutputEnd = 0;
+    }
+
+    /**
+     * Gets the number of entries currently in the batch.
+     *
+     * @return The number of entries.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Gets the maximum number of entries the batch can hold.
+     *
+     * @return The capacity of the batch.
+     */
+    public int capacity() {
+        return decoders.length;
+    }
+
+    /**
+     * Decodes every entry in the batch into 16s samples.
+     * Errors are not thrown, but reported per entry through {@link #getResult(int)}.
+     *
+     * @param inputData A direct ByteBuffer holding the packet data of every entry.
+     * @param outData A direct ByteBuffer to write the decoded samples of every entry to.
+     */
+    public void decode(ByteBuffer inputData, ByteBuffer outData) {
+        checkBuffers(inputData, outData, shortOutputEnd);
+
+        OpusDecoder.decodeBatch(entries, count, inputData, outData, results);
+    }
+
+    /**
+     * Decodes every entry in the batch into floating point samples.
+     * Errors are not thrown, but reported per entry through {@link #getResult(int)}.
+     *
+     * @param inputData A direct ByteBuffer holding the packet data of every entry.
+     * @param outData A direct ByteBuffer to write the decoded samples of every entry to.
+     */
+    public void decodeFloat(ByteBuffer inputData, ByteBuffer outData) {
+        checkBuffers(inputData, outData, floatOutputEnd);
+
+        OpusDecoder.decodeFloatBatch(entries, count, inputData, outData, results);
+    }
+
+    /**
+     * Gets the result of an entry from the last call to {@link #decode(ByteBuffer, ByteBuffer)} or
+     * {@link #decodeFloat(ByteBuffer, ByteBuffer)}.
+     *
+     * @param index The index of the entry, as returned by {@link #add(OpusDecoder, int, int, int, int, int)}.
+     * @return The number of decoded samples per channel, or a negative error code from {@link RapidOpusErrorCodes}.
+     */
+    public int getResult(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+        }
+
+        return results.getInt(index * Integer.BYTES);
+    }
+
+    /**
+     * Gets the direct table the results are written to, holding one native-order int per entry.
+     * This allows the results to be read in bulk, without a call per entry.
+     *
+     * @return A read-only view of the results table.
+     */
+    public ByteBuffer getResults() {
+        return results.asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+    }
+
+    private static long checkEnd(long end) {
+        if (end > Integer.MAX_VALUE) {
+            throw new IndexOutOfBoundsException("Entry ends past the largest possible buffer: " + end);
+        }
+
+        return end;
+    }
+
+    private void checkBuffers(ByteBuffer inputData, ByteBuffer outData, int outputEnd) {
+        if (!inputData.isDirect() || !outData.isDirect()) {
+            throw new IllegalArgumentException("Batch buffers must be direct");
+        }
+        if (inputData.capacity() < inputEnd) {
+            throw new IndexOutOfBoundsException("Input buffer is too small for the batch: " + inputData.capacity() + " < " + inputEnd);
+        }
+        if (outData.capacity() < outputEnd) {
+            throw new IndexOutOfBoundsException("Output buffer is too small for the batch: " + outData.capacity() + " < " + outputEnd);
+        }
+    }
+}
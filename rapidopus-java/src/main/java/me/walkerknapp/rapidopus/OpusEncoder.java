@@ -1,12 +1,23 @@
 package me.walkerknapp.rapidopus;
 
 import java.lang.ref.Cleaner;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
 
 /**
  * An object that encodes packets of audio information into opus-encoded packets.
  */
 public class OpusEncoder implements AutoCloseable {
+    /**
+     * Lets the encoder choose a value on its own. Accepted by {@link #setBitrate(int)} and {@link #setForceChannels(int)}.
+     */
+    public static final int AUTO = -1000;
+    /**
+     * Selects the maximum bitrate possible for the frame size. Accepted by {@link #setBitrate(int)}.
+     */
+    public static final int BITRATE_MAX = -1;
 
     static class State implements Runnable {
         private long structPointer;
@@ -20,10 +31,13 @@ public class OpusEncoder implements AutoCloseable {
         }
     }
 
-    private final State state;
+    private final Runnable state;
     private final Cleaner.Cleanable cleanable;
 
-    private final long structPointer;
+    final long structPointer;
+    final int sampleRate;
+    final int channels;
+    final OpusApplicationMode applicationMode;
 
     /**
      * Allocates and initializes an encoder state.
@@ -40,11 +54,400 @@ public class OpusEncoder implements AutoCloseable {
         Cleaner cleaner = RapidOpus.cleaner;
 
         this.structPointer = encoderCreate(sampleRate, channels, applicationMode.id);
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.applicationMode = applicationMode;
 
         this.state = new State(structPointer);
         this.cleanable = cleaner.register(this, state);
     }
 
+    /**
+     * Wraps an encoder state that was initialized in memory owned by something else, such as an {@link OpusCodecSlab}.
+     *
+     * @param structPointer The initialized encoder state.
+     * @param release Run instead of destroying the state when this encoder is closed or becomes unreachable.
+     *                It must not reference the encoder.
+     */
+    OpusEncoder(long structPointer, int sampleRate, int channels, OpusApplicationMode applicationMode, Runnable release) {
+        Cleaner cleaner = RapidOpus.cleaner;
+
+        this.structPointer = structPointer;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.applicationMode = applicationMode;
+
+        this.state = release;
+        this.cleanable = cleaner.register(this, state);
+    }
+
+    // Generic CTLs
+
+    /**
+     * Resets the encoder to a freshly initialized state.
+     * This is equivalent to creating a new encoder with the same parameters, without reallocating it.
+     */
+    public void resetState() {
+        encoderResetState(structPointer);
+    }
+
+    /**
+     * Gets the final state of the codec's entropy coder.
+     * This is used for testing purposes. The encoder and decoder state should be identical after coding a payload.
+     *
+     * @return The entropy coder state, as an unsigned 32-bit value.
+     */
+    public int getFinalRange() {
+        return encoderGetFinalRange(structPointer);
+    }
+
+    /**
+     * Gets the encoder's configured bandpass.
+     *
+     * @return The encoder's configured bandpass.
+     */
+    public OpusBandwidth getBandwidth() {
+        return OpusBandwidth.valueOf(encoderGetBandwidth(structPointer));
+    }
+
+    /**
+     * Sets the encoder's bandpass to a specific value.
+     * This prevents the encoder from automatically selecting the bandpass based on the available bitrate.
+     * If an application knows the bandpass of the input audio it is providing, it should normally use
+     * {@link #setMaxBandwidth(OpusBandwidth)} instead, which still gives the encoder the freedom to reduce the bandpass
+     * when the bitrate becomes too low, for better overall quality.
+     *
+     * @param bandwidth The bandpass to use, or null to let the encoder select it automatically (default).
+     */
+    public void setBandwidth(OpusBandwidth bandwidth) {
+        checkCtl(encoderSetBandwidth(structPointer, bandwidth == null ? AUTO : bandwidth.id));
+    }
+
+    /**
+     * Gets the sampling rate the encoder was initialized with.
+     *
+     * @return The sample rate
+     */
+    public int getSampleRate() {
+        return encoderGetSampleRate(structPointer);
+    }
+
+    /**
+     * Gets whether phase inversion is disabled.
+     *
+     * @return If phase inversion is disabled.
+     */
+    public boolean isPhaseInversionDisabled() {
+        return encoderGetPhaseInversionDisabled(structPointer) != 0;
+    }
+
+    /**
+     * Sets whether phase inversion is disabled.
+     * Disabling phase inversion improves the quality of mono downmixes, but slightly reduces normal stereo quality.
+     * The default is false.
+     *
+     * @param disabled If phase inversion should be disabled.
+     */
+    public void setPhaseInversionDisabled(boolean disabled) {
+        checkCtl(encoderSetPhaseInversionDisabled(structPointer, disabled ? 1 : 0));
+    }
+
+    // Encoder CTLs
+
+    /**
+     * Gets the encoder's computational complexity.
+     *
+     * @return The complexity, from 0 to 10 inclusive.
+     */
+    public int getComplexity() {
+        return encoderGetComplexity(structPointer);
+    }
+
+    /**
+     * Sets the encoder's computational complexity.
+     * Lower values use less CPU per frame at the cost of quality. The default is 9 on most platforms.
+     *
+     * @param complexity The complexity to use, from 0 to 10 inclusive.
+     */
+    public void setComplexity(int complexity) {
+        checkCtl(encoderSetComplexity(structPointer, complexity));
+    }
+
+    /**
+     * Gets the encoder's bitrate configuration.
+     *
+     * @return The bitrate in bits per second.
+     */
+    public int getBitrate() {
+        return encoderGetBitrate(structPointer);
+    }
+
+    /**
+     * Sets the bitrate of the encoder.
+     * Rates from 500 to 512000 bits per second are meaningful, as well as {@link #AUTO} and {@link #BITRATE_MAX}.
+     * The default is determined based on the number of channels and the input sampling rate.
+     *
+     * @param bitrate The bitrate in bits per second, {@link #AUTO}, or {@link #BITRATE_MAX}.
+     */
+    public void setBitrate(int bitrate) {
+        checkCtl(encoderSetBitrate(structPointer, bitrate));
+    }
+
+    /**
+     * Gets whether the encoder uses variable bitrate.
+     *
+     * @return If VBR is enabled.
+     */
+    public boolean isVbr() {
+        return encoderGetVbr(structPointer) != 0;
+    }
+
+    /**
+     * Enables or disables variable bitrate (VBR) in the encoder.
+     * The configured bitrate may not be met exactly because frames must be an integer number of bytes in length.
+     * The default is true.
+     *
+     * @param vbr True to use VBR, false to use hard CBR.
+     */
+    public void setVbr(boolean vbr) {
+        checkCtl(encoderSetVbr(structPointer, vbr ? 1 : 0));
+    }
+
+    /**
+     * Gets whether constrained VBR is enabled in the encoder.
+     *
+     * @return If constrained VBR is enabled.
+     */
+    public boolean isVbrConstraint() {
+        return encoderGetVbrConstraint(structPointer) != 0;
+    }
+
+    /**
+     * Enables or disables constrained VBR in the encoder.
+     * This setting is ignored when the encoder is in CBR mode. The default is true.
+     *
+     * @param constrained True to use constrained VBR, false to use unconstrained VBR.
+     */
+    public void setVbrConstraint(boolean constrained) {
+        checkCtl(encoderSetVbrConstraint(structPointer, constrained ? 1 : 0));
+    }
+
+    /**
+     * Gets the encoder's forced channel configuration.
+     *
+     * @return The forced number of channels, or {@link #AUTO}.
+     */
+    public int getForceChannels() {
+        return encoderGetForceChannels(structPointer);
+    }
+
+    /**
+     * Configures mono/stereo forcing in the encoder.
+     * This can force the encoder to produce packets encoded as either mono or stereo, regardless of the format of the
+     * input audio. The default is {@link #AUTO}.
+     *
+     * @param channels 1 to force mono, 2 to force stereo, or {@link #AUTO}.
+     */
+    public void setForceChannels(int channels) {
+        checkCtl(encoderSetForceChannels(structPointer, channels));
+    }
+
+    /**
+     * Gets the encoder's configured maximum allowed bandpass.
+     *
+     * @return The maximum allowed bandpass.
+     */
+    public OpusBandwidth getMaxBandwidth() {
+        return OpusBandwidth.valueOf(encoderGetMaxBandwidth(structPointer));
+    }
+
+    /**
+     * Configures the maximum bandpass that the encoder will select automatically.
+     * The default is {@link OpusBandwidth#FULLBAND}.
+     *
+     * @param bandwidth The maximum allowed bandpass.
+     */
+    public void setMaxBandwidth(OpusBandwidth bandwidth) {
+        checkCtl(encoderSetMaxBandwidth(structPointer, bandwidth.id));
+    }
+
+    /**
+     * Gets the encoder's configured signal type.
+     *
+     * @return The signal type.
+     */
+    public OpusSignal getSignal() {
+        return OpusSignal.valueOf(encoderGetSignal(structPointer));
+    }
+
+    /**
+     * Configures the type of signal being encoded. The default is {@link OpusSignal#AUTO}.
+     *
+     * @param signal The signal type.
+     */
+    public void setSignal(OpusSignal signal) {
+        checkCtl(encoderSetSignal(structPointer, signal.id));
+    }
+
+    /**
+     * Gets the encoder's configured application mode.
+     *
+     * @return The application mode.
+     */
+    public OpusApplicationMode getApplication() {
+        return OpusApplicationMode.valueOf(encoderGetApplication(structPointer));
+    }
+
+    /**
+     * Configures the encoder's intended application.
+     * The initial value is the application mode the encoder was created with.
+     *
+     * @param applicationMode The application mode.
+     */
+    public void setApplication(OpusApplicationMode applicationMode) {
+        checkCtl(encoderSetApplication(structPointer, applicationMode.id));
+    }
+
+    /**
+     * Gets the total samples of delay added by the entire codec.
+     * This can be queried by the encoder and then the provided number of samples can be skipped on from the start of
+     * the decoder's output to provide time aligned input and output.
+     *
+     * @return Number of lookahead samples.
+     */
+    public int getLookahead() {
+        return encoderGetLookahead(structPointer);
+    }
+
+    /**
+     * Gets the encoder's configured use of inband forward error correction.
+     *
+     * @return If inband FEC is enabled.
+     */
+    public boolean isInbandFec() {
+        return encoderGetInbandFec(structPointer) != 0;
+    }
+
+    /**
+     * Configures the encoder's use of inband forward error correction (FEC).
+     * FEC is only used in the LPC and Hybrid modes, and only when the expected packet loss percentage is set.
+     * The default is false.
+     *
+     * @param inbandFec If inband FEC should be enabled.
+     */
+    public void setInbandFec(boolean inbandFec) {
+        checkCtl(encoderSetInbandFec(structPointer, inbandFec ? 1 : 0));
+    }
+
+    /**
+     * Gets the encoder's configured packet loss percentage.
+     *
+     * @return The expected packet loss percentage.
+     */
+    public int getPacketLossPercentage() {
+        return encoderGetPacketLossPerc(structPointer);
+    }
+
+    /**
+     * Configures the encoder's expected packet loss percentage.
+     * Higher values trigger progressively more loss resistant behavior in the encoder at the expense of quality at
+     * a given bitrate in the absence of packet loss. The default is 0.
+     *
+     * @param percentage The expected packet loss percentage, from 0 to 100 inclusive.
+     */
+    public void setPacketLossPercentage(int percentage) {
+        checkCtl(encoderSetPacketLossPerc(structPointer, percentage));
+    }
+
+    /**
+     * Gets the encoder's configured use of discontinuous transmission.
+     *
+     * @return If DTX is enabled.
+     */
+    public boolean isDtx() {
+        return encoderGetDtx(structPointer) != 0;
+    }
+
+    /**
+     * Configures the encoder's use of discontinuous transmission (DTX).
+     * When enabled, the encoder produces packets of 2 bytes or less during silence, which may be dropped rather than
+     * transmitted. The default is false.
+     *
+     * @param dtx If DTX should be enabled.
+     */
+    public void setDtx(boolean dtx) {
+        checkCtl(encoderSetDtx(structPointer, dtx ? 1 : 0));
+    }
+
+    /**
+     * Gets whether the last encoded frame was a DTX frame.
+     * This is only meaningful when DTX is enabled.
+     *
+     * @return If the encoder is currently in DTX.
+     */
+    public boolean isInDtx() {
+        return encoderGetInDtx(structPointer) != 0;
+    }
+
+    /**
+     * Gets the encoder's configured signal depth.
+     *
+     * @return The input precision in bits.
+     */
+    public int getLsbDepth() {
+        return encoderGetLsbDepth(structPointer);
+    }
+
+    /**
+     * Configures the depth of signal being encoded.
+     * This is a hint which helps the encoder identify silence and near-silence. The default is 24.
+     *
+     * @param depth The input precision in bits, from 8 to 24 inclusive.
+     */
+    public void setLsbDepth(int depth) {
+        checkCtl(encoderSetLsbDepth(structPointer, depth));
+    }
+
+    /**
+     * Gets the encoder's configured use of variable duration frames.
+     *
+     * @return The frame duration.
+     */
+    public OpusFrameDuration getExpertFrameDuration() {
+        return OpusFrameDuration.valueOf(encoderGetExpertFrameDuration(structPointer));
+    }
+
+    /**
+     * Configures the encoder's use of variable duration frames.
+     * When a duration other than {@link OpusFrameDuration#ARG} is set, the encoder will use at most that duration of
+     * each frame it is given, and the rest must be supplied again in the next call. The default is
+     * {@link OpusFrameDuration#ARG}.
+     *
+     * @param duration The frame duration.
+     */
+    public void setExpertFrameDuration(OpusFrameDuration duration) {
+        checkCtl(encoderSetExpertFrameDuration(structPointer, duration.id));
+    }
+
+    /**
+     * Gets whether the encoder's use of inter-frame prediction is disabled.
+     *
+     * @return If prediction is disabled.
+     */
+    public boolean isPredictionDisabled() {
+        return encoderGetPredictionDisabled(structPointer) != 0;
+    }
+
+    /**
+     * Disables almost all use of prediction, making frames almost completely independent.
+     * This reduces quality. The default is false.
+     *
+     * @param disabled If prediction should be disabled.
+     */
+    public void setPredictionDisabled(boolean disabled) {
+        checkCtl(encoderSetPredictionDisabled(structPointer, disabled ? 1 : 0));
+    }
+
     /**
      * Encodes an opus frame.
      * The frame size must be a supported Opus frame size. For instance at 48kHz:
@@ -57,7 +460,7 @@ public class OpusEncoder implements AutoCloseable {
      * @return The length of the encoded packet
      */
     public int encode(short[] inputData, int frameSize, ByteBuffer outputData) {
-        int res = encode(structPointer, inputData, frameSize, outputData);
+        int res = NativeCodec.encode(structPointer, inputData, frameSize, outputData);
 
         if(res < RapidOpusErrorCodes.OPUS_OK) {
             throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
@@ -78,7 +481,7 @@ public class OpusEncoder implements AutoCloseable {
      * @return The length of the encoded packet
      */
     public int encode(ByteBuffer inputData, int frameSize, ByteBuffer outputData) {
-        int res = encode(structPointer, inputData, frameSize, outputData);
+        int res = NativeCodec.encode(structPointer, inputData, frameSize, outputData);
 
         if(res < RapidOpusErrorCodes.OPUS_OK) {
             throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
@@ -104,7 +507,7 @@ public class OpusEncoder implements AutoCloseable {
      * @return The length of the encoded packet.
      */
     public int encodeFloat(float[] inputData, int frameSize, ByteBuffer outputData) {
-        int res = encodeFloat(structPointer, inputData, frameSize, outputData);
+        int res = NativeCodec.encodeFloat(structPointer, inputData, frameSize, outputData);
 
         if(res < RapidOpusErrorCodes.OPUS_OK) {
             throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
@@ -130,7 +533,57 @@ public class OpusEncoder implements AutoCloseable {
      * @return The length of the encoded packet.
      */
     public int encodeFloat(ByteBuffer inputData, int frameSize, ByteBuffer outputData) {
-        int res = encodeFloat(structPointer, inputData, frameSize, outputData);
+        int res = NativeCodec.encodeFloat(structPointer, inputData, frameSize, outputData);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return res;
+    }
+
+    /**
+     * Encodes an opus frame from a region of a direct buffer into a region of another, ignoring their positions and limits.
+     * This allows many frames and packets to share one large buffer without slicing it.
+     *
+     * @param inputData A direct ByteBuffer holding the 16s PCM data (interleaved if 2 channels).
+     * @param inputOffset The offset, in bytes, of the frame in the input buffer. Must hold frameSize * channels * Short.BYTES bytes.
+     * @param frameSize Number of samples per channel in the input signal.
+     * @param outputData A direct ByteBuffer to store the output.
+     * @param outputOffset The offset, in bytes, in the output buffer to write the encoded packet to.
+     * @param maxDataBytes The maximum number of bytes that may be written to the output buffer. A size of 4000 is recommended.
+     * @return The length of the encoded packet
+     */
+    public int encode(ByteBuffer inputData, int inputOffset, int frameSize, ByteBuffer outputData, int outputOffset, int maxDataBytes) {
+        checkRegion(inputData, inputOffset, frameSize * channels * Short.BYTES);
+        checkRegion(outputData, outputOffset, maxDataBytes);
+
+        int res = NativeCodec.encode(structPointer, inputData, inputOffset, frameSize, outputData, outputOffset, maxDataBytes);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return res;
+    }
+
+    /**
+     * Encodes an opus frame from floating point input in a region of a direct buffer into a region of another,
+     * ignoring their positions and limits. This allows many frames and packets to share one large buffer without slicing it.
+     *
+     * @param inputData A direct ByteBuffer holding the floating-point PCM data (interleaved if 2 channels).
+     * @param inputOffset The offset, in bytes, of the frame in the input buffer. Must hold frameSize * channels * Float.BYTES bytes.
+     * @param frameSize The number of samples per channel in the input signal.
+     * @param outputData A direct ByteBuffer to store the output.
+     * @param outputOffset The offset, in bytes, in the output buffer to write the encoded packet to.
+     * @param maxDataBytes The maximum number of bytes that may be written to the output buffer. A size of 4000 is recommended.
+     * @return The length of the encoded packet.
+     */
+    public int encodeFloat(ByteBuffer inputData, int inputOffset, int frameSize, ByteBuffer outputData, int outputOffset, int maxDataBytes) {
+        checkRegion(inputData, inputOffset, frameSize * channels * Float.BYTES);
+        checkRegion(outputData, outputOffset, maxDataBytes);
+
+        int res = NativeCodec.encodeFloat(structPointer, inputData, inputOffset, frameSize, outputData, outputOffset, maxDataBytes);
 
         if(res < RapidOpusErrorCodes.OPUS_OK) {
             throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
@@ -139,19 +592,187 @@ public class OpusEncoder implements AutoCloseable {
         return res;
     }
 
+    /**
+     * Encodes an opus frame between two raw native addresses, such as those of a native MemorySegment
+     * (from MemorySegment.address()) or memory shared with other native code.
+     *
+     * No bounds checking is possible, so the caller must ensure that both regions are valid and stay allocated for the
+     * duration of the call.
+     *
+     * @param inputAddress The address of the 16s PCM data (interleaved if 2 channels), holding frameSize * channels samples.
+     * @param frameSize Number of samples per channel in the input signal.
+     * @param outputAddress The address to write the encoded packet to.
+     * @param maxDataBytes The maximum number of bytes that may be written to the output. A size of 4000 is recommended.
+     * @return The length of the encoded packet
+     */
+    public int encode(long inputAddress, int frameSize, long outputAddress, int maxDataBytes) {
+        int res = NativeCodec.encodeAddress(structPointer, inputAddress, frameSize, outputAddress, maxDataBytes);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return res;
+    }
+
+    /**
+     * Encodes an opus frame from floating point input between two raw native addresses, such as those of a native
+     * MemorySegment (from MemorySegment.address()) or memory shared with other native code.
+     *
+     * No bounds checking is possible, so the caller must ensure that both regions are valid and stay allocated for the
+     * duration of the call.
+     *
+     * @param inputAddress The address of the floating-point PCM data (interleaved if 2 channels), holding frameSize * channels samples.
+     * @param frameSize The number of samples per channel in the input signal.
+     * @param outputAddress The address to write the encoded packet to.
+     * @param maxDataBytes The maximum number of bytes that may be written to the output. A size of 4000 is recommended.
+     * @return The length of the encoded packet.
+     */
+    public int encodeFloat(long inputAddress, int frameSize, long outputAddress, int maxDataBytes) {
+        int res = NativeCodec.encodeFloatAddress(structPointer, inputAddress, frameSize, outputAddress, maxDataBytes);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return res;
+    }
+
+    /**
+     * Encodes an opus frame read from the input buffer's position into the output buffer's position, like an NIO channel.
+     * The input's position is advanced past the frame, and the output's position is advanced past the encoded packet,
+     * so that several packets can be encoded back to back into one outbound buffer.
+     *
+     * If either buffer doesn't have enough remaining space, neither buffer is modified.
+     *
+     * @param inputData A direct ByteBuffer with at least frameSize * channels * Short.BYTES bytes of 16s PCM data remaining.
+     * @param frameSize Number of samples per channel in the input signal.
+     * @param outputData A direct ByteBuffer to store the output. Will only write up to its limit.
+     * @return The length of the encoded packet
+     * @throws BufferUnderflowException If the input has less than a full frame remaining.
+     * @throws BufferOverflowException If the output has no space remaining.
+     */
+    public int encodeRelative(ByteBuffer inputData, int frameSize, ByteBuffer outputData) {
+        int inputLength = frameSize * channels * Short.BYTES;
+        checkRelative(inputData, inputLength, outputData);
+
+        int res = encode(inputData, inputData.position(), frameSize, outputData, outputData.position(), outputData.remaining());
+
+        inputData.position(inputData.position() + inputLength);
+        outputData.position(outputData.position() + res);
+
+        return res;
+    }
+
+    /**
+     * Encodes an opus frame from floating point input read from the input buffer's position into the output buffer's
+     * position, like an NIO channel. The input's position is advanced past the frame, and the output's position is
+     * advanced past the encoded packet, so that several packets can be encoded back to back into one outbound buffer.
+     *
+     * If either buffer doesn't have enough remaining space, neither buffer is modified.
+     *
+     * @param inputData A direct ByteBuffer with at least frameSize * channels * Float.BYTES bytes of floating-point PCM data remaining.
+     * @param frameSize The number of samples per channel in the input signal.
+     * @param outputData A direct ByteBuffer to store the output. Will only write up to its limit.
+     * @return The length of the encoded packet.
+     * @throws BufferUnderflowException If the input has less than a full frame remaining.
+     * @throws BufferOverflowException If the output has no space remaining.
+     */
+    public int encodeFloatRelative(ByteBuffer inputData, int frameSize, ByteBuffer outputData) {
+        int inputLength = frameSize * channels * Float.BYTES;
+        checkRelative(inputData, inputLength, outputData);
+
+        int res = encodeFloat(inputData, inputData.position(), frameSize, outputData, outputData.position(), outputData.remaining());
+
+        inputData.position(inputData.position() + inputLength);
+        outputData.position(outputData.position() + res);
+
+        return res;
+    }
+
     @Override
     public void close() {
         cleanable.clean();
     }
 
+    private static void checkRelative(ByteBuffer inputData, int inputLength, ByteBuffer outputData) {
+        if (outputData.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+        if (inputData.remaining() < inputLength) {
+            throw new BufferUnderflowException();
+        }
+        if (!outputData.hasRemaining()) {
+            throw new BufferOverflowException();
+        }
+    }
+
+    private static void checkRegion(ByteBuffer buffer, int offset, int length) {
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("Buffer must be direct");
+        }
+        if (offset < 0 || length < 0 || offset > buffer.capacity() - length) {
+            throw new IndexOutOfBoundsException("Region [" + offset + ", " + offset + " + " + length + ") is out of bounds for capacity " + buffer.capacity());
+        }
+    }
+
+    private static void checkCtl(int res) {
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalArgumentException(RapidOpusErrorCodes.translateError(res));
+        }
+    }
+
     // Native methods
 
     private static native long encoderCreate(int sampleRate, int channels, int applicationMode);
-    // TODO: opus_encoder_ctl
+    private static native void encoderResetState(long structPointer);
+    private static native int encoderGetFinalRange(long structPointer);
+    private static native int encoderGetBandwidth(long structPointer);
+    private static native int encoderSetBandwidth(long structPointer, int bandwidth);
+    private static native int encoderGetSampleRate(long structPointer);
+    private static native int encoderGetPhaseInversionDisabled(long structPointer);
+    private static native int encoderSetPhaseInversionDisabled(long structPointer, int disabled);
+    private static native int encoderGetComplexity(long structPointer);
+    private static native int encoderSetComplexity(long structPointer, int complexity);
+    private static native int encoderGetBitrate(long structPointer);
+    private static native int encoderSetBitrate(long structPointer, int bitrate);
+    private static native int encoderGetVbr(long structPointer);
+    private static native int encoderSetVbr(long structPointer, int vbr);
+    private static native int encoderGetVbrConstraint(long structPointer);
+    private static native int encoderSetVbrConstraint(long structPointer, int constrained);
+    private static native int encoderGetForceChannels(long structPointer);
+    private static native int encoderSetForceChannels(long structPointer, int channels);
+    private static native int encoderGetMaxBandwidth(long structPointer);
+    private static native int encoderSetMaxBandwidth(long structPointer, int bandwidth);
+    private static native int encoderGetSignal(long structPointer);
+    private static native int encoderSetSignal(long structPointer, int signal);
+    private static native int encoderGetApplication(long structPointer);
+    private static native int encoderSetApplication(long structPointer, int applicationMode);
+    private static native int encoderGetLookahead(long structPointer);
+    private static native int encoderGetInbandFec(long structPointer);
+    private static native int encoderSetInbandFec(long structPointer, int inbandFec);
+    private static native int encoderGetPacketLossPerc(long structPointer);
+    private static native int encoderSetPacketLossPerc(long structPointer, int percentage);
+    private static native int encoderGetDtx(long structPointer);
+    private static native int encoderSetDtx(long structPointer, int dtx);
+    private static native int encoderGetInDtx(long structPointer);
+    private static native int encoderGetLsbDepth(long structPointer);
+    private static native int encoderSetLsbDepth(long structPointer, int depth);
+    private static native int encoderGetExpertFrameDuration(long structPointer);
+    private static native int encoderSetExpertFrameDuration(long structPointer, int duration);
+    private static native int encoderGetPredictionDisabled(long structPointer);
+    private static native int encoderSetPredictionDisabled(long structPointer, int disabled);
     private static native void encoderDestroy(long structPointer);
 
-    private static native int encode(long structPointer, short[] inputData, int frameSize, ByteBuffer outputData);
-    private static native int encode(long structPointer, ByteBuffer inputData, int frameSize, ByteBuffer outputData);
-    private static native int encodeFloat(long structPointer, float[] inputData, int frameSize, ByteBuffer outputData);
-    private static native int encodeFloat(long structPointer, ByteBuffer inputData, int frameSize, ByteBuffer outputData);
+    static native int encode(long structPointer, short[] inputData, int frameSize, ByteBuffer outputData);
+    static native int encode(long structPointer, ByteBuffer inputData, int frameSize, ByteBuffer outputData);
+    static native int encodeFloat(long structPointer, float[] inputData, int frameSize, ByteBuffer outputData);
+    static native int encodeFloat(long structPointer, ByteBuffer inputData, int frameSize, ByteBuffer outputData);
+    static native int encode(long structPointer, ByteBuffer inputData, int inputOffset, int frameSize, ByteBuffer outputData, int outputOffset, int maxDataBytes);
+    static native int encodeFloat(long structPointer, ByteBuffer inputData, int inputOffset, int frameSize, ByteBuffer outputData, int outputOffset, int maxDataBytes);
+    static native int encodeAddress(long structPointer, long inputAddress, int frameSize, long outputAddress, int maxDataBytes);
+    static native int encodeFloatAddress(long structPointer, long inputAddress, int frameSize, long outputAddress, int maxDataBytes);
+
+    static native void encodeBatch(ByteBuffer entries, int count, ByteBuffer inputData, ByteBuffer outputData, ByteBuffer results);
+    static native void encodeFloatBatch(ByteBuffer entries, int count, ByteBuffer inputData, ByteBuffer outputData, ByteBuffer results);
 }
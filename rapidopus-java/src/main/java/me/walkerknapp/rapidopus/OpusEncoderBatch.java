@@ -0,0 +1,189 @@
+package me.walkerknapp.rapidopus;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A reusable table of encode operations that are all run in a single native call.
+ *
+ * Each entry pairs an {@link OpusEncoder} with a frame of PCM at an offset in one shared input buffer, and a region
+ * of one shared output buffer to write the encoded packet to. This lets many encoders (e.g. every speaker in a mixing
+ * tick) be driven with one JNI transition, instead of one per frame.
+ *
+ * A batch is not thread-safe, and the encoders added to it must not be closed until the batch is cleared.
+ */
+public class OpusEncoderBatch {
+    /**
+     * The size, in bytes, of a single entry in the native entry table.
+     */
+    static final int ENTRY_BYTES = 24;
+
+    private final ByteBuffer entries;
+    private final ByteBuffer results;
+    private final OpusEncoder[] encoders;
+
+    private int count;
+
+    private int shortInputEnd;
+    private int floatInputEnd;
+    private int outputEnd;
+
+    /**
+     * Creates an empty batch.
+     *
+     * @param capacity The maximum number of entries the batch can hold.
+     */
+    public OpusEncoderBatch(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative: " + capacity);
+        }
+
+        this.entries = ByteBuffer.allocateDirect(capacity * ENTRY_BYTES).order(ByteOrder.nativeOrder());
+        this.results = ByteBuffer.allocateDirect(capacity * Integer.BYTES).order(ByteOrder.nativeOrder());
+        this.encoders = new OpusEncoder[capacity];
+    }
+
+    /**
+     * Adds an encode operation to the batch.
+     *
+     * @param encoder The encoder to encode the frame with.
+     * @param inputOffset The offset, in bytes, of the frame's PCM data (interleaved if 2 channels) in the input buffer.
+     * @param frameSize Number of samples per channel in the frame. Must be a supported Opus frame size.
+     * @param outputOffset The offset, in bytes, in the output buffer to write the encoded packet to.
+     * @param maxPacketBytes The maximum number of bytes that may be written to the output buffer. A size of 4000 is recommended.
+     * @return The index of the entry, to be used with {@link #getResult(int)}.
+     */
+    public int add(OpusEncoder encoder, int inputOffset, int frameSize, int outputOffset, int maxPacketBytes) {
+        if (count == encoders.length) {
+            throw new IllegalStateException("Batch is full: " + count);
+        }
+        if (inputOffset < 0 || frameSize < 0 || outputOffset < 0 || maxPacketBytes < 0) {
+            throw new IllegalArgumentException("Offsets and sizes must not be negative");
+        }
+
+        // Computed in long so that large offsets can't wrap around and slip past the buffer checks
+        long samples = (long) frameSize * encoder.channels;
+        long shortEnd = checkEnd(inputOffset + samples * Short.BYTES);
+        long floatEnd = checkEnd(inputOffset + samples * Float.BYTES);
+        long packetEnd = checkEnd((long) outputOffset + maxPacketBytes);
+
+        int index = count++;
+        int base = index * ENTRY_BYTES;
+
+        entries.putLong(base, encoder.structPointer);
+        entries.putInt(base + 8, inputOffset);
+        entries.putInt(base + 12, frameSize);
+        entries.putInt(base + 16, outputOffset);
+        entries.putInt(base + 20, maxPacketBytes);
+        encoders[index] = encoder;
+
+        shortInputEnd = Math.max(shortInputEnd, (int) shortEnd);
+        floatInputEnd = Math.max(floatInputEnd, (int) floatEnd);
+        outputEnd = Math.max(outputEnd, (int) packetEnd);
+
+        return index;
+    }
+
+    /**
+     * Removes all entries from the batch, so that it can be refilled.
+     */
+    public void clear() {
+        for (int i = 0; i < count; i++) {
+            encoders[i] = null;
+        }
+
+        count = 0;
+        shortInputEnd = 0;
+        floatInputEnd = 0;
+        outputEnd = 0;
+    }
+
+    /**
+     * Gets the number of entries currently in the batch.
+     *
+     * @return The number of entries.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Gets the maximum number of entries the batch can hold.
+     *
+     * @return The capacity of the batch.
+     */
+    public int capacity() {
+        return encoders.length;
+    }
+
+    /**
+     * Encodes every entry in the batch from 16s PCM input.
+     * Errors are not thrown, but reported per entry through {@link #getResult(int)}.
+     *
+     * @param inputData A direct ByteBuffer holding the 16s PCM data of every entry.
+     * @param outputData A direct ByteBuffer to write every encoded packet to.
+     */
+    public void encode(ByteBuffer inputData, ByteBuffer outputData) {
+        checkBuffers(inputData, shortInputEnd, outputData);
+
+        OpusEncoder.encodeBatch(entries, count, inputData, outputData, results);
+    }
+
+    /**
+     * Encodes every entry in the batch from floating point PCM input.
+     * Errors are not thrown, but reported per entry through {@link #getResult(int)}.
+     *
+     * @param inputData A direct ByteBuffer holding the floating-point PCM data of every entry.
+     * @param outputData A direct ByteBuffer to write every encoded packet to.
+     */
+    public void encodeFloat(ByteBuffer inputData, ByteBuffer outputData) {
+        checkBuffers(inputData, floatInputEnd, outputData);
+
+        OpusEncoder.encodeFloatBatch(entries, count, inputData, outputData, results);
+    }
+
+    /**
+     * Gets the result of an entry from the last call to {@link #encode(ByteBuffer, ByteBuffer)} or
+     * {@link #encodeFloat(ByteBuffer, ByteBuffer)}.
+     *
+     * @param index The index of the entry, as returned by {@link #add(OpusEncoder, int, int, int, int)}.
+     * @return The length of the encoded packet, or a negative error code from {@link RapidOpusErrorCodes}.
+     */
+    public int getResult(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+        }
+
+        return results.getInt(index * Integer.BYTES);
+    }
+
+    /**
+     * Gets the direct table the results are written to, holding one native-order int per entry.
+     * This allows the results to be read in bulk, without a call per entry.
+     *
+     * @return A read-only view of the results table.
+     */
+    public ByteBuffer getResults() {
+        return results.asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+    }
+
+    private static long checkEnd(long end) {
+        if (end > Integer.MAX_VALUE) {
+            throw new IndexOutOfBoundsException("Entry ends past the largest possible buffer: " + end);
+        }
+
+        return end;
+    }
+
+    private void checkBuffers(ByteBuffer inputData, int inputEnd, ByteBuffer outputData) {
+        if (!inputData.isDirect() || !outputData.isDirect()) {
+            throw new IllegalArgumentException("Batch buffers must be direct");
+        }
+        if (inputData.capacity() < inputEnd) {
+            throw new IndexOutOfBoundsException("Input buffer is too small for the batch: " + inputData.capacity() + " < " + inputEnd);
+        }
+        if (outputData.capacity() < outputEnd) {
+            throw new IndexOutOfBoundsException("Output buffer is too small for the batch: " + outputData.capacity() + " < " + outputEnd);
+        }
+    }
+}
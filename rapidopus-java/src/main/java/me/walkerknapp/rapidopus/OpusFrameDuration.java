@@ -0,0 +1,85 @@
+package me.walkerknapp.rapidopus;
+
+/**
+ * A frame duration for the encoder to use, instead of the duration of the frames it is given.
+ */
+public enum OpusFrameDuration {
+    /**
+     * Selects the frame size from the frame size argument of each encode call (default).
+     */
+    ARG(5000),
+    /**
+     * Uses 2.5 ms frames.
+     */
+    MS_2_5(5001),
+    /**
+     * Uses 5 ms frames.
+     */
+    MS_5(5002),
+    /**
+     * Uses 10 ms frames.
+     */
+    MS_10(5003),
+    /**
+     * Uses 20 ms frames.
+     */
+    MS_20(5004),
+    /**
+     * Uses 40 ms frames.
+     */
+    MS_40(5005),
+    /**
+     * Uses 60 ms frames.
+     */
+    MS_60(5006),
+    /**
+     * Uses 80 ms frames.
+     */
+    MS_80(5007),
+    /**
+     * Uses 100 ms frames.
+     */
+    MS_100(5008),
+    /**
+     * Uses 120 ms frames.
+     */
+    MS_120(5009);
+
+    int id;
+
+    OpusFrameDuration(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Determines the frame duration from the internal integer representation.
+     * @param id The internal integer representation.
+     * @return The frame duration.
+     */
+    public static OpusFrameDuration valueOf(int id) {
+        switch (id) {
+            case 5000:
+                return ARG;
+            case 5001:
+                return MS_2_5;
+            case 5002:
+                return MS_5;
+            case 5003:
+                return MS_10;
+            case 5004:
+                return MS_20;
+            case 5005:
+                return MS_40;
+            case 5006:
+                return MS_60;
+            case 5007:
+                return MS_80;
+            case 5008:
+                return MS_100;
+            case 5009:
+                return MS_120;
+            default:
+                throw new IllegalArgumentException("Unknown frame duration: " + id);
+        }
+    }
+}
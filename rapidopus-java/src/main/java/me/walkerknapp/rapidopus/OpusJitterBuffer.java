@@ -0,0 +1,404 @@
+package me.walkerknapp.rapidopus;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
+/**
+ * A jitter buffer for a stream of Opus packets received over RTP, which reorders them and drives a decoder through
+ * packet loss.
+ *
+ * Packets are put into the buffer as they arrive, keyed by their RTP sequence number and timestamp (which for Opus
+ * is always at 48 kHz, see RFC 7587), and decoded in sequence order, one packet per call to {@link #decode(ByteBuffer)},
+ * at the pace of the playout clock. When the next packet is missing, it is recovered from the in-band forward error
+ * correction data of the packet after it if that has arrived, or concealed with packet loss concealment otherwise.
+ * Both are sized to the duration of the last packet decoded.
+ *
+ * The buffer waits until it holds its target delay before it starts playing out. The target delay follows the
+ * interarrival jitter estimate of RFC 3550, section 6.4.1: when the buffer holds much more than the target, packets
+ * are dropped to catch up, and when it runs dry, it conceals one packet and waits to refill.
+ *
+ * Packets are copied into fixed slots of one direct buffer, so putting and decoding packets does not allocate.
+ * Packets may be put and decoded from different threads.
+ */
+public class OpusJitterBuffer {
+    private static final int RTP_RATE = 48000;
+
+    private final OpusDecoder decoder;
+    private final int channels;
+    private final int maxFrameSize;
+
+    private final int mask;
+    private final int maxPacketSize;
+    private final ByteBuffer storage;
+    private final boolean[] slotFull;
+    private final int[] slotSequence;
+    private final int[] slotLength;
+    private final int[] slotDuration;
+
+    private final int minDelay;
+    private final int maxDelay;
+
+    // Playout state
+    private boolean started;
+    private boolean played;
+    private boolean buffered;
+    private int nextSequence;
+    // The first sequence number that hasn't had its turn yet. Packets before it arrived too late to be played
+    private int turnSequence;
+    private int nextTimestamp;
+    private int newestSequence;
+    private int newestEnd;
+
+    // Jitter estimate, in 48 kHz samples
+    private boolean haveArrival;
+    private long lastArrivalNanos;
+    private int lastArrivalTimestamp;
+    private double jitter;
+
+    private long decodedCount;
+    private long fecCount;
+    private long plcCount;
+    private long lateCount;
+    private long droppedCount;
+
+    /**
+     * Creates an empty jitter buffer.
+     *
+     * @param decoder The decoder to decode packets with. It must not be used elsewhere while the buffer is in use.
+     * @param capacity The maximum number of packets held, which must be a power of two. With 20 ms packets, 64
+     *                 holds over a second of audio.
+     * @param maxPacketSize The size of the largest packet that can be held, in bytes. Larger packets are dropped.
+     * @param minDelayMillis The lowest target delay, in milliseconds.
+     * @param maxDelayMillis The highest target delay, in milliseconds.
+     */
+    public OpusJitterBuffer(OpusDecoder decoder, int capacity, int maxPacketSize, int minDelayMillis, int maxDelayMillis) {
+        if (capacity <= 1 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        if (maxPacketSize <= 0) {
+            throw new IllegalArgumentException("Max packet size must be positive: " + maxPacketSize);
+        }
+        if (minDelayMillis < 0 || maxDelayMillis < minDelayMillis) {
+            throw new IllegalArgumentException("Invalid delay range: " + minDelayMillis + " to " + maxDelayMillis);
+        }
+
+        this.decoder = decoder;
+        this.channels = decoder.getChannels();
+        this.maxFrameSize = 5760 * decoder.getSampleRate() / RTP_RATE;
+
+        this.mask = capacity - 1;
+        this.maxPacketSize = maxPacketSize;
+        this.storage = ByteBuffer.allocateDirect(capacity * maxPacketSize);
+        this.slotFull = new boolean[capacity];
+        this.slotSequence = new int[capacity];
+        this.slotLength = new int[capacity];
+        this.slotDuration = new int[capacity];
+
+        this.minDelay = minDelayMillis * (RTP_RATE / 1000);
+        this.maxDelay = maxDelayMillis * (RTP_RATE / 1000);
+    }
+
+    /**
+     * Puts a packet into the buffer, timing its arrival with {@link System#nanoTime()}.
+     *
+     * @param packet A heap or direct buffer holding the packet.
+     * @param offset The offset of the packet in the buffer.
+     * @param length The length of the packet, in bytes.
+     * @param sequence The RTP sequence number of the packet.
+     * @param timestamp The RTP timestamp of the packet.
+     * @return True if the packet was buffered, or false if it was late, a duplicate, too large or invalid, or too far
+     *         behind the newest packet to be held.
+     */
+    public boolean put(ByteBuffer packet, int offset, int length, int sequence, int timestamp) {
+        return put(packet, offset, length, sequence, timestamp, System.nanoTime());
+    }
+
+    /**
+     * Puts a packet into the buffer.
+     *
+     * @param packet A heap or direct buffer holding the packet.
+     * @param offset The offset of the packet in the buffer.
+     * @param length The length of the packet, in bytes.
+     * @param sequence The RTP sequence number of the packet.
+     * @param timestamp The RTP timestamp of the packet.
+     * @param arrivalNanos The arrival time of the packet, on the {@link System#nanoTime()} time scale.
+     * @return True if the packet was buffered, or false if it was late, a duplicate, too large or invalid, or too far
+     *         behind the newest packet to be held.
+     */
+    public synchronized boolean put(ByteBuffer packet, int offset, int length, int sequence, int timestamp, long arrivalNanos) {
+        sequence &= 0xFFFF;
+
+        if (length <= 0 || length > maxPacketSize) {
+            droppedCount++;
+            return false;
+        }
+
+        int duration;
+        try {
+            duration = OpusPacketInspector.getSampleCount(packet, offset, length, RTP_RATE);
+        } catch (IllegalStateException e) {
+            droppedCount++;
+            return false;
+        }
+
+        if (played && sequenceDelta(sequence, turnSequence) < 0) {
+            lateCount++;
+            return false;
+        }
+        if (buffered) {
+            // Checked while filling up as well as while playing, since the packet would otherwise take the slot of
+            // one that hasn't been played yet
+            if (sequenceDelta(sequence, nextSequence) > mask) {
+                // The stream jumped further ahead than the buffer can hold, so start over from this packet
+                reset();
+            } else if (!started && sequenceDelta(newestSequence, sequence) > mask) {
+                // Too far behind the newest packet to be held alongside it
+                droppedCount++;
+                return false;
+            }
+        }
+
+        int slot = sequence & mask;
+        if (slotFull[slot] && slotSequence[slot] == sequence) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            storage.put(slot * maxPacketSize + i, packet.get(offset + i));
+        }
+        slotFull[slot] = true;
+        slotSequence[slot] = sequence;
+        slotLength[slot] = length;
+        slotDuration[slot] = duration;
+
+        if (!buffered || sequenceDelta(sequence, newestSequence) > 0) {
+            newestSequence = sequence;
+            newestEnd = timestamp + duration;
+        }
+        if (!started && (!buffered || sequenceDelta(sequence, nextSequence) < 0)) {
+            // Playout will start from the oldest packet buffered
+            nextSequence = sequence;
+            nextTimestamp = timestamp;
+        }
+        buffered = true;
+
+        updateJitter(timestamp, arrivalNanos);
+        return true;
+    }
+
+    /**
+     * Decodes the next packet into 16-bit samples at the position of a buffer, recovering or concealing it if it is
+     * missing, and advances the buffer's position past them. This should be called once per packet duration.
+     *
+     * @param pcm A direct buffer with room for 120 ms of samples.
+     * @return The number of samples per channel written, or 0 if the buffer is still filling up and the caller
+     *         should play silence.
+     */
+    public int decode(ByteBuffer pcm) {
+        return decode(pcm, false);
+    }
+
+    /**
+     * Decodes the next packet into floating point samples at the position of a buffer, like {@link #decode(ByteBuffer)}.
+     *
+     * @param pcm A direct buffer with room for 120 ms of samples.
+     * @return The number of samples per channel written, or 0 if the buffer is still filling up and the caller
+     *         should play silence.
+     */
+    public int decodeFloat(ByteBuffer pcm) {
+        return decode(pcm, true);
+    }
+
+    private synchronized int decode(ByteBuffer pcm, boolean isFloat) {
+        int sampleBytes = channels * (isFloat ? Float.BYTES : Short.BYTES);
+        if (pcm.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+        if (pcm.remaining() < maxFrameSize * sampleBytes) {
+            throw new BufferOverflowException();
+        }
+
+        if (!started) {
+            if (!buffered || depth() < getTargetDelay()) {
+                return 0;
+            }
+            started = true;
+            played = true;
+        }
+
+        // Catch up if the buffer holds well over its target, e.g. after a burst of delayed packets
+        int target = getTargetDelay();
+        while (depth() > target * 2 && isBuffered(nextSequence) && isBuffered(nextSequence + 1)) {
+            int slot = nextSequence & mask;
+            nextTimestamp += slotDuration[slot];
+            nextSequence = (nextSequence + 1) & 0xFFFF;
+            slotFull[slot] = false;
+            droppedCount++;
+        }
+
+        int slot = nextSequence & mask;
+        int samples;
+
+        if (isBuffered(nextSequence)) {
+            samples = decodePacket(slot * maxPacketSize, slotLength[slot], pcm, maxFrameSize, 0, isFloat);
+            nextTimestamp += slotDuration[slot];
+            slotFull[slot] = false;
+            decodedCount++;
+        } else {
+            int missing = decoder.getLastPacketDuration();
+            if (missing <= 0) {
+                missing = maxFrameSize / 6;
+            }
+
+            int nextSlot = (nextSequence + 1) & mask;
+            if (isBuffered(nextSequence + 1)) {
+                // The next packet may carry a lower quality copy of this one
+                samples = decodePacket(nextSlot * maxPacketSize, slotLength[nextSlot], pcm, missing, 1, isFloat);
+                fecCount++;
+            } else {
+                samples = decodePacket(0, 0, pcm, missing, 0, isFloat);
+                plcCount++;
+            }
+            nextTimestamp += (int) ((long) missing * RTP_RATE / decoder.getSampleRate());
+
+            if (sequenceDelta(newestSequence, nextSequence) <= 0) {
+                // Nothing newer has arrived, so refill to the target delay before playing out again. The missing
+                // packet keeps its turn rather than being counted as late when it arrives, since after DTX or a
+                // stall it is most likely just delayed.
+                started = false;
+                buffered = false;
+
+                turnSequence = nextSequence;
+                pcm.position(pcm.position() + samples * sampleBytes);
+                return samples;
+            }
+        }
+        nextSequence = (nextSequence + 1) & 0xFFFF;
+        turnSequence = nextSequence;
+
+        pcm.position(pcm.position() + samples * sampleBytes);
+        return samples;
+    }
+
+    private int decodePacket(int offset, int length, ByteBuffer pcm, int frameSize, int decodeFec, boolean isFloat) {
+        if (isFloat) {
+            return decoder.decodeFloat(storage, offset, length, pcm, pcm.position(), frameSize, decodeFec);
+        } else {
+            return decoder.decode(storage, offset, length, pcm, pcm.position(), frameSize, decodeFec);
+        }
+    }
+
+    /**
+     * Empties the buffer, so that playout starts over from the next packet put. The decoder is not reset.
+     */
+    public synchronized void reset() {
+        for (int i = 0; i <= mask; i++) {
+            slotFull[i] = false;
+        }
+        started = false;
+        played = false;
+        buffered = false;
+        haveArrival = false;
+    }
+
+    /**
+     * Gets the delay the buffer currently aims to hold: one packet plus three times the jitter estimate, within the
+     * configured delay range.
+     *
+     * @return The target delay, in 48 kHz samples.
+     */
+    public synchronized int getTargetDelay() {
+        int target = 960 + (int) (jitter * 3);
+        return Math.min(Math.max(target, minDelay), maxDelay);
+    }
+
+    /**
+     * Gets the interarrival jitter estimate.
+     *
+     * @return The jitter, in 48 kHz samples.
+     */
+    public synchronized double getJitter() {
+        return jitter;
+    }
+
+    /**
+     * Gets the duration of audio currently buffered ahead of playout.
+     *
+     * @return The buffered duration, in 48 kHz samples.
+     */
+    public synchronized int getBufferedDuration() {
+        return buffered ? Math.max(depth(), 0) : 0;
+    }
+
+    /**
+     * Gets the number of packets that were decoded normally.
+     *
+     * @return The number of packets decoded.
+     */
+    public synchronized long getDecodedCount() {
+        return decodedCount;
+    }
+
+    /**
+     * Gets the number of missing packets that were recovered from the forward error correction data of the next packet.
+     *
+     * @return The number of packets recovered.
+     */
+    public synchronized long getFecCount() {
+        return fecCount;
+    }
+
+    /**
+     * Gets the number of missing packets that were concealed.
+     *
+     * @return The number of packets concealed.
+     */
+    public synchronized long getPlcCount() {
+        return plcCount;
+    }
+
+    /**
+     * Gets the number of packets that arrived after their turn to be played out.
+     *
+     * @return The number of late packets.
+     */
+    public synchronized long getLateCount() {
+        return lateCount;
+    }
+
+    /**
+     * Gets the number of packets that were dropped for being invalid, too large or too old to be held, or to reduce the
+     * delay.
+     *
+     * @return The number of dropped packets.
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    private boolean isBuffered(int sequence) {
+        int slot = sequence & mask;
+        return slotFull[slot] && slotSequence[slot] == (sequence & 0xFFFF);
+    }
+
+    private int depth() {
+        return newestEnd - nextTimestamp;
+    }
+
+    private void updateJitter(int timestamp, long arrivalNanos) {
+        if (haveArrival) {
+            // The difference in transit time between this packet and the last. Only differences of the clocks are
+            // used, so their offsets cancel out, and the timestamp difference is taken in int to handle wrapping.
+            double d = (arrivalNanos - lastArrivalNanos) * (RTP_RATE / 1e9) - (timestamp - lastArrivalTimestamp);
+            jitter += (Math.abs(d) - jitter) / 16;
+        }
+        lastArrivalNanos = arrivalNanos;
+        lastArrivalTimestamp = timestamp;
+        haveArrival = true;
+    }
+
+    private static int sequenceDelta(int a, int b) {
+        return (short) (a - b);
+    }
+}
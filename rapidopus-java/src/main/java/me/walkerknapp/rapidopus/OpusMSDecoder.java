@@ -0,0 +1,199 @@
+package me.walkerknapp.rapidopus;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+
+/**
+ * An object that decodes opus-encoded multistream packets (e.g. 5.1 or 7.1 surround) into multichannel audio.
+ */
+public class OpusMSDecoder implements AutoCloseable {
+
+    static class State implements Runnable {
+        private long structPointer;
+
+        State(long pointer) {
+            this.structPointer = pointer;
+        }
+
+        public void run() {
+            msDecoderDestroy(structPointer);
+        }
+    }
+
+    private final State state;
+    private final Cleaner.Cleanable cleanable;
+
+    final long structPointer;
+    final int channels;
+
+    /**
+     * Creates and initializes a multistream decoder.
+     * The stream layout and mapping must match the ones used by the encoder, e.g. as given by
+     * {@link OpusMSEncoder#getStreams()}, {@link OpusMSEncoder#getCoupledStreams()}, and {@link OpusMSEncoder#getMapping()}.
+     *
+     * @param sampleRate Sample rate to decode at, in Hz
+     * @param channels Number of channels to output, from 1 to 255.
+     * @param streams The total number of streams coded in the input.
+     * @param coupledStreams Number of streams to decode as coupled (2 channel) streams.
+     * @param mapping Mapping from coded channels to output channels. Length must be channels.
+     *                A value of 255 indicates that an output channel should be silent.
+     */
+    public OpusMSDecoder(int sampleRate, int channels, int streams, int coupledStreams, byte[] mapping) {
+        // This line needs to be here, since RapidOpus must be forced to load before native methods can be called.
+        Cleaner cleaner = RapidOpus.cleaner;
+
+        if (mapping.length != channels) {
+            throw new IllegalArgumentException("Mapping length must equal the channel count: " + mapping.length + " != " + channels);
+        }
+
+        this.structPointer = msDecoderCreate(sampleRate, channels, streams, coupledStreams, mapping);
+        this.channels = channels;
+
+        this.state = new State(structPointer);
+        this.cleanable = cleaner.register(this, state);
+    }
+
+    // Generic CTLs
+
+    /**
+     * Resets the decoder to a freshly initialized state.
+     */
+    public void resetState() {
+        msDecoderResetState(structPointer);
+    }
+
+    // Decoder CTLs
+
+    /**
+     * Returns the amount the decoder is scaling the signal by in Q8 dB units.
+     *
+     * @return The current gain
+     */
+    public int getGain() {
+        return msDecoderGetGain(structPointer);
+    }
+
+    /**
+     * Sets the decoder gain adjustment.
+     * Scales the decoded output by a factor in Q8 dB units.
+     * This has a maximum range of -32768 to 32767 inclusive
+     * The default gain is 0 for no adjustment.
+     *
+     * @param gain The gain to set.
+     */
+    public void setGain(int gain) {
+        msDecoderSetGain(structPointer, gain);
+    }
+
+    /**
+     * Gets the duration (in samples) of the last packet decoded or concealed.
+     *
+     * @return Number of samples at current sampling rate.
+     */
+    public int getLastPacketDuration() {
+        return msDecoderGetLastPacketDuration(structPointer);
+    }
+
+    /**
+     * Decodes a multistream opus packet into 16s samples.
+     *
+     * @param inputData Binary data of the input packet
+     * @param outData A direct ByteBuffer no less than the required size to fit all data.
+     *                Size should be frameSize * channels * Short.BYTES
+     * @param frameSize Number of samples per channel of available space in outData.
+     * @param decodeFec Either 0 or 1 to request that any in-band forward error correction data be decoded
+     * @return The number of decoded samples.
+     * @see OpusDecoder#decode(byte[], ByteBuffer, int, int)
+     */
+    public int decode(byte[] inputData, ByteBuffer outData, int frameSize, int decodeFec) {
+        int res = msDecode(structPointer, inputData, outData, frameSize, decodeFec);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return res;
+    }
+
+    /**
+     * Decodes a multistream opus packet into 16s samples.
+     *
+     * @param inputData A direct ByteBuffer of the opus packet data.
+     * @param outData A direct ByteBuffer no less than the required size to fit all data.
+     *                Size should be frameSize * channels * Short.BYTES
+     * @param frameSize Number of samples per channel of available space in outData.
+     * @param decodeFec Either 0 or 1 to request that any in-band forward error correction data be decoded
+     * @return The number of decoded samples.
+     * @see OpusDecoder#decode(ByteBuffer, ByteBuffer, int, int)
+     */
+    public int decode(ByteBuffer inputData, ByteBuffer outData, int frameSize, int decodeFec) {
+        int res = msDecode(structPointer, inputData, outData, frameSize, decodeFec);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return res;
+    }
+
+    /**
+     * Decodes a multistream opus packet into floating point samples.
+     *
+     * @param inputData Binary data of the input packet
+     * @param outData A direct ByteBuffer no less than the required size to fit all data.
+     *                Size should be frameSize * channels * Float.BYTES
+     * @param frameSize Number of samples per channel of available space in outData.
+     * @param decodeFec Either 0 or 1 to request that any in-band forward error correction data be decoded
+     * @return The number of decoded samples.
+     * @see OpusDecoder#decodeFloat(byte[], ByteBuffer, int, int)
+     */
+    public int decodeFloat(byte[] inputData, ByteBuffer outData, int frameSize, int decodeFec) {
+        int res = msDecodeFloat(structPointer, inputData, outData, frameSize, decodeFec);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return res;
+    }
+
+    /**
+     * Decodes a multistream opus packet into floating point samples.
+     *
+     * @param inputData A direct ByteBuffer of the opus packet data
+     * @param outData A direct ByteBuffer no less than the required size to fit all data.
+     *                Size should be frameSize * channels * Float.BYTES
+     * @param frameSize Number of samples per channel of available space in outData.
+     * @param decodeFec Either 0 or 1 to request that any in-band forward error correction data be decoded
+     * @return The number of decoded samples.
+     * @see OpusDecoder#decodeFloat(ByteBuffer, ByteBuffer, int, int)
+     */
+    public int decodeFloat(ByteBuffer inputData, ByteBuffer outData, int frameSize, int decodeFec) {
+        int res = msDecodeFloat(structPointer, inputData, outData, frameSize, decodeFec);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return res;
+    }
+
+    @Override
+    public void close() {
+        cleanable.clean();
+    }
+
+    // Native Methods
+
+    private static native long msDecoderCreate(int sampleRate, int channels, int streams, int coupledStreams, byte[] mapping);
+    private static native void msDecoderResetState(long pDecoder);
+    private static native int msDecoderGetGain(long pDecoder);
+    private static native void msDecoderSetGain(long pDecoder, int gain);
+    private static native int msDecoderGetLastPacketDuration(long pDecoder);
+    private static native void msDecoderDestroy(long pDecoder);
+
+    private static native int msDecode(long pDecoder, byte[] inputData, ByteBuffer outData, int frameSize, int decodeFec);
+    private static native int msDecode(long pDecoder, ByteBuffer inputData, ByteBuffer outData, int frameSize, int decodeFec);
+    private static native int msDecodeFloat(long pDecoder, byte[] inputData, ByteBuffer outData, int frameSize, int decodeFec);
+    private static native int msDecodeFloat(long pDecoder, ByteBuffer inputData, ByteBuffer outData, int frameSize, int decodeFec);
+}
@@ -0,0 +1,381 @@
+package me.walkerknapp.rapidopus;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+
+/**
+ * An object that encodes multichannel audio (e.g. 5.1 or 7.1 surround) into opus-encoded multistream packets.
+ *
+ * A multistream encoder combines several mono or coupled stereo Opus streams into a single packet, so that all
+ * channels of a frame are encoded with a single call.
+ */
+public class OpusMSEncoder implements AutoCloseable {
+
+    static class State implements Runnable {
+        private long structPointer;
+
+        State(long pointer) {
+            this.structPointer = pointer;
+        }
+
+        public void run() {
+            msEncoderDestroy(structPointer);
+        }
+    }
+
+    private final State state;
+    private final Cleaner.Cleanable cleanable;
+
+    final long structPointer;
+
+    private final int channels;
+    private final int streams;
+    private final int coupledStreams;
+    private final byte[] mapping;
+
+    /**
+     * Allocates and initializes a multistream encoder state for a standard surround layout.
+     * The stream layout and channel mapping are chosen by libopus, and can be retrieved with {@link #getStreams()},
+     * {@link #getCoupledStreams()}, and {@link #getMapping()} to be sent to the decoder.
+     *
+     * @param sampleRate Sample rate in Hz. This must be 8000, 12000, 16000, 24000, or 48000
+     * @param channels Number of channels in the input signal, from 1 to 255.
+     * @param mappingFamily The channel mapping family to use. Family 0 supports 1 or 2 channels, family 1 supports
+     *                      1 to 8 channels in Vorbis order, and family 255 supports any number of independent channels.
+     * @param applicationMode Application mode.
+     */
+    public OpusMSEncoder(int sampleRate, int channels, int mappingFamily, OpusApplicationMode applicationMode) {
+        // This line needs to be here, since RapidOpus must be forced to load before native methods can be called.
+        Cleaner cleaner = RapidOpus.cleaner;
+
+        if (channels < 1 || channels > 255) {
+            throw new IllegalArgumentException("Channel count must be from 1 to 255: " + channels);
+        }
+
+        int[] layout = new int[2];
+        this.mapping = new byte[channels];
+        this.structPointer = msSurroundEncoderCreate(sampleRate, channels, mappingFamily, applicationMode.id, layout, mapping);
+        this.channels = channels;
+        this.streams = layout[0];
+        this.coupledStreams = layout[1];
+
+        this.state = new State(structPointer);
+        this.cleanable = cleaner.register(this, state);
+    }
+
+    /**
+     * Allocates and initializes a multistream encoder state with an explicit stream layout.
+     *
+     * @param sampleRate Sample rate in Hz. This must be 8000, 12000, 16000, 24000, or 48000
+     * @param channels Number of channels in the input signal, from 1 to 255.
+     * @param streams The total number of streams to encode from the input.
+     * @param coupledStreams Number of coupled (2 channel) streams to encode. This must be no larger than streams.
+     * @param mapping Mapping from encoded channels to input channels. Length must be channels.
+     *                Coupled streams take the first 2 * coupledStreams encoded channels.
+     * @param applicationMode Application mode.
+     */
+    public OpusMSEncoder(int sampleRate, int channels, int streams, int coupledStreams, byte[] mapping, OpusApplicationMode applicationMode) {
+        // This line needs to be here, since RapidOpus must be forced to load before native methods can be called.
+        Cleaner cleaner = RapidOpus.cleaner;
+
+        if (mapping.length != channels) {
+            throw new IllegalArgumentException("Mapping length must equal the channel count: " + mapping.length + " != " + channels);
+        }
+
+        this.structPointer = msEncoderCreate(sampleRate, channels, streams, coupledStreams, mapping, applicationMode.id);
+        this.channels = channels;
+        this.streams = streams;
+        this.coupledStreams = coupledStreams;
+        this.mapping = mapping.clone();
+
+        this.state = new State(structPointer);
+        this.cleanable = cleaner.register(this, state);
+    }
+
+    /**
+     * Gets the number of channels in the input signal.
+     *
+     * @return The number of channels.
+     */
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * Gets the total number of streams encoded in each packet.
+     *
+     * @return The number of streams.
+     */
+    public int getStreams() {
+        return streams;
+    }
+
+    /**
+     * Gets the number of coupled (2 channel) streams encoded in each packet.
+     *
+     * @return The number of coupled streams.
+     */
+    public int getCoupledStreams() {
+        return coupledStreams;
+    }
+
+    /**
+     * Gets the mapping from encoded channels to input channels, which the decoder must be created with.
+     *
+     * @return A copy of the channel mapping.
+     */
+    public byte[] getMapping() {
+        return mapping.clone();
+    }
+
+    // Generic CTLs
+
+    /**
+     * Resets the encoder to a freshly initialized state.
+     */
+    public void resetState() {
+        msEncoderResetState(structPointer);
+    }
+
+    /**
+     * Gets the total samples of delay added by the entire codec.
+     *
+     * @return Number of lookahead samples.
+     */
+    public int getLookahead() {
+        return msEncoderGetLookahead(structPointer);
+    }
+
+    // Encoder CTLs
+
+    /**
+     * Gets the encoder's computational complexity.
+     *
+     * @return The complexity, from 0 to 10 inclusive.
+     */
+    public int getComplexity() {
+        return msEncoderGetComplexity(structPointer);
+    }
+
+    /**
+     * Sets the computational complexity of every stream in the encoder.
+     *
+     * @param complexity The complexity to use, from 0 to 10 inclusive.
+     * @see OpusEncoder#setComplexity(int)
+     */
+    public void setComplexity(int complexity) {
+        checkCtl(msEncoderSetComplexity(structPointer, complexity));
+    }
+
+    /**
+     * Gets the encoder's total bitrate configuration.
+     *
+     * @return The bitrate in bits per second.
+     */
+    public int getBitrate() {
+        return msEncoderGetBitrate(structPointer);
+    }
+
+    /**
+     * Sets the total bitrate of the encoder, which is distributed across the streams.
+     *
+     * @param bitrate The bitrate in bits per second, {@link OpusEncoder#AUTO}, or {@link OpusEncoder#BITRATE_MAX}.
+     * @see OpusEncoder#setBitrate(int)
+     */
+    public void setBitrate(int bitrate) {
+        checkCtl(msEncoderSetBitrate(structPointer, bitrate));
+    }
+
+    /**
+     * Gets whether the encoder uses variable bitrate.
+     *
+     * @return If VBR is enabled.
+     */
+    public boolean isVbr() {
+        return msEncoderGetVbr(structPointer) != 0;
+    }
+
+    /**
+     * Enables or disables variable bitrate (VBR) in every stream of the encoder.
+     *
+     * @param vbr True to use VBR, false to use hard CBR.
+     * @see OpusEncoder#setVbr(boolean)
+     */
+    public void setVbr(boolean vbr) {
+        checkCtl(msEncoderSetVbr(structPointer, vbr ? 1 : 0));
+    }
+
+    /**
+     * Gets the encoder's configured use of inband forward error correction.
+     *
+     * @return If inband FEC is enabled.
+     */
+    public boolean isInbandFec() {
+        return msEncoderGetInbandFec(structPointer) != 0;
+    }
+
+    /**
+     * Configures the use of inband forward error correction (FEC) in every stream of the encoder.
+     *
+     * @param inbandFec If inband FEC should be enabled.
+     * @see OpusEncoder#setInbandFec(boolean)
+     */
+    public void setInbandFec(boolean inbandFec) {
+        checkCtl(msEncoderSetInbandFec(structPointer, inbandFec ? 1 : 0));
+    }
+
+    /**
+     * Gets the encoder's configured packet loss percentage.
+     *
+     * @return The expected packet loss percentage.
+     */
+    public int getPacketLossPercentage() {
+        return msEncoderGetPacketLossPerc(structPointer);
+    }
+
+    /**
+     * Configures the expected packet loss percentage of every stream in the encoder.
+     *
+     * @param percentage The expected packet loss percentage, from 0 to 100 inclusive.
+     * @see OpusEncoder#setPacketLossPercentage(int)
+     */
+    public void setPacketLossPercentage(int percentage) {
+        checkCtl(msEncoderSetPacketLossPerc(structPointer, percentage));
+    }
+
+    /**
+     * Gets the encoder's configured use of discontinuous transmission.
+     *
+     * @return If DTX is enabled.
+     */
+    public boolean isDtx() {
+        return msEncoderGetDtx(structPointer) != 0;
+    }
+
+    /**
+     * Configures the use of discontinuous transmission (DTX) in every stream of the encoder.
+     *
+     * @param dtx If DTX should be enabled.
+     * @see OpusEncoder#setDtx(boolean)
+     */
+    public void setDtx(boolean dtx) {
+        checkCtl(msEncoderSetDtx(structPointer, dtx ? 1 : 0));
+    }
+
+    /**
+     * Encodes a multistream opus frame.
+     * The frame size must be a supported Opus frame size. For instance at 48kHz:
+     * the permitted values are 120, 240, 480, 960, 1920, and 2880.
+     *
+     * @param inputData The 16s PCM data, interleaved. Must be size frameSize * channels
+     * @param frameSize Number of samples per channel in the input signal.
+     * @param outputData A direct ByteBuffer to store the output. Will only write up to buffer capacity.
+     * @return The length of the encoded packet
+     */
+    public int encode(short[] inputData, int frameSize, ByteBuffer outputData) {
+        int res = msEncode(structPointer, inputData, frameSize, outputData);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return res;
+    }
+
+    /**
+     * Encodes a multistream opus frame.
+     * The frame size must be a supported Opus frame size. For instance at 48kHz:
+     * the permitted values are 120, 240, 480, 960, 1920, and 2880.
+     *
+     * @param inputData A direct ByteBuffer of 16s PCM data, interleaved. Must be size frameSize * channels * Short.BYTES
+     * @param frameSize Number of samples per channel in the input signal.
+     * @param outputData A direct ByteBuffer to store the output. Will only write up to buffer capacity.
+     * @return The length of the encoded packet
+     */
+    public int encode(ByteBuffer inputData, int frameSize, ByteBuffer outputData) {
+        int res = msEncode(structPointer, inputData, frameSize, outputData);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return res;
+    }
+
+    /**
+     * Encodes a multistream opus frame from floating point input.
+     * The frame size must be a supported Opus frame size. For instance at 48kHz:
+     * the permitted values are 120, 240, 480, 960, 1920, and 2880.
+     *
+     * @param inputData The floating-point PCM data, interleaved. Must be size frameSize * channels
+     * @param frameSize The number of samples per channel in the input signal.
+     * @param outputData A direct ByteBuffer to store the output. Will only write up to buffer capacity.
+     * @return The length of the encoded packet.
+     */
+    public int encodeFloat(float[] inputData, int frameSize, ByteBuffer outputData) {
+        int res = msEncodeFloat(structPointer, inputData, frameSize, outputData);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return res;
+    }
+
+    /**
+     * Encodes a multistream opus frame from floating point input.
+     * The frame size must be a supported Opus frame size. For instance at 48kHz:
+     * the permitted values are 120, 240, 480, 960, 1920, and 2880.
+     *
+     * @param inputData A direct ByteBuffer of the floating-point PCM data, interleaved. Must be size frameSize * channels * Float.BYTES
+     * @param frameSize The number of samples per channel in the input signal.
+     * @param outputData A direct ByteBuffer to store the output. Will only write up to buffer capacity.
+     * @return The length of the encoded packet.
+     */
+    public int encodeFloat(ByteBuffer inputData, int frameSize, ByteBuffer outputData) {
+        int res = msEncodeFloat(structPointer, inputData, frameSize, outputData);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return res;
+    }
+
+    @Override
+    public void close() {
+        cleanable.clean();
+    }
+
+    private static void checkCtl(int res) {
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalArgumentException(RapidOpusErrorCodes.translateError(res));
+        }
+    }
+
+    // Native methods
+
+    private static native long msEncoderCreate(int sampleRate, int channels, int streams, int coupledStreams, byte[] mapping, int applicationMode);
+    private static native long msSurroundEncoderCreate(int sampleRate, int channels, int mappingFamily, int applicationMode, int[] layout, byte[] mapping);
+    private static native void msEncoderDestroy(long structPointer);
+
+    private static native void msEncoderResetState(long structPointer);
+    private static native int msEncoderGetLookahead(long structPointer);
+    private static native int msEncoderGetComplexity(long structPointer);
+    private static native int msEncoderSetComplexity(long structPointer, int complexity);
+    private static native int msEncoderGetBitrate(long structPointer);
+    private static native int msEncoderSetBitrate(long structPointer, int bitrate);
+    private static native int msEncoderGetVbr(long structPointer);
+    private static native int msEncoderSetVbr(long structPointer, int vbr);
+    private static native int msEncoderGetInbandFec(long structPointer);
+    private static native int msEncoderSetInbandFec(long structPointer, int inbandFec);
+    private static native int msEncoderGetPacketLossPerc(long structPointer);
+    private static native int msEncoderSetPacketLossPerc(long structPointer, int percentage);
+    private static native int msEncoderGetDtx(long structPointer);
+    private static native int msEncoderSetDtx(long structPointer, int dtx);
+
+    private static native int msEncode(long structPointer, short[] inputData, int frameSize, ByteBuffer outputData);
+    private static native int msEncode(long structPointer, ByteBuffer inputData, int frameSize, ByteBuffer outputData);
+    private static native int msEncodeFloat(long structPointer, float[] inputData, int frameSize, ByteBuffer outputData);
+    private static native int msEncodeFloat(long structPointer, ByteBuffer inputData, int frameSize, ByteBuffer outputData);
+}
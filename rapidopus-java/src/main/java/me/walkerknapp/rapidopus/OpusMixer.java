@@ -0,0 +1,350 @@
+package me.walkerknapp.rapidopus;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A conference mixer that decodes the inbound stream of every participant, and encodes a mix-minus of all of them
+ * for every participant, so that nobody hears themselves.
+ *
+ * The total mix is computed once per tick, and each participant's own contribution is subtracted from it, so a tick
+ * costs O(N) rather than O(N^2) for N participants. Optionally, only the K loudest participants are mixed, which keeps
+ * noise from many open microphones out of the mix. Every output is soft clipped before it is encoded.
+ *
+ * In large rooms, decoding every participant only to mix a few of them is most of the cost of a tick. A speaker limit
+ * ranks participants from their packet headers with an {@link OpusActivityDetector} first, and only the most active
+ * ones are decoded at all. A participant's decoder is reset when it is picked again, since it skipped the packets in
+ * between.
+ *
+ * The whole tick runs in a single native call: decoding, mixing, clipping and encoding all happen on off-heap float
+ * buffers without crossing back into Java. Packets are copied into one shared input buffer, and the encoded outputs
+ * are left in one shared output buffer.
+ *
+ * Every decoder and encoder must use the mixer's sample rate and channel count, and the mixer's frame size must be a
+ * valid Opus frame duration. A mixer is not thread-safe, and the decoders and encoders added to it must not be used
+ * elsewhere or closed until they are removed.
+ */
+public class OpusMixer {
+    /**
+     * The size, in bytes, of a single participant in the native participant table.
+     */
+    static final int ENTRY_BYTES = 32;
+
+    private static final int NO_PACKET = -1;
+
+    private final int sampleRate;
+    private final int channels;
+    private final int frameSize;
+    private final int maxPacketSize;
+
+    private final ByteBuffer entries;
+    private final ByteBuffer input;
+    private final ByteBuffer pcm;
+    private final ByteBuffer softClip;
+    private final ByteBuffer output;
+
+    private final OpusDecoder[] decoders;
+    private final OpusEncoder[] encoders;
+    private int count;
+    private int topK;
+
+    private OpusActivityDetector detector;
+    private boolean[] decoding;
+    private int speakerLimit;
+
+    /**
+     * Creates an empty mixer.
+     *
+     * @param capacity The maximum number of participants.
+     * @param sampleRate The sample rate of every decoder and encoder, in Hz.
+     * @param channels The channel count of every decoder and encoder, 1 or 2.
+     * @param frameSize The number of samples per channel in each tick, e.g. 960 for 20 ms at 48 kHz.
+     * @param maxPacketSize The size of the largest packet, inbound or outbound, in bytes.
+     */
+    public OpusMixer(int capacity, int sampleRate, int channels, int frameSize, int maxPacketSize) {
+        // This line needs to be here, since RapidOpus must be forced to load before native methods can be called.
+        Cleaner cleaner = RapidOpus.cleaner;
+
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        if (channels != 1 && channels != 2) {
+            throw new IllegalArgumentException("Channels must be 1 or 2: " + channels);
+        }
+        if (frameSize <= 0 || maxPacketSize <= 0) {
+            throw new IllegalArgumentException("Frame size and max packet size must be positive");
+        }
+
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.frameSize = frameSize;
+        this.maxPacketSize = maxPacketSize;
+
+        this.entries = ByteBuffer.allocateDirect(capacity * ENTRY_BYTES).order(ByteOrder.nativeOrder());
+        this.input = ByteBuffer.allocateDirect(capacity * maxPacketSize);
+        // One frame per participant, plus the total mix and a scratch frame for each output
+        this.pcm = ByteBuffer.allocateDirect((capacity + 2) * frameSize * channels * Float.BYTES).order(ByteOrder.nativeOrder());
+        this.softClip = ByteBuffer.allocateDirect(capacity * channels * Float.BYTES).order(ByteOrder.nativeOrder());
+        this.output = ByteBuffer.allocateDirect(capacity * maxPacketSize);
+
+        this.decoders = new OpusDecoder[capacity];
+        this.encoders = new OpusEncoder[capacity];
+    }
+
+    /**
+     * Adds a participant to the mixer.
+     *
+     * @param decoder The decoder for the participant's inbound stream, or null for a participant that only listens.
+     * @param encoder The encoder for the participant's mix, or null for a participant that only speaks.
+     * @return The participant's index, to be used with the other methods.
+     */
+    public int add(OpusDecoder decoder, OpusEncoder encoder) {
+        if (decoder == null && encoder == null) {
+            throw new IllegalArgumentException("A participant needs a decoder or an encoder");
+        }
+        if (decoder != null && (decoder.sampleRate != sampleRate || decoder.channels != channels)) {
+            throw new IllegalArgumentException("Decoder must decode " + channels + " channels at " + sampleRate + " Hz");
+        }
+        if (encoder != null && (encoder.sampleRate != sampleRate || encoder.channels != channels)) {
+            throw new IllegalArgumentException("Encoder must encode " + channels + " channels at " + sampleRate + " Hz");
+        }
+
+        int participant = 0;
+        while (participant < decoders.length && (decoders[participant] != null || encoders[participant] != null)) {
+            participant++;
+        }
+        if (participant == decoders.length) {
+            throw new IllegalStateException("Mixer is full: " + decoders.length);
+        }
+
+        decoders[participant] = decoder;
+        encoders[participant] = encoder;
+        count = Math.max(count, participant + 1);
+        if (detector != null) {
+            detector.reset(participant);
+            decoding[participant] = false;
+        }
+
+        int base = participant * ENTRY_BYTES;
+        entries.putLong(base, decoder != null ? decoder.structPointer : 0);
+        entries.putLong(base + 8, encoder != null ? encoder.structPointer : 0);
+        entries.putInt(base + 16, NO_PACKET);
+        entries.putInt(base + 20, 0);
+        entries.putFloat(base + 24, 0);
+        entries.putInt(base + 28, 0);
+
+        for (int c = 0; c < channels; c++) {
+            softClip.putFloat((participant * channels + c) * Float.BYTES, 0);
+        }
+
+        return participant;
+    }
+
+    /**
+     * Removes a participant from the mixer. Its index may be reused by a later {@link #add(OpusDecoder, OpusEncoder)}.
+     *
+     * @param participant The participant's index.
+     */
+    public void remove(int participant) {
+        checkParticipant(participant);
+
+        decoders[participant] = null;
+        encoders[participant] = null;
+        entries.putLong(participant * ENTRY_BYTES, 0);
+        entries.putLong(participant * ENTRY_BYTES + 8, 0);
+
+        while (count > 0 && decoders[count - 1] == null && encoders[count - 1] == null) {
+            count--;
+        }
+    }
+
+    /**
+     * Limits the mix to the loudest participants of each tick, by the energy of their decoded frames.
+     *
+     * @param k The number of participants to mix, or 0 to mix every participant.
+     */
+    public void setTopK(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("K must not be negative: " + k);
+        }
+        this.topK = k;
+    }
+
+    /**
+     * Limits decoding to the participants that are most active by their packet headers, so that the packets of the
+     * other participants are neither decoded nor mixed.
+     *
+     * @param k The number of participants to decode, or 0 to decode every participant.
+     */
+    public void setSpeakerLimit(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("K must not be negative: " + k);
+        }
+        if (k > 0 && detector == null) {
+            detector = new OpusActivityDetector(decoders.length);
+            decoding = new boolean[decoders.length];
+        }
+        this.speakerLimit = k;
+    }
+
+    /**
+     * Sets a participant's inbound packet for the next tick, copying it into the mixer's input buffer.
+     * Participants without a packet are left out of the next tick's mix.
+     *
+     * @param participant The participant's index.
+     * @param packet A heap or direct buffer holding the packet.
+     * @param offset The offset of the packet in the buffer.
+     * @param length The length of the packet, in bytes.
+     */
+    public void setPacket(int participant, ByteBuffer packet, int offset, int length) {
+        checkParticipant(participant);
+        if (decoders[participant] == null) {
+            throw new IllegalStateException("Participant " + participant + " has no decoder");
+        }
+        if (length <= 0 || length > maxPacketSize) {
+            throw new IllegalArgumentException("Packet length must be between 1 and " + maxPacketSize + ": " + length);
+        }
+
+        int base = participant * maxPacketSize;
+        for (int i = 0; i < length; i++) {
+            input.put(base + i, packet.get(offset + i));
+        }
+        entries.putInt(participant * ENTRY_BYTES + 16, length);
+        if (detector != null) {
+            detector.update(participant, packet, offset, length);
+        }
+    }
+
+    /**
+     * Marks a participant's inbound packet for the next tick as lost, so that it is filled in with packet loss
+     * concealment and still mixed.
+     *
+     * @param participant The participant's index.
+     */
+    public void setLost(int participant) {
+        checkParticipant(participant);
+        if (decoders[participant] == null) {
+            throw new IllegalStateException("Participant " + participant + " has no decoder");
+        }
+
+        entries.putInt(participant * ENTRY_BYTES + 16, 0);
+    }
+
+    /**
+     * Runs a tick: decodes every participant's packet, mixes them, and encodes every participant's mix-minus.
+     * The inbound packets are cleared afterwards.
+     *
+     * @throws IllegalStateException If any participant's mix could not be encoded.
+     */
+    public void mix() {
+        if (speakerLimit > 0) {
+            selectSpeakers();
+        }
+
+        mixTick(entries, count, input, maxPacketSize, pcm, softClip, output, frameSize, channels, topK);
+
+        int error = RapidOpusErrorCodes.OPUS_OK;
+        for (int i = 0; i < count; i++) {
+            int base = i * ENTRY_BYTES;
+            entries.putInt(base + 16, NO_PACKET);
+
+            int result = entries.getInt(base + 20);
+            if (encoders[i] != null && result < RapidOpusErrorCodes.OPUS_OK) {
+                error = result;
+            }
+        }
+
+        if (error < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(error));
+        }
+    }
+
+    /**
+     * Gets the direct buffer holding every participant's encoded mix from the last tick.
+     *
+     * @return A read-only view of the output buffer.
+     */
+    public ByteBuffer getOutput() {
+        return output.asReadOnlyBuffer();
+    }
+
+    /**
+     * Gets the offset of a participant's encoded mix in the output buffer.
+     *
+     * @param participant The participant's index.
+     * @return The offset, in bytes.
+     */
+    public int getOutputOffset(int participant) {
+        checkParticipant(participant);
+        return participant * maxPacketSize;
+    }
+
+    /**
+     * Gets the length of a participant's encoded mix from the last tick.
+     *
+     * @param participant The participant's index.
+     * @return The length, in bytes.
+     */
+    public int getOutputLength(int participant) {
+        checkParticipant(participant);
+        return encoders[participant] != null ? entries.getInt(participant * ENTRY_BYTES + 20) : 0;
+    }
+
+    /**
+     * Gets the energy of a participant's decoded frame from the last tick, which is used to pick the loudest participants.
+     *
+     * @param participant The participant's index.
+     * @return The mean square of the decoded samples, or 0 if the participant had no packet.
+     */
+    public float getEnergy(int participant) {
+        checkParticipant(participant);
+        return entries.getFloat(participant * ENTRY_BYTES + 24);
+    }
+
+    /**
+     * Checks if a participant was part of the mix in the last tick.
+     *
+     * @param participant The participant's index.
+     * @return True if the participant was mixed.
+     */
+    public boolean isMixed(int participant) {
+        checkParticipant(participant);
+        return entries.getInt(participant * ENTRY_BYTES + 28) != 0;
+    }
+
+    private void selectSpeakers() {
+        for (int i = 0; i < count; i++) {
+            if (decoders[i] != null && entries.getInt(i * ENTRY_BYTES + 16) <= 0) {
+                detector.updateLost(i);
+            }
+        }
+
+        detector.select(speakerLimit);
+
+        for (int i = 0; i < count; i++) {
+            if (decoders[i] == null) {
+                continue;
+            }
+
+            if (!detector.isSelected(i)) {
+                entries.putInt(i * ENTRY_BYTES + 16, NO_PACKET);
+                decoding[i] = false;
+            } else if (!decoding[i]) {
+                decoders[i].resetState();
+                decoding[i] = true;
+            }
+        }
+    }
+
+    private void checkParticipant(int participant) {
+        if (participant < 0 || participant >= count || (decoders[participant] == null && encoders[participant] == null)) {
+            throw new IllegalArgumentException("No such participant: " + participant);
+        }
+    }
+
+    // Native Methods
+
+    private static native void mixTick(ByteBuffer entries, int count, ByteBuffer input, int maxPacketSize, ByteBuffer pcm,
+                                       ByteBuffer softClip, ByteBuffer output, int frameSize, int channels, int topK);
+}
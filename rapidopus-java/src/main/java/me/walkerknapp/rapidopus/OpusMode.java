@@ -0,0 +1,19 @@
+package me.walkerknapp.rapidopus;
+
+/**
+ * The coding mode of an Opus packet, as signalled by its TOC byte.
+ */
+public enum OpusMode {
+    /**
+     * Linear prediction (SILK) only, used for speech at lower bandwidths.
+     */
+    SILK_ONLY,
+    /**
+     * SILK for the lower band combined with CELT for the upper band.
+     */
+    HYBRID,
+    /**
+     * MDCT (CELT) only, used for music and low-delay coding.
+     */
+    CELT_ONLY
+}
@@ -0,0 +1,118 @@
+package me.walkerknapp.rapidopus;
+
+/**
+ * A reusable holder for the parsed layout of an Opus packet, filled by
+ * {@link OpusDecoder#parsePacket(byte[], int, OpusPacketInfo)} and its overloads.
+ *
+ * All fields are written by a single native call into a table owned by this object, so parsing a packet into an
+ * existing instance does not allocate. An instance is not thread-safe, and is overwritten by every parse.
+ */
+public class OpusPacketInfo {
+    /**
+     * The maximum number of frames an Opus packet can hold.
+     */
+    public static final int MAX_FRAMES = 48;
+
+    static final int TOC = 0;
+    static final int FRAME_COUNT = 1;
+    static final int PAYLOAD_OFFSET = 2;
+    static final int BANDWIDTH = 3;
+    static final int CHANNELS = 4;
+    static final int SAMPLES_PER_FRAME = 5;
+    static final int FRAME_OFFSETS = 6;
+    static final int FRAME_SIZES = FRAME_OFFSETS + MAX_FRAMES;
+    static final int TABLE_SIZE = FRAME_SIZES + MAX_FRAMES;
+
+    final int[] table = new int[TABLE_SIZE];
+
+    /**
+     * Gets the TOC (table of contents) byte of the packet.
+     *
+     * @return The TOC byte, from 0 to 255.
+     */
+    public int getToc() {
+        return table[TOC];
+    }
+
+    /**
+     * Gets the number of frames in the packet.
+     *
+     * @return The number of frames.
+     */
+    public int getFrameCount() {
+        return table[FRAME_COUNT];
+    }
+
+    /**
+     * Gets the offset of the first frame's data, relative to the start of the packet.
+     *
+     * @return The payload offset, in bytes.
+     */
+    public int getPayloadOffset() {
+        return table[PAYLOAD_OFFSET];
+    }
+
+    /**
+     * Gets the bandwidth of the packet.
+     *
+     * @return The bandwidth of the packet data.
+     */
+    public OpusBandwidth getBandwidth() {
+        return OpusBandwidth.valueOf(table[BANDWIDTH]);
+    }
+
+    /**
+     * Gets the number of channels coded in the packet.
+     *
+     * @return The number of channels.
+     */
+    public int getChannelCount() {
+        return table[CHANNELS];
+    }
+
+    /**
+     * Gets the number of samples per frame, at the sample rate the packet was parsed for.
+     *
+     * @return The number of samples per frame.
+     */
+    public int getSamplesPerFrame() {
+        return table[SAMPLES_PER_FRAME];
+    }
+
+    /**
+     * Gets the total number of samples in the packet, at the sample rate the packet was parsed for.
+     *
+     * @return The number of samples.
+     */
+    public int getSampleCount() {
+        return table[SAMPLES_PER_FRAME] * table[FRAME_COUNT];
+    }
+
+    /**
+     * Gets the offset of a frame's data, relative to the start of the packet.
+     *
+     * @param frame The index of the frame, less than {@link #getFrameCount()}.
+     * @return The frame offset, in bytes.
+     */
+    public int getFrameOffset(int frame) {
+        checkFrame(frame);
+        return table[FRAME_OFFSETS + frame];
+    }
+
+    /**
+     * Gets the size of a frame's data.
+     *
+     * @param frame The index of the frame, less than {@link #getFrameCount()}.
+     * @return The frame size, in bytes.
+     */
+    public int getFrameSize(int frame) {
+        checkFrame(frame);
+        return table[FRAME_SIZES + frame];
+    }
+
+    private void checkFrame(int frame) {
+        if (frame < 0 || frame >= table[FRAME_COUNT]) {
+            throw new IndexOutOfBoundsException("Frame: " + frame + ", Frame count: " + table[FRAME_COUNT]);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package me.walkerknapp.rapidopus;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the header fields of Opus packets in pure Java, as described in RFC 6716, section 3.1.
+ *
+ * These give the same results as the native {@link OpusDecoder#getPacketBandwidth(byte[])} family, but do not cross
+ * into native code or pin any arrays, so they are cheap enough to be inlined into packet routing loops. They work on
+ * byte arrays and on both heap and direct ByteBuffers.
+ *
+ * Most fields are derived from the packet's TOC byte alone, which is the first byte of the packet
+ * (e.g. {@code packet[offset] & 0xFF}).
+ */
+public final class OpusPacketInspector {
+
+    private OpusPacketInspector() {
+    }
+
+    /**
+     * Gets the coding mode of a packet.
+     *
+     * @param toc The TOC byte of the packet.
+     * @return The coding mode of the packet.
+     */
+    public static OpusMode getMode(int toc) {
+        if ((toc & 0x80) != 0) {
+            return OpusMode.CELT_ONLY;
+        } else if ((toc & 0x60) == 0x60) {
+            return OpusMode.HYBRID;
+        } else {
+            return OpusMode.SILK_ONLY;
+        }
+    }
+
+    /**
+     * Gets the bandwidth of a packet.
+     *
+     * @param toc The TOC byte of the packet.
+     * @return The bandwidth of the packet data.
+     */
+    public static OpusBandwidth getBandwidth(int toc) {
+        if ((toc & 0x80) != 0) {
+            // CELT only has no mediumband configuration, so the first configurations are narrowband.
+            switch ((toc >> 5) & 0x3) {
+                case 0:
+                    return OpusBandwidth.NARROWBAND;
+                case 1:
+                    return OpusBandwidth.WIDEBAND;
+                case 2:
+                    return OpusBandwidth.SUPERWIDEBAND;
+                default:
+                    return OpusBandwidth.FULLBAND;
+            }
+        } else if ((toc & 0x60) == 0x60) {
+            return (toc & 0x10) != 0 ? OpusBandwidth.FULLBAND : OpusBandwidth.SUPERWIDEBAND;
+        } else {
+            switch ((toc >> 5) & 0x3) {
+                case 0:
+                    return OpusBandwidth.NARROWBAND;
+                case 1:
+                    return OpusBandwidth.MEDIUMBAND;
+                default:
+                    return OpusBandwidth.WIDEBAND;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of channels coded in a packet.
+     *
+     * @param toc The TOC byte of the packet.
+     * @return The number of channels of the packet.
+     */
+    public static int getChannelCount(int toc) {
+        return (toc & 0x4) != 0 ? 2 : 1;
+    }
+
+    /**
+     * Gets the number of samples per frame of a packet.
+     *
+     * @param toc The TOC byte of the packet.
+     * @param sampleRate The sample rate in Hz. Must be a multiple of 400 or inaccurate results will be returned.
+     * @return The number of samples per frame.
+     */
+    public static int getSamplesPerFrame(int toc, int sampleRate) {
+        if ((toc & 0x80) != 0) {
+            return (sampleRate << ((toc >> 3) & 0x3)) / 400;
+        } else if ((toc & 0x60) == 0x60) {
+            return (toc & 0x08) != 0 ? sampleRate / 50 : sampleRate / 100;
+        } else {
+            int size = (toc >> 3) & 0x3;
+            return size == 3 ? sampleRate * 60 / 1000 : (sampleRate << size) / 100;
+        }
+    }
+
+    /**
+     * Gets the number of frames in a packet.
+     *
+     * @param packet Binary data holding the packet.
+     * @param offset The offset of the packet in the array.
+     * @param length The length of the packet, in bytes.
+     * @return The number of frames of this packet
+     */
+    public static int getFrameCount(byte[] packet, int offset, int length) {
+        if (length < 1) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(RapidOpusErrorCodes.OPUS_BAD_ARG));
+        }
+
+        return frameCount(packet[offset], length, length > 1 ? packet[offset + 1] : 0);
+    }
+
+    /**
+     * Gets the number of frames in a packet.
+     * The buffer is read with absolute gets, so it may be a heap or direct buffer, and its position is unchanged.
+     *
+     * @param packet A ByteBuffer holding the packet.
+     * @param offset The offset of the packet in the buffer.
+     * @param length The length of the packet, in bytes.
+     * @return The number of frames of this packet
+     */
+    public static int getFrameCount(ByteBuffer packet, int offset, int length) {
+        if (length < 1) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(RapidOpusErrorCodes.OPUS_BAD_ARG));
+        }
+
+        return frameCount(packet.get(offset), length, length > 1 ? packet.get(offset + 1) : 0);
+    }
+
+    /**
+     * Gets the number of samples in a packet.
+     *
+     * @param packet Binary data holding the packet.
+     * @param offset The offset of the packet in the array.
+     * @param length The length of the packet, in bytes.
+     * @param sampleRate The sample rate in Hz. Must be a multiple of 400 or inaccurate results will be returned.
+     * @return The number of samples.
+     */
+    public static int getSampleCount(byte[] packet, int offset, int length, int sampleRate) {
+        return sampleCount(packet[offset] & 0xFF, getFrameCount(packet, offset, length), sampleRate);
+    }
+
+    /**
+     * Gets the number of samples in a packet.
+     * The buffer is read with absolute gets, so it may be a heap or direct buffer, and its position is unchanged.
+     *
+     * @param packet A ByteBuffer holding the packet.
+     * @param offset The offset of the packet in the buffer.
+     * @param length The length of the packet, in bytes.
+     * @param sampleRate The sample rate in Hz. Must be a multiple of 400 or inaccurate results will be returned.
+     * @return The number of samples.
+     */
+    public static int getSampleCount(ByteBuffer packet, int offset, int length, int sampleRate) {
+        return sampleCount(packet.get(offset) & 0xFF, getFrameCount(packet, offset, length), sampleRate);
+    }
+
+    /**
+     * Reads the voice activity flag the SILK encoder set on the first frame of a packet, without decoding it.
+     *
+     * SILK and hybrid frames start with one voice activity flag per SILK frame, each range coded with a probability
+     * of one half, so the first flag is the top bit of the first byte of frame data. CELT only frames carry no such
+     * flag. Frames of one byte or less are discontinuous transmission (DTX) frames, which carry no audio at all.
+     *
+     * @param packet A ByteBuffer holding the packet.
+     * @param offset The offset of the packet in the buffer.
+     * @param length The length of the packet, in bytes.
+     * @return 1 if the first frame was flagged as voice, 0 if it was not or is a DTX frame, or -1 if the packet is
+     *         CELT only or malformed.
+     */
+    public static int getVoiceActivity(ByteBuffer packet, int offset, int length) {
+        if (length < 1) {
+            return -1;
+        }
+
+        int toc = packet.get(offset) & 0xFF;
+        int end = offset + length;
+        int pos = offset + 1;
+        int frameLength;
+
+        switch (toc & 0x3) {
+            case 0:
+                frameLength = length - 1;
+                break;
+            case 1:
+                frameLength = (length - 1) / 2;
+                break;
+            case 2:
+                if (pos >= end) {
+                    return -1;
+                }
+                frameLength = packet.get(pos++) & 0xFF;
+                if (frameLength >= 252) {
+                    if (pos >= end) {
+                        return -1;
+                    }
+                    frameLength += 4 * (packet.get(pos++) & 0xFF);
+                }
+                break;
+            default:
+                if (pos >= end) {
+                    return -1;
+                }
+                int countByte = packet.get(pos++) & 0xFF;
+                int frames = countByte & 0x3F;
+                if (frames == 0) {
+                    return -1;
+                }
+
+                int padding = 0;
+                if ((countByte & 0x40) != 0) {
+                    int value;
+                    do {
+                        if (pos >= end) {
+                            return -1;
+                        }
+                        value = packet.get(pos++) & 0xFF;
+                        padding += value == 255 ? 254 : value;
+                    } while (value == 255);
+                }
+
+                if ((countByte & 0x80) != 0) {
+                    // The first frame's length is the first of the frame lengths that follow
+                    frameLength = -1;
+                    for (int i = 0; i < frames - 1; i++) {
+                        if (pos >= end) {
+                            return -1;
+                        }
+                        int size = packet.get(pos++) & 0xFF;
+                        if (size >= 252) {
+                            if (pos >= end) {
+                                return -1;
+                            }
+                            size += 4 * (packet.get(pos++) & 0xFF);
+                        }
+                        if (frameLength < 0) {
+                            frameLength = size;
+                        }
+                    }
+                    if (frameLength < 0) {
+                        frameLength = end - padding - pos;
+                    }
+                } else {
+                    frameLength = (end - padding - pos) / frames;
+                }
+                break;
+        }
+
+        if (frameLength <= 1) {
+            return pos <= end ? 0 : -1;
+        }
+        if ((toc & 0x80) != 0 || pos >= end) {
+            return -1;
+        }
+        return (packet.get(pos) & 0x80) != 0 ? 1 : 0;
+    }
+
+    private static int frameCount(byte toc, int length, byte countByte) {
+        switch (toc & 0x3) {
+            case 0:
+                return 1;
+            case 3:
+                if (length < 2) {
+                    throw new IllegalStateException(RapidOpusErrorCodes.translateError(RapidOpusErrorCodes.OPUS_INVALID_PACKET));
+                }
+                return countByte & 0x3F;
+            default:
+                return 2;
+        }
+    }
+
+    private static int sampleCount(int toc, int frameCount, int sampleRate) {
+        int samples = frameCount * getSamplesPerFrame(toc, sampleRate);
+
+        // Can't have more than 120 ms
+        if (samples * 25 > sampleRate * 3) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(RapidOpusErrorCodes.OPUS_INVALID_PACKET));
+        }
+
+        return samples;
+    }
+}
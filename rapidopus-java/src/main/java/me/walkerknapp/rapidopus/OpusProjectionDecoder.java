@@ -0,0 +1,169 @@
+package me.walkerknapp.rapidopus;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+
+/**
+ * An object that decodes opus-encoded projection (channel mapping family 3) packets back into ambisonic audio.
+ */
+public class OpusProjectionDecoder implements AutoCloseable {
+
+    static class State implements Runnable {
+        private long structPointer;
+
+        State(long pointer) {
+            this.structPointer = pointer;
+        }
+
+        public void run() {
+            projectionDecoderDestroy(structPointer);
+        }
+    }
+
+    private final State state;
+    private final Cleaner.Cleanable cleanable;
+
+    final long structPointer;
+    final int channels;
+
+    /**
+     * Creates and initializes a projection decoder.
+     * The stream layout and demixing matrix must match the ones produced by the encoder, e.g. as given by
+     * {@link OpusProjectionEncoder#getStreams()}, {@link OpusProjectionEncoder#getCoupledStreams()}, and
+     * {@link OpusProjectionEncoder#getDemixingMatrix(ByteBuffer)}.
+     *
+     * @param sampleRate Sample rate to decode at, in Hz
+     * @param channels Number of channels to output.
+     * @param streams The total number of streams coded in the input.
+     * @param coupledStreams Number of streams to decode as coupled (2 channel) streams.
+     * @param demixingMatrix A direct ByteBuffer holding the demixing matrix. The matrix is read from the start of the
+     *                       buffer, and is copied by the decoder, so the buffer may be reused afterwards.
+     * @param demixingMatrixSize The size of the demixing matrix, in bytes.
+     */
+    public OpusProjectionDecoder(int sampleRate, int channels, int streams, int coupledStreams, ByteBuffer demixingMatrix, int demixingMatrixSize) {
+        // This line needs to be here, since RapidOpus must be forced to load before native methods can be called.
+        Cleaner cleaner = RapidOpus.cleaner;
+
+        if (!demixingMatrix.isDirect()) {
+            throw new IllegalArgumentException("Demixing matrix buffer must be direct");
+        }
+        if (demixingMatrix.capacity() < demixingMatrixSize) {
+            throw new IndexOutOfBoundsException("Demixing matrix buffer is too small: " + demixingMatrix.capacity() + " < " + demixingMatrixSize);
+        }
+
+        this.structPointer = projectionDecoderCreate(sampleRate, channels, streams, coupledStreams, demixingMatrix, demixingMatrixSize);
+        this.channels = channels;
+
+        this.state = new State(structPointer);
+        this.cleanable = cleaner.register(this, state);
+    }
+
+    // Generic CTLs
+
+    /**
+     * Resets the decoder to a freshly initialized state.
+     */
+    public void resetState() {
+        projectionDecoderResetState(structPointer);
+    }
+
+    /**
+     * Decodes a projection opus packet into 16s samples.
+     *
+     * @param inputData Binary data of the input packet
+     * @param outData A direct ByteBuffer no less than the required size to fit all data.
+     *                Size should be frameSize * channels * Short.BYTES
+     * @param frameSize Number of samples per channel of available space in outData.
+     * @param decodeFec Either 0 or 1 to request that any in-band forward error correction data be decoded
+     * @return The number of decoded samples.
+     * @see OpusDecoder#decode(byte[], ByteBuffer, int, int)
+     */
+    public int decode(byte[] inputData, ByteBuffer outData, int frameSize, int decodeFec) {
+        int res = projectionDecode(structPointer, inputData, outData, frameSize, decodeFec);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return res;
+    }
+
+    /**
+     * Decodes a projection opus packet into 16s samples.
+     *
+     * @param inputData A direct ByteBuffer of the opus packet data.
+     * @param outData A direct ByteBuffer no less than the required size to fit all data.
+     *                Size should be frameSize * channels * Short.BYTES
+     * @param frameSize Number of samples per channel of available space in outData.
+     * @param decodeFec Either 0 or 1 to request that any in-band forward error correction data be decoded
+     * @return The number of decoded samples.
+     * @see OpusDecoder#decode(ByteBuffer, ByteBuffer, int, int)
+     */
+    public int decode(ByteBuffer inputData, ByteBuffer outData, int frameSize, int decodeFec) {
+        int res = projectionDecode(structPointer, inputData, outData, frameSize, decodeFec);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return res;
+    }
+
+    /**
+     * Decodes a projection opus packet into floating point samples.
+     *
+     * @param inputData Binary data of the input packet
+     * @param outData A direct ByteBuffer no less than the required size to fit all data.
+     *                Size should be frameSize * channels * Float.BYTES
+     * @param frameSize Number of samples per channel of available space in outData.
+     * @param decodeFec Either 0 or 1 to request that any in-band forward error correction data be decoded
+     * @return The number of decoded samples.
+     * @see OpusDecoder#decodeFloat(byte[], ByteBuffer, int, int)
+     */
+    public int decodeFloat(byte[] inputData, ByteBuffer outData, int frameSize, int decodeFec) {
+        int res = projectionDecodeFloat(structPointer, inputData, outData, frameSize, decodeFec);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return res;
+    }
+
+    /**
+     * Decodes a projection opus packet into floating point samples.
+     *
+     * @param inputData A direct ByteBuffer of the opus packet data
+     * @param outData A direct ByteBuffer no less than the required size to fit all data.
+     *                Size should be frameSize * channels * Float.BYTES
+     * @param frameSize Number of samples per channel of available space in outData.
+     * @param decodeFec Either 0 or 1 to request that any in-band forward error correction data be decoded
+     * @return The number of decoded samples.
+     * @see OpusDecoder#decodeFloat(ByteBuffer, ByteBuffer, int, int)
+     */
+    public int decodeFloat(ByteBuffer inputData, ByteBuffer outData, int frameSize, int decodeFec) {
+        int res = projectionDecodeFloat(structPointer, inputData, outData, frameSize, decodeFec);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return res;
+    }
+
+    @Override
+    public void close() {
+        cleanable.clean();
+    }
+
+    // Native Methods
+
+    private static native long projectionDecoderCreate(int sampleRate, int channels, int streams, int coupledStreams, ByteBuffer demixingMatrix, int demixingMatrixSize);
+    private static native void projectionDecoderResetState(long pDecoder);
+    private static native void projectionDecoderDestroy(long pDecoder);
+
+    private static native int projectionDecode(long pDecoder, byte[] inputData, ByteBuffer outData, int frameSize, int decodeFec);
+    private static native int projectionDecode(long pDecoder, ByteBuffer inputData, ByteBuffer outData, int frameSize, int decodeFec);
+    private static native int projectionDecodeFloat(long pDecoder, byte[] inputData, ByteBuffer outData, int frameSize, int decodeFec);
+    private static native int projectionDecodeFloat(long pDecoder, ByteBuffer inputData, ByteBuffer outData, int frameSize, int decodeFec);
+}
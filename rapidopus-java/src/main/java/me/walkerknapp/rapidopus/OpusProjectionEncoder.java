@@ -0,0 +1,309 @@
+package me.walkerknapp.rapidopus;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+
+/**
+ * An object that encodes ambisonic audio into opus-encoded projection (channel mapping family 3) packets.
+ *
+ * The encoder mixes the ambisonic input into a set of streams using a mixing matrix. The matching demixing matrix
+ * must be sent to the decoder (e.g. in a stream header), and can be retrieved with {@link #getDemixingMatrix(ByteBuffer)}.
+ */
+public class OpusProjectionEncoder implements AutoCloseable {
+
+    static class State implements Runnable {
+        private long structPointer;
+
+        State(long pointer) {
+            this.structPointer = pointer;
+        }
+
+        public void run() {
+            projectionEncoderDestroy(structPointer);
+        }
+    }
+
+    private final State state;
+    private final Cleaner.Cleanable cleanable;
+
+    final long structPointer;
+
+    private final int channels;
+    private final int streams;
+    private final int coupledStreams;
+
+    /**
+     * Allocates and initializes a projection encoder state for ambisonic input.
+     *
+     * @param sampleRate Sample rate in Hz. This must be 8000, 12000, 16000, 24000, or 48000
+     * @param channels Number of channels in the input signal. This must be (order + 1)^2 ambisonic channels,
+     *                 optionally plus 2 non-diegetic stereo channels, for orders 1 to 3.
+     * @param mappingFamily The channel mapping family to use. Must be 3.
+     * @param applicationMode Application mode.
+     */
+    public OpusProjectionEncoder(int sampleRate, int channels, int mappingFamily, OpusApplicationMode applicationMode) {
+        // This line needs to be here, since RapidOpus must be forced to load before native methods can be called.
+        Cleaner cleaner = RapidOpus.cleaner;
+
+        int[] layout = new int[2];
+        this.structPointer = projectionAmbisonicsEncoderCreate(sampleRate, channels, mappingFamily, applicationMode.id, layout);
+        this.channels = channels;
+        this.streams = layout[0];
+        this.coupledStreams = layout[1];
+
+        this.state = new State(structPointer);
+        this.cleanable = cleaner.register(this, state);
+    }
+
+    /**
+     * Allocates and initializes a projection encoder state for ambisonic input, using mapping family 3.
+     *
+     * @param sampleRate Sample rate in Hz. This must be 8000, 12000, 16000, 24000, or 48000
+     * @param channels Number of channels in the input signal.
+     * @param applicationMode Application mode.
+     */
+    public OpusProjectionEncoder(int sampleRate, int channels, OpusApplicationMode applicationMode) {
+        this(sampleRate, channels, 3, applicationMode);
+    }
+
+    /**
+     * Gets the number of channels in the input signal.
+     *
+     * @return The number of channels.
+     */
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * Gets the total number of streams encoded in each packet.
+     *
+     * @return The number of streams.
+     */
+    public int getStreams() {
+        return streams;
+    }
+
+    /**
+     * Gets the number of coupled (2 channel) streams encoded in each packet.
+     *
+     * @return The number of coupled streams.
+     */
+    public int getCoupledStreams() {
+        return coupledStreams;
+    }
+
+    /**
+     * Gets the size of the demixing matrix.
+     *
+     * @return The size of the demixing matrix, in bytes.
+     */
+    public int getDemixingMatrixSize() {
+        return projectionEncoderGetDemixingMatrixSize(structPointer);
+    }
+
+    /**
+     * Gets the gain of the demixing matrix.
+     *
+     * @return The gain of the demixing matrix, in Q8 dB units.
+     */
+    public int getDemixingMatrixGain() {
+        return projectionEncoderGetDemixingMatrixGain(structPointer);
+    }
+
+    /**
+     * Copies the demixing matrix into a direct ByteBuffer, in the format expected by {@link OpusProjectionDecoder}.
+     * The matrix is written from the start of the buffer, and its position and limit are left unchanged.
+     *
+     * @param matrix A direct ByteBuffer with a capacity of at least {@link #getDemixingMatrixSize()}.
+     * @return The size of the demixing matrix written, in bytes.
+     */
+    public int getDemixingMatrix(ByteBuffer matrix) {
+        int size = getDemixingMatrixSize();
+
+        if (!matrix.isDirect()) {
+            throw new IllegalArgumentException("Demixing matrix buffer must be direct");
+        }
+        if (matrix.capacity() < size) {
+            throw new IndexOutOfBoundsException("Demixing matrix buffer is too small: " + matrix.capacity() + " < " + size);
+        }
+
+        int res = projectionEncoderGetDemixingMatrix(structPointer, matrix, size);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return size;
+    }
+
+    /**
+     * Allocates a direct ByteBuffer holding the demixing matrix, in the format expected by {@link OpusProjectionDecoder}.
+     *
+     * @return A new direct ByteBuffer, sized to the demixing matrix.
+     */
+    public ByteBuffer getDemixingMatrix() {
+        ByteBuffer matrix = ByteBuffer.allocateDirect(getDemixingMatrixSize());
+        getDemixingMatrix(matrix);
+        return matrix;
+    }
+
+    // Generic CTLs
+
+    /**
+     * Resets the encoder to a freshly initialized state.
+     */
+    public void resetState() {
+        projectionEncoderResetState(structPointer);
+    }
+
+    // Encoder CTLs
+
+    /**
+     * Gets the encoder's computational complexity.
+     *
+     * @return The complexity, from 0 to 10 inclusive.
+     */
+    public int getComplexity() {
+        return projectionEncoderGetComplexity(structPointer);
+    }
+
+    /**
+     * Sets the computational complexity of every stream in the encoder.
+     *
+     * @param complexity The complexity to use, from 0 to 10 inclusive.
+     * @see OpusEncoder#setComplexity(int)
+     */
+    public void setComplexity(int complexity) {
+        checkCtl(projectionEncoderSetComplexity(structPointer, complexity));
+    }
+
+    /**
+     * Gets the encoder's total bitrate configuration.
+     *
+     * @return The bitrate in bits per second.
+     */
+    public int getBitrate() {
+        return projectionEncoderGetBitrate(structPointer);
+    }
+
+    /**
+     * Sets the total bitrate of the encoder, which is distributed across the streams.
+     *
+     * @param bitrate The bitrate in bits per second, {@link OpusEncoder#AUTO}, or {@link OpusEncoder#BITRATE_MAX}.
+     * @see OpusEncoder#setBitrate(int)
+     */
+    public void setBitrate(int bitrate) {
+        checkCtl(projectionEncoderSetBitrate(structPointer, bitrate));
+    }
+
+    /**
+     * Encodes a projection opus frame.
+     * The frame size must be a supported Opus frame size. For instance at 48kHz:
+     * the permitted values are 120, 240, 480, 960, 1920, and 2880.
+     *
+     * @param inputData The 16s PCM data, interleaved in ambisonic channel order. Must be size frameSize * channels
+     * @param frameSize Number of samples per channel in the input signal.
+     * @param outputData A direct ByteBuffer to store the output. Will only write up to buffer capacity.
+     * @return The length of the encoded packet
+     */
+    public int encode(short[] inputData, int frameSize, ByteBuffer outputData) {
+        int res = projectionEncode(structPointer, inputData, frameSize, outputData);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return res;
+    }
+
+    /**
+     * Encodes a projection opus frame.
+     * The frame size must be a supported Opus frame size. For instance at 48kHz:
+     * the permitted values are 120, 240, 480, 960, 1920, and 2880.
+     *
+     * @param inputData A direct ByteBuffer of 16s PCM data, interleaved in ambisonic channel order. Must be size frameSize * channels * Short.BYTES
+     * @param frameSize Number of samples per channel in the input signal.
+     * @param outputData A direct ByteBuffer to store the output. Will only write up to buffer capacity.
+     * @return The length of the encoded packet
+     */
+    public int encode(ByteBuffer inputData, int frameSize, ByteBuffer outputData) {
+        int res = projectionEncode(structPointer, inputData, frameSize, outputData);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return res;
+    }
+
+    /**
+     * Encodes a projection opus frame from floating point input.
+     * The frame size must be a supported Opus frame size. For instance at 48kHz:
+     * the permitted values are 120, 240, 480, 960, 1920, and 2880.
+     *
+     * @param inputData The floating-point PCM data, interleaved in ambisonic channel order. Must be size frameSize * channels
+     * @param frameSize The number of samples per channel in the input signal.
+     * @param outputData A direct ByteBuffer to store the output. Will only write up to buffer capacity.
+     * @return The length of the encoded packet.
+     */
+    public int encodeFloat(float[] inputData, int frameSize, ByteBuffer outputData) {
+        int res = projectionEncodeFloat(structPointer, inputData, frameSize, outputData);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return res;
+    }
+
+    /**
+     * Encodes a projection opus frame from floating point input.
+     * The frame size must be a supported Opus frame size. For instance at 48kHz:
+     * the permitted values are 120, 240, 480, 960, 1920, and 2880.
+     *
+     * @param inputData A direct ByteBuffer of the floating-point PCM data, interleaved in ambisonic channel order. Must be size frameSize * channels * Float.BYTES
+     * @param frameSize The number of samples per channel in the input signal.
+     * @param outputData A direct ByteBuffer to store the output. Will only write up to buffer capacity.
+     * @return The length of the encoded packet.
+     */
+    public int encodeFloat(ByteBuffer inputData, int frameSize, ByteBuffer outputData) {
+        int res = projectionEncodeFloat(structPointer, inputData, frameSize, outputData);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return res;
+    }
+
+    @Override
+    public void close() {
+        cleanable.clean();
+    }
+
+    private static void checkCtl(int res) {
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalArgumentException(RapidOpusErrorCodes.translateError(res));
+        }
+    }
+
+    // Native methods
+
+    private static native long projectionAmbisonicsEncoderCreate(int sampleRate, int channels, int mappingFamily, int applicationMode, int[] layout);
+    private static native void projectionEncoderDestroy(long structPointer);
+
+    private static native void projectionEncoderResetState(long structPointer);
+    private static native int projectionEncoderGetComplexity(long structPointer);
+    private static native int projectionEncoderSetComplexity(long structPointer, int complexity);
+    private static native int projectionEncoderGetBitrate(long structPointer);
+    private static native int projectionEncoderSetBitrate(long structPointer, int bitrate);
+    private static native int projectionEncoderGetDemixingMatrixSize(long structPointer);
+    private static native int projectionEncoderGetDemixingMatrixGain(long structPointer);
+    private static native int projectionEncoderGetDemixingMatrix(long structPointer, ByteBuffer matrix, int size);
+
+    private static native int projectionEncode(long structPointer, short[] inputData, int frameSize, ByteBuffer outputData);
+    private static native int projectionEncode(long structPointer, ByteBuffer inputData, int frameSize, ByteBuffer outputData);
+    private static native int projectionEncodeFloat(long structPointer, float[] inputData, int frameSize, ByteBuffer outputData);
+    private static native int projectionEncodeFloat(long structPointer, ByteBuffer inputData, int frameSize, ByteBuffer outputData);
+}
@@ -0,0 +1,251 @@
+package me.walkerknapp.rapidopus;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An object that merges multiple Opus packets into a single packet, or splits packets into smaller ones, without
+ * decoding them.
+ *
+ * Packets are added with {@link #cat(ByteBuffer, int, int)}, and any contiguous range of the frames added so far can
+ * then be written out as a new packet with {@link #outRange(int, int, ByteBuffer, int, int)}. All packets added
+ * between two resets must have the same TOC configuration (mode, bandwidth, frame size, and channel count), and may
+ * hold no more than 120 ms of audio in total.
+ *
+ * The repacketizer does not copy packet data, but refers to it in place. The buffers holding the added packets must
+ * not be modified until the repacketizer is reset. A repacketizer is not thread-safe.
+ */
+public class OpusRepacketizer implements AutoCloseable {
+
+    static class State implements Runnable {
+        private long structPointer;
+
+        State(long pointer) {
+            this.structPointer = pointer;
+        }
+
+        public void run() {
+            repacketizerDestroy(structPointer);
+        }
+    }
+
+    private final State state;
+    private final Cleaner.Cleanable cleanable;
+
+    private final long structPointer;
+
+    // Keeps the buffers referred to by the native state reachable until the next reset.
+    private final List<ByteBuffer> packets = new ArrayList<>(48);
+
+    /**
+     * Allocates and initializes a repacketizer state.
+     */
+    public OpusRepacketizer() {
+        // This line needs to be here, since RapidOpus must be forced to load before native methods can be called.
+        Cleaner cleaner = RapidOpus.cleaner;
+
+        this.structPointer = repacketizerCreate();
+
+        this.state = new State(structPointer);
+        this.cleanable = cleaner.register(this, state);
+    }
+
+    /**
+     * Resets the repacketizer, discarding all packets added so far, so that a new set of packets can be merged.
+     */
+    public void reset() {
+        repacketizerInit(structPointer);
+        packets.clear();
+    }
+
+    /**
+     * Adds a packet to the current state of the repacketizer.
+     * If this fails, the state of the repacketizer is unchanged.
+     *
+     * @param packet A direct ByteBuffer holding the packet. Must not be modified until the repacketizer is reset.
+     * @param offset The offset of the packet in the buffer, in bytes.
+     * @param length The length of the packet, in bytes.
+     */
+    public void cat(ByteBuffer packet, int offset, int length) {
+        checkRange(packet, offset, length);
+
+        int res = repacketizerCat(structPointer, packet, offset, length);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        packets.add(packet);
+    }
+
+    /**
+     * Adds a packet to the current state of the repacketizer.
+     * If this fails, the state of the repacketizer is unchanged.
+     *
+     * @param packet A direct ByteBuffer holding the packet, from the start of the buffer to its capacity.
+     *               Must not be modified until the repacketizer is reset.
+     */
+    public void cat(ByteBuffer packet) {
+        cat(packet, 0, packet.capacity());
+    }
+
+    /**
+     * Gets the total number of frames contained in the packets added since the last reset.
+     *
+     * @return The number of frames.
+     */
+    public int getFrameCount() {
+        return repacketizerGetNbFrames(structPointer);
+    }
+
+    /**
+     * Writes a range of the frames added since the last reset into a single packet.
+     *
+     * @param begin The index of the first frame to include.
+     * @param end One past the index of the last frame to include.
+     * @param outputData A direct ByteBuffer to write the packet to.
+     * @param offset The offset in the output buffer to write the packet at, in bytes.
+     * @param maxLength The maximum number of bytes that may be written. 1277 bytes per frame is always sufficient.
+     * @return The length of the packet written.
+     */
+    public int outRange(int begin, int end, ByteBuffer outputData, int offset, int maxLength) {
+        checkRange(outputData, offset, maxLength);
+
+        int res = repacketizerOutRange(structPointer, begin, end, outputData, offset, maxLength);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return res;
+    }
+
+    /**
+     * Writes a range of the frames added since the last reset into a single packet, at the start of the output buffer.
+     *
+     * @param begin The index of the first frame to include.
+     * @param end One past the index of the last frame to include.
+     * @param outputData A direct ByteBuffer to write the packet to. Will only write up to buffer capacity.
+     * @return The length of the packet written.
+     */
+    public int outRange(int begin, int end, ByteBuffer outputData) {
+        return outRange(begin, end, outputData, 0, outputData.capacity());
+    }
+
+    /**
+     * Writes all frames added since the last reset into a single packet, at the start of the output buffer.
+     *
+     * @param outputData A direct ByteBuffer to write the packet to. Will only write up to buffer capacity.
+     * @return The length of the packet written.
+     */
+    public int out(ByteBuffer outputData) {
+        return outRange(0, getFrameCount(), outputData, 0, outputData.capacity());
+    }
+
+    @Override
+    public void close() {
+        cleanable.clean();
+    }
+
+    /**
+     * Pads a packet to a larger size, in place, without changing its decoded audio.
+     *
+     * @param packet A direct ByteBuffer holding the packet at its start.
+     * @param length The current length of the packet, in bytes.
+     * @param newLength The length to pad the packet to. Must be at least length, and within the buffer's capacity.
+     */
+    public static void pad(ByteBuffer packet, int length, int newLength) {
+        checkRange(packet, 0, newLength);
+
+        int res = packetPad(packet, length, newLength);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+    }
+
+    /**
+     * Pads a packet to a larger size, in place, without changing its decoded audio.
+     *
+     * @param packet Binary data of the packet, at the start of the array.
+     * @param length The current length of the packet, in bytes.
+     * @param newLength The length to pad the packet to. Must be at least length, and no more than the array length.
+     */
+    public static void pad(byte[] packet, int length, int newLength) {
+        if (newLength > packet.length) {
+            throw new IndexOutOfBoundsException("Padded length exceeds the array: " + newLength + " > " + packet.length);
+        }
+
+        int res = packetPad(packet, length, newLength);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+    }
+
+    /**
+     * Removes all padding from a packet, in place, without changing its decoded audio.
+     *
+     * @param packet A direct ByteBuffer holding the packet at its start.
+     * @param length The current length of the packet, in bytes.
+     * @return The new length of the packet.
+     */
+    public static int unpad(ByteBuffer packet, int length) {
+        checkRange(packet, 0, length);
+
+        int res = packetUnpad(packet, length);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return res;
+    }
+
+    /**
+     * Removes all padding from a packet, in place, without changing its decoded audio.
+     *
+     * @param packet Binary data of the packet, at the start of the array.
+     * @param length The current length of the packet, in bytes.
+     * @return The new length of the packet.
+     */
+    public static int unpad(byte[] packet, int length) {
+        if (length > packet.length) {
+            throw new IndexOutOfBoundsException("Length exceeds the array: " + length + " > " + packet.length);
+        }
+
+        int res = packetUnpad(packet, length);
+
+        if(res < RapidOpusErrorCodes.OPUS_OK) {
+            throw new IllegalStateException(RapidOpusErrorCodes.translateError(res));
+        }
+
+        return res;
+    }
+
+    private static void checkRange(ByteBuffer buffer, int offset, int length) {
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("Buffer must be direct");
+        }
+        if (offset < 0 || length < 0 || offset > buffer.capacity() - length) {
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + offset + " + " + length + ") is out of bounds for capacity " + buffer.capacity());
+        }
+    }
+
+    // Native methods
+
+    private static native long repacketizerCreate();
+    private static native void repacketizerInit(long structPointer);
+    private static native void repacketizerDestroy(long structPointer);
+
+    private static native int repacketizerCat(long structPointer, ByteBuffer packet, int offset, int length);
+    private static native int repacketizerGetNbFrames(long structPointer);
+    private static native int repacketizerOutRange(long structPointer, int begin, int end, ByteBuffer outputData, int offset, int maxLength);
+
+    private static native int packetPad(ByteBuffer packet, int length, int newLength);
+    private static native int packetPad(byte[] packet, int length, int newLength);
+    private static native int packetUnpad(ByteBuffer packet, int length);
+    private static native int packetUnpad(byte[] packet, int length);
+}
@@ -0,0 +1,137 @@
+package me.walkerknapp.rapidopus;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An encoder and decoder pair, e.g. for one leg of a call, whose native calls run on an {@link OpusSessionExecutor}
+ * instead of the calling thread. This is meant for sessions that each run on their own virtual thread: the thread
+ * queues a call, then waits on the returned future (e.g. with {@link CompletableFuture#join()}), which parks it
+ * without pinning its carrier thread.
+ *
+ * A session runs at most one encode and one decode at a time, so its encoder and decoder are never used from two
+ * threads at once. The buffers passed to a call must not be touched until its future completes. The session does
+ * not own its encoder and decoder, which may be closed once every call has completed.
+ */
+public class OpusSession {
+    private final OpusSessionExecutor executor;
+    final OpusEncoder encoder;
+    final OpusDecoder decoder;
+
+    private final AtomicBoolean encoding = new AtomicBoolean();
+    private final AtomicBoolean decoding = new AtomicBoolean();
+
+    OpusSession(OpusSessionExecutor executor, OpusEncoder encoder, OpusDecoder decoder) {
+        this.executor = executor;
+        this.encoder = encoder;
+        this.decoder = decoder;
+    }
+
+    /**
+     * Encodes a frame of 16-bit samples from the position of a buffer into a packet at the position of another.
+     * Neither buffer's position is changed.
+     *
+     * @param pcm A heap or direct buffer holding the frame's interleaved samples, in the platform's byte order.
+     * @param frameSize The number of samples per channel in the frame. Must be a supported Opus frame size.
+     * @param packet A heap or direct buffer to write the packet to, with room for up to
+     *               {@value OpusSessionExecutor#MAX_PACKET_SIZE} bytes.
+     * @return A future of the length of the packet. It completes exceptionally with an {@link IllegalStateException}
+     *         if the frame could not be encoded.
+     */
+    public CompletableFuture<Integer> encode(ByteBuffer pcm, int frameSize, ByteBuffer packet) {
+        return encode(pcm, frameSize, packet, false);
+    }
+
+    /**
+     * Encodes a frame of floating point samples from the position of a buffer into a packet at the position of another,
+     * like {@link #encode(ByteBuffer, int, ByteBuffer)}.
+     *
+     * @param pcm A heap or direct buffer holding the frame's interleaved samples, in the platform's byte order.
+     * @param frameSize The number of samples per channel in the frame. Must be a supported Opus frame size.
+     * @param packet A heap or direct buffer to write the packet to, with room for up to
+     *               {@value OpusSessionExecutor#MAX_PACKET_SIZE} bytes.
+     * @return A future of the length of the packet.
+     */
+    public CompletableFuture<Integer> encodeFloat(ByteBuffer pcm, int frameSize, ByteBuffer packet) {
+        return encode(pcm, frameSize, packet, true);
+    }
+
+    /**
+     * Decodes the packet between the position and limit of a buffer into 16-bit samples at the position of another.
+     * Neither buffer's position is changed.
+     *
+     * @param packet A heap or direct buffer holding the packet, or null if the packet was lost and should be concealed.
+     * @param frameSize The number of samples per channel of room in the output, or for a lost packet, exactly the
+     *                  number of samples per channel that are missing.
+     * @param pcm A heap or direct buffer to write the interleaved samples to.
+     * @return A future of the number of samples per channel decoded. It completes exceptionally with an
+     *         {@link IllegalStateException} if the packet could not be decoded.
+     */
+    public CompletableFuture<Integer> decode(ByteBuffer packet, int frameSize, ByteBuffer pcm) {
+        return decode(packet, frameSize, pcm, false);
+    }
+
+    /**
+     * Decodes the packet between the position and limit of a buffer into floating point samples at the position of
+     * another, like {@link #decode(ByteBuffer, int, ByteBuffer)}.
+     *
+     * @param packet A heap or direct buffer holding the packet, or null if the packet was lost and should be concealed.
+     * @param frameSize The number of samples per channel of room in the output, or for a lost packet, exactly the
+     *                  number of samples per channel that are missing.
+     * @param pcm A heap or direct buffer to write the interleaved samples to.
+     * @return A future of the number of samples per channel decoded.
+     */
+    public CompletableFuture<Integer> decodeFloat(ByteBuffer packet, int frameSize, ByteBuffer pcm) {
+        return decode(packet, frameSize, pcm, true);
+    }
+
+    private CompletableFuture<Integer> encode(ByteBuffer pcm, int frameSize, ByteBuffer packet, boolean isFloat) {
+        if (encoder == null) {
+            throw new IllegalStateException("Session has no encoder");
+        }
+        int pcmLength = frameSize * encoder.channels * (isFloat ? Float.BYTES : Short.BYTES);
+        if (frameSize <= 0 || frameSize > 5760 || pcm.remaining() < pcmLength) {
+            throw new IllegalArgumentException("Buffer does not hold a frame of " + frameSize + " samples");
+        }
+        if (packet.isReadOnly() || !packet.hasRemaining()) {
+            throw new IllegalArgumentException("Packet buffer must be writable and have room");
+        }
+        if (!encoding.compareAndSet(false, true)) {
+            throw new IllegalStateException("Session is already encoding");
+        }
+
+        OpusSessionExecutor.Request request = new OpusSessionExecutor.Request(this, true, isFloat,
+                pcm, pcm.position(), pcmLength,
+                packet, packet.position(), Math.min(packet.remaining(), OpusSessionExecutor.MAX_PACKET_SIZE), frameSize);
+        executor.submit(request);
+        return request.future;
+    }
+
+    private CompletableFuture<Integer> decode(ByteBuffer packet, int frameSize, ByteBuffer pcm, boolean isFloat) {
+        if (decoder == null) {
+            throw new IllegalStateException("Session has no decoder");
+        }
+        int packetLength = packet != null ? packet.remaining() : 0;
+        if (packetLength > OpusSessionExecutor.MAX_PACKET_SIZE) {
+            throw new IllegalArgumentException("Packet is larger than " + OpusSessionExecutor.MAX_PACKET_SIZE + " bytes: " + packetLength);
+        }
+        int pcmLength = frameSize * decoder.channels * (isFloat ? Float.BYTES : Short.BYTES);
+        if (frameSize <= 0 || frameSize > 5760 || pcm.isReadOnly() || pcm.remaining() < pcmLength) {
+            throw new IllegalArgumentException("Output buffer does not have writable room for " + frameSize + " samples");
+        }
+        if (!decoding.compareAndSet(false, true)) {
+            throw new IllegalStateException("Session is already decoding");
+        }
+
+        OpusSessionExecutor.Request request = new OpusSessionExecutor.Request(this, false, isFloat,
+                packet, packet != null ? packet.position() : 0, packetLength,
+                pcm, pcm.position(), pcmLength, frameSize);
+        executor.submit(request);
+        return request.future;
+    }
+
+    void finish(boolean encode) {
+        (encode ? encoding : decoding).set(false);
+    }
+}
@@ -0,0 +1,332 @@
+package me.walkerknapp.rapidopus;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the native encode and decode calls of many {@link OpusSession}s on a small, fixed set of platform threads.
+ *
+ * A virtual thread that calls into native code is pinned to its carrier thread until the call returns, so thousands
+ * of virtual threads that each encode and decode their own stream can tie up every carrier in JNI. Sessions instead
+ * queue their calls here and get a {@link CompletableFuture} back. Waiting on it parks a virtual thread, which frees
+ * its carrier. Neither sessions nor the executor hold monitors while waiting, so a virtual thread is never pinned by a
+ * synchronized block either.
+ *
+ * Each platform thread takes every call that is waiting, up to the batch size, and runs the encodes and the decodes
+ * through an {@link OpusEncoderBatch} and an {@link OpusDecoderBatch}, so a busy executor makes one JNI transition per
+ * batch rather than per frame. PCM and packets are copied to and from the batch buffers, so sessions may use heap or
+ * direct buffers.
+ *
+ * Futures are completed on the executor's threads, so dependent stages should use the async variants or be cheap.
+ * Closing the executor fails every call that has not run yet.
+ */
+public class OpusSessionExecutor implements AutoCloseable {
+    /**
+     * The largest packet that can be encoded or decoded, in bytes.
+     */
+    public static final int MAX_PACKET_SIZE = 4000;
+
+    // Room for 120 ms of stereo float samples at 48 kHz
+    private static final int PCM_STRIDE = 5760 * 2 * Float.BYTES;
+
+    private final BlockingQueue<Request> queue;
+    private final Thread[] threads;
+    private final int batchSize;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder operations = new LongAdder();
+
+    private volatile boolean closed;
+
+    /**
+     * Creates an executor and starts its threads.
+     *
+     * @param threadCount The number of platform threads running native calls, usually the number of cores.
+     * @param batchSize The most calls run in one batch.
+     * @param queueCapacity The most calls waiting to run. Sessions wait for room once the queue is full.
+     */
+    public OpusSessionExecutor(int threadCount, int batchSize, int queueCapacity) {
+        // This line needs to be here, since RapidOpus must be forced to load before native methods can be called.
+        Cleaner cleaner = RapidOpus.cleaner;
+
+        if (threadCount <= 0 || batchSize <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("Thread count, batch size and queue capacity must be positive");
+        }
+
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new Thread(new Worker(), "rapidopus-session-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+    }
+
+    /**
+     * Opens a session that runs its calls on this executor.
+     *
+     * @param encoder The encoder of the session's outbound stream, or null if it only decodes.
+     * @param decoder The decoder of the session's inbound stream, or null if it only encodes.
+     * @return The session.
+     */
+    public OpusSession openSession(OpusEncoder encoder, OpusDecoder decoder) {
+        if (encoder == null && decoder == null) {
+            throw new IllegalArgumentException("A session needs an encoder or a decoder");
+        }
+        checkOpen();
+
+        return new OpusSession(this, encoder, decoder);
+    }
+
+    /**
+     * Gets the number of batches run so far.
+     *
+     * @return The number of batches.
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * Gets the number of encode and decode calls run so far. Divided by {@link #getBatchCount()}, this gives the
+     * average batch size, and so how many JNI transitions batching saved.
+     *
+     * @return The number of calls.
+     */
+    public long getOperationCount() {
+        return operations.sum();
+    }
+
+    /**
+     * Stops the executor's threads once their current batch is done, and fails every call that has not run yet.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        for (Thread thread : threads) {
+            boolean interrupted = false;
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        failQueued();
+    }
+
+    void submit(Request request) {
+        try {
+            checkOpen();
+            queue.put(request);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            request.fail(e);
+            return;
+        } catch (IllegalStateException e) {
+            request.fail(e);
+            return;
+        }
+
+        // The executor may have closed while the call was queued, after its queue was last emptied
+        if (closed) {
+            failQueued();
+        }
+    }
+
+    private void failQueued() {
+        Request request;
+        while ((request = queue.poll()) != null) {
+            request.fail(new IllegalStateException("Executor is closed"));
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Executor is closed");
+        }
+    }
+
+    /**
+     * A queued encode or decode call of a session.
+     */
+    static final class Request {
+        final OpusSession session;
+        final boolean encode;
+        final boolean isFloat;
+        final ByteBuffer input;
+        final int inputOffset;
+        final int inputLength;
+        final ByteBuffer output;
+        final int outputOffset;
+        final int outputLength;
+        final int frameSize;
+        final CompletableFuture<Integer> future = new CompletableFuture<>();
+
+        Request(OpusSession session, boolean encode, boolean isFloat, ByteBuffer input, int inputOffset, int inputLength,
+                ByteBuffer output, int outputOffset, int outputLength, int frameSize) {
+            this.session = session;
+            this.encode = encode;
+            this.isFloat = isFloat;
+            this.input = input;
+            this.inputOffset = inputOffset;
+            this.inputLength = inputLength;
+            this.output = output;
+            this.outputOffset = outputOffset;
+            this.outputLength = outputLength;
+            this.frameSize = frameSize;
+        }
+
+        void complete(int result) {
+            session.finish(encode);
+            if (result < RapidOpusErrorCodes.OPUS_OK) {
+                future.completeExceptionally(new IllegalStateException(RapidOpusErrorCodes.translateError(result)));
+            } else {
+                future.complete(result);
+            }
+        }
+
+        void fail(Throwable cause) {
+            session.finish(encode);
+            future.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Takes queued calls in batches and runs them, with batch tables and buffers of its own.
+     */
+    private class Worker implements Runnable {
+        private final List<Request> taken = new ArrayList<>();
+        private final OpusEncoderBatch encoderBatch = new OpusEncoderBatch(batchSize);
+        private final OpusDecoderBatch decoderBatch = new OpusDecoderBatch(batchSize);
+        private final ByteBuffer pcm = ByteBuffer.allocateDirect(batchSize * PCM_STRIDE);
+        private final ByteBuffer packets = ByteBuffer.allocateDirect(batchSize * MAX_PACKET_SIZE);
+
+        @Override
+        public void run() {
+            while (!closed) {
+                try {
+                    Request first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    taken.add(first);
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                queue.drainTo(taken, batchSize - 1);
+
+                try {
+                    // Every batch runs one sample format, so a mix of formats takes one pass per format
+                    for (int pass = 0; pass < 2; pass++) {
+                        boolean isFloat = pass == 1;
+                        runEncodes(isFloat);
+                        runDecodes(isFloat);
+                    }
+                    batches.increment();
+                    operations.add(taken.size());
+                } catch (RuntimeException e) {
+                    for (Request request : taken) {
+                        if (!request.future.isDone()) {
+                            request.fail(e);
+                        }
+                    }
+                } finally {
+                    taken.clear();
+                }
+            }
+        }
+
+        private void runEncodes(boolean isFloat) {
+            encoderBatch.clear();
+            for (int i = 0; i < taken.size(); i++) {
+                Request request = taken.get(i);
+                if (request.encode && request.isFloat == isFloat) {
+                    copy(request.input, request.inputOffset, pcm, i * PCM_STRIDE, request.inputLength);
+                    encoderBatch.add(request.session.encoder, i * PCM_STRIDE, request.frameSize,
+                            i * MAX_PACKET_SIZE, request.outputLength);
+                }
+            }
+            if (encoderBatch.size() == 0) {
+                return;
+            }
+
+            if (isFloat) {
+                encoderBatch.encodeFloat(pcm, packets);
+            } else {
+                encoderBatch.encode(pcm, packets);
+            }
+
+            int entry = 0;
+            for (int i = 0; i < taken.size(); i++) {
+                Request request = taken.get(i);
+                if (request.encode && request.isFloat == isFloat) {
+                    int result = encoderBatch.getResult(entry++);
+                    if (result > 0) {
+                        copy(packets, i * MAX_PACKET_SIZE, request.output, request.outputOffset, result);
+                    }
+                    request.complete(result);
+                }
+            }
+        }
+
+        private void runDecodes(boolean isFloat) {
+            decoderBatch.clear();
+            for (int i = 0; i < taken.size(); i++) {
+                Request request = taken.get(i);
+                if (!request.encode && request.isFloat == isFloat) {
+                    if (request.inputLength > 0) {
+                        copy(request.input, request.inputOffset, packets, i * MAX_PACKET_SIZE, request.inputLength);
+                    }
+                    decoderBatch.add(request.session.decoder, i * MAX_PACKET_SIZE, request.inputLength,
+                            i * PCM_STRIDE, request.frameSize, 0);
+                }
+            }
+            if (decoderBatch.size() == 0) {
+                return;
+            }
+
+            if (isFloat) {
+                decoderBatch.decodeFloat(packets, pcm);
+            } else {
+                decoderBatch.decode(packets, pcm);
+            }
+
+            int entry = 0;
+            for (int i = 0; i < taken.size(); i++) {
+                Request request = taken.get(i);
+                if (!request.encode && request.isFloat == isFloat) {
+                    int result = decoderBatch.getResult(entry++);
+                    if (result > 0) {
+                        int sampleBytes = request.session.decoder.channels * (isFloat ? Float.BYTES : Short.BYTES);
+                        copy(pcm, i * PCM_STRIDE, request.output, request.outputOffset, result * sampleBytes);
+                    }
+                    request.complete(result);
+                }
+            }
+        }
+
+        private void copy(ByteBuffer from, int fromOffset, ByteBuffer to, int toOffset, int length) {
+            ByteBuffer source = from.duplicate();
+            source.limit(fromOffset + length).position(fromOffset);
+            ByteBuffer target = to.duplicate();
+            target.position(toOffset);
+            target.put(source);
+        }
+    }
+}
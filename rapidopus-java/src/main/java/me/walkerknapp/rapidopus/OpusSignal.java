@@ -0,0 +1,43 @@
+package me.walkerknapp.rapidopus;
+
+/**
+ * A hint to the encoder about the type of signal being encoded, to bias its mode decisions.
+ */
+public enum OpusSignal {
+    /**
+     * Lets the encoder detect the type of signal on its own.
+     */
+    AUTO(-1000),
+    /**
+     * Biases thresholds towards choosing LPC or Hybrid modes.
+     */
+    VOICE(3001),
+    /**
+     * Biases thresholds towards choosing MDCT modes.
+     */
+    MUSIC(3002);
+
+    int id;
+
+    OpusSignal(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Determines the signal type from the internal integer representation.
+     * @param id The internal integer representation.
+     * @return The signal type.
+     */
+    public static OpusSignal valueOf(int id) {
+        switch (id) {
+            case -1000:
+                return AUTO;
+            case 3001:
+                return VOICE;
+            case 3002:
+                return MUSIC;
+            default:
+                throw new IllegalArgumentException("Unknown signal: " + id);
+        }
+    }
+}
@@ -39,6 +39,10 @@ public class RapidOpus {
         }
 
         System.load(rapidOpusNativesPath.toAbsolutePath().toString());
+
+        // Heap arrays are pinned in place by default. This can be turned off for collectors that can't pin objects,
+        // where a critical region holds off garbage collection, in which case arrays are copied instead.
+        setCriticalArrays(!"false".equalsIgnoreCase(System.getProperty("rapidopus.criticalArrays")));
     }
 
     private static String getOsDirectory() {
@@ -114,4 +118,17 @@ public class RapidOpus {
     * @return The version string.
     */
     public static native String getVersion();
+
+    private static native void setCriticalArrays(boolean enabled);
+
+    /**
+    * Gets the name of the backend used to encode and decode frames.
+    * This is "ffm" when libopus is called through the Foreign Function and Memory API (JDK 22 and newer), or "jni".
+    * The JNI backend can be forced by setting the system property "rapidopus.backend" to "jni".
+    *
+    * @return The backend name.
+    */
+    public static String getBackend() {
+        return NativeCodec.BACKEND;
+    }
 }
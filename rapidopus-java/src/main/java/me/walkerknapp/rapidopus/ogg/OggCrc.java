@@ -0,0 +1,61 @@
+package me.walkerknapp.rapidopus.ogg;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The CRC-32 used by Ogg pages: polynomial 0x04c11db7, no reflection, an initial value of zero and no final xor.
+ * This is not the same CRC as {@link java.util.zip.CRC32}.
+ */
+final class OggCrc {
+    /**
+     * The offset of the checksum field in a page header.
+     */
+    static final int CHECKSUM_OFFSET = 22;
+
+    private static final int[] TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int r = i << 24;
+            for (int j = 0; j < 8; j++) {
+                r = (r & 0x80000000) != 0 ? (r << 1) ^ 0x04c11db7 : r << 1;
+            }
+            TABLE[i] = r;
+        }
+    }
+
+    private OggCrc() {
+    }
+
+    /**
+     * Continues a checksum over a range of a buffer, using absolute gets.
+     *
+     * @param crc The checksum of the bytes before this range, or zero.
+     * @param buffer The buffer.
+     * @param offset The offset of the range in the buffer.
+     * @param length The length of the range, in bytes.
+     * @return The checksum including this range.
+     */
+    static int update(int crc, ByteBuffer buffer, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            crc = (crc << 8) ^ TABLE[((crc >>> 24) ^ buffer.get(i)) & 0xFF];
+        }
+        return crc;
+    }
+
+    /**
+     * Computes the checksum of a whole page, counting its checksum field as zero.
+     *
+     * @param buffer The buffer holding the page.
+     * @param offset The offset of the page in the buffer.
+     * @param length The length of the page, header included.
+     * @return The page checksum.
+     */
+    static int page(ByteBuffer buffer, int offset, int length) {
+        int crc = update(0, buffer, offset, CHECKSUM_OFFSET);
+        for (int i = 0; i < 4; i++) {
+            crc = (crc << 8) ^ TABLE[(crc >>> 24) & 0xFF];
+        }
+        return update(crc, buffer, offset + CHECKSUM_OFFSET + 4, length - CHECKSUM_OFFSET - 4);
+    }
+}
@@ -0,0 +1,390 @@
+package me.walkerknapp.rapidopus.ogg;
+
+import me.walkerknapp.rapidopus.OpusDecoder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Random access to an Ogg Opus file, which is memory-mapped and decoded in place.
+ *
+ * Seeking bisects the file on page granule positions, and starts decoding at least 80 ms before the target, so the
+ * decoder has converged by the time it reaches it. Every page found while seeking is remembered in an index, so
+ * seeks narrow down on known pages first, and repeated seeks near the same position don't touch the file again.
+ *
+ * A sidecar {@link OggOpusIndex} written alongside the file makes seeks a binary search of the index instead.
+ *
+ * Files are limited to 2 GiB, the most a single mapping can hold. The mapping is released once the file is closed
+ * and unreachable. A file is not thread-safe.
+ */
+public class OggOpusFile implements Closeable {
+    /**
+     * The number of samples, at 48 kHz, decoded and discarded before a seek target (80 ms), as recommended by RFC 7845.
+     */
+    public static final int PRE_ROLL = 3840;
+
+    private final ByteBuffer data;
+    private final OggOpusReader reader;
+    private final int serial;
+    private OggOpusIndex sidecar;
+
+    // Pages with a granule position, sorted by offset (and so by granule position)
+    private int[] indexOffsets = new int[64];
+    private long[] indexGranules = new long[64];
+    private int indexSize;
+
+    private long lastGranule = -1;
+    private boolean seeked;
+
+    /**
+     * Wraps a stream held between the position and limit of a buffer.
+     *
+     * @param stream A direct buffer, e.g. a mapped file, holding the stream.
+     * @throws IllegalArgumentException If the buffer does not hold an Ogg Opus stream.
+     */
+    public OggOpusFile(ByteBuffer stream) {
+        this.data = stream.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        this.reader = new OggOpusReader(stream);
+        this.serial = reader.getStreamSerial();
+    }
+
+    /**
+     * Wraps a stream held between the position and limit of a buffer, with a sidecar index of it.
+     * The index is ignored if it was written for another stream, or no longer matches the stream.
+     *
+     * @param stream A direct buffer, e.g. a mapped file, holding the stream.
+     * @param index The sidecar index of the stream.
+     * @throws IllegalArgumentException If the buffer does not hold an Ogg Opus stream.
+     */
+    public OggOpusFile(ByteBuffer stream, OggOpusIndex index) {
+        this(stream);
+
+        // Checking the last entry catches indexes of files that were since rewritten or truncated
+        int entryCount = index.getEntryCount();
+        if (index.getStreamSerial() == serial && entryCount > 0 && index.matches(data, entryCount - 1)) {
+            this.sidecar = index;
+        }
+    }
+
+    /**
+     * Memory-maps a file and reads its headers.
+     *
+     * @param path The path of the file.
+     * @return The opened file.
+     * @throws IOException If the file can't be mapped.
+     * @throws IllegalArgumentException If the file is not an Ogg Opus file.
+     */
+    public static OggOpusFile open(Path path) throws IOException {
+        return new OggOpusFile(map(path));
+    }
+
+    /**
+     * Memory-maps a file and its sidecar index, and reads the file's headers.
+     * Opening and seeking do not scan the file, as long as the index matches it.
+     *
+     * @param path The path of the file.
+     * @param indexPath The path of the index. If it does not exist, the file is opened without an index.
+     * @return The opened file.
+     * @throws IOException If the file or index can't be mapped.
+     * @throws IllegalArgumentException If the file is not an Ogg Opus file, or the index is not an index.
+     */
+    public static OggOpusFile open(Path path, Path indexPath) throws IOException {
+        if (!Files.exists(indexPath)) {
+            return open(path);
+        }
+
+        return new OggOpusFile(map(path), OggOpusIndex.open(indexPath));
+    }
+
+    /**
+     * Maps a whole file read-only.
+     */
+    static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File is too large to map: " + channel.size());
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Checks if seeks are served by a sidecar index.
+     *
+     * @return True if the file was opened with an index that matches it.
+     */
+    public boolean hasIndex() {
+        return sidecar != null;
+    }
+
+    /**
+     * Gets the identification header of the stream.
+     *
+     * @return The OpusHead header.
+     */
+    public OggOpusHead getHead() {
+        return reader.getHead();
+    }
+
+    /**
+     * Gets the comment header of the stream.
+     *
+     * @return The OpusTags header.
+     */
+    public OggOpusTags getTags() {
+        return reader.getTags();
+    }
+
+    /**
+     * Gets the reader used to read packets, e.g. to iterate packets from the position of the last seek.
+     *
+     * @return The reader.
+     */
+    public OggOpusReader getReader() {
+        return reader;
+    }
+
+    /**
+     * Gets the duration of the stream, from the granule positions of its first and last pages. Only the start and end
+     * of the file are read.
+     *
+     * @return The duration, in samples at 48 kHz, after the pre-skip.
+     */
+    public long getDuration() {
+        if (lastGranule < 0 && sidecar != null) {
+            lastGranule = sidecar.getGranule(sidecar.getEntryCount() - 1);
+        }
+        if (lastGranule < 0) {
+            int audioOffset = reader.getAudioOffset();
+            int end = data.limit();
+
+            for (int window = OggOpusReader.MAX_PAGE_SIZE; lastGranule < 0; window *= 2) {
+                int from = Math.max(audioOffset, end - window);
+
+                for (int page = nextPage(from, end); page >= 0; page = nextPage(page + 1, end)) {
+                    long granule = data.getLong(page + 6);
+                    if (granule >= 0) {
+                        lastGranule = granule;
+                    }
+                }
+
+                if (from == audioOffset) {
+                    lastGranule = Math.max(lastGranule, 0);
+                }
+            }
+        }
+
+        return Math.max(lastGranule - reader.getStartGranulePosition() - getHead().getPreSkip(), 0);
+    }
+
+    /**
+     * Moves to a sample of the stream, so that the next packet decoded starts at that sample.
+     *
+     * Reading restarts at least {@value #PRE_ROLL} samples before the target, and the samples before the target are
+     * decoded and discarded. The decoder is reset before the next decode.
+     *
+     * @param sample The sample to seek to, at 48 kHz, after the pre-skip.
+     */
+    public void seek(long sample) {
+        if (sample < 0) {
+            throw new IllegalArgumentException("Sample must not be negative: " + sample);
+        }
+
+        long start = reader.getStartGranulePosition();
+        long target = start + getHead().getPreSkip() + sample;
+        int page = findPage(target - PRE_ROLL);
+
+        if (page < 0) {
+            reader.reposition(reader.getAudioOffset(), start, false, target);
+        } else {
+            reader.reposition(indexOffsets[page], indexGranules[page], true, target);
+        }
+        seeked = true;
+    }
+
+    /**
+     * Decodes the next audio packet into 16-bit samples, like {@link OggOpusReader#decode(OpusDecoder, ByteBuffer)}.
+     * The decoder is reset first if the file was seeked.
+     *
+     * @param decoder A mono or stereo decoder, at any sample rate.
+     * @param pcm A direct buffer to write the samples to, with at least 120 ms of samples remaining.
+     * @return The number of samples per channel written, or -1 at the end of the stream.
+     */
+    public int decode(OpusDecoder decoder, ByteBuffer pcm) {
+        resetIfSeeked(decoder);
+        try {
+            return reader.decode(decoder, pcm);
+        } catch (IOException e) {
+            // The reader reads from a buffer, which can't fail
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decodes the next audio packet into floating point samples, like {@link OggOpusReader#decodeFloat(OpusDecoder, ByteBuffer)}.
+     * The decoder is reset first if the file was seeked.
+     *
+     * @param decoder A mono or stereo decoder, at any sample rate.
+     * @param pcm A direct buffer to write the samples to, with at least 120 ms of samples remaining.
+     * @return The number of samples per channel written, or -1 at the end of the stream.
+     */
+    public int decodeFloat(OpusDecoder decoder, ByteBuffer pcm) {
+        resetIfSeeked(decoder);
+        try {
+            return reader.decodeFloat(decoder, pcm);
+        } catch (IOException e) {
+            // The reader reads from a buffer, which can't fail
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void resetIfSeeked(OpusDecoder decoder) {
+        if (seeked) {
+            decoder.resetState();
+            seeked = false;
+        }
+    }
+
+    /**
+     * Does nothing but release the reader; the mapping itself is released once it is unreachable.
+     */
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Finds the last page with a granule position at or before a goal.
+     *
+     * @return The index entry of the page, or -1 if there is no such page.
+     */
+    private int findPage(long goal) {
+        if (sidecar != null) {
+            int entry = sidecar.floor(goal);
+            if (entry < 0) {
+                return -1;
+            }
+            if (sidecar.matches(data, entry)) {
+                return addToIndex((int) sidecar.getOffset(entry), sidecar.getGranule(entry));
+            }
+
+            // The file changed under the index, so stop trusting it
+            sidecar = null;
+        }
+
+        // Start from the tightest range the index already gives. Once the pages around the goal are known, this range
+        // is a single page, and the scan below finds it straight away.
+        int floor = indexFloor(goal);
+        int lo = floor >= 0 ? indexOffsets[floor] : reader.getAudioOffset();
+        int hi = floor + 1 < indexSize ? indexOffsets[floor + 1] : data.limit();
+
+        // Bisect on byte offsets until the range is small enough to scan
+        while (hi - lo > OggOpusReader.MAX_PAGE_SIZE) {
+            int mid = lo + (hi - lo) / 2;
+            int page = nextGranulePage(mid, hi);
+
+            if (page < 0) {
+                hi = mid;
+                continue;
+            }
+
+            long granule = data.getLong(page + 6);
+            addToIndex(page, granule);
+            if (granule <= goal) {
+                lo = page;
+            } else {
+                hi = mid;
+            }
+        }
+
+        // Scan the remaining range, indexing every page on the way
+        int found = -1;
+        for (int page = nextGranulePage(lo, hi); page >= 0; page = nextGranulePage(page + 1, hi)) {
+            long granule = data.getLong(page + 6);
+            int entry = addToIndex(page, granule);
+            if (granule > goal) {
+                break;
+            }
+            found = entry;
+        }
+
+        // Pages added after the found page may have shifted it
+        return found >= 0 ? indexFloor(goal) : floor;
+    }
+
+    /**
+     * Finds the next valid page of the stream starting in a range.
+     *
+     * @return The offset of the page, or -1 if there is none.
+     */
+    private int nextPage(int from, int to) {
+        int end = data.limit();
+        for (int offset = from; offset < to; offset++) {
+            if (data.get(offset) != 'O') {
+                continue;
+            }
+
+            int length = OggOpusReader.pageLength(data, offset, end);
+            if (length >= 0 && data.getInt(offset + 14) == serial) {
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the next valid page of the stream starting in a range that has a granule position.
+     *
+     * @return The offset of the page, or -1 if there is none.
+     */
+    private int nextGranulePage(int from, int to) {
+        for (int page = nextPage(from, to); page >= 0; page = nextPage(page + 1, to)) {
+            if (data.getLong(page + 6) >= 0) {
+                return page;
+            }
+        }
+        return -1;
+    }
+
+    private int indexFloor(long granule) {
+        int lo = 0;
+        int hi = indexSize - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (indexGranules[mid] <= granule) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return hi;
+    }
+
+    private int addToIndex(int offset, long granule) {
+        int entry = Arrays.binarySearch(indexOffsets, 0, indexSize, offset);
+        if (entry >= 0) {
+            return entry;
+        }
+        entry = -entry - 1;
+
+        if (indexSize == indexOffsets.length) {
+            indexOffsets = Arrays.copyOf(indexOffsets, indexSize * 2);
+            indexGranules = Arrays.copyOf(indexGranules, indexSize * 2);
+        }
+        System.arraycopy(indexOffsets, entry, indexOffsets, entry + 1, indexSize - entry);
+        System.arraycopy(indexGranules, entry, indexGranules, entry + 1, indexSize - entry);
+        indexOffsets[entry] = offset;
+        indexGranules[entry] = granule;
+        indexSize++;
+
+        return entry;
+    }
+}
@@ -0,0 +1,247 @@
+package me.walkerknapp.rapidopus.ogg;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The identification header of an Ogg Opus stream, as described in RFC 7845, section 5.1.
+ */
+public final class OggOpusHead {
+    static final byte[] MAGIC = "OpusHead".getBytes(StandardCharsets.US_ASCII);
+
+    private final int version;
+    private final int channelCount;
+    private final int preSkip;
+    private final long inputSampleRate;
+    private final int outputGain;
+    private final int mappingFamily;
+    private final int streamCount;
+    private final int coupledCount;
+    private final byte[] channelMapping;
+
+    private OggOpusHead(int version, int channelCount, int preSkip, long inputSampleRate, int outputGain,
+                        int mappingFamily, int streamCount, int coupledCount, byte[] channelMapping) {
+        this.version = version;
+        this.channelCount = channelCount;
+        this.preSkip = preSkip;
+        this.inputSampleRate = inputSampleRate;
+        this.outputGain = outputGain;
+        this.mappingFamily = mappingFamily;
+        this.streamCount = streamCount;
+        this.coupledCount = coupledCount;
+        this.channelMapping = channelMapping;
+    }
+
+    /**
+     * Creates a header for a mono or stereo stream (channel mapping family 0).
+     *
+     * @param channelCount The number of channels, 1 or 2.
+     * @param preSkip The number of samples, at 48 kHz, to discard from the start of the decoded output.
+     *                This is usually the encoder's lookahead.
+     * @param inputSampleRate The sample rate of the original input in Hz, or 0 if unspecified.
+     * @param outputGain The gain to apply to the decoded output, in Q8 dB units.
+     */
+    public OggOpusHead(int channelCount, int preSkip, long inputSampleRate, int outputGain) {
+        this(1, channelCount, preSkip, inputSampleRate, outputGain, 0, 1, channelCount - 1,
+                channelCount == 1 ? new byte[] {0} : new byte[] {0, 1});
+
+        if (channelCount != 1 && channelCount != 2) {
+            throw new IllegalArgumentException("Channels must be 1 or 2: " + channelCount);
+        }
+        if (preSkip < 0 || preSkip > 0xFFFF) {
+            throw new IllegalArgumentException("Pre-skip is out of range: " + preSkip);
+        }
+        if (inputSampleRate < 0 || inputSampleRate > 0xFFFFFFFFL) {
+            throw new IllegalArgumentException("Input sample rate is out of range: " + inputSampleRate);
+        }
+        if (outputGain < Short.MIN_VALUE || outputGain > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Output gain is out of range: " + outputGain);
+        }
+    }
+
+    /**
+     * Parses an identification header packet.
+     * The buffer is read with absolute gets, so its position and byte order are unchanged.
+     *
+     * @param packet A ByteBuffer holding the packet.
+     * @param offset The offset of the packet in the buffer.
+     * @param length The length of the packet, in bytes.
+     * @return The parsed header.
+     * @throws IllegalArgumentException If the packet is not an OpusHead packet of a supported version.
+     */
+    public static OggOpusHead parse(ByteBuffer packet, int offset, int length) {
+        if (length < 19 || !hasMagic(packet, offset, length, MAGIC)) {
+            throw new IllegalArgumentException("Not an OpusHead packet");
+        }
+
+        ByteBuffer le = packet.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+        int version = le.get(offset + 8) & 0xFF;
+        if ((version & 0xF0) != 0) {
+            throw new IllegalArgumentException("Unsupported OpusHead version: " + version);
+        }
+
+        int channelCount = le.get(offset + 9) & 0xFF;
+        if (channelCount == 0) {
+            throw new IllegalArgumentException("OpusHead has no channels");
+        }
+
+        int preSkip = le.getShort(offset + 10) & 0xFFFF;
+        long inputSampleRate = le.getInt(offset + 12) & 0xFFFFFFFFL;
+        int outputGain = le.getShort(offset + 16);
+        int mappingFamily = le.get(offset + 18) & 0xFF;
+
+        int streamCount;
+        int coupledCount;
+        byte[] channelMapping;
+        if (mappingFamily == 0) {
+            if (channelCount > 2) {
+                throw new IllegalArgumentException("Mapping family 0 allows at most 2 channels: " + channelCount);
+            }
+            streamCount = 1;
+            coupledCount = channelCount - 1;
+            channelMapping = channelCount == 1 ? new byte[] {0} : new byte[] {0, 1};
+        } else {
+            if (length < 21 + channelCount) {
+                throw new IllegalArgumentException("OpusHead channel mapping table is truncated");
+            }
+            streamCount = le.get(offset + 19) & 0xFF;
+            coupledCount = le.get(offset + 20) & 0xFF;
+            if (streamCount == 0 || coupledCount > streamCount) {
+                throw new IllegalArgumentException("Invalid OpusHead stream counts: " + streamCount + ", " + coupledCount);
+            }
+            channelMapping = new byte[channelCount];
+            for (int i = 0; i < channelCount; i++) {
+                channelMapping[i] = le.get(offset + 21 + i);
+            }
+        }
+
+        return new OggOpusHead(version, channelCount, preSkip, inputSampleRate, outputGain,
+                mappingFamily, streamCount, coupledCount, channelMapping);
+    }
+
+    /**
+     * Gets the size of the header when written as a packet.
+     *
+     * @return The packet length, in bytes.
+     */
+    int getPacketLength() {
+        return mappingFamily == 0 ? 19 : 21 + channelCount;
+    }
+
+    /**
+     * Writes the header as a packet at the position of a buffer, and advances its position past it.
+     *
+     * @param packet The buffer to write to, which must be in little endian byte order.
+     */
+    void write(ByteBuffer packet) {
+        packet.put(MAGIC);
+        packet.put((byte) version);
+        packet.put((byte) channelCount);
+        packet.putShort((short) preSkip);
+        packet.putInt((int) inputSampleRate);
+        packet.putShort((short) outputGain);
+        packet.put((byte) mappingFamily);
+        if (mappingFamily != 0) {
+            packet.put((byte) streamCount);
+            packet.put((byte) coupledCount);
+            packet.put(channelMapping);
+        }
+    }
+
+    static boolean hasMagic(ByteBuffer packet, int offset, int length, byte[] magic) {
+        if (length < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (packet.get(offset + i) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the version of the header. Only major version 0 is supported.
+     *
+     * @return The version, usually 1.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the number of output channels.
+     *
+     * @return The channel count.
+     */
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    /**
+     * Gets the number of samples, at 48 kHz, to discard from the start of the decoded output.
+     *
+     * @return The pre-skip.
+     */
+    public int getPreSkip() {
+        return preSkip;
+    }
+
+    /**
+     * Gets the sample rate of the original input. This is informational only; Opus streams are always decoded at
+     * one of the rates supported by {@link me.walkerknapp.rapidopus.OpusDecoder}.
+     *
+     * @return The input sample rate in Hz, or 0 if unspecified.
+     */
+    public long getInputSampleRate() {
+        return inputSampleRate;
+    }
+
+    /**
+     * Gets the gain to apply to the decoded output, in the same Q8 dB units as
+     * {@link me.walkerknapp.rapidopus.OpusDecoder#setGain(int)}.
+     *
+     * @return The output gain.
+     */
+    public int getOutputGain() {
+        return outputGain;
+    }
+
+    /**
+     * Gets the channel mapping family. Family 0 is a single mono or stereo stream; other families are multistream.
+     *
+     * @return The mapping family.
+     */
+    public int getMappingFamily() {
+        return mappingFamily;
+    }
+
+    /**
+     * Gets the number of Opus streams in each packet.
+     *
+     * @return The stream count.
+     */
+    public int getStreamCount() {
+        return streamCount;
+    }
+
+    /**
+     * Gets the number of streams in each packet that are coupled stereo streams.
+     *
+     * @return The coupled stream count.
+     */
+    public int getCoupledCount() {
+        return coupledCount;
+    }
+
+    /**
+     * Gets the channel mapping table, mapping each output channel to a decoded channel.
+     *
+     * @return A copy of the mapping table, with one entry per output channel.
+     */
+    public byte[] getChannelMapping() {
+        return channelMapping.clone();
+    }
+}
@@ -0,0 +1,147 @@
+package me.walkerknapp.rapidopus.ogg;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * A sidecar seek index for an Ogg Opus file, which lets {@link OggOpusFile} seek without scanning the file.
+ *
+ * The index is written by {@link OggOpusWriter#setIndexChannel(java.nio.channels.WritableByteChannel)} while the stream is muxed. It
+ * is a little endian file, made of a 16 byte header (the magic "OPIX", a version, the stream serial number and
+ * the pre-skip) followed by one 24 byte entry for every page that has a granule position: the granule position, the
+ * page offset, the page checksum and the page length. Entries are in stream order, so an index is memory-mapped
+ * and binary searched in place rather than read into memory.
+ *
+ * The checksums let a reader check that an entry still matches its page, so an index left stale by a rewritten or
+ * truncated file is detected and ignored.
+ */
+public final class OggOpusIndex {
+    static final byte[] MAGIC = "OPIX".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int ENTRY_SIZE = 24;
+
+    private final ByteBuffer data;
+    private final int serial;
+    private final int preSkip;
+    private final int entryCount;
+
+    /**
+     * Wraps an index held between the position and limit of a buffer. A partially written last entry is ignored.
+     *
+     * @param index The buffer holding the index.
+     * @throws IllegalArgumentException If the buffer does not hold an index of a supported version.
+     */
+    public OggOpusIndex(ByteBuffer index) {
+        ByteBuffer le = index.slice().order(ByteOrder.LITTLE_ENDIAN);
+
+        if (le.limit() < HEADER_SIZE || !OggOpusHead.hasMagic(le, 0, le.limit(), MAGIC)) {
+            throw new IllegalArgumentException("Not an Opus seek index");
+        }
+        if (le.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Unsupported seek index version: " + le.getInt(4));
+        }
+
+        this.data = le;
+        this.serial = le.getInt(8);
+        this.preSkip = le.getInt(12);
+        this.entryCount = (le.limit() - HEADER_SIZE) / ENTRY_SIZE;
+    }
+
+    /**
+     * Memory-maps an index file.
+     *
+     * @param path The path of the index.
+     * @return The index.
+     * @throws IOException If the file can't be mapped.
+     * @throws IllegalArgumentException If the file is not an index of a supported version.
+     */
+    public static OggOpusIndex open(Path path) throws IOException {
+        return new OggOpusIndex(OggOpusFile.map(path));
+    }
+
+    /**
+     * Gets the serial number of the stream the index was written for.
+     *
+     * @return The stream serial number.
+     */
+    public int getStreamSerial() {
+        return serial;
+    }
+
+    /**
+     * Gets the pre-skip of the stream the index was written for.
+     *
+     * @return The pre-skip, in samples at 48 kHz.
+     */
+    public int getPreSkip() {
+        return preSkip;
+    }
+
+    /**
+     * Gets the number of pages in the index.
+     *
+     * @return The number of entries.
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    long getGranule(int entry) {
+        return data.getLong(HEADER_SIZE + entry * ENTRY_SIZE);
+    }
+
+    long getOffset(int entry) {
+        return data.getLong(HEADER_SIZE + entry * ENTRY_SIZE + 8);
+    }
+
+    int getChecksum(int entry) {
+        return data.getInt(HEADER_SIZE + entry * ENTRY_SIZE + 16);
+    }
+
+    int getLength(int entry) {
+        return data.getInt(HEADER_SIZE + entry * ENTRY_SIZE + 20);
+    }
+
+    /**
+     * Finds the last entry with a granule position at or before a goal.
+     *
+     * @return The entry, or -1 if every entry is past the goal.
+     */
+    int floor(long granule) {
+        int lo = 0;
+        int hi = entryCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (getGranule(mid) <= granule) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return hi;
+    }
+
+    /**
+     * Checks that an entry describes the page at its offset in a stream, by comparing the page's header with it.
+     * The page's checksum is compared but not recomputed.
+     *
+     * @param stream The little endian buffer holding the stream.
+     * @param entry The entry to check.
+     * @return True if the page matches.
+     */
+    boolean matches(ByteBuffer stream, int entry) {
+        long offset = getOffset(entry);
+        int length = getLength(entry);
+
+        return offset >= 0 && length >= OggOpusReader.HEADER_SIZE && offset <= stream.limit() - length
+                && stream.get((int) offset) == 'O' && stream.get((int) offset + 1) == 'g'
+                && stream.get((int) offset + 2) == 'g' && stream.get((int) offset + 3) == 'S'
+                && stream.getLong((int) offset + 6) == getGranule(entry)
+                && stream.getInt((int) offset + 14) == serial
+                && stream.getInt((int) offset + OggCrc.CHECKSUM_OFFSET) == getChecksum(entry);
+    }
+}
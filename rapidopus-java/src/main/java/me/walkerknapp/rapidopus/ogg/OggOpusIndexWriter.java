@@ -0,0 +1,56 @@
+package me.walkerknapp.rapidopus.ogg;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes the entries of an {@link OggOpusIndex} as pages are muxed.
+ *
+ * Entries are only written to the channel when the pages they describe have been, so an index never points past the
+ * end of its file.
+ */
+final class OggOpusIndexWriter {
+    private final WritableByteChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 12).order(ByteOrder.LITTLE_ENDIAN);
+
+    OggOpusIndexWriter(WritableByteChannel channel, int serial, int preSkip) {
+        this.channel = channel;
+
+        buffer.put(OggOpusIndex.MAGIC);
+        buffer.putInt(OggOpusIndex.VERSION);
+        buffer.putInt(serial);
+        buffer.putInt(preSkip);
+    }
+
+    void add(long granule, long offset, int checksum, int length) {
+        if (buffer.remaining() < OggOpusIndex.ENTRY_SIZE) {
+            ByteBuffer grown = ByteBuffer.allocateDirect(buffer.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+
+        buffer.putLong(granule);
+        buffer.putLong(offset);
+        buffer.putInt(checksum);
+        buffer.putInt(length);
+    }
+
+    void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
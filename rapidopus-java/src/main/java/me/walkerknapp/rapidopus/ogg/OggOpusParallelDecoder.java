@@ -0,0 +1,217 @@
+package me.walkerknapp.rapidopus.ogg;
+
+import me.walkerknapp.rapidopus.OpusDecoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Decodes a whole Ogg Opus stream on many cores at once, into one off-heap PCM buffer.
+ *
+ * A decoder is sequential, so the stream is split into ranges that are decoded in parallel on a {@link ForkJoinPool},
+ * each by its own fresh decoder. Every range is seeked to with {@link OggOpusFile#seek(long)}, which starts decoding
+ * {@value OggOpusFile#PRE_ROLL} samples (at 48 kHz) early and discards the warm-up, so that the decoder has converged
+ * by the time it reaches the range. Each worker decodes straight into its own slice of the shared buffer, so no
+ * samples are copied except those of the packet that crosses into the next slice.
+ *
+ * The stream must be mono or stereo (channel mapping family 0), and is limited to 2 GiB like {@link OggOpusFile}.
+ * A decoder can be reused, but not from several threads at once.
+ */
+public class OggOpusParallelDecoder {
+    // A multiple of 20 ms, so that range boundaries fall on whole samples at every sample rate
+    private static final int BOUNDARY_SAMPLES = 960;
+
+    private final int sampleRate;
+    private final int channels;
+
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    private long rangeSamples = 30 * 48000;
+
+    /**
+     * Creates a parallel decoder that decodes 30 second ranges on the common pool.
+     *
+     * @param sampleRate The sample rate to decode at, in Hz: 8000, 12000, 16000, 24000 or 48000.
+     * @param channels The number of channels to decode, 1 or 2.
+     */
+    public OggOpusParallelDecoder(int sampleRate, int channels) {
+        if (sampleRate != 8000 && sampleRate != 12000 && sampleRate != 16000 && sampleRate != 24000 && sampleRate != 48000) {
+            throw new IllegalArgumentException("Sample rate must be supported by Opus: " + sampleRate);
+        }
+        if (channels != 1 && channels != 2) {
+            throw new IllegalArgumentException("Channels must be 1 or 2: " + channels);
+        }
+
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+    }
+
+    /**
+     * Sets the pool ranges are decoded on.
+     *
+     * @param pool The pool.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Sets the duration of the ranges decoded in parallel. Every range costs an extra
+     * {@value OggOpusFile#PRE_ROLL} samples of decoding, so ranges should be much longer than that.
+     *
+     * @param millis The range duration, in milliseconds.
+     */
+    public void setRangeDuration(long millis) {
+        if (millis < 1000) {
+            throw new IllegalArgumentException("Range duration must be at least a second: " + millis);
+        }
+        this.rangeSamples = millis * 48;
+    }
+
+    /**
+     * Memory-maps an Ogg Opus file, and its sidecar index if it exists, and decodes it into 16-bit samples.
+     *
+     * @param path The path of the file.
+     * @param indexPath The path of the sidecar index, or null to find pages by bisection.
+     * @return A direct buffer in the platform's byte order holding every interleaved sample after the pre-skip.
+     * @throws IOException If the file or index can't be mapped.
+     * @throws IllegalArgumentException If the file is not an Ogg Opus file.
+     */
+    public ByteBuffer decode(Path path, Path indexPath) throws IOException {
+        OggOpusIndex index = indexPath != null && Files.exists(indexPath) ? OggOpusIndex.open(indexPath) : null;
+        return decode(OggOpusFile.map(path), index, false);
+    }
+
+    /**
+     * Decodes the stream held between the position and limit of a buffer into 16-bit samples.
+     *
+     * @param stream A direct buffer, e.g. a mapped file, holding the stream.
+     * @param index The sidecar index of the stream, or null to find pages by bisection.
+     * @return A direct buffer in the platform's byte order holding every interleaved sample after the pre-skip.
+     * @throws IllegalArgumentException If the buffer does not hold an Ogg Opus stream.
+     */
+    public ByteBuffer decode(ByteBuffer stream, OggOpusIndex index) {
+        return decode(stream, index, false);
+    }
+
+    /**
+     * Decodes the stream held between the position and limit of a buffer into floating point samples.
+     *
+     * @param stream A direct buffer, e.g. a mapped file, holding the stream.
+     * @param index The sidecar index of the stream, or null to find pages by bisection.
+     * @return A direct buffer in the platform's byte order holding every interleaved sample after the pre-skip.
+     * @throws IllegalArgumentException If the buffer does not hold an Ogg Opus stream.
+     */
+    public ByteBuffer decodeFloat(ByteBuffer stream, OggOpusIndex index) {
+        return decode(stream, index, true);
+    }
+
+    private ByteBuffer decode(ByteBuffer stream, OggOpusIndex index, boolean isFloat) {
+        long duration;
+        try (OggOpusFile file = open(stream, index)) {
+            if (file.getHead().getMappingFamily() != 0) {
+                throw new IllegalArgumentException("Streams with channel mapping family " + file.getHead().getMappingFamily() + " need a multistream decoder");
+            }
+            duration = file.getDuration();
+        } catch (IOException e) {
+            // The file reads from a buffer, which can't fail
+            throw new IllegalStateException(e);
+        }
+
+        int sampleBytes = channels * (isFloat ? Float.BYTES : Short.BYTES);
+        long totalBytes = duration * sampleRate / 48000 * sampleBytes;
+        if (totalBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Stream decodes to more than 2 GiB: " + totalBytes);
+        }
+        ByteBuffer pcm = ByteBuffer.allocateDirect((int) totalBytes).order(ByteOrder.nativeOrder());
+
+        long step = Math.max(rangeSamples / BOUNDARY_SAMPLES, 1) * BOUNDARY_SAMPLES;
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        try {
+            for (long from = 0; from < duration; from += step) {
+                tasks.add(pool.submit(new Range(stream, index, pcm, from, Math.min(from + step, duration), isFloat)));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } finally {
+            for (ForkJoinTask<?> task : tasks) {
+                task.cancel(false);
+            }
+        }
+
+        return pcm;
+    }
+
+    private static OggOpusFile open(ByteBuffer stream, OggOpusIndex index) {
+        return index != null ? new OggOpusFile(stream, index) : new OggOpusFile(stream);
+    }
+
+    /**
+     * Decodes one range of the stream, at 48 kHz sample positions after the pre-skip, into its slice of the output.
+     */
+    private class Range implements Runnable {
+        private final ByteBuffer stream;
+        private final OggOpusIndex index;
+        private final ByteBuffer slice;
+        private final long from;
+        private final boolean isFloat;
+
+        Range(ByteBuffer stream, OggOpusIndex index, ByteBuffer pcm, long from, long to, boolean isFloat) {
+            int sampleBytes = channels * (isFloat ? Float.BYTES : Short.BYTES);
+
+            this.stream = stream;
+            this.index = index;
+            this.slice = pcm.duplicate().order(ByteOrder.nativeOrder());
+            this.slice.limit((int) Math.min(to * sampleRate / 48000 * sampleBytes, pcm.capacity()));
+            this.slice.position((int) (from * sampleRate / 48000 * sampleBytes));
+            this.from = from;
+            this.isFloat = isFloat;
+        }
+
+        @Override
+        public void run() {
+            int sampleBytes = channels * (isFloat ? Float.BYTES : Short.BYTES);
+            int maxFrameBytes = OggOpusReader.MAX_PACKET_SAMPLES * sampleRate / 48000 * sampleBytes;
+            ByteBuffer scratch = null;
+
+            try (OggOpusFile file = open(stream, index); OpusDecoder decoder = new OpusDecoder(sampleRate, channels)) {
+                file.seek(from);
+
+                while (slice.hasRemaining()) {
+                    if (slice.remaining() >= maxFrameBytes) {
+                        if (decode(file, decoder, slice) < 0) {
+                            break;
+                        }
+                        continue;
+                    }
+
+                    // The last packet may run into the next range's slice, so decode it aside and keep what fits
+                    if (scratch == null) {
+                        scratch = ByteBuffer.allocateDirect(maxFrameBytes).order(ByteOrder.nativeOrder());
+                    }
+                    scratch.clear();
+                    if (decode(file, decoder, scratch) < 0) {
+                        break;
+                    }
+                    scratch.flip();
+                    scratch.limit(Math.min(scratch.limit(), slice.remaining()));
+                    slice.put(scratch);
+                }
+            } catch (IOException e) {
+                // The file reads from a buffer, which can't fail
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private int decode(OggOpusFile file, OpusDecoder decoder, ByteBuffer pcm) {
+            return isFloat ? file.decodeFloat(decoder, pcm) : file.decode(decoder, pcm);
+        }
+    }
+}
@@ -0,0 +1,712 @@
+package me.walkerknapp.rapidopus.ogg;
+
+import me.walkerknapp.rapidopus.OpusDecoder;
+import me.walkerknapp.rapidopus.OpusPacketInspector;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads the packets of an Ogg Opus stream, as described in RFC 7845, and optionally decodes them.
+ *
+ * Pages are parsed in place, and packets are returned as regions of a single buffer rather than as new arrays, so
+ * iterating a stream does not allocate. Only packets that span several pages are copied, into a buffer that is reused
+ * between packets. The stream is read either from a channel, through one reusable direct buffer, or from a buffer
+ * holding the whole stream (e.g. a mapped file), in which case packets are regions of that buffer.
+ *
+ * The reader follows the first Opus logical stream it finds, skipping the pages of any other multiplexed streams.
+ * Pages with bad checksums are skipped, and the reader resynchronizes on the next page. A chained stream is read
+ * up to the end of its first link.
+ *
+ * A reader is not thread-safe.
+ */
+public class OggOpusReader implements Closeable {
+    /**
+     * The size of an Ogg page header without its lacing values.
+     */
+    static final int HEADER_SIZE = 27;
+
+    /**
+     * The largest possible Ogg page: a header, 255 lacing values and 255 segments of 255 bytes.
+     */
+    static final int MAX_PAGE_SIZE = HEADER_SIZE + 255 + 255 * 255;
+
+    /**
+     * The largest number of samples per channel in an Opus packet, at 48 kHz (120 ms).
+     */
+    static final int MAX_PACKET_SAMPLES = 5760;
+
+    static final int FLAG_CONTINUED = 0x01;
+    static final int FLAG_BOS = 0x02;
+    static final int FLAG_EOS = 0x04;
+
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 17;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer data;
+    private int readPos;
+    private int dataLimit;
+    private boolean channelEof;
+
+    private boolean serialKnown;
+    private int serial;
+    private boolean endOfStream;
+
+    // The page being read
+    private int pageOffset;
+    private int pageFlags;
+    private long pageGranule;
+    private int lacingOffset;
+    private int segmentCount;
+    private int segmentIndex;
+    private int lastCompleteSegment;
+    private int bodyPos;
+
+    // A packet spanning several pages
+    private ByteBuffer assembly;
+    private int assemblyLength;
+    private boolean assembling;
+    private boolean discarding;
+
+    // The current packet
+    private ByteBuffer packetBuffer;
+    private int packetOffset;
+    private int packetLength;
+    private long packetGranule;
+    private boolean packetEndOfStream;
+
+    private final OggOpusHead head;
+    private final OggOpusTags tags;
+    private final long startGranule;
+
+    // Decoding state
+    private OpusDecoder configuredDecoder;
+    private int decoderRate;
+    private int decoderChannels;
+    private ByteBuffer scratch;
+    private long samplesRead;
+    private long discardUntil;
+
+    // Repositioning state
+    private int audioOffset;
+    private boolean skipCompleted;
+
+    /**
+     * Opens a stream read from a channel, and reads its headers.
+     * The channel must be blocking, and is closed when the reader is closed.
+     *
+     * @param channel The channel to read the stream from.
+     * @throws IOException If the channel can't be read.
+     * @throws IllegalArgumentException If the channel does not hold an Ogg Opus stream.
+     */
+    public OggOpusReader(ReadableByteChannel channel) throws IOException {
+        this.channel = channel;
+        this.data = ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        this.head = OggOpusHead.parse(readHeaderPacket("OpusHead"), packetOffset, packetLength);
+        this.tags = OggOpusTags.parse(readHeaderPacket("OpusTags"), packetOffset, packetLength);
+        this.startGranule = findStartGranule();
+        this.audioOffset = readPos;
+        this.samplesRead = startGranule;
+        this.discardUntil = startGranule + head.getPreSkip();
+    }
+
+    /**
+     * Opens a stream held between the position and limit of a buffer, and reads its headers.
+     * Packets are returned as regions of this buffer without copying. The buffer must be direct to decode packets.
+     *
+     * @param stream The buffer holding the stream. Its position and limit are unchanged.
+     * @throws IllegalArgumentException If the buffer does not hold an Ogg Opus stream.
+     */
+    public OggOpusReader(ByteBuffer stream) {
+        this.channel = null;
+        this.data = stream.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        this.readPos = stream.position();
+        this.dataLimit = stream.limit();
+
+        try {
+            this.head = OggOpusHead.parse(readHeaderPacket("OpusHead"), packetOffset, packetLength);
+            this.tags = OggOpusTags.parse(readHeaderPacket("OpusTags"), packetOffset, packetLength);
+            this.startGranule = findStartGranule();
+            this.audioOffset = readPos;
+            this.samplesRead = startGranule;
+            this.discardUntil = startGranule + head.getPreSkip();
+        } catch (IOException e) {
+            // There is no channel to fail
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private ByteBuffer readHeaderPacket(String name) throws IOException {
+        if (!nextPacket()) {
+            throw new IllegalArgumentException("Stream has no " + name + " packet");
+        }
+        return packetBuffer;
+    }
+
+    /**
+     * Finds the granule position at the start of the first audio packet, as described in section 4.5 of RFC 7845:
+     * the granule position of the first audio page that has one, minus the duration of every packet that ends on or
+     * before that page. The pages are only looked at, not consumed.
+     *
+     * A stream read from a channel can only be looked ahead as far as the read buffer holds, and is assumed to start
+     * at 0 if no page with a granule position fits in it.
+     */
+    private long findStartGranule() throws IOException {
+        long duration = 0;
+        long packetSamples = 0;
+        boolean packetStart = true;
+
+        // Offsets are kept relative to the read position, which moves if filling the buffer compacts it
+        int ahead = 0;
+        while (channel == null || ahead + MAX_PAGE_SIZE <= data.capacity()) {
+            if (!fill(ahead + HEADER_SIZE)) {
+                return 0;
+            }
+            if (isCapturePattern(data, readPos + ahead) && fill(ahead + HEADER_SIZE + (data.get(readPos + ahead + 26) & 0xFF))) {
+                fill(ahead + HEADER_SIZE + (data.get(readPos + ahead + 26) & 0xFF) + bodyLength(data, readPos + ahead));
+            }
+
+            int start = readPos + ahead;
+            int pageLength = pageLength(data, start, dataLimit);
+            if (pageLength < 0) {
+                ahead++;
+                continue;
+            }
+            ahead += pageLength;
+            if (data.getInt(start + 14) != serial) {
+                continue;
+            }
+
+            int segments = data.get(start + 26) & 0xFF;
+            int position = start + HEADER_SIZE + segments;
+            for (int i = 0; i < segments; i++) {
+                int lacing = data.get(start + HEADER_SIZE + i) & 0xFF;
+                if (packetStart) {
+                    packetSamples = lacing > 0 ? sampleCount(data, position, lacing) : 0;
+                }
+                packetStart = lacing < 255;
+                if (packetStart) {
+                    duration += packetSamples;
+                }
+                position += lacing;
+            }
+
+            long granule = data.getLong(start + 6);
+            if (granule >= 0) {
+                // A first page that ends before its packets do is only valid if it also ends the stream, which is end
+                // trimming rather than a start offset
+                return Math.max(granule - duration, 0);
+            }
+        }
+
+        return 0;
+    }
+
+    private static int sampleCount(ByteBuffer data, int offset, int length) {
+        try {
+            return OpusPacketInspector.getSampleCount(data, offset, length, 48000);
+        } catch (IllegalStateException e) {
+            // Malformed packets are reported once they are read
+            return 0;
+        }
+    }
+
+    /**
+     * Gets the identification header of the stream.
+     *
+     * @return The OpusHead header.
+     */
+    public OggOpusHead getHead() {
+        return head;
+    }
+
+    /**
+     * Gets the comment header of the stream.
+     *
+     * @return The OpusTags header.
+     */
+    public OggOpusTags getTags() {
+        return tags;
+    }
+
+    /**
+     * Advances to the next packet of the stream.
+     * The previous packet's buffer region is only valid until this is called.
+     *
+     * @return True if there is a packet, or false at the end of the stream.
+     * @throws IOException If the channel can't be read.
+     */
+    public boolean nextPacket() throws IOException {
+        while (true) {
+            if (segmentIndex >= segmentCount) {
+                if (endOfStream || !readPage()) {
+                    endOfStream = true;
+                    assembling = false;
+                    return false;
+                }
+
+                // A packet being assembled is dropped if its end was lost, and the rest of a packet is dropped if its
+                // start was lost or skipped
+                boolean continued = (pageFlags & FLAG_CONTINUED) != 0;
+                discarding = continued && !assembling;
+                assembling = continued && assembling;
+
+                if (skipCompleted) {
+                    // Start after the last packet to end on the first page
+                    skipCompleted = false;
+                    discarding = false;
+                    while (segmentIndex <= lastCompleteSegment) {
+                        bodyPos += data.get(lacingOffset + segmentIndex++) & 0xFF;
+                    }
+                }
+                continue;
+            }
+
+            if (discarding) {
+                discarding = !skipContinuation();
+                continue;
+            }
+
+            int start = bodyPos;
+            int length = 0;
+            boolean complete = false;
+            while (segmentIndex < segmentCount) {
+                int lacing = data.get(lacingOffset + segmentIndex++) & 0xFF;
+                length += lacing;
+                if (lacing < 255) {
+                    complete = true;
+                    break;
+                }
+            }
+            bodyPos += length;
+
+            if (assembling || !complete) {
+                appendAssembly(start, length, !assembling);
+                assembling = !complete;
+                if (!complete) {
+                    continue;
+                }
+                setPacket(assembly, 0, assemblyLength);
+            } else {
+                setPacket(data, start, length);
+            }
+
+            return true;
+        }
+    }
+
+    private void setPacket(ByteBuffer buffer, int offset, int length) {
+        boolean lastOnPage = segmentIndex - 1 == lastCompleteSegment;
+
+        packetBuffer = buffer;
+        packetOffset = offset;
+        packetLength = length;
+        packetGranule = lastOnPage ? pageGranule : -1;
+        packetEndOfStream = lastOnPage && (pageFlags & FLAG_EOS) != 0;
+
+        if (packetEndOfStream) {
+            endOfStream = true;
+            segmentIndex = segmentCount;
+        }
+    }
+
+    private boolean skipContinuation() {
+        while (segmentIndex < segmentCount) {
+            int lacing = data.get(lacingOffset + segmentIndex++) & 0xFF;
+            bodyPos += lacing;
+            if (lacing < 255) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void appendAssembly(int offset, int length, boolean first) {
+        if (first) {
+            assemblyLength = 0;
+        }
+        if (assembly == null || assembly.capacity() - assemblyLength < length) {
+            int capacity = Math.max(assemblyLength + length, assembly == null ? 1 << 16 : assembly.capacity() * 2);
+            ByteBuffer grown = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+            if (assembly != null) {
+                assembly.limit(assemblyLength).position(0);
+                grown.put(assembly);
+            }
+            assembly = grown;
+        }
+
+        ByteBuffer source = data.duplicate();
+        source.limit(offset + length).position(offset);
+        assembly.limit(assembly.capacity()).position(assemblyLength);
+        assembly.put(source);
+        assemblyLength += length;
+    }
+
+    /**
+     * Reads the next page of the followed logical stream, resynchronizing past any corrupt data.
+     */
+    private boolean readPage() throws IOException {
+        while (true) {
+            if (!fill(HEADER_SIZE)) {
+                return false;
+            }
+
+            if (isCapturePattern(data, readPos) && fill(HEADER_SIZE + (data.get(readPos + 26) & 0xFF))) {
+                fill(HEADER_SIZE + (data.get(readPos + 26) & 0xFF) + bodyLength(data, readPos));
+            }
+
+            int pageLength = pageLength(data, readPos, dataLimit);
+            if (pageLength < 0) {
+                // Either a corrupt page, or a false capture pattern
+                readPos++;
+                continue;
+            }
+
+            int segments = data.get(readPos + 26) & 0xFF;
+            int start = readPos;
+            int flags = data.get(start + 5) & 0xFF;
+            int pageSerial = data.getInt(start + 14);
+            readPos += pageLength;
+
+            if (!serialKnown) {
+                // Lock onto the first logical stream that starts with an OpusHead packet
+                if ((flags & FLAG_BOS) == 0 || segments == 0
+                        || !OggOpusHead.hasMagic(data, start + HEADER_SIZE + segments, pageLength - HEADER_SIZE - segments, OggOpusHead.MAGIC)) {
+                    continue;
+                }
+                serial = pageSerial;
+                serialKnown = true;
+            } else if (pageSerial != serial) {
+                continue;
+            }
+
+            pageOffset = start;
+            pageFlags = flags;
+            pageGranule = data.getLong(start + 6);
+            lacingOffset = start + HEADER_SIZE;
+            segmentCount = segments;
+            segmentIndex = 0;
+            bodyPos = lacingOffset + segments;
+
+            lastCompleteSegment = -1;
+            for (int i = segments - 1; i >= 0; i--) {
+                if ((data.get(lacingOffset + i) & 0xFF) < 255) {
+                    lastCompleteSegment = i;
+                    break;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Checks for a complete page with a valid checksum at an offset of a buffer.
+     *
+     * @param data The little endian buffer holding the page.
+     * @param offset The offset of the page in the buffer.
+     * @param limit The end of the readable data in the buffer.
+     * @return The length of the page, header included, or -1 if there is no valid page at the offset.
+     */
+    static int pageLength(ByteBuffer data, int offset, int limit) {
+        if (limit - offset < HEADER_SIZE || !isCapturePattern(data, offset)) {
+            return -1;
+        }
+
+        int segments = data.get(offset + 26) & 0xFF;
+        if (limit - offset < HEADER_SIZE + segments) {
+            return -1;
+        }
+
+        int pageLength = HEADER_SIZE + segments + bodyLength(data, offset);
+        if (limit - offset < pageLength || OggCrc.page(data, offset, pageLength) != data.getInt(offset + OggCrc.CHECKSUM_OFFSET)) {
+            return -1;
+        }
+
+        return pageLength;
+    }
+
+    private static int bodyLength(ByteBuffer data, int offset) {
+        int segments = data.get(offset + 26) & 0xFF;
+        int bodyLength = 0;
+        for (int i = 0; i < segments; i++) {
+            bodyLength += data.get(offset + HEADER_SIZE + i) & 0xFF;
+        }
+        return bodyLength;
+    }
+
+    private static boolean isCapturePattern(ByteBuffer data, int offset) {
+        return data.get(offset) == 'O' && data.get(offset + 1) == 'g' && data.get(offset + 2) == 'g'
+                && data.get(offset + 3) == 'S' && data.get(offset + 4) == 0;
+    }
+
+    /**
+     * Makes sure that at least length bytes are available from the read position.
+     * Reading from the channel may move the unread data to the start of the buffer, so this must not be called while
+     * a page is still being read from.
+     */
+    private boolean fill(int length) throws IOException {
+        if (dataLimit - readPos >= length) {
+            return true;
+        }
+        if (channel == null || channelEof) {
+            return false;
+        }
+
+        if (data.capacity() - readPos < length) {
+            data.limit(dataLimit).position(readPos);
+            data.compact();
+            dataLimit -= readPos;
+            readPos = 0;
+        }
+
+        data.limit(data.capacity()).position(dataLimit);
+        while (dataLimit - readPos < length) {
+            int read = channel.read(data);
+            if (read < 0) {
+                channelEof = true;
+                return false;
+            }
+            dataLimit += read;
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the buffer holding the current packet. This is either the stream buffer or an internal buffer, and must
+     * not be modified.
+     *
+     * @return The buffer, which is direct unless the stream was read from a heap buffer.
+     */
+    public ByteBuffer getPacketBuffer() {
+        return packetBuffer;
+    }
+
+    /**
+     * Gets the offset of the current packet in its buffer.
+     *
+     * @return The packet's offset, in bytes.
+     */
+    public int getPacketOffset() {
+        return packetOffset;
+    }
+
+    /**
+     * Gets the length of the current packet.
+     *
+     * @return The packet's length, in bytes.
+     */
+    public int getPacketLength() {
+        return packetLength;
+    }
+
+    /**
+     * Gets the granule position of the current packet, which is the number of 48 kHz samples up to the end of the
+     * packet, pre-skip included, plus the {@link #getStartGranulePosition() start granule position}. Only the last
+     * packet to end on each page carries a granule position.
+     *
+     * @return The granule position, or -1 if the packet doesn't end its page.
+     */
+    public long getPacketGranulePosition() {
+        return packetGranule;
+    }
+
+    /**
+     * Gets the granule position at the start of the first audio packet. This is usually 0, but a stream cut from a
+     * longer one, e.g. a live stream recorded part way through, may start later. Sample positions in the stream are
+     * counted from here.
+     *
+     * @return The granule position, in 48 kHz samples.
+     */
+    public long getStartGranulePosition() {
+        return startGranule;
+    }
+
+    /**
+     * Checks if the current packet is the last packet of the stream.
+     *
+     * @return True if the packet ends the stream.
+     */
+    public boolean isPacketEndOfStream() {
+        return packetEndOfStream;
+    }
+
+    /**
+     * Gets the serial number of the logical stream being read.
+     *
+     * @return The stream serial number.
+     */
+    public int getStreamSerial() {
+        return serial;
+    }
+
+    /**
+     * Gets the offset of the page holding the end of the current packet. For a stream read from a buffer, this is an
+     * offset in that buffer.
+     *
+     * @return The page's offset, in bytes.
+     */
+    int getPageOffset() {
+        return pageOffset;
+    }
+
+    /**
+     * Gets the offset of the first page after the headers. For a stream read from a buffer, this is an offset in
+     * that buffer.
+     *
+     * @return The offset of the first audio page, in bytes.
+     */
+    int getAudioOffset() {
+        return audioOffset;
+    }
+
+    /**
+     * Moves a reader of a buffer to a page of its stream.
+     *
+     * @param offset The offset of the page in the buffer.
+     * @param granulePosition The granule position at the start of the first packet to read.
+     * @param skipCompletedPackets If the packets that end on the page should be skipped, so that reading starts with
+     *                             the packet after the page's granule position. Otherwise, reading starts with the
+     *                             first packet that starts on the page.
+     * @param discardUntil The granule position before which decoded samples are discarded.
+     */
+    void reposition(int offset, long granulePosition, boolean skipCompletedPackets, long discardUntil) {
+        if (channel != null) {
+            throw new IllegalStateException("Only a reader of a buffer can be repositioned");
+        }
+
+        this.readPos = offset;
+        this.segmentIndex = 0;
+        this.segmentCount = 0;
+        this.assembling = false;
+        this.discarding = false;
+        this.endOfStream = false;
+        this.skipCompleted = skipCompletedPackets;
+        this.samplesRead = granulePosition;
+        this.discardUntil = discardUntil;
+    }
+
+    /**
+     * Decodes the next audio packet into 16-bit samples at the position of a buffer, and advances its position past them.
+     *
+     * The decoder's gain is set to the stream's output gain the first time it is used with this reader. The pre-skip
+     * at the start of the stream and any end trimming at its end are discarded, so this may return 0 for packets that
+     * are entirely discarded.
+     *
+     * @param decoder A mono or stereo decoder, at any sample rate. Only streams with channel mapping family 0 can be decoded.
+     * @param pcm A direct buffer to write the samples to, with at least 120 ms of samples (5760 samples per channel at 48 kHz) remaining.
+     * @return The number of samples per channel written, or -1 at the end of the stream.
+     * @throws IOException If the channel can't be read.
+     */
+    public int decode(OpusDecoder decoder, ByteBuffer pcm) throws IOException {
+        return decode(decoder, pcm, false);
+    }
+
+    /**
+     * Decodes the next audio packet into floating point samples at the position of a buffer, and advances its
+     * position past them. This otherwise behaves like {@link #decode(OpusDecoder, ByteBuffer)}.
+     *
+     * @param decoder A mono or stereo decoder, at any sample rate. Only streams with channel mapping family 0 can be decoded.
+     * @param pcm A direct buffer to write the samples to, with at least 120 ms of samples (5760 samples per channel at 48 kHz) remaining.
+     * @return The number of samples per channel written, or -1 at the end of the stream.
+     * @throws IOException If the channel can't be read.
+     */
+    public int decodeFloat(OpusDecoder decoder, ByteBuffer pcm) throws IOException {
+        return decode(decoder, pcm, true);
+    }
+
+    private int decode(OpusDecoder decoder, ByteBuffer pcm, boolean isFloat) throws IOException {
+        if (head.getMappingFamily() != 0) {
+            throw new IllegalStateException("Streams with channel mapping family " + head.getMappingFamily() + " need a multistream decoder");
+        }
+        configure(decoder);
+
+        int sampleBytes = decoderChannels * (isFloat ? Float.BYTES : Short.BYTES);
+        int maxFrameSize = MAX_PACKET_SAMPLES * decoderRate / 48000;
+        if (pcm.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+        if (pcm.remaining() < maxFrameSize * sampleBytes) {
+            throw new BufferOverflowException();
+        }
+
+        while (nextPacket()) {
+            if (packetLength == 0) {
+                // Zero length packets carry no audio
+                continue;
+            }
+
+            // Count in 48 kHz samples, like granule positions, and scale to the decoder's rate
+            long start = samplesRead;
+            int packetSamples = OpusPacketInspector.getSampleCount(packetBuffer, packetOffset, packetLength, 48000);
+            samplesRead += packetSamples;
+
+            int skip = (int) Math.min(Math.max(discardUntil - start, 0), packetSamples);
+            int keep = packetSamples;
+            if (packetEndOfStream && packetGranule >= 0) {
+                keep = (int) Math.min(Math.max(packetGranule - start, 0), packetSamples);
+            }
+            skip = (int) ((long) skip * decoderRate / 48000);
+            keep = (int) ((long) keep * decoderRate / 48000);
+
+            if (skip == 0) {
+                int decoded = decodePacket(decoder, pcm, pcm.position(), maxFrameSize, isFloat);
+                int written = Math.min(keep, decoded);
+                pcm.position(pcm.position() + written * sampleBytes);
+                return written;
+            }
+
+            int decoded = decodePacket(decoder, scratch, 0, maxFrameSize, isFloat);
+            int written = Math.max(Math.min(keep, decoded) - skip, 0);
+            scratch.limit((skip + written) * sampleBytes).position(skip * sampleBytes);
+            pcm.put(scratch);
+            return written;
+        }
+
+        return -1;
+    }
+
+    private int decodePacket(OpusDecoder decoder, ByteBuffer out, int outOffset, int frameSize, boolean isFloat) {
+        if (isFloat) {
+            return decoder.decodeFloat(packetBuffer, packetOffset, packetLength, out, outOffset, frameSize, 0);
+        } else {
+            return decoder.decode(packetBuffer, packetOffset, packetLength, out, outOffset, frameSize, 0);
+        }
+    }
+
+    private void configure(OpusDecoder decoder) {
+        if (decoder == configuredDecoder) {
+            return;
+        }
+
+        decoder.setGain(head.getOutputGain());
+        decoderRate = decoder.getSampleRate();
+        decoderChannels = decoder.getChannels();
+
+        int scratchBytes = MAX_PACKET_SAMPLES * decoderRate / 48000 * decoderChannels * Float.BYTES;
+        if (scratch == null || scratch.capacity() < scratchBytes) {
+            scratch = ByteBuffer.allocateDirect(scratchBytes).order(ByteOrder.nativeOrder());
+        }
+
+        configuredDecoder = decoder;
+    }
+
+    /**
+     * Closes the channel the stream is read from, if any.
+     *
+     * @throws IOException If the channel can't be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package me.walkerknapp.rapidopus.ogg;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The comment header of an Ogg Opus stream, as described in RFC 7845, section 5.2.
+ */
+public final class OggOpusTags {
+    static final byte[] MAGIC = "OpusTags".getBytes(StandardCharsets.US_ASCII);
+
+    private final String vendor;
+    private final List<String> comments;
+
+    /**
+     * Creates a comment header.
+     *
+     * @param vendor The vendor string of the encoder, e.g. {@link me.walkerknapp.rapidopus.RapidOpus#getVersion()}.
+     * @param comments The user comments, each of the form "NAME=value".
+     */
+    public OggOpusTags(String vendor, List<String> comments) {
+        this.vendor = vendor;
+        this.comments = Collections.unmodifiableList(new ArrayList<>(comments));
+    }
+
+    /**
+     * Parses a comment header packet.
+     * The buffer is read with absolute gets, so its position and byte order are unchanged.
+     *
+     * @param packet A ByteBuffer holding the packet.
+     * @param offset The offset of the packet in the buffer.
+     * @param length The length of the packet, in bytes.
+     * @return The parsed header.
+     * @throws IllegalArgumentException If the packet is not a well formed OpusTags packet.
+     */
+    public static OggOpusTags parse(ByteBuffer packet, int offset, int length) {
+        if (length < 16 || !OggOpusHead.hasMagic(packet, offset, length, MAGIC)) {
+            throw new IllegalArgumentException("Not an OpusTags packet");
+        }
+
+        ByteBuffer le = packet.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int end = offset + length;
+        int pos = offset + 8;
+
+        int vendorLength = readLength(le, pos, end);
+        pos += 4;
+        String vendor = readString(le, pos, vendorLength, end);
+        pos += vendorLength;
+
+        int commentCount = readLength(le, pos, end);
+        pos += 4;
+
+        // Every comment takes at least 4 bytes, so a corrupt count can't make us allocate a huge list.
+        List<String> comments = new ArrayList<>(Math.min(commentCount, (end - pos) / 4));
+        for (int i = 0; i < commentCount; i++) {
+            int commentLength = readLength(le, pos, end);
+            pos += 4;
+            comments.add(readString(le, pos, commentLength, end));
+            pos += commentLength;
+        }
+
+        return new OggOpusTags(vendor, comments);
+    }
+
+    /**
+     * Writes the header as a packet into a new buffer.
+     *
+     * @return A little endian buffer holding the packet between its position and limit.
+     */
+    ByteBuffer toPacket() {
+        byte[] vendorBytes = vendor.getBytes(StandardCharsets.UTF_8);
+        byte[][] commentBytes = new byte[comments.size()][];
+        int length = MAGIC.length + 4 + vendorBytes.length + 4;
+        for (int i = 0; i < commentBytes.length; i++) {
+            commentBytes[i] = comments.get(i).getBytes(StandardCharsets.UTF_8);
+            length += 4 + commentBytes[i].length;
+        }
+
+        ByteBuffer packet = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        packet.put(MAGIC);
+        packet.putInt(vendorBytes.length);
+        packet.put(vendorBytes);
+        packet.putInt(commentBytes.length);
+        for (byte[] comment : commentBytes) {
+            packet.putInt(comment.length);
+            packet.put(comment);
+        }
+        packet.flip();
+        return packet;
+    }
+
+    private static int readLength(ByteBuffer le, int pos, int end) {
+        if (end - pos < 4) {
+            throw new IllegalArgumentException("OpusTags packet is truncated");
+        }
+        int length = le.getInt(pos);
+        if (length < 0 || length > end - pos - 4) {
+            throw new IllegalArgumentException("OpusTags packet is truncated");
+        }
+        return length;
+    }
+
+    private static String readString(ByteBuffer le, int pos, int length, int end) {
+        if (length > end - pos) {
+            throw new IllegalArgumentException("OpusTags packet is truncated");
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer slice = le.duplicate();
+        slice.position(pos);
+        slice.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the vendor string of the encoder that produced the stream.
+     *
+     * @return The vendor string.
+     */
+    public String getVendor() {
+        return vendor;
+    }
+
+    /**
+     * Gets the user comments, each of the form "NAME=value".
+     *
+     * @return An unmodifiable list of the comments.
+     */
+    public List<String> getComments() {
+        return comments;
+    }
+
+    /**
+     * Gets the value of the first comment with a given name, compared case-insensitively.
+     *
+     * @param name The comment name, e.g. "TITLE".
+     * @return The value, or null if there is no such comment.
+     */
+    public String getComment(String name) {
+        for (String comment : comments) {
+            if (comment.length() > name.length() && comment.charAt(name.length()) == '='
+                    && comment.regionMatches(true, 0, name, 0, name.length())) {
+                return comment.substring(name.length() + 1);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,402 @@
+package me.walkerknapp.rapidopus.ogg;
+
+import me.walkerknapp.rapidopus.OpusApplicationMode;
+import me.walkerknapp.rapidopus.OpusEncoder;
+import me.walkerknapp.rapidopus.RapidOpus;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+/**
+ * Encodes long recordings of 16-bit PCM into Ogg Opus streams on many cores at once.
+ *
+ * An encoder is sequential, so the input is split into segments that are encoded in parallel on a
+ * {@link ForkJoinPool}, each by its own fresh encoder. Every encoder starts {@value OggOpusFile#PRE_ROLL} samples
+ * (at 48 kHz) before its segment and throws away the packets it encodes there, so that its state has converged by the
+ * time it reaches the segment. Since every encoder has the same lookahead, feeding them whole frames of the input
+ * keeps their packets aligned, and the segments are stitched into one continuous stream whose granule positions
+ * count every frame exactly once.
+ *
+ * The decoder does not see the state the encoder of the previous segment left behind, which can leave a faint
+ * artifact at a segment boundary. Boundaries are therefore moved to the quietest frame near where they would fall,
+ * where there is little to disturb.
+ *
+ * Segments are written in order as they complete, and at most twice as many segments as the pool has workers are
+ * held in memory at once. A transcoder can be reused, but not from several threads at once.
+ */
+public class OggOpusTranscoder {
+    private static final int MAX_PACKET_SIZE = 4000;
+
+    private final OpusApplicationMode applicationMode;
+
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    private Consumer<OpusEncoder> encoderSetup;
+    private OggOpusTags tags = new OggOpusTags(RapidOpus.getVersion(), Collections.emptyList());
+    private long frameMillis = 20;
+    private long segmentMillis = 30000;
+    private long silenceSearchMillis = 1000;
+
+    /**
+     * Creates a transcoder that encodes 20 ms frames in 30 second segments, on the common pool.
+     *
+     * @param applicationMode The application mode of every encoder.
+     */
+    public OggOpusTranscoder(OpusApplicationMode applicationMode) {
+        this.applicationMode = applicationMode;
+    }
+
+    /**
+     * Sets the pool segments are encoded on.
+     *
+     * @param pool The pool.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Sets a callback that configures every encoder, e.g. its bitrate and complexity, before it encodes anything.
+     * It is called from the pool's workers.
+     *
+     * @param encoderSetup The callback, or null to use the encoder defaults.
+     */
+    public void setEncoderSetup(Consumer<OpusEncoder> encoderSetup) {
+        this.encoderSetup = encoderSetup;
+    }
+
+    /**
+     * Sets the comment header of the streams written.
+     *
+     * @param tags The comment header.
+     */
+    public void setTags(OggOpusTags tags) {
+        this.tags = tags;
+    }
+
+    /**
+     * Sets the duration of each frame encoded.
+     *
+     * @param millis The frame duration: 10, 20, 40 or 60 ms.
+     */
+    public void setFrameDuration(long millis) {
+        if (millis != 10 && millis != 20 && millis != 40 && millis != 60) {
+            throw new IllegalArgumentException("Frame duration must be 10, 20, 40 or 60 ms: " + millis);
+        }
+        this.frameMillis = millis;
+    }
+
+    /**
+     * Sets the duration of the segments encoded in parallel. Longer segments have fewer boundaries, but leave fewer
+     * segments to spread across the pool for shorter inputs.
+     *
+     * @param millis The nominal segment duration, in milliseconds.
+     */
+    public void setSegmentDuration(long millis) {
+        if (millis < 1000) {
+            throw new IllegalArgumentException("Segment duration must be at least a second: " + millis);
+        }
+        this.segmentMillis = millis;
+    }
+
+    /**
+     * Sets how far a segment boundary may move to land on a quiet frame.
+     *
+     * @param millis The distance, in milliseconds, either way, or 0 to split the input at fixed boundaries.
+     */
+    public void setSilenceSearch(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Silence search must not be negative: " + millis);
+        }
+        this.silenceSearchMillis = millis;
+    }
+
+    /**
+     * Encodes a WAV file of 16-bit PCM into an Ogg Opus file.
+     * The sample rate of the file must be one Opus supports. WAV samples are little-endian, so on big-endian platforms
+     * every frame is byte-swapped before it is encoded.
+     *
+     * @param wavPath The path of the WAV file.
+     * @param oggPath The path of the Ogg Opus file to create or replace.
+     * @throws IOException If either file can't be read or written.
+     * @throws IllegalArgumentException If the WAV file is not 16-bit PCM at a sample rate Opus supports.
+     */
+    public void transcodeWav(Path wavPath, Path oggPath) throws IOException {
+        ByteBuffer wav = OggOpusFile.map(wavPath).order(ByteOrder.LITTLE_ENDIAN);
+
+        if (wav.limit() < 12 || wav.getInt(0) != 0x46464952 || wav.getInt(8) != 0x45564157) {
+            throw new IllegalArgumentException("Not a WAV file");
+        }
+
+        int channels = 0;
+        int sampleRate = 0;
+        int offset = 12;
+        while (offset + 8 <= wav.limit()) {
+            int id = wav.getInt(offset);
+            long size = wav.getInt(offset + 4) & 0xFFFFFFFFL;
+            int body = offset + 8;
+
+            if (id == 0x20746d66) {
+                // fmt: PCM or extensible PCM, 16 bits per sample
+                int format = wav.getShort(body) & 0xFFFF;
+                if (size < 16 || (format != 1 && format != 0xFFFE) || wav.getShort(body + 14) != 16) {
+                    throw new IllegalArgumentException("WAV file is not 16-bit PCM");
+                }
+                channels = wav.getShort(body + 2);
+                sampleRate = wav.getInt(body + 4);
+            } else if (id == 0x61746164) {
+                // data
+                if (channels == 0) {
+                    throw new IllegalArgumentException("WAV file has no format before its data");
+                }
+                wav.limit((int) Math.min(wav.limit(), body + size)).position(body);
+
+                try (FileChannel out = FileChannel.open(oggPath, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    transcode(wav, ByteOrder.LITTLE_ENDIAN, sampleRate, channels, out);
+                }
+                return;
+            }
+
+            offset = (int) Math.min(Integer.MAX_VALUE, body + size + (size & 1));
+        }
+
+        throw new IllegalArgumentException("WAV file has no data");
+    }
+
+    /**
+     * Encodes the 16-bit PCM between the position and limit of a buffer into an Ogg Opus stream.
+     * The last frame is padded with silence, and the stream is trimmed to the length of the input.
+     *
+     * @param pcm A direct buffer, e.g. a mapped file, holding interleaved samples in the platform's byte order.
+     * @param sampleRate The sample rate of the input in Hz: 8000, 12000, 16000, 24000 or 48000.
+     * @param channels The number of channels of the input, 1 or 2.
+     * @param channel The blocking channel to write the stream to. It is left open.
+     * @throws IOException If the channel can't be written to.
+     */
+    public void transcode(ByteBuffer pcm, int sampleRate, int channels, WritableByteChannel channel) throws IOException {
+        transcode(pcm, ByteOrder.nativeOrder(), sampleRate, channels, channel);
+    }
+
+    private void transcode(ByteBuffer pcm, ByteOrder order, int sampleRate, int channels, WritableByteChannel channel) throws IOException {
+        if (!pcm.isDirect()) {
+            throw new IllegalArgumentException("Buffer must be direct");
+        }
+        if (sampleRate != 8000 && sampleRate != 12000 && sampleRate != 16000 && sampleRate != 24000 && sampleRate != 48000) {
+            throw new IllegalArgumentException("Sample rate must be supported by Opus: " + sampleRate);
+        }
+        if (channels != 1 && channels != 2) {
+            throw new IllegalArgumentException("Channels must be 1 or 2: " + channels);
+        }
+
+        int lookahead;
+        try (OpusEncoder encoder = createEncoder(sampleRate, channels)) {
+            lookahead = encoder.getLookahead();
+        }
+
+        int frameSize = (int) (sampleRate * frameMillis / 1000);
+        long sampleCount = pcm.remaining() / (channels * Short.BYTES);
+        // Enough frames to push the last sample past the lookahead
+        int frameCount = (int) ((sampleCount + lookahead + frameSize - 1) / frameSize);
+
+        Input input = new Input(pcm, order, sampleRate, channels, frameSize, sampleCount);
+        int[] boundaries = planSegments(input, frameCount);
+        int preRollFrames = (int) ((OggOpusFile.PRE_ROLL * (long) sampleRate / 48000 + frameSize - 1) / frameSize);
+
+        int scale = 48000 / sampleRate;
+        OggOpusHead head = new OggOpusHead(channels, lookahead * scale, sampleRate, 0);
+        OggOpusWriter writer = new OggOpusWriter(channel, head, tags);
+
+        ArrayDeque<Segment> inFlight = new ArrayDeque<>();
+        int window = pool.getParallelism() * 2;
+        int next = 0;
+        try {
+            while (next < boundaries.length - 1 || !inFlight.isEmpty()) {
+                while (next < boundaries.length - 1 && inFlight.size() < window) {
+                    Segment segment = new Segment(input, boundaries[next], boundaries[next + 1], preRollFrames);
+                    segment.task = pool.submit(segment);
+                    inFlight.add(segment);
+                    next++;
+                }
+
+                Segment segment = inFlight.poll();
+                segment.task.join();
+                segment.writeTo(writer);
+            }
+        } finally {
+            for (Segment segment : inFlight) {
+                segment.task.cancel(false);
+            }
+        }
+
+        writer.finish(sampleCount * scale);
+    }
+
+    /**
+     * Splits the frames of the input into segments, moving each boundary to the quietest frame within the silence
+     * search distance.
+     *
+     * @return The first frame of every segment, followed by the frame count.
+     */
+    private int[] planSegments(Input input, int frameCount) {
+        int segmentFrames = (int) Math.max(segmentMillis / frameMillis, 1);
+        // Segments are kept at least half as long as they should be
+        int searchFrames = (int) Math.min(silenceSearchMillis / frameMillis, segmentFrames / 2);
+
+        int[] boundaries = new int[frameCount / (segmentFrames - searchFrames) + 2];
+        int count = 1;
+        int start = 0;
+        while (frameCount - start > segmentFrames + searchFrames) {
+            int nominal = start + segmentFrames;
+            int best = nominal;
+            long bestEnergy = Long.MAX_VALUE;
+            for (int frame = Math.max(nominal - searchFrames, start + 1); frame <= nominal + searchFrames; frame++) {
+                long energy = input.energy(frame);
+                if (energy < bestEnergy) {
+                    best = frame;
+                    bestEnergy = energy;
+                }
+            }
+
+            boundaries[count++] = best;
+            start = best;
+        }
+        boundaries[count++] = frameCount;
+
+        return Arrays.copyOf(boundaries, count);
+    }
+
+    private OpusEncoder createEncoder(int sampleRate, int channels) {
+        OpusEncoder encoder = new OpusEncoder(sampleRate, channels, applicationMode);
+        if (encoderSetup != null) {
+            encoderSetup.accept(encoder);
+        }
+        return encoder;
+    }
+
+    /**
+     * The input, divided into whole frames. Input that isn't in the platform's byte order can't be encoded in place.
+     */
+    private static class Input {
+        final ByteBuffer pcm;
+        final boolean swapped;
+        final int sampleRate;
+        final int channels;
+        final int frameSize;
+        final int frameBytes;
+        final long byteCount;
+
+        Input(ByteBuffer pcm, ByteOrder order, int sampleRate, int channels, int frameSize, long sampleCount) {
+            this.pcm = pcm.duplicate().order(order);
+            this.swapped = order != ByteOrder.nativeOrder();
+            this.sampleRate = sampleRate;
+            this.channels = channels;
+            this.frameSize = frameSize;
+            this.frameBytes = frameSize * channels * Short.BYTES;
+            this.byteCount = sampleCount * channels * Short.BYTES;
+        }
+
+        /**
+         * Gets the number of bytes of a frame that are within the input. The rest of the frame is silence.
+         */
+        int available(int frame) {
+            return (int) Math.max(Math.min(byteCount - (long) frame * frameBytes, frameBytes), 0);
+        }
+
+        int offset(int frame) {
+            return pcm.position() + frame * frameBytes;
+        }
+
+        long energy(int frame) {
+            int offset = offset(frame);
+            int samples = available(frame) / Short.BYTES;
+            long energy = 0;
+            for (int i = 0; i < samples; i++) {
+                int sample = pcm.getShort(offset + i * Short.BYTES);
+                energy += sample * sample;
+            }
+            return energy;
+        }
+    }
+
+    /**
+     * Encodes the frames of one segment, after its pre-roll, into packets held on the heap until they are written.
+     */
+    private class Segment implements Runnable {
+        private final Input input;
+        private final int from;
+        private final int to;
+        private final int preRollFrames;
+
+        ForkJoinTask<?> task;
+        private byte[] packets;
+        private int[] lengths;
+
+        Segment(Input input, int from, int to, int preRollFrames) {
+            this.input = input;
+            this.from = from;
+            this.to = to;
+            this.preRollFrames = preRollFrames;
+        }
+
+        @Override
+        public void run() {
+            ByteBuffer packet = ByteBuffer.allocateDirect(MAX_PACKET_SIZE);
+            ByteBuffer padded = ByteBuffer.allocateDirect(input.frameBytes).order(ByteOrder.nativeOrder());
+            byte[] data = new byte[(to - from) * 256];
+            int[] sizes = new int[to - from];
+            int size = 0;
+
+            try (OpusEncoder encoder = createEncoder(input.sampleRate, input.channels)) {
+                for (int frame = Math.max(from - preRollFrames, 0); frame < to; frame++) {
+                    int available = input.available(frame);
+                    int length;
+                    if (available == input.frameBytes && !input.swapped) {
+                        length = encoder.encode(input.pcm, input.offset(frame), input.frameSize, packet, 0, MAX_PACKET_SIZE);
+                    } else {
+                        // The last frames run past the input, so encode them from a copy padded with silence.
+                        // Input in the other byte order is copied the same way, which swaps its samples.
+                        int offset = input.offset(frame);
+                        for (int i = 0; i < input.frameBytes; i += Short.BYTES) {
+                            padded.putShort(i, i < available ? input.pcm.getShort(offset + i) : 0);
+                        }
+                        length = encoder.encode(padded, 0, input.frameSize, packet, 0, MAX_PACKET_SIZE);
+                    }
+
+                    if (frame < from) {
+                        continue;
+                    }
+
+                    if (size + length > data.length) {
+                        data = Arrays.copyOf(data, Math.max(data.length * 2, size + length));
+                    }
+                    packet.get(data, size, length).clear();
+                    sizes[frame - from] = length;
+                    size += length;
+                }
+            }
+
+            this.packets = data;
+            this.lengths = sizes;
+        }
+
+        void writeTo(OggOpusWriter writer) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(packets);
+            int offset = 0;
+            for (int length : lengths) {
+                writer.writePacket(buffer, offset, length);
+                offset += length;
+            }
+        }
+    }
+}
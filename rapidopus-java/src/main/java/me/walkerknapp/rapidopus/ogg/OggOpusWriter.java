@@ -0,0 +1,330 @@
+package me.walkerknapp.rapidopus.ogg;
+
+import me.walkerknapp.rapidopus.OpusPacketInspector;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Writes encoded Opus packets into an Ogg Opus stream, as described in RFC 7845.
+ *
+ * Granule positions are computed from the packets' TOC bytes, so packets can be written straight from
+ * {@link me.walkerknapp.rapidopus.OpusEncoder#encodeRelative(ByteBuffer, int, ByteBuffer)} without tracking frame sizes.
+ * Pages are filled up to the 255 segment limit, splitting packets across pages where needed, and complete pages are
+ * collected in a direct buffer that is written to the channel in one call when it is full. This keeps the number of
+ * write calls per stream low, which matters when recording many streams at once.
+ *
+ * A writer is not thread-safe.
+ */
+public class OggOpusWriter implements Closeable {
+    private static final int MAX_SEGMENTS = 255;
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer out;
+    private final int serial;
+    private final int preSkip;
+
+    // The page being filled
+    private final byte[] lacing = new byte[MAX_SEGMENTS];
+    private final ByteBuffer body = ByteBuffer.allocateDirect(MAX_SEGMENTS * 255);
+    private int segments;
+    private boolean pageContinued;
+    private boolean pagePacketEnded;
+    private long pageGranule;
+
+    private int sequence;
+    private long granule;
+    private long pageStartGranule;
+    private long maxPageDuration = Long.MAX_VALUE;
+    private boolean finished;
+
+    private long flushedBytes;
+    private OggOpusIndexWriter index;
+
+    /**
+     * Starts a stream with a random serial number, and writes its headers to the buffer.
+     *
+     * @param channel The blocking channel to write the stream to. It is closed when the writer is closed.
+     * @param head The identification header.
+     * @param tags The comment header.
+     * @throws IOException If the channel can't be written to.
+     */
+    public OggOpusWriter(WritableByteChannel channel, OggOpusHead head, OggOpusTags tags) throws IOException {
+        this(channel, head, tags, ThreadLocalRandom.current().nextInt(), DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Starts a stream, and writes its headers to the buffer.
+     *
+     * @param channel The blocking channel to write the stream to. It is closed when the writer is closed.
+     * @param head The identification header.
+     * @param tags The comment header.
+     * @param serial The serial number of the logical stream.
+     * @param bufferSize The size of the buffer pages are collected in before being written to the channel.
+     *                   Must be at least {@value OggOpusReader#MAX_PAGE_SIZE} bytes.
+     * @throws IOException If the channel can't be written to.
+     */
+    public OggOpusWriter(WritableByteChannel channel, OggOpusHead head, OggOpusTags tags, int serial, int bufferSize) throws IOException {
+        if (bufferSize < OggOpusReader.MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Buffer size must be at least " + OggOpusReader.MAX_PAGE_SIZE + ": " + bufferSize);
+        }
+
+        this.channel = channel;
+        this.out = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+        this.serial = serial;
+        this.preSkip = head.getPreSkip();
+
+        // The headers each end their own page, with a granule position of 0
+        ByteBuffer headPacket = ByteBuffer.allocate(head.getPacketLength()).order(ByteOrder.LITTLE_ENDIAN);
+        head.write(headPacket);
+        headPacket.flip();
+        appendPacket(headPacket, 0, headPacket.limit(), 0);
+        closePage(false);
+
+        ByteBuffer tagsPacket = tags.toPacket();
+        appendPacket(tagsPacket, 0, tagsPacket.limit(), 0);
+        closePage(false);
+    }
+
+    /**
+     * Limits the duration of audio that starts on each page, so that pages are closed before reaching 255 segments.
+     * Shorter pages make seeking more precise, at the cost of a little overhead.
+     *
+     * @param samples The maximum duration of a page, in 48 kHz samples.
+     */
+    public void setMaxPageDuration(long samples) {
+        if (samples <= 0) {
+            throw new IllegalArgumentException("Max page duration must be positive: " + samples);
+        }
+        this.maxPageDuration = samples;
+    }
+
+    /**
+     * Writes a sidecar {@link OggOpusIndex} of the stream as it is muxed, with an entry for every page that has a
+     * granule position. Index entries are written whenever the pages they describe are, and the channel is closed
+     * when the writer is closed. Page offsets are counted from the start of the stream, so the stream should be
+     * written to the start of its file.
+     *
+     * @param indexChannel The blocking channel to write the index to.
+     */
+    public void setIndexChannel(WritableByteChannel indexChannel) {
+        if (granule != 0 || index != null) {
+            throw new IllegalStateException("The index must be set before any packets are written");
+        }
+        this.index = new OggOpusIndexWriter(indexChannel, serial, preSkip);
+    }
+
+    /**
+     * Gets the granule position after the last packet written, which is the number of 48 kHz samples written so far,
+     * pre-skip included.
+     *
+     * @return The granule position.
+     */
+    public long getGranulePosition() {
+        return granule;
+    }
+
+    /**
+     * Writes the packet between the position and limit of a buffer, and advances its position to its limit.
+     *
+     * @param packet A buffer holding the packet.
+     * @throws IOException If the channel can't be written to.
+     */
+    public void writePacket(ByteBuffer packet) throws IOException {
+        writePacket(packet, packet.position(), packet.remaining());
+        packet.position(packet.limit());
+    }
+
+    /**
+     * Writes a packet from a region of a buffer, ignoring its position and limit.
+     *
+     * @param packet A heap or direct buffer holding the packet.
+     * @param offset The offset of the packet in the buffer.
+     * @param length The length of the packet, in bytes.
+     * @throws IOException If the channel can't be written to.
+     */
+    public void writePacket(ByteBuffer packet, int offset, int length) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("Stream is finished");
+        }
+        if (length <= 0) {
+            throw new IllegalArgumentException("Packet is empty");
+        }
+
+        int samples = OpusPacketInspector.getSampleCount(packet, offset, length, 48000);
+
+        if (segments > 0 && granule + samples - pageStartGranule > maxPageDuration) {
+            closePage(false);
+        }
+
+        granule += samples;
+        appendPacket(packet, offset, length, granule);
+    }
+
+    /**
+     * Closes the page being filled, and writes every buffered page to the channel.
+     * Flushing often produces smaller pages, so this is best left to {@link #finish(long)} and {@link #close()}.
+     *
+     * @throws IOException If the channel can't be written to.
+     */
+    public void flush() throws IOException {
+        if (segments > 0) {
+            closePage(false);
+        }
+        flushBuffer();
+    }
+
+    /**
+     * Ends the stream, trimming the last packet so that it decodes to an exact number of samples, and writes every
+     * buffered page to the channel. The channel is left open.
+     *
+     * @param sampleCount The number of samples, at 48 kHz, the stream should decode to after the pre-skip.
+     *                    This is usually the length of the original input, which the last frame was padded from.
+     * @throws IOException If the channel can't be written to.
+     */
+    public void finish(long sampleCount) throws IOException {
+        if (finished) {
+            return;
+        }
+
+        long end = preSkip + sampleCount;
+        if (end < granule) {
+            if (!pagePacketEnded) {
+                throw new IllegalStateException("Cannot trim a stream whose last page was already flushed");
+            }
+            pageGranule = end;
+        }
+        finished = true;
+
+        // The end of stream flag goes on the page with the last packet. If that page was already flushed, an empty
+        // page is written to carry it.
+        closePage(true);
+        flushBuffer();
+    }
+
+    /**
+     * Ends the stream without trimming it, if it was not finished yet, writes every buffered page and closes the
+     * channel, and the index channel if there is one.
+     *
+     * @throws IOException If the channel can't be written to or closed.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish(granule - preSkip);
+        } finally {
+            try {
+                channel.close();
+            } finally {
+                if (index != null) {
+                    index.close();
+                }
+            }
+        }
+    }
+
+    private void appendPacket(ByteBuffer packet, int offset, int length, long packetGranule) throws IOException {
+        ByteBuffer source = packet.duplicate();
+        int pos = 0;
+
+        while (true) {
+            int free = MAX_SEGMENTS - segments;
+            if (free == 0) {
+                // Continue the packet on the next page. A packet whose length is a multiple of 255 still needs its
+                // terminating 0 lacing value, which may be all that's left.
+                closePage(false);
+                pageContinued = pos > 0;
+                continue;
+            }
+
+            int remaining = length - pos;
+            int fullSegments = remaining / 255;
+            int count = fullSegments < free ? remaining : free * 255;
+
+            source.limit(offset + pos + count).position(offset + pos);
+            body.put(source);
+            pos += count;
+
+            if (fullSegments < free) {
+                for (int i = 0; i < fullSegments; i++) {
+                    lacing[segments++] = (byte) 255;
+                }
+                lacing[segments++] = (byte) (remaining % 255);
+
+                pageGranule = packetGranule;
+                pagePacketEnded = true;
+                return;
+            }
+
+            for (int i = 0; i < free; i++) {
+                lacing[segments++] = (byte) 255;
+            }
+        }
+    }
+
+    private void closePage(boolean endOfStream) throws IOException {
+        int bodyLength = body.position();
+        int pageLength = OggOpusReader.HEADER_SIZE + segments + bodyLength;
+        if (out.remaining() < pageLength) {
+            flushBuffer();
+        }
+
+        int flags = 0;
+        if (pageContinued) {
+            flags |= OggOpusReader.FLAG_CONTINUED;
+        }
+        if (sequence == 0) {
+            flags |= OggOpusReader.FLAG_BOS;
+        }
+        if (endOfStream) {
+            flags |= OggOpusReader.FLAG_EOS;
+        }
+
+        int start = out.position();
+        out.put((byte) 'O').put((byte) 'g').put((byte) 'g').put((byte) 'S');
+        out.put((byte) 0);
+        out.put((byte) flags);
+        out.putLong(pagePacketEnded ? pageGranule : -1);
+        out.putInt(serial);
+        out.putInt(sequence++);
+        out.putInt(0);
+        out.put((byte) segments);
+        out.put(lacing, 0, segments);
+        body.flip();
+        out.put(body);
+        body.clear();
+
+        int checksum = OggCrc.page(out, start, pageLength);
+        out.putInt(start + OggCrc.CHECKSUM_OFFSET, checksum);
+
+        if (index != null && pagePacketEnded) {
+            index.add(pageGranule, flushedBytes + start, checksum, pageLength);
+        }
+
+        if (pagePacketEnded) {
+            pageStartGranule = pageGranule;
+        }
+        segments = 0;
+        pageContinued = false;
+        pagePacketEnded = false;
+    }
+
+    private void flushBuffer() throws IOException {
+        flushedBytes += out.position();
+
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+
+        if (index != null) {
+            index.flush();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package me.walkerknapp.rapidopus;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives a jitter buffer through simulated network conditions, one tick per 20 ms packet. Each tick puts the packets
+ * that arrive on it, then decodes once, like a playout clock would.
+ */
+class OpusJitterBufferTest {
+    private static final int SAMPLE_RATE = 48000;
+    private static final int FRAME_SIZE = 960;
+    private static final long TICK_NANOS = 20_000_000L;
+    private static final int PACKETS = 20;
+
+    @Test
+    void reorderedPacketsAreAllDecoded() {
+        byte[][] packets = encode(PACKETS);
+
+        try (OpusDecoder decoder = new OpusDecoder(SAMPLE_RATE, 1)) {
+            OpusJitterBuffer buffer = newBuffer(decoder);
+            ByteBuffer pcm = newPcm();
+
+            // Every pair of packets arrives swapped
+            for (int tick = 0; tick < PACKETS; tick++) {
+                int sequence = tick ^ 1;
+                assertTrue(put(buffer, packets, sequence, sequence, tick));
+                assertEquals(tick == 0 ? 0 : FRAME_SIZE, decode(buffer, pcm));
+            }
+            assertEquals(FRAME_SIZE, decode(buffer, pcm));
+
+            assertEquals(PACKETS, buffer.getDecodedCount());
+            assertEquals(0, buffer.getFecCount());
+            assertEquals(0, buffer.getPlcCount());
+            assertEquals(0, buffer.getLateCount());
+            assertEquals(0, buffer.getDroppedCount());
+        }
+    }
+
+    @Test
+    void lostPacketIsRecoveredFromFec() {
+        byte[][] packets = encode(PACKETS);
+        int lost = 3;
+
+        try (OpusDecoder decoder = new OpusDecoder(SAMPLE_RATE, 1)) {
+            OpusJitterBuffer buffer = newBuffer(decoder);
+            ByteBuffer pcm = newPcm();
+
+            for (int tick = 0; tick < PACKETS; tick++) {
+                if (tick != lost) {
+                    assertTrue(put(buffer, packets, tick, tick, tick));
+                }
+                assertEquals(tick == 0 ? 0 : FRAME_SIZE, decode(buffer, pcm));
+            }
+            assertEquals(FRAME_SIZE, decode(buffer, pcm));
+
+            assertEquals(PACKETS - 1, buffer.getDecodedCount());
+            assertEquals(1, buffer.getFecCount());
+            assertEquals(0, buffer.getPlcCount());
+            assertEquals(0, buffer.getLateCount());
+        }
+    }
+
+    @Test
+    void packetDelayedPastRunningDryIsStillPlayed() {
+        byte[][] packets = encode(PACKETS);
+        int stall = 5;
+        int stallTicks = 3;
+
+        try (OpusDecoder decoder = new OpusDecoder(SAMPLE_RATE, 1)) {
+            OpusJitterBuffer buffer = newBuffer(decoder);
+            ByteBuffer pcm = newPcm();
+
+            for (int tick = 0; tick < stall; tick++) {
+                assertTrue(put(buffer, packets, tick, tick, tick));
+                assertEquals(tick == 0 ? 0 : FRAME_SIZE, decode(buffer, pcm));
+            }
+
+            // Nothing arrives for a while: the last packet buffered plays, then the buffer runs dry and conceals one
+            // packet, then it waits to refill
+            assertEquals(FRAME_SIZE, decode(buffer, pcm));
+            assertEquals(FRAME_SIZE, decode(buffer, pcm));
+            assertEquals(0, decode(buffer, pcm));
+            assertEquals(1, buffer.getPlcCount());
+
+            // The stalled packets arrive in a burst, starting with the one that was concealed
+            int tick = stall + stallTicks;
+            for (int sequence = stall; sequence <= tick; sequence++) {
+                assertTrue(put(buffer, packets, sequence, sequence, tick));
+            }
+            assertEquals(FRAME_SIZE, decode(buffer, pcm));
+
+            for (tick++; tick < PACKETS; tick++) {
+                assertTrue(put(buffer, packets, tick, tick, tick));
+                assertEquals(FRAME_SIZE, decode(buffer, pcm));
+            }
+            for (int i = 0; i < stallTicks; i++) {
+                assertEquals(FRAME_SIZE, decode(buffer, pcm));
+            }
+
+            assertEquals(PACKETS, buffer.getDecodedCount());
+            assertEquals(1, buffer.getPlcCount());
+            assertEquals(0, buffer.getLateCount());
+            assertEquals(0, buffer.getDroppedCount());
+        }
+    }
+
+    @Test
+    void sequenceAndTimestampWrap() {
+        byte[][] packets = encode(PACKETS);
+        int firstSequence = 0xFFFF - 5;
+        int firstTimestamp = Integer.MAX_VALUE - 5 * FRAME_SIZE;
+
+        try (OpusDecoder decoder = new OpusDecoder(SAMPLE_RATE, 1)) {
+            OpusJitterBuffer buffer = newBuffer(decoder);
+            ByteBuffer pcm = newPcm();
+
+            for (int tick = 0; tick < PACKETS; tick++) {
+                ByteBuffer packet = ByteBuffer.wrap(packets[tick]);
+                assertTrue(buffer.put(packet, 0, packet.capacity(), (firstSequence + tick) & 0xFFFF,
+                        firstTimestamp + tick * FRAME_SIZE, tick * TICK_NANOS));
+                assertEquals(tick == 0 ? 0 : FRAME_SIZE, decode(buffer, pcm));
+            }
+            assertEquals(FRAME_SIZE, decode(buffer, pcm));
+
+            assertEquals(PACKETS, buffer.getDecodedCount());
+            assertEquals(0, buffer.getPlcCount());
+            assertEquals(0, buffer.getLateCount());
+            assertEquals(0, buffer.getDroppedCount());
+        }
+    }
+
+    private static OpusJitterBuffer newBuffer(OpusDecoder decoder) {
+        return new OpusJitterBuffer(decoder, 16, 1500, 40, 200);
+    }
+
+    private static ByteBuffer newPcm() {
+        return ByteBuffer.allocateDirect(5760 * Short.BYTES);
+    }
+
+    private static boolean put(OpusJitterBuffer buffer, byte[][] packets, int index, int sequence, int tick) {
+        ByteBuffer packet = ByteBuffer.wrap(packets[index]);
+        return buffer.put(packet, 0, packet.capacity(), sequence, sequence * FRAME_SIZE, tick * TICK_NANOS);
+    }
+
+    private static int decode(OpusJitterBuffer buffer, ByteBuffer pcm) {
+        pcm.clear();
+        return buffer.decode(pcm);
+    }
+
+    /**
+     * Encodes a tone into 20 ms mono packets that carry forward error correction data.
+     */
+    private static byte[][] encode(int count) {
+        byte[][] packets = new byte[count][];
+        short[] frame = new short[FRAME_SIZE];
+        ByteBuffer out = ByteBuffer.allocateDirect(1500);
+
+        try (OpusEncoder encoder = new OpusEncoder(SAMPLE_RATE, 1, OpusApplicationMode.VOIP)) {
+            encoder.setBitrate(24000);
+            encoder.setInbandFec(true);
+            encoder.setPacketLossPercentage(20);
+
+            for (int i = 0; i < count; i++) {
+                for (int s = 0; s < FRAME_SIZE; s++) {
+                    frame[s] = (short) (Math.sin(2 * Math.PI * 300 * (i * FRAME_SIZE + s) / SAMPLE_RATE) * 8000);
+                }
+
+                int length = encoder.encode(frame, FRAME_SIZE, out);
+                packets[i] = new byte[length];
+                out.get(packets[i], 0, length).clear();
+            }
+        }
+
+        return packets;
+    }
+}
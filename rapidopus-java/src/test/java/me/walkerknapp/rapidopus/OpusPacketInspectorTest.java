@@ -0,0 +1,118 @@
+package me.walkerknapp.rapidopus;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Cross-checks the pure Java packet inspector against the native opus_packet_* functions, for every TOC byte and
+ * every framing code, including packets libopus rejects.
+ */
+class OpusPacketInspectorTest {
+    private static final int[] SAMPLE_RATES = {8000, 12000, 16000, 24000, 48000};
+
+    // Frame counts for code 3 packets: none (invalid), a single frame, and counts that run past 120 ms for most
+    // frame sizes, up to the largest the count byte can hold.
+    private static final int[] CODE_3_COUNTS = {0, 1, 2, 3, 6, 12, 24, 48, 49, 63};
+
+    @BeforeAll
+    static void loadNatives() {
+        // The static packet functions don't load the natives on their own
+        RapidOpus.getVersion();
+    }
+
+    @Test
+    void tocFieldsMatchNative() {
+        for (int toc = 0; toc < 256; toc++) {
+            byte[] packet = {(byte) toc, 0};
+            int t = toc;
+
+            assertMatchesNative(() -> OpusDecoder.getPacketBandwidth(packet), () -> OpusPacketInspector.getBandwidth(t), packet, "bandwidth");
+            assertMatchesNative(() -> OpusDecoder.getPacketChannelCount(packet), () -> OpusPacketInspector.getChannelCount(t), packet, "channels");
+
+            for (int sampleRate : SAMPLE_RATES) {
+                assertMatchesNative(() -> OpusDecoder.getPacketSamplesPerFrame(packet, sampleRate),
+                        () -> OpusPacketInspector.getSamplesPerFrame(t, sampleRate), packet, "samples per frame at " + sampleRate);
+            }
+        }
+    }
+
+    @Test
+    void frameAndSampleCountsMatchNative() {
+        for (byte[] packet : packets()) {
+            ByteBuffer direct = ByteBuffer.allocateDirect(packet.length);
+            direct.put(packet).flip();
+
+            assertMatchesNative(() -> OpusDecoder.getPacketFrameCount(packet),
+                    () -> OpusPacketInspector.getFrameCount(packet, 0, packet.length), packet, "frame count");
+            assertMatchesNative(() -> OpusDecoder.getPacketFrameCount(packet),
+                    () -> OpusPacketInspector.getFrameCount(direct, 0, packet.length), packet, "frame count (buffer)");
+
+            for (int sampleRate : SAMPLE_RATES) {
+                assertMatchesNative(() -> OpusDecoder.getPacketSampleCount(packet, sampleRate),
+                        () -> OpusPacketInspector.getSampleCount(packet, 0, packet.length, sampleRate), packet, "sample count at " + sampleRate);
+                assertMatchesNative(() -> OpusDecoder.getPacketSampleCount(packet, sampleRate),
+                        () -> OpusPacketInspector.getSampleCount(direct, 0, packet.length, sampleRate), packet, "sample count (buffer) at " + sampleRate);
+            }
+        }
+    }
+
+    @Test
+    void inspectorReadsAtOffset() {
+        // A code 3 packet of five 20 ms CELT frames, after two bytes that are not part of it
+        byte[] padded = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFB, (byte) 0x05, 0, 0};
+
+        assertEquals(5, OpusPacketInspector.getFrameCount(padded, 2, 4));
+        assertEquals(5 * 960, OpusPacketInspector.getSampleCount(padded, 2, 4, 48000));
+    }
+
+    /**
+     * Builds packets of every TOC byte: a bare TOC byte, which is a short code 3 packet for code 3, a TOC byte with a
+     * payload, and for code 3, a count byte with every count in {@link #CODE_3_COUNTS}.
+     */
+    private static List<byte[]> packets() {
+        List<byte[]> packets = new ArrayList<>();
+        for (int toc = 0; toc < 256; toc++) {
+            packets.add(new byte[]{(byte) toc});
+            packets.add(new byte[]{(byte) toc, 10, 20, 30, 40});
+
+            if ((toc & 0x3) == 3) {
+                for (int count : CODE_3_COUNTS) {
+                    packets.add(new byte[]{(byte) toc, (byte) count, 1, 2, 3});
+                    // The VBR and padding flags share the count byte, and must not change the count
+                    packets.add(new byte[]{(byte) toc, (byte) (0xC0 | count), 0, 0, 0});
+                }
+            }
+        }
+        return packets;
+    }
+
+    /**
+     * Asserts that the inspector returns the same value as the native call, or fails with the same message.
+     */
+    private static void assertMatchesNative(Callable<Object> expected, Callable<Object> actual, byte[] packet, String field) {
+        assertEquals(outcome(expected), outcome(actual), () -> field + " of packet " + describe(packet));
+    }
+
+    private static Object outcome(Callable<Object> call) {
+        try {
+            return call.call();
+        } catch (Exception e) {
+            return e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+    }
+
+    private static String describe(byte[] packet) {
+        StringBuilder builder = new StringBuilder();
+        for (byte b : packet) {
+            builder.append(String.format("%02x ", b & 0xFF));
+        }
+        return builder.toString().trim();
+    }
+}
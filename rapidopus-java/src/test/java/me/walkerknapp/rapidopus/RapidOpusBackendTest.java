@@ -0,0 +1,59 @@
+package me.walkerknapp.rapidopus;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the expected backend was picked, and that frames survive a round trip through it. The JDK 22 test run
+ * expects the Foreign Function and Memory backend; every other run expects JNI.
+ */
+class RapidOpusBackendTest {
+    private static final int SAMPLE_RATE = 48000;
+    private static final int CHANNELS = 2;
+    private static final int FRAME_SIZE = 960;
+
+    @Test
+    void backendMatchesRuntime() {
+        // Every encoder and decoder loads the natives before the backend, so do the same here
+        RapidOpus.getVersion();
+
+        assertEquals(System.getProperty("rapidopus.expectedBackend", "jni"), RapidOpus.getBackend());
+    }
+
+    @Test
+    void heapAndDirectRoundTrip() {
+        short[] pcm = new short[FRAME_SIZE * CHANNELS];
+        for (int i = 0; i < FRAME_SIZE; i++) {
+            short sample = (short) (Math.sin(2 * Math.PI * 440 * i / SAMPLE_RATE) * 8000);
+            pcm[i * CHANNELS] = sample;
+            pcm[i * CHANNELS + 1] = sample;
+        }
+
+        ByteBuffer pcmBuffer = ByteBuffer.allocateDirect(pcm.length * Short.BYTES).order(ByteOrder.nativeOrder());
+        pcmBuffer.asShortBuffer().put(pcm);
+
+        try (OpusEncoder encoder = new OpusEncoder(SAMPLE_RATE, CHANNELS, OpusApplicationMode.AUDIO);
+             OpusDecoder decoder = new OpusDecoder(SAMPLE_RATE, CHANNELS)) {
+            ByteBuffer packet = ByteBuffer.allocateDirect(4000);
+            ByteBuffer out = ByteBuffer.allocateDirect(5760 * CHANNELS * Short.BYTES);
+
+            int heapLength = encoder.encode(pcm, FRAME_SIZE, packet);
+            assertTrue(heapLength > 0);
+            byte[] heapPacket = new byte[heapLength];
+            packet.get(heapPacket, 0, heapLength).clear();
+            assertEquals(FRAME_SIZE, decoder.decode(heapPacket, out, 5760, 0));
+
+            int directLength = encoder.encode(pcmBuffer, FRAME_SIZE, packet);
+            assertTrue(directLength > 0);
+            ByteBuffer directPacket = ByteBuffer.allocateDirect(directLength);
+            packet.limit(directLength);
+            directPacket.put(packet).clear();
+            assertEquals(FRAME_SIZE, decoder.decode(directPacket, out, 5760, 0));
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package me.walkerknapp.rapidopus.ogg;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OggCrcTest {
+    @Test
+    void knownAnswer() {
+        // The CRC-32/MPEG-2 polynomial without its initial value and final xor, as in the Ogg specification
+        ByteBuffer check = ByteBuffer.wrap("123456789".getBytes(StandardCharsets.US_ASCII));
+
+        assertEquals(0x89A1897F, OggCrc.update(0, check, 0, check.capacity()));
+        assertEquals(0, OggCrc.update(0, ByteBuffer.allocate(16), 0, 16));
+    }
+
+    @Test
+    void updateContinuesAcrossRanges() {
+        byte[] data = new byte[1000];
+        new Random(7).nextBytes(data);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+
+        int whole = OggCrc.update(0, buffer, 0, data.length);
+        assertEquals(bitwise(data, 0, data.length), whole);
+        assertEquals(whole, OggCrc.update(OggCrc.update(0, buffer, 0, 333), buffer, 333, data.length - 333));
+    }
+
+    @Test
+    void pageSkipsChecksumField() {
+        byte[] page = new byte[OggOpusReader.HEADER_SIZE + 1 + 100];
+        new Random(11).nextBytes(page);
+        ByteBuffer buffer = ByteBuffer.wrap(page);
+        int checksum = OggCrc.page(buffer, 0, page.length);
+
+        for (int i = 0; i < 4; i++) {
+            page[OggCrc.CHECKSUM_OFFSET + i] = 0;
+        }
+        assertEquals(bitwise(page, 0, page.length), checksum);
+    }
+
+    private static int bitwise(byte[] data, int offset, int length) {
+        int crc = 0;
+        for (int i = offset; i < offset + length; i++) {
+            crc ^= (data[i] & 0xFF) << 24;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = crc < 0 ? (crc << 1) ^ 0x04c11db7 : crc << 1;
+            }
+        }
+        return crc;
+    }
+}
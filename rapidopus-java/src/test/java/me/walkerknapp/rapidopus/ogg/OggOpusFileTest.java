@@ -0,0 +1,179 @@
+package me.walkerknapp.rapidopus.ogg;
+
+import me.walkerknapp.rapidopus.OpusApplicationMode;
+import me.walkerknapp.rapidopus.OpusDecoder;
+import me.walkerknapp.rapidopus.OpusEncoder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Decodes and seeks encoded streams, comparing a stream that starts at granule position 0 with the same stream
+ * starting part way through, as a live stream recorded after it started would.
+ */
+class OggOpusFileTest {
+    private static final int CHANNELS = 2;
+    private static final int FRAME_SIZE = 960;
+    private static final int FRAMES = 250;
+    private static final int MAX_FRAME_BYTES = OggOpusReader.MAX_PACKET_SAMPLES * CHANNELS * Short.BYTES;
+
+    // An hour in, and not a whole number of frames
+    private static final long START = 48000L * 3600 + 123;
+
+    private static long sampleCount;
+    private static byte[] stream;
+    private static byte[] shifted;
+
+    @BeforeAll
+    static void encode() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (OpusEncoder encoder = new OpusEncoder(48000, CHANNELS, OpusApplicationMode.AUDIO)) {
+            int preSkip = encoder.getLookahead();
+            sampleCount = (long) FRAMES * FRAME_SIZE - preSkip - 500;
+
+            ByteBuffer pcm = ByteBuffer.allocateDirect(FRAME_SIZE * CHANNELS * Short.BYTES).order(ByteOrder.nativeOrder());
+            ByteBuffer packet = ByteBuffer.allocateDirect(4000);
+
+            try (OggOpusWriter writer = new OggOpusWriter(Channels.newChannel(out), new OggOpusHead(CHANNELS, preSkip, 48000, 0),
+                    new OggOpusTags("rapidopus test", Collections.emptyList()), 1, 1 << 16)) {
+                writer.setMaxPageDuration(4800);
+
+                for (int frame = 0; frame < FRAMES; frame++) {
+                    pcm.clear();
+                    for (int i = 0; i < FRAME_SIZE; i++) {
+                        double t = (frame * FRAME_SIZE + i) / 48000.0;
+                        short sample = (short) (8000 * Math.sin(2 * Math.PI * (220 + 200 * t) * t));
+                        pcm.putShort(sample).putShort((short) (sample / 2));
+                    }
+                    pcm.flip();
+
+                    packet.clear();
+                    encoder.encodeRelative(pcm, FRAME_SIZE, packet);
+                    packet.flip();
+                    writer.writePacket(packet);
+                }
+                writer.finish(sampleCount);
+            }
+        }
+
+        stream = out.toByteArray();
+        shifted = shift(stream, START);
+    }
+
+    @Test
+    void startGranuleIsFoundFromFirstPage() throws IOException {
+        assertEquals(0, new OggOpusReader(ByteBuffer.wrap(stream)).getStartGranulePosition());
+        assertEquals(START, new OggOpusReader(ByteBuffer.wrap(shifted)).getStartGranulePosition());
+        assertEquals(START, new OggOpusReader(Channels.newChannel(new ByteArrayInputStream(shifted))).getStartGranulePosition());
+    }
+
+    @Test
+    void durationIsCountedFromStart() {
+        assertEquals(sampleCount, new OggOpusFile(direct(stream)).getDuration());
+        assertEquals(sampleCount, new OggOpusFile(direct(shifted)).getDuration());
+    }
+
+    @Test
+    void shiftedStreamDecodesLikeOriginal() throws IOException {
+        ByteBuffer expected = decodeAll(new OggOpusReader(direct(stream)));
+        assertEquals(sampleCount * CHANNELS * Short.BYTES, expected.remaining());
+
+        assertEquals(expected, decodeAll(new OggOpusReader(direct(shifted))));
+        assertEquals(expected, decodeAll(new OggOpusReader(Channels.newChannel(new ByteArrayInputStream(shifted)))));
+    }
+
+    @Test
+    void shiftedStreamSeeksLikeOriginal() {
+        OggOpusFile original = new OggOpusFile(direct(stream));
+        OggOpusFile file = new OggOpusFile(direct(shifted));
+
+        for (long target : new long[]{0, 1, 12345, 48000, 100000, sampleCount - 1000}) {
+            original.seek(target);
+            file.seek(target);
+
+            ByteBuffer expected = decode(original, 20000);
+            assertTrue(expected.hasRemaining());
+            assertEquals(expected, decode(file, 20000), "Seek to " + target);
+        }
+    }
+
+    @Test
+    void shiftedStreamDecodesInParallel() throws IOException {
+        OggOpusParallelDecoder decoder = new OggOpusParallelDecoder(48000, CHANNELS);
+        decoder.setRangeDuration(1000);
+
+        ByteBuffer expected = decoder.decode(direct(stream), null);
+        ByteBuffer pcm = decoder.decode(direct(shifted), null);
+        assertEquals(sampleCount * CHANNELS * Short.BYTES, pcm.capacity());
+        assertEquals(expected, pcm);
+
+        // Ranges after the first are pre-rolled, which converges on a sequential decode but doesn't match it exactly,
+        // so only the first range is compared with one
+        int firstRange = 48000 * CHANNELS * Short.BYTES;
+        ByteBuffer sequential = decodeAll(new OggOpusReader(direct(shifted)));
+        sequential.limit(firstRange);
+        pcm.limit(firstRange);
+        assertEquals(sequential, pcm);
+    }
+
+    private static ByteBuffer decodeAll(OggOpusReader reader) throws IOException {
+        ByteBuffer pcm = ByteBuffer.allocateDirect((int) (sampleCount * CHANNELS * Short.BYTES) + MAX_FRAME_BYTES).order(ByteOrder.nativeOrder());
+        try (OpusDecoder decoder = new OpusDecoder(48000, CHANNELS)) {
+            while (reader.decode(decoder, pcm) >= 0) {
+                // Every sample is kept in the buffer
+            }
+        }
+        pcm.flip();
+        return pcm;
+    }
+
+    private static ByteBuffer decode(OggOpusFile file, int samples) {
+        ByteBuffer pcm = ByteBuffer.allocateDirect(samples * CHANNELS * Short.BYTES + MAX_FRAME_BYTES).order(ByteOrder.nativeOrder());
+        try (OpusDecoder decoder = new OpusDecoder(48000, CHANNELS)) {
+            while (pcm.position() < samples * CHANNELS * Short.BYTES && file.decode(decoder, pcm) >= 0) {
+                // Decode until enough samples were kept
+            }
+        }
+        pcm.flip();
+        pcm.limit(Math.min(pcm.limit(), samples * CHANNELS * Short.BYTES));
+        return pcm;
+    }
+
+    /**
+     * Adds an offset to the granule position of every audio page of a stream.
+     */
+    private static byte[] shift(byte[] stream, long offset) {
+        ByteBuffer original = ByteBuffer.wrap(stream).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] copy = stream.clone();
+        ByteBuffer buffer = ByteBuffer.wrap(copy).order(ByteOrder.LITTLE_ENDIAN);
+
+        int pageLength;
+        for (int page = new OggOpusReader(original).getAudioOffset(); page < copy.length; page += pageLength) {
+            pageLength = OggOpusReader.pageLength(original, page, stream.length);
+
+            long granule = buffer.getLong(page + 6);
+            if (granule >= 0) {
+                buffer.putLong(page + 6, granule + offset);
+                buffer.putInt(page + OggCrc.CHECKSUM_OFFSET, OggCrc.page(buffer, page, pageLength));
+            }
+        }
+        return copy;
+    }
+
+    private static ByteBuffer direct(byte[] stream) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(stream.length);
+        buffer.put(stream).flip();
+        return buffer;
+    }
+}
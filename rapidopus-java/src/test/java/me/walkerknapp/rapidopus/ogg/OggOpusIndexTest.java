@@ -0,0 +1,50 @@
+package me.walkerknapp.rapidopus.ogg;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import static me.walkerknapp.rapidopus.ogg.OggOpusRoundTripTest.PACKET_SAMPLES;
+import static me.walkerknapp.rapidopus.ogg.OggOpusRoundTripTest.PRE_SKIP;
+import static me.walkerknapp.rapidopus.ogg.OggOpusRoundTripTest.SERIAL;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the sidecar index written alongside a stream against the pages of the stream, using the streams of
+ * {@link OggOpusRoundTripTest}.
+ */
+class OggOpusIndexTest {
+    @Test
+    void indexMatchesPages() throws IOException {
+        List<byte[]> packets = OggOpusRoundTripTest.packets();
+        ByteArrayOutputStream indexOut = new ByteArrayOutputStream();
+        byte[] stream = OggOpusRoundTripTest.write(packets, OggOpusRoundTripTest.tags(200), packets.size() * PACKET_SAMPLES - PRE_SKIP - 100, indexOut);
+        ByteBuffer buffer = ByteBuffer.wrap(stream).order(ByteOrder.LITTLE_ENDIAN);
+        OggOpusIndex index = new OggOpusIndex(ByteBuffer.wrap(indexOut.toByteArray()));
+
+        assertEquals(SERIAL, index.getStreamSerial());
+        assertEquals(PRE_SKIP, index.getPreSkip());
+
+        int entry = 0;
+        int audioOffset = new OggOpusReader(ByteBuffer.wrap(stream)).getAudioOffset();
+        for (int offset = audioOffset; offset < stream.length; offset += OggOpusReader.pageLength(buffer, offset, stream.length)) {
+            long granule = buffer.getLong(offset + 6);
+            if (granule < 0) {
+                continue;
+            }
+
+            assertEquals(offset, index.getOffset(entry));
+            assertEquals(granule, index.getGranule(entry));
+            assertEquals(OggOpusReader.pageLength(buffer, offset, stream.length), index.getLength(entry));
+            assertTrue(index.matches(buffer, entry));
+            entry++;
+        }
+        assertEquals(entry, index.getEntryCount());
+        assertEquals(packets.size() * PACKET_SAMPLES - 100, index.getGranule(entry - 1));
+    }
+}
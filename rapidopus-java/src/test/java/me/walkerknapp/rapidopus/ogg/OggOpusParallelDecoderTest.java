@@ -0,0 +1,190 @@
+package me.walkerknapp.rapidopus.ogg;
+
+import me.walkerknapp.rapidopus.OpusApplicationMode;
+import me.walkerknapp.rapidopus.OpusDecoder;
+import me.walkerknapp.rapidopus.OpusEncoder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares parallel decodes with sequential ones. Ranges are a second long, and packets are 60 ms on pages of two
+ * packets, so range boundaries fall part way through both pages and packets, and the last packet of every range is
+ * decoded aside and truncated.
+ */
+class OggOpusParallelDecoderTest {
+    private static final int CHANNELS = 2;
+    private static final int FRAME_SIZE = 2880;
+    private static final int FRAMES = 80;
+    private static final int RANGE_SAMPLES = 48000;
+
+    private static long sampleCount;
+    private static byte[] stream;
+    private static byte[] index;
+
+    @BeforeAll
+    static void encode() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream indexOut = new ByteArrayOutputStream();
+
+        try (OpusEncoder encoder = new OpusEncoder(48000, CHANNELS, OpusApplicationMode.AUDIO)) {
+            int preSkip = encoder.getLookahead();
+            // Trim the end so the stream decodes to whole samples at every rate
+            sampleCount = (long) FRAMES * FRAME_SIZE - preSkip - 700;
+            sampleCount -= sampleCount % 6;
+
+            ByteBuffer pcm = ByteBuffer.allocateDirect(FRAME_SIZE * CHANNELS * Short.BYTES).order(ByteOrder.nativeOrder());
+            ByteBuffer packet = ByteBuffer.allocateDirect(4000);
+
+            try (OggOpusWriter writer = new OggOpusWriter(Channels.newChannel(out), new OggOpusHead(CHANNELS, preSkip, 48000, 0),
+                    new OggOpusTags("rapidopus test", Collections.emptyList()), 1, 1 << 16)) {
+                writer.setIndexChannel(Channels.newChannel(indexOut));
+                writer.setMaxPageDuration(2 * FRAME_SIZE);
+
+                for (int frame = 0; frame < FRAMES; frame++) {
+                    pcm.clear();
+                    for (int i = 0; i < FRAME_SIZE; i++) {
+                        double t = (frame * FRAME_SIZE + i) / 48000.0;
+                        short sample = (short) (8000 * Math.sin(2 * Math.PI * (220 + 200 * t) * t));
+                        pcm.putShort(sample).putShort((short) (sample / 2));
+                    }
+                    pcm.flip();
+
+                    packet.clear();
+                    encoder.encodeRelative(pcm, FRAME_SIZE, packet);
+                    packet.flip();
+                    writer.writePacket(packet);
+                }
+                writer.finish(sampleCount);
+            }
+        }
+
+        stream = out.toByteArray();
+        index = indexOut.toByteArray();
+    }
+
+    @Test
+    void decodeMatchesSequential() throws IOException {
+        check(48000, CHANNELS, false, null);
+        check(48000, CHANNELS, false, new OggOpusIndex(ByteBuffer.wrap(index)));
+    }
+
+    @Test
+    void decodeFloatMatchesSequential() throws IOException {
+        check(48000, CHANNELS, true, null);
+        check(48000, CHANNELS, true, new OggOpusIndex(ByteBuffer.wrap(index)));
+    }
+
+    @Test
+    void decodeAtLowerRateMatchesSequential() throws IOException {
+        check(24000, 1, false, null);
+        check(16000, 1, true, new OggOpusIndex(ByteBuffer.wrap(index)));
+    }
+
+    private static void check(int sampleRate, int channels, boolean isFloat, OggOpusIndex index) throws IOException {
+        int sampleBytes = channels * (isFloat ? Float.BYTES : Short.BYTES);
+        int rangeBytes = RANGE_SAMPLES * sampleRate / 48000 * sampleBytes;
+        String description = sampleRate + " Hz, " + channels + " channels, " + (isFloat ? "float" : "short")
+                + (index != null ? ", indexed" : "");
+
+        OggOpusParallelDecoder decoder = new OggOpusParallelDecoder(sampleRate, channels);
+        decoder.setRangeDuration(RANGE_SAMPLES / 48);
+        ByteBuffer pcm = isFloat ? decoder.decodeFloat(direct(stream), index) : decoder.decode(direct(stream), index);
+
+        ByteBuffer sequential = decodeSequential(sampleRate, channels, isFloat);
+        assertEquals(sequential.remaining(), pcm.capacity(), description);
+        assertTrue(pcm.capacity() > 3 * rangeBytes, description);
+
+        // The first range starts at the beginning of the stream, so it matches a sequential decode exactly
+        assertEquals(slice(sequential, 0, rangeBytes), slice(pcm, 0, rangeBytes), description);
+
+        // Every later range starts from a fresh decoder seeked to it, which only converges on the sequential decode,
+        // so each range is compared exactly with a seek to it, and the whole stream loosely with the sequential decode
+        for (int from = rangeBytes; from < pcm.capacity(); from += rangeBytes) {
+            int length = Math.min(rangeBytes, pcm.capacity() - from);
+            ByteBuffer expected = decodeSeeked((long) from / sampleBytes * 48000 / sampleRate, length, sampleRate, channels, isFloat, index);
+            assertEquals(expected, slice(pcm, from, length), description + ", range at byte " + from);
+        }
+
+        double snr = isFloat ? snrFloat(sequential, pcm) : snrShort(sequential, pcm);
+        assertTrue(snr > 10, description + ": " + snr + " dB");
+    }
+
+    private static ByteBuffer decodeSequential(int sampleRate, int channels, boolean isFloat) throws IOException {
+        int sampleBytes = channels * (isFloat ? Float.BYTES : Short.BYTES);
+        int maxFrameBytes = OggOpusReader.MAX_PACKET_SAMPLES * sampleRate / 48000 * sampleBytes;
+        ByteBuffer pcm = ByteBuffer.allocateDirect((int) (sampleCount * sampleRate / 48000 * sampleBytes) + maxFrameBytes)
+                .order(ByteOrder.nativeOrder());
+
+        OggOpusReader reader = new OggOpusReader(direct(stream));
+        try (OpusDecoder decoder = new OpusDecoder(sampleRate, channels)) {
+            while ((isFloat ? reader.decodeFloat(decoder, pcm) : reader.decode(decoder, pcm)) >= 0) {
+                // Every sample is kept in the buffer
+            }
+        }
+        pcm.flip();
+        return pcm;
+    }
+
+    private static ByteBuffer decodeSeeked(long sample, int length, int sampleRate, int channels, boolean isFloat, OggOpusIndex index) {
+        int sampleBytes = channels * (isFloat ? Float.BYTES : Short.BYTES);
+        int maxFrameBytes = OggOpusReader.MAX_PACKET_SAMPLES * sampleRate / 48000 * sampleBytes;
+        ByteBuffer pcm = ByteBuffer.allocateDirect(length + maxFrameBytes).order(ByteOrder.nativeOrder());
+
+        OggOpusFile file = index != null ? new OggOpusFile(direct(stream), index) : new OggOpusFile(direct(stream));
+        try (OpusDecoder decoder = new OpusDecoder(sampleRate, channels)) {
+            file.seek(sample);
+            while (pcm.position() < length && (isFloat ? file.decodeFloat(decoder, pcm) : file.decode(decoder, pcm)) >= 0) {
+                // Decode until the range is covered
+            }
+        }
+        pcm.flip();
+        pcm.limit(Math.min(pcm.limit(), length));
+        return pcm;
+    }
+
+    private static double snrShort(ByteBuffer expected, ByteBuffer actual) {
+        double signal = 0;
+        double noise = 0;
+        for (int i = 0; i < expected.remaining(); i += Short.BYTES) {
+            double e = expected.getShort(expected.position() + i);
+            double a = actual.getShort(i);
+            signal += e * e;
+            noise += (e - a) * (e - a);
+        }
+        return 10 * Math.log10(signal / Math.max(noise, 1e-9));
+    }
+
+    private static double snrFloat(ByteBuffer expected, ByteBuffer actual) {
+        double signal = 0;
+        double noise = 0;
+        for (int i = 0; i < expected.remaining(); i += Float.BYTES) {
+            double e = expected.getFloat(expected.position() + i);
+            double a = actual.getFloat(i);
+            signal += e * e;
+            noise += (e - a) * (e - a);
+        }
+        return 10 * Math.log10(signal / Math.max(noise, 1e-18));
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(offset + length).position(offset);
+        return slice;
+    }
+
+    private static ByteBuffer direct(byte[] stream) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(stream.length);
+        buffer.put(stream).flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,71 @@
+package me.walkerknapp.rapidopus.ogg;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Repositions a reader on every audio page, like seeking does, using the streams of {@link OggOpusRoundTripTest},
+ * where packets span pages and end exactly on page boundaries.
+ */
+class OggOpusRepositionTest {
+    @Test
+    void repositionOnEveryPage() throws IOException {
+        List<byte[]> packets = OggOpusRoundTripTest.packets();
+        byte[] stream = OggOpusRoundTripTest.write(packets, OggOpusRoundTripTest.tags(3), -1, null);
+        ByteBuffer buffer = ByteBuffer.wrap(stream).order(ByteOrder.LITTLE_ENDIAN);
+
+        // The page each packet ends on
+        OggOpusReader reader = new OggOpusReader(ByteBuffer.wrap(stream));
+        int[] endPages = new int[packets.size()];
+        for (int i = 0; i < endPages.length; i++) {
+            assertTrue(reader.nextPacket());
+            endPages[i] = reader.getPageOffset();
+        }
+
+        boolean sawContinued = false;
+        for (int offset = reader.getAudioOffset(); offset < stream.length; offset += OggOpusReader.pageLength(buffer, offset, stream.length)) {
+            boolean continued = (buffer.get(offset + 5) & OggOpusReader.FLAG_CONTINUED) != 0;
+            long granule = buffer.getLong(offset + 6);
+            sawContinued |= continued;
+
+            // Without skipping, reading starts with the first packet to start on the page
+            int first = 0;
+            while (endPages[first] < offset) {
+                first++;
+            }
+            if (continued) {
+                first++;
+            }
+            reader.reposition(offset, 0, false, 0);
+            assertFirstPacket(reader, packets, first, offset);
+
+            // Skipping starts after the last packet to end on the page, which pages without a granule don't have
+            if (granule >= 0) {
+                int next = first;
+                while (next < endPages.length && endPages[next] <= offset) {
+                    next++;
+                }
+                reader.reposition(offset, granule, true, 0);
+                assertFirstPacket(reader, packets, next, offset);
+            }
+        }
+        assertTrue(sawContinued, "No packet spans pages");
+    }
+
+    private static void assertFirstPacket(OggOpusReader reader, List<byte[]> packets, int expected, int pageOffset) throws IOException {
+        if (expected == packets.size()) {
+            assertFalse(reader.nextPacket(), "Packet after the last from page at " + pageOffset);
+            return;
+        }
+        assertTrue(reader.nextPacket(), "No packet from page at " + pageOffset);
+        assertArrayEquals(packets.get(expected), OggOpusRoundTripTest.packet(reader), "First packet from page at " + pageOffset);
+    }
+}
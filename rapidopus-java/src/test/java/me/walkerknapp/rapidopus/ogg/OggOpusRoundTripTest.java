@@ -0,0 +1,160 @@
+package me.walkerknapp.rapidopus.ogg;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Writes streams with {@link OggOpusWriter} and reads them back with {@link OggOpusReader}, with packets that end
+ * exactly on segment and page boundaries and packets that span several pages.
+ */
+class OggOpusRoundTripTest {
+    static final int PRE_SKIP = 312;
+    static final int SERIAL = 0x0BADCAFE;
+
+    // Code 0 packets of a single 20 ms CELT frame, so every packet is 960 samples long whatever its length
+    private static final byte TOC = (byte) 0xF8;
+    static final int PACKET_SAMPLES = 960;
+
+    // Multiples of 255 need a terminating 0 lacing value, 255 * 255 fills a whole page and needs that value on the
+    // next one, and anything longer spans more than 255 segments
+    private static final int[] LENGTHS = {1, 254, 255, 256, 510, 255 * 3, 255 * 254, 255 * 255, 255 * 255 + 1,
+            255 * 255 - 1, 255 * 300, 70000, 2, 255 * 255 * 2, 1000};
+
+    @Test
+    void packetsRoundTrip() throws IOException {
+        List<byte[]> packets = packets();
+        byte[] stream = write(packets, tags(3), -1, null);
+
+        readAll(new OggOpusReader(ByteBuffer.wrap(stream)), packets, packets.size() * PACKET_SAMPLES);
+        readAll(new OggOpusReader(Channels.newChannel(new ByteArrayInputStream(stream))), packets, packets.size() * PACKET_SAMPLES);
+    }
+
+    @Test
+    void endOfStreamIsTrimmed() throws IOException {
+        List<byte[]> packets = packets();
+        long sampleCount = packets.size() * PACKET_SAMPLES - PRE_SKIP - 500;
+        byte[] stream = write(packets, tags(3), sampleCount, null);
+
+        readAll(new OggOpusReader(ByteBuffer.wrap(stream)), packets, PRE_SKIP + sampleCount);
+    }
+
+    @Test
+    void tagsSpanSeveralPages() throws IOException {
+        OggOpusTags tags = tags(200);
+        assertTrue(tags.toPacket().remaining() > 255 * 255);
+
+        List<byte[]> packets = packets();
+        byte[] stream = write(packets, tags, -1, null);
+        OggOpusReader reader = new OggOpusReader(ByteBuffer.wrap(stream));
+
+        assertEquals(tags.getVendor(), reader.getTags().getVendor());
+        assertEquals(tags.getComments(), reader.getTags().getComments());
+        assertEquals(2, reader.getHead().getChannelCount());
+        assertEquals(PRE_SKIP, reader.getHead().getPreSkip());
+        assertEquals(SERIAL, reader.getStreamSerial());
+
+        // The head page, then the tags on at least two pages
+        ByteBuffer buffer = ByteBuffer.wrap(stream).order(ByteOrder.LITTLE_ENDIAN);
+        int headerPages = 0;
+        for (int offset = 0; offset < reader.getAudioOffset(); offset += OggOpusReader.pageLength(buffer, offset, stream.length)) {
+            headerPages++;
+        }
+        assertTrue(headerPages >= 3, "Tags fit on one page");
+
+        readAll(reader, packets, packets.size() * PACKET_SAMPLES);
+    }
+
+    private static void readAll(OggOpusReader reader, List<byte[]> packets, long endGranule) throws IOException {
+        long granule = 0;
+        for (int i = 0; i < packets.size(); i++) {
+            assertTrue(reader.nextPacket(), "Missing packet " + i);
+            assertArrayEquals(packets.get(i), packet(reader), "Packet " + i);
+
+            granule += PACKET_SAMPLES;
+            boolean last = i == packets.size() - 1;
+            assertEquals(last, reader.isPacketEndOfStream());
+            if (last) {
+                assertEquals(endGranule, reader.getPacketGranulePosition());
+            } else if (reader.getPacketGranulePosition() >= 0) {
+                assertEquals(granule, reader.getPacketGranulePosition(), "Granule of packet " + i);
+            }
+        }
+        assertFalse(reader.nextPacket());
+        reader.close();
+    }
+
+    static byte[] write(List<byte[]> packets, OggOpusTags tags, long sampleCount, ByteArrayOutputStream index) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // The smallest buffer, so that pages are written in many calls and index offsets span flushes
+        try (OggOpusWriter writer = new OggOpusWriter(Channels.newChannel(out), new OggOpusHead(2, PRE_SKIP, 48000, 0),
+                tags, SERIAL, OggOpusReader.MAX_PAGE_SIZE)) {
+            if (index != null) {
+                writer.setIndexChannel(Channels.newChannel(index));
+            }
+            for (byte[] packet : packets) {
+                writer.writePacket(ByteBuffer.wrap(packet));
+            }
+            if (sampleCount >= 0) {
+                writer.finish(sampleCount);
+            }
+        }
+
+        return out.toByteArray();
+    }
+
+    static List<byte[]> packets() {
+        List<byte[]> packets = new ArrayList<>();
+        for (int length : LENGTHS) {
+            packets.add(packet(packets.size(), length));
+            // Small packets in between, so that the long ones start part way through pages
+            for (int i = 0; i < 7; i++) {
+                packets.add(packet(packets.size(), 1 + (packets.size() * 37) % 400));
+            }
+        }
+        return packets;
+    }
+
+    private static byte[] packet(int index, int length) {
+        byte[] packet = new byte[length];
+        packet[0] = TOC;
+        for (int i = 1; i < length; i++) {
+            packet[i] = (byte) (index * 31 + i);
+        }
+        return packet;
+    }
+
+    static byte[] packet(OggOpusReader reader) {
+        ByteBuffer buffer = reader.getPacketBuffer().duplicate();
+        buffer.limit(reader.getPacketOffset() + reader.getPacketLength()).position(reader.getPacketOffset());
+        byte[] packet = new byte[buffer.remaining()];
+        buffer.get(packet);
+        return packet;
+    }
+
+    static OggOpusTags tags(int commentCount) {
+        char[] value = new char[500];
+        Arrays.fill(value, 'x');
+
+        List<String> comments = new ArrayList<>();
+        for (int i = 0; i < commentCount; i++) {
+            comments.add("COMMENT" + i + "=" + new String(value));
+        }
+        return new OggOpusTags("rapidopus test", Collections.unmodifiableList(comments));
+    }
+}
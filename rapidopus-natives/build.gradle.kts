@@ -60,6 +60,18 @@ tasks.withType(LinkSharedLibrary::class).configureEach {
             else -> listOf()
         }
     })
+
+    // Export the libopus functions that the Foreign Function and Memory backend looks up. Shared objects and dylibs
+    // export them already, since libopus gives them default visibility.
+    val exports = file("src/main/windows/rapidopus-natives.def")
+    linkerArgs.addAll(toolChain.zip(targetPlatform) { toolChain, platform ->
+        if (!platform.operatingSystem.isWindows) {
+            listOf()
+        } else when (toolChain) {
+            is VisualCpp -> listOf("/DEF:" + exports.absolutePath)
+            else -> listOf(exports.absolutePath)
+        }
+    })
 }
 
 library {
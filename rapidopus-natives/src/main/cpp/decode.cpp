@@ -1,8 +1,61 @@
 #include <jni.h>
 
 #include "me_walkerknapp_rapidopus_OpusDecoder.h"
+#include "pinned_array.h"
 #include <opus/opus.h>
 
+// Layout of a single entry in an OpusDecoderBatch's entry table.
+struct DecodeBatchEntry {
+    jlong decoder;
+    jint packetOffset;
+    jint packetLength;
+    jint outputOffset;
+    jint frameSize;
+    jint decodeFec;
+    jint reserved;
+};
+
+static_assert(sizeof(DecodeBatchEntry) == 32, "DecodeBatchEntry must match OpusDecoderBatch.ENTRY_BYTES");
+
+// Layout of an OpusPacketInfo's table.
+static const int PACKET_INFO_FRAME_OFFSETS = 6;
+static const int PACKET_INFO_FRAME_SIZES = PACKET_INFO_FRAME_OFFSETS + 48;
+static const int PACKET_INFO_TABLE_SIZE = PACKET_INFO_FRAME_SIZES + 48;
+
+// Parses a packet into an OpusPacketInfo table. This makes no JNI calls, so the packet may be a pinned array.
+static int parsePacket(const unsigned char *data, opus_int32 len, opus_int32 sampleRate, jint *table) {
+    unsigned char toc;
+    const unsigned char *frames[48];
+    opus_int16 sizes[48];
+    int payloadOffset;
+
+    int count = opus_packet_parse(data, len, &toc, frames, sizes, &payloadOffset);
+
+    if(count < 0) {
+        return count;
+    }
+
+    table[0] = toc;
+    table[1] = count;
+    table[2] = payloadOffset;
+    table[3] = opus_packet_get_bandwidth(data);
+    table[4] = opus_packet_get_nb_channels(data);
+    table[5] = opus_packet_get_samples_per_frame(data, sampleRate);
+
+    for(int i = 0; i < count; i++) {
+        table[PACKET_INFO_FRAME_OFFSETS + i] = static_cast<jint>(frames[i] - data);
+        table[PACKET_INFO_FRAME_SIZES + i] = sizes[i];
+    }
+
+    return count;
+}
+
+static void copyPacketTable(JNIEnv *env, jintArray jTable, const jint *table, int count) {
+    // Only the populated part of the frame tables is copied back.
+    env->SetIntArrayRegion(jTable, 0, PACKET_INFO_FRAME_OFFSETS + count, table);
+    env->SetIntArrayRegion(jTable, PACKET_INFO_FRAME_SIZES, count, table + PACKET_INFO_FRAME_SIZES);
+}
+
 JNIEXPORT jlong JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_decoderCreate(JNIEnv *env, jclass jClazz, jint jSampleRate, jint jChannels) {
     int err = OPUS_OK;
 
@@ -22,17 +75,15 @@ JNIEXPORT void JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_decoderDestroy(
 JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_decode__J_3BLjava_nio_ByteBuffer_2II
     (JNIEnv *env, jclass jClazz, jlong pDecoder, jbyteArray jInputData, jobject jOutBuffer, jint jFrameSize, jint jDecodeFec) {
 
-    jboolean isCopy = JNI_FALSE;
     int inSize = env->GetArrayLength(jInputData);
-    jbyte *inData = env->GetByteArrayElements(jInputData, &isCopy);
-
     auto *outData = reinterpret_cast<opus_int16 *>(env->GetDirectBufferAddress(jOutBuffer));
 
-    int ret = opus_decode(reinterpret_cast<OpusDecoder *>(pDecoder), reinterpret_cast<unsigned char *>(inData), inSize, outData, jFrameSize, jDecodeFec);
-
-    env->ReleaseByteArrayElements(jInputData, inData, JNI_ABORT);
+    PinnedByteArray inData(env, jInputData, JNI_ABORT);
+    if(inData.get() == nullptr) {
+        return OPUS_ALLOC_FAIL;
+    }
 
-    return ret;
+    return opus_decode(reinterpret_cast<OpusDecoder *>(pDecoder), reinterpret_cast<unsigned char *>(inData.get()), inSize, outData, jFrameSize, jDecodeFec);
 }
 
 JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_decode__JLjava_nio_ByteBuffer_2Ljava_nio_ByteBuffer_2II
@@ -48,17 +99,15 @@ JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_decode__JLjava_
 JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_decodeFloat__J_3BLjava_nio_ByteBuffer_2II
     (JNIEnv *env, jclass jClazz, jlong pDecoder, jbyteArray jInputData, jobject jOutputBuffer, jint jFrameSize, jint jDecodeFec) {
 
-    jboolean isCopy = JNI_FALSE;
     int inSize = env->GetArrayLength(jInputData);
-    jbyte *inData = env->GetByteArrayElements(jInputData, &isCopy);
-
     auto *outData = reinterpret_cast<float *>(env->GetDirectBufferAddress(jOutputBuffer));
 
-    int ret = opus_decode_float(reinterpret_cast<OpusDecoder *>(pDecoder), reinterpret_cast<unsigned char *>(inData), inSize, outData, jFrameSize, jDecodeFec);
-
-    env->ReleaseByteArrayElements(jInputData, inData, JNI_ABORT);
+    PinnedByteArray inData(env, jInputData, JNI_ABORT);
+    if(inData.get() == nullptr) {
+        return OPUS_ALLOC_FAIL;
+    }
 
-    return ret;
+    return opus_decode_float(reinterpret_cast<OpusDecoder *>(pDecoder), reinterpret_cast<unsigned char *>(inData.get()), inSize, outData, jFrameSize, jDecodeFec);
 }
 
 JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_decodeFloat__JLjava_nio_ByteBuffer_2Ljava_nio_ByteBuffer_2II
@@ -71,16 +120,46 @@ JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_decodeFloat__JL
     return opus_decode_float(reinterpret_cast<OpusDecoder *>(pDecoder), inData, inSize, outData, jFrameSize, jDecodeFec);
 }
 
-JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_decoderGetNbSamples__J_3B(JNIEnv *env, jclass jClazz, jlong pDecoder, jbyteArray jInputData) {
-    jboolean isCopy = JNI_FALSE;
-    int inSize = env->GetArrayLength(jInputData);
-    jbyte *inData = env->GetByteArrayElements(jInputData, &isCopy);
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_decode__JLjava_nio_ByteBuffer_2IILjava_nio_ByteBuffer_2III
+    (JNIEnv *env, jclass jClazz, jlong pDecoder, jobject jInputBuffer, jint jInputOffset, jint jInputLength, jobject jOutputBuffer, jint jOutputOffset, jint jFrameSize, jint jDecodeFec) {
 
-    int ret = opus_decoder_get_nb_samples(reinterpret_cast<OpusDecoder *>(pDecoder), reinterpret_cast<unsigned char *>(inData), inSize);
+    auto *inData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jInputBuffer)) + jInputOffset;
+    auto *outData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jOutputBuffer)) + jOutputOffset;
 
-    env->ReleaseByteArrayElements(jInputData, inData, JNI_ABORT);
+    return opus_decode(reinterpret_cast<OpusDecoder *>(pDecoder), inData, jInputLength, reinterpret_cast<opus_int16 *>(outData), jFrameSize, jDecodeFec);
+}
 
-    return ret;
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_decodeFloat__JLjava_nio_ByteBuffer_2IILjava_nio_ByteBuffer_2III
+    (JNIEnv *env, jclass jClazz, jlong pDecoder, jobject jInputBuffer, jint jInputOffset, jint jInputLength, jobject jOutputBuffer, jint jOutputOffset, jint jFrameSize, jint jDecodeFec) {
+
+    auto *inData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jInputBuffer)) + jInputOffset;
+    auto *outData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jOutputBuffer)) + jOutputOffset;
+
+    return opus_decode_float(reinterpret_cast<OpusDecoder *>(pDecoder), inData, jInputLength, reinterpret_cast<float *>(outData), jFrameSize, jDecodeFec);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_decodeAddress
+    (JNIEnv *env, jclass jClazz, jlong pDecoder, jlong jInputAddress, jint jInputLength, jlong jOutputAddress, jint jFrameSize, jint jDecodeFec) {
+
+    return opus_decode(reinterpret_cast<OpusDecoder *>(pDecoder), reinterpret_cast<unsigned char *>(jInputAddress), jInputLength,
+                       reinterpret_cast<opus_int16 *>(jOutputAddress), jFrameSize, jDecodeFec);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_decodeFloatAddress
+    (JNIEnv *env, jclass jClazz, jlong pDecoder, jlong jInputAddress, jint jInputLength, jlong jOutputAddress, jint jFrameSize, jint jDecodeFec) {
+
+    return opus_decode_float(reinterpret_cast<OpusDecoder *>(pDecoder), reinterpret_cast<unsigned char *>(jInputAddress), jInputLength,
+                             reinterpret_cast<float *>(jOutputAddress), jFrameSize, jDecodeFec);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_decoderGetNbSamples__J_3B(JNIEnv *env, jclass jClazz, jlong pDecoder, jbyteArray jInputData) {
+    int inSize = env->GetArrayLength(jInputData);
+    PinnedByteArray inData(env, jInputData, JNI_ABORT);
+    if(inData.get() == nullptr) {
+        return OPUS_ALLOC_FAIL;
+    }
+
+    return opus_decoder_get_nb_samples(reinterpret_cast<OpusDecoder *>(pDecoder), reinterpret_cast<unsigned char *>(inData.get()), inSize);
 }
 
 JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_decoderGetNbSamples__JLjava_nio_ByteBuffer_2(JNIEnv *env, jclass jClazz, jlong pDecoder, jobject jInputBuffer) {
@@ -91,14 +170,12 @@ JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_decoderGetNbSam
 }
 
 JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_packetGetBandwidth___3B(JNIEnv *env, jclass jClazz, jbyteArray jInputData) {
-    jboolean isCopy = JNI_FALSE;
-    jbyte *inData = env->GetByteArrayElements(jInputData, &isCopy);
-
-    int ret = opus_packet_get_bandwidth(reinterpret_cast<unsigned char *>(inData));
-
-    env->ReleaseByteArrayElements(jInputData, inData, JNI_ABORT);
+    PinnedByteArray inData(env, jInputData, JNI_ABORT);
+    if(inData.get() == nullptr) {
+        return OPUS_ALLOC_FAIL;
+    }
 
-    return ret;
+    return opus_packet_get_bandwidth(reinterpret_cast<unsigned char *>(inData.get()));
 }
 
 JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_packetGetBandwidth__Ljava_nio_ByteBuffer_2(JNIEnv *env, jclass jClazz, jobject jInputBuffer) {
@@ -108,14 +185,12 @@ JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_packetGetBandwi
 }
 
 JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_packetGetNbChannels___3B(JNIEnv *env, jclass jClazz, jbyteArray jInputData) {
-    jboolean isCopy = JNI_FALSE;
-    jbyte *inData = env->GetByteArrayElements(jInputData, &isCopy);
-
-    int ret = opus_packet_get_nb_channels(reinterpret_cast<unsigned char *>(inData));
-
-    env->ReleaseByteArrayElements(jInputData, inData, JNI_ABORT);
+    PinnedByteArray inData(env, jInputData, JNI_ABORT);
+    if(inData.get() == nullptr) {
+        return OPUS_ALLOC_FAIL;
+    }
 
-    return ret;
+    return opus_packet_get_nb_channels(reinterpret_cast<unsigned char *>(inData.get()));
 }
 
 JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_packetGetNbChannels__Ljava_nio_ByteBuffer_2(JNIEnv *env, jclass jClazz, jobject jInputBuffer) {
@@ -125,15 +200,13 @@ JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_packetGetNbChan
 }
 
 JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_packetGetNbFrames___3B(JNIEnv *env, jclass jClazz, jbyteArray jInputData) {
-    jboolean isCopy = JNI_FALSE;
     int inSize = env->GetArrayLength(jInputData);
-    jbyte *inData = env->GetByteArrayElements(jInputData, &isCopy);
-
-    int ret = opus_packet_get_nb_frames(reinterpret_cast<unsigned char *>(inData), inSize);
-
-    env->ReleaseByteArrayElements(jInputData, inData, JNI_ABORT);
+    PinnedByteArray inData(env, jInputData, JNI_ABORT);
+    if(inData.get() == nullptr) {
+        return OPUS_ALLOC_FAIL;
+    }
 
-    return ret;
+    return opus_packet_get_nb_frames(reinterpret_cast<unsigned char *>(inData.get()), inSize);
 }
 
 JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_packetGetNbFrames__Ljava_nio_ByteBuffer_2(JNIEnv *env, jclass jClazz, jobject jInputBuffer) {
@@ -144,15 +217,13 @@ JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_packetGetNbFram
 }
 
 JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_packetGetNbSamples___3BI(JNIEnv *env, jclass jClazz, jbyteArray jInputData, jint jSampleRate) {
-    jboolean isCopy = JNI_FALSE;
     int inSize = env->GetArrayLength(jInputData);
-    jbyte *inData = env->GetByteArrayElements(jInputData, &isCopy);
-
-    int ret = opus_packet_get_nb_samples(reinterpret_cast<unsigned char *>(inData), inSize, jSampleRate);
-
-    env->ReleaseByteArrayElements(jInputData, inData, JNI_ABORT);
+    PinnedByteArray inData(env, jInputData, JNI_ABORT);
+    if(inData.get() == nullptr) {
+        return OPUS_ALLOC_FAIL;
+    }
 
-    return ret;
+    return opus_packet_get_nb_samples(reinterpret_cast<unsigned char *>(inData.get()), inSize, jSampleRate);
 }
 
 JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_packetGetNbSamples__Ljava_nio_ByteBuffer_2I(JNIEnv *env, jclass jClazz, jobject jInputBuffer, jint jSampleRate) {
@@ -163,14 +234,12 @@ JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_packetGetNbSamp
 }
 
 JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_packetGetSamplesPerFrame___3BI(JNIEnv *env, jclass jClazz, jbyteArray jInputData, jint jSampleRate) {
-    jboolean isCopy = JNI_FALSE;
-    jbyte *inData = env->GetByteArrayElements(jInputData, &isCopy);
-
-    int ret = opus_packet_get_samples_per_frame(reinterpret_cast<unsigned char *>(inData), jSampleRate);
-
-    env->ReleaseByteArrayElements(jInputData, inData, JNI_ABORT);
+    PinnedByteArray inData(env, jInputData, JNI_ABORT);
+    if(inData.get() == nullptr) {
+        return OPUS_ALLOC_FAIL;
+    }
 
-    return ret;
+    return opus_packet_get_samples_per_frame(reinterpret_cast<unsigned char *>(inData.get()), jSampleRate);
 }
 
 JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_packetGetSamplesPerFrame__Ljava_nio_ByteBuffer_2I(JNIEnv *env, jclass jClazz, jobject jInputBuffer, jint jSampleRate) {
@@ -180,39 +249,79 @@ JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_packetGetSample
     return opus_packet_get_samples_per_frame(inData, jSampleRate);
 }
 
-JNIEXPORT void JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_nPcmSoftClip___3FII_3F(JNIEnv *env, jclass jClazz, jfloatArray jPcmData, jint jFrameSize, jint jChannels, jfloatArray jMem) {
-    jboolean isCopy = JNI_FALSE;
-    jfloat *pcmData = env->GetFloatArrayElements(jPcmData, &isCopy);
-    jfloat *mem = env->GetFloatArrayElements(jMem, &isCopy);
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_packetParse___3BI_3I
+    (JNIEnv *env, jclass jClazz, jbyteArray jInputData, jint jSampleRate, jintArray jTable) {
 
-    opus_pcm_soft_clip(pcmData, jFrameSize, jChannels, mem);
+    int inSize = env->GetArrayLength(jInputData);
+    jint table[PACKET_INFO_TABLE_SIZE];
+    int ret;
+
+    {
+        PinnedByteArray inData(env, jInputData, JNI_ABORT);
+        if(inData.get() == nullptr) {
+            return OPUS_ALLOC_FAIL;
+        }
+
+        ret = parsePacket(reinterpret_cast<unsigned char *>(inData.get()), inSize, jSampleRate, table);
+    }
+
+    // The table is only copied back once the packet has been released, as no JNI calls may be made while it is pinned.
+    if(ret >= 0) {
+        copyPacketTable(env, jTable, table, ret);
+    }
+
+    return ret;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_packetParse__Ljava_nio_ByteBuffer_2III_3I
+    (JNIEnv *env, jclass jClazz, jobject jInputBuffer, jint jOffset, jint jLength, jint jSampleRate, jintArray jTable) {
+
+    auto *inData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jInputBuffer));
+
+    jint table[PACKET_INFO_TABLE_SIZE];
+    int ret = parsePacket(inData + jOffset, jLength, jSampleRate, table);
+    if(ret >= 0) {
+        copyPacketTable(env, jTable, table, ret);
+    }
+
+    return ret;
+}
+
+JNIEXPORT void JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_nPcmSoftClip___3FII_3F(JNIEnv *env, jclass jClazz, jfloatArray jPcmData, jint jFrameSize, jint jChannels, jfloatArray jMem) {
+    // Both the clipped samples and the clipping state are written back.
+    PinnedFloatArray pcmData(env, jPcmData, 0);
+    PinnedFloatArray mem(env, jMem, 0);
+    if(pcmData.get() == nullptr || mem.get() == nullptr) {
+        return;
+    }
 
-    env->ReleaseFloatArrayElements(jMem, mem, JNI_ABORT);
-    env->ReleaseFloatArrayElements(jPcmData, pcmData, JNI_ABORT);
+    opus_pcm_soft_clip(pcmData.get(), jFrameSize, jChannels, mem.get());
 }
 
 JNIEXPORT void JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_nPcmSoftClip__Ljava_nio_ByteBuffer_2II_3F
     (JNIEnv *env, jclass jClazz, jobject jPcmBuffer, jint jFrameSize, jint jChannels, jfloatArray jMem) {
 
-    jboolean isCopy = JNI_FALSE;
     auto *pcmData = reinterpret_cast<float *>(env->GetDirectBufferAddress(jPcmBuffer));
-    jfloat *mem = env->GetFloatArrayElements(jMem, &isCopy);
 
-    opus_pcm_soft_clip(pcmData, jFrameSize, jChannels, mem);
+    PinnedFloatArray mem(env, jMem, 0);
+    if(mem.get() == nullptr) {
+        return;
+    }
 
-    env->ReleaseFloatArrayElements(jMem, mem, JNI_ABORT);
+    opus_pcm_soft_clip(pcmData, jFrameSize, jChannels, mem.get());
 }
 
 JNIEXPORT void JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_nPcmSoftClip___3FIILjava_nio_ByteBuffer_2
     (JNIEnv *env, jclass jClazz, jfloatArray jPcmData, jint jFrameSize, jint jChannels, jobject jMemBuffer) {
 
-    jboolean isCopy = JNI_FALSE;
-    jfloat *pcmData = env->GetFloatArrayElements(jPcmData, &isCopy);
     auto *mem = reinterpret_cast<float *>(env->GetDirectBufferAddress(jMemBuffer));
 
-    opus_pcm_soft_clip(pcmData, jFrameSize, jChannels, mem);
+    PinnedFloatArray pcmData(env, jPcmData, 0);
+    if(pcmData.get() == nullptr) {
+        return;
+    }
 
-    env->ReleaseFloatArrayElements(jPcmData, pcmData, JNI_ABORT);
+    opus_pcm_soft_clip(pcmData.get(), jFrameSize, jChannels, mem);
 }
 
 JNIEXPORT void JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_nPcmSoftClip__Ljava_nio_ByteBuffer_2IILjava_nio_ByteBuffer_2
@@ -261,3 +370,41 @@ JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_decoderGetLastP
     opus_decoder_ctl(reinterpret_cast<OpusDecoder *>(pDecoder), OPUS_GET_LAST_PACKET_DURATION(&duration));
     return duration;
 }
+
+JNIEXPORT void JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_decodeBatch
+    (JNIEnv *env, jclass jClazz, jobject jEntries, jint jCount, jobject jInputBuffer, jobject jOutputBuffer, jobject jResults) {
+
+    auto *entries = reinterpret_cast<DecodeBatchEntry *>(env->GetDirectBufferAddress(jEntries));
+    auto *inData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jInputBuffer));
+    auto *outData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jOutputBuffer));
+    auto *results = reinterpret_cast<jint *>(env->GetDirectBufferAddress(jResults));
+
+    for (int i = 0; i < jCount; i++) {
+        const DecodeBatchEntry &entry = entries[i];
+
+        // Lost packets are passed as a null payload, so that the decoder runs packet loss concealment.
+        const unsigned char *packet = entry.packetLength > 0 ? inData + entry.packetOffset : nullptr;
+
+        results[i] = opus_decode(reinterpret_cast<OpusDecoder *>(entry.decoder), packet, entry.packetLength,
+                                 reinterpret_cast<opus_int16 *>(outData + entry.outputOffset), entry.frameSize, entry.decodeFec);
+    }
+}
+
+JNIEXPORT void JNICALL Java_me_walkerknapp_rapidopus_OpusDecoder_decodeFloatBatch
+    (JNIEnv *env, jclass jClazz, jobject jEntries, jint jCount, jobject jInputBuffer, jobject jOutputBuffer, jobject jResults) {
+
+    auto *entries = reinterpret_cast<DecodeBatchEntry *>(env->GetDirectBufferAddress(jEntries));
+    auto *inData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jInputBuffer));
+    auto *outData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jOutputBuffer));
+    auto *results = reinterpret_cast<jint *>(env->GetDirectBufferAddress(jResults));
+
+    for (int i = 0; i < jCount; i++) {
+        const DecodeBatchEntry &entry = entries[i];
+
+        // Lost packets are passed as a null payload, so that the decoder runs packet loss concealment.
+        const unsigned char *packet = entry.packetLength > 0 ? inData + entry.packetOffset : nullptr;
+
+        results[i] = opus_decode_float(reinterpret_cast<OpusDecoder *>(entry.decoder), packet, entry.packetLength,
+                                       reinterpret_cast<float *>(outData + entry.outputOffset), entry.frameSize, entry.decodeFec);
+    }
+}
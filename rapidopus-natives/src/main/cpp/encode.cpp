@@ -1,8 +1,20 @@
 #include <jni.h>
 
 #include "me_walkerknapp_rapidopus_OpusEncoder.h"
+#include "pinned_array.h"
 #include <opus/opus.h>
 
+// Layout of a single entry in an OpusEncoderBatch's entry table.
+struct EncodeBatchEntry {
+    jlong encoder;
+    jint inputOffset;
+    jint frameSize;
+    jint outputOffset;
+    jint maxDataBytes;
+};
+
+static_assert(sizeof(EncodeBatchEntry) == 24, "EncodeBatchEntry must match OpusEncoderBatch.ENTRY_BYTES");
+
 JNIEXPORT jlong JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderCreate(JNIEnv *env, jclass jClazz, jint jSampleRate, jint jChannels, jint jApplicationMode) {
     int error = OPUS_OK;
 
@@ -19,20 +31,206 @@ JNIEXPORT void JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderDestroy(
     opus_encoder_destroy(reinterpret_cast<OpusEncoder *>(pEncoder));
 }
 
+JNIEXPORT void JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderResetState(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_RESET_STATE);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderGetFinalRange(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_uint32 finalRange;
+    opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_GET_FINAL_RANGE(&finalRange));
+    return static_cast<jint>(finalRange);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderGetBandwidth(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_int32 bandwidth;
+    opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_GET_BANDWIDTH(&bandwidth));
+    return bandwidth;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderSetBandwidth(JNIEnv *env, jclass jClazz, jlong pEncoder, jint jBandwidth) {
+    return opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_SET_BANDWIDTH(jBandwidth));
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderGetSampleRate(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_int32 sampleRate;
+    opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_GET_SAMPLE_RATE(&sampleRate));
+    return sampleRate;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderGetPhaseInversionDisabled(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_int32 phaseInversionDisabled;
+    opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_GET_PHASE_INVERSION_DISABLED(&phaseInversionDisabled));
+    return phaseInversionDisabled;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderSetPhaseInversionDisabled(JNIEnv *env, jclass jClazz, jlong pEncoder, jint jDisabled) {
+    return opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_SET_PHASE_INVERSION_DISABLED(jDisabled));
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderGetComplexity(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_int32 complexity;
+    opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_GET_COMPLEXITY(&complexity));
+    return complexity;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderSetComplexity(JNIEnv *env, jclass jClazz, jlong pEncoder, jint jComplexity) {
+    return opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_SET_COMPLEXITY(jComplexity));
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderGetBitrate(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_int32 bitrate;
+    opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_GET_BITRATE(&bitrate));
+    return bitrate;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderSetBitrate(JNIEnv *env, jclass jClazz, jlong pEncoder, jint jBitrate) {
+    return opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_SET_BITRATE(jBitrate));
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderGetVbr(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_int32 vbr;
+    opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_GET_VBR(&vbr));
+    return vbr;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderSetVbr(JNIEnv *env, jclass jClazz, jlong pEncoder, jint jVbr) {
+    return opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_SET_VBR(jVbr));
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderGetVbrConstraint(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_int32 vbrConstraint;
+    opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_GET_VBR_CONSTRAINT(&vbrConstraint));
+    return vbrConstraint;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderSetVbrConstraint(JNIEnv *env, jclass jClazz, jlong pEncoder, jint jConstrained) {
+    return opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_SET_VBR_CONSTRAINT(jConstrained));
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderGetForceChannels(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_int32 forceChannels;
+    opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_GET_FORCE_CHANNELS(&forceChannels));
+    return forceChannels;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderSetForceChannels(JNIEnv *env, jclass jClazz, jlong pEncoder, jint jChannels) {
+    return opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_SET_FORCE_CHANNELS(jChannels));
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderGetMaxBandwidth(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_int32 maxBandwidth;
+    opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_GET_MAX_BANDWIDTH(&maxBandwidth));
+    return maxBandwidth;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderSetMaxBandwidth(JNIEnv *env, jclass jClazz, jlong pEncoder, jint jBandwidth) {
+    return opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_SET_MAX_BANDWIDTH(jBandwidth));
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderGetSignal(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_int32 signal;
+    opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_GET_SIGNAL(&signal));
+    return signal;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderSetSignal(JNIEnv *env, jclass jClazz, jlong pEncoder, jint jSignal) {
+    return opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_SET_SIGNAL(jSignal));
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderGetApplication(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_int32 application;
+    opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_GET_APPLICATION(&application));
+    return application;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderSetApplication(JNIEnv *env, jclass jClazz, jlong pEncoder, jint jApplicationMode) {
+    return opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_SET_APPLICATION(jApplicationMode));
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderGetLookahead(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_int32 lookahead;
+    opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_GET_LOOKAHEAD(&lookahead));
+    return lookahead;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderGetInbandFec(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_int32 inbandFec;
+    opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_GET_INBAND_FEC(&inbandFec));
+    return inbandFec;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderSetInbandFec(JNIEnv *env, jclass jClazz, jlong pEncoder, jint jInbandFec) {
+    return opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_SET_INBAND_FEC(jInbandFec));
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderGetPacketLossPerc(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_int32 packetLossPerc;
+    opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_GET_PACKET_LOSS_PERC(&packetLossPerc));
+    return packetLossPerc;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderSetPacketLossPerc(JNIEnv *env, jclass jClazz, jlong pEncoder, jint jPercentage) {
+    return opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_SET_PACKET_LOSS_PERC(jPercentage));
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderGetDtx(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_int32 dtx;
+    opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_GET_DTX(&dtx));
+    return dtx;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderSetDtx(JNIEnv *env, jclass jClazz, jlong pEncoder, jint jDtx) {
+    return opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_SET_DTX(jDtx));
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderGetInDtx(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_int32 inDtx;
+    opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_GET_IN_DTX(&inDtx));
+    return inDtx;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderGetLsbDepth(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_int32 lsbDepth;
+    opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_GET_LSB_DEPTH(&lsbDepth));
+    return lsbDepth;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderSetLsbDepth(JNIEnv *env, jclass jClazz, jlong pEncoder, jint jDepth) {
+    return opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_SET_LSB_DEPTH(jDepth));
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderGetExpertFrameDuration(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_int32 expertFrameDuration;
+    opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_GET_EXPERT_FRAME_DURATION(&expertFrameDuration));
+    return expertFrameDuration;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderSetExpertFrameDuration(JNIEnv *env, jclass jClazz, jlong pEncoder, jint jDuration) {
+    return opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_SET_EXPERT_FRAME_DURATION(jDuration));
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderGetPredictionDisabled(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_int32 predictionDisabled;
+    opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_GET_PREDICTION_DISABLED(&predictionDisabled));
+    return predictionDisabled;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encoderSetPredictionDisabled(JNIEnv *env, jclass jClazz, jlong pEncoder, jint jDisabled) {
+    return opus_encoder_ctl(reinterpret_cast<OpusEncoder *>(pEncoder), OPUS_SET_PREDICTION_DISABLED(jDisabled));
+}
+
 JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encode__J_3SILjava_nio_ByteBuffer_2
     (JNIEnv *env, jclass jClazz, jlong pEncoder, jshortArray jInputData, jint jFrameSize, jobject jOutputBuffer) {
 
-    jboolean isCopy = JNI_FALSE;
-    jshort *inData = env->GetShortArrayElements(jInputData, &isCopy);
-
     int outSize = env->GetDirectBufferCapacity(jOutputBuffer);
     auto *outData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jOutputBuffer));
 
-    int ret = opus_encode(reinterpret_cast<OpusEncoder *>(pEncoder), inData, jFrameSize, outData, outSize);
-
-    env->ReleaseShortArrayElements(jInputData, inData, JNI_ABORT);
+    PinnedShortArray inData(env, jInputData, JNI_ABORT);
+    if(inData.get() == nullptr) {
+        return OPUS_ALLOC_FAIL;
+    }
 
-    return ret;
+    return opus_encode(reinterpret_cast<OpusEncoder *>(pEncoder), inData.get(), jFrameSize, outData, outSize);
 }
 
 JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encode__JLjava_nio_ByteBuffer_2ILjava_nio_ByteBuffer_2
@@ -40,7 +238,7 @@ JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encode__JLjava_
 
     auto *inData = reinterpret_cast<short *>(env->GetDirectBufferAddress(jInputBuffer));
     int outSize = env->GetDirectBufferCapacity(jOutputBuffer);
-    auto *outData = reinterpret_cast<unsigned char *>(env->GetDirectBufferCapacity(jOutputBuffer));
+    auto *outData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jOutputBuffer));
 
     return opus_encode(reinterpret_cast<OpusEncoder *>(pEncoder), inData, jFrameSize, outData, outSize);
 }
@@ -48,17 +246,15 @@ JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encode__JLjava_
 JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encodeFloat__J_3FILjava_nio_ByteBuffer_2
     (JNIEnv *env, jclass jClazz, jlong pEncoder, jfloatArray jInputData, jint jFrameSize, jobject jOutputBuffer) {
 
-    jboolean isCopy = JNI_FALSE;
-    jfloat *inData = env->GetFloatArrayElements(jInputData, &isCopy);
-
     int outSize = env->GetDirectBufferCapacity(jOutputBuffer);
     auto *outData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jOutputBuffer));
 
-    int ret = opus_encode_float(reinterpret_cast<OpusEncoder *>(pEncoder), inData, jFrameSize, outData, outSize);
-
-    env->ReleaseFloatArrayElements(jInputData, inData, JNI_ABORT);
+    PinnedFloatArray inData(env, jInputData, JNI_ABORT);
+    if(inData.get() == nullptr) {
+        return OPUS_ALLOC_FAIL;
+    }
 
-    return ret;
+    return opus_encode_float(reinterpret_cast<OpusEncoder *>(pEncoder), inData.get(), jFrameSize, outData, outSize);
 }
 
 JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encodeFloat__JLjava_nio_ByteBuffer_2ILjava_nio_ByteBuffer_2
@@ -66,7 +262,73 @@ JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encodeFloat__JL
 
     auto *inData = reinterpret_cast<float *>(env->GetDirectBufferAddress(jInputBuffer));
     int outSize = env->GetDirectBufferCapacity(jOutputBuffer);
-    auto *outData = reinterpret_cast<unsigned char *>(env->GetDirectBufferCapacity(jOutputBuffer));
+    auto *outData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jOutputBuffer));
 
     return opus_encode_float(reinterpret_cast<OpusEncoder *>(pEncoder), inData, jFrameSize, outData, outSize);
 }
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encode__JLjava_nio_ByteBuffer_2IILjava_nio_ByteBuffer_2II
+    (JNIEnv *env, jclass jClazz, jlong pEncoder, jobject jInputBuffer, jint jInputOffset, jint jFrameSize, jobject jOutputBuffer, jint jOutputOffset, jint jMaxDataBytes) {
+
+    auto *inData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jInputBuffer)) + jInputOffset;
+    auto *outData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jOutputBuffer)) + jOutputOffset;
+
+    return opus_encode(reinterpret_cast<OpusEncoder *>(pEncoder), reinterpret_cast<opus_int16 *>(inData), jFrameSize, outData, jMaxDataBytes);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encodeFloat__JLjava_nio_ByteBuffer_2IILjava_nio_ByteBuffer_2II
+    (JNIEnv *env, jclass jClazz, jlong pEncoder, jobject jInputBuffer, jint jInputOffset, jint jFrameSize, jobject jOutputBuffer, jint jOutputOffset, jint jMaxDataBytes) {
+
+    auto *inData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jInputBuffer)) + jInputOffset;
+    auto *outData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jOutputBuffer)) + jOutputOffset;
+
+    return opus_encode_float(reinterpret_cast<OpusEncoder *>(pEncoder), reinterpret_cast<float *>(inData), jFrameSize, outData, jMaxDataBytes);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encodeAddress
+    (JNIEnv *env, jclass jClazz, jlong pEncoder, jlong jInputAddress, jint jFrameSize, jlong jOutputAddress, jint jMaxDataBytes) {
+
+    return opus_encode(reinterpret_cast<OpusEncoder *>(pEncoder), reinterpret_cast<opus_int16 *>(jInputAddress), jFrameSize,
+                       reinterpret_cast<unsigned char *>(jOutputAddress), jMaxDataBytes);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encodeFloatAddress
+    (JNIEnv *env, jclass jClazz, jlong pEncoder, jlong jInputAddress, jint jFrameSize, jlong jOutputAddress, jint jMaxDataBytes) {
+
+    return opus_encode_float(reinterpret_cast<OpusEncoder *>(pEncoder), reinterpret_cast<float *>(jInputAddress), jFrameSize,
+                             reinterpret_cast<unsigned char *>(jOutputAddress), jMaxDataBytes);
+}
+
+JNIEXPORT void JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encodeBatch
+    (JNIEnv *env, jclass jClazz, jobject jEntries, jint jCount, jobject jInputBuffer, jobject jOutputBuffer, jobject jResults) {
+
+    auto *entries = reinterpret_cast<EncodeBatchEntry *>(env->GetDirectBufferAddress(jEntries));
+    auto *inData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jInputBuffer));
+    auto *outData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jOutputBuffer));
+    auto *results = reinterpret_cast<jint *>(env->GetDirectBufferAddress(jResults));
+
+    for (int i = 0; i < jCount; i++) {
+        const EncodeBatchEntry &entry = entries[i];
+
+        results[i] = opus_encode(reinterpret_cast<OpusEncoder *>(entry.encoder),
+                                 reinterpret_cast<opus_int16 *>(inData + entry.inputOffset), entry.frameSize,
+                                 outData + entry.outputOffset, entry.maxDataBytes);
+    }
+}
+
+JNIEXPORT void JNICALL Java_me_walkerknapp_rapidopus_OpusEncoder_encodeFloatBatch
+    (JNIEnv *env, jclass jClazz, jobject jEntries, jint jCount, jobject jInputBuffer, jobject jOutputBuffer, jobject jResults) {
+
+    auto *entries = reinterpret_cast<EncodeBatchEntry *>(env->GetDirectBufferAddress(jEntries));
+    auto *inData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jInputBuffer));
+    auto *outData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jOutputBuffer));
+    auto *results = reinterpret_cast<jint *>(env->GetDirectBufferAddress(jResults));
+
+    for (int i = 0; i < jCount; i++) {
+        const EncodeBatchEntry &entry = entries[i];
+
+        results[i] = opus_encode_float(reinterpret_cast<OpusEncoder *>(entry.encoder),
+                                       reinterpret_cast<float *>(inData + entry.inputOffset), entry.frameSize,
+                                       outData + entry.outputOffset, entry.maxDataBytes);
+    }
+}
@@ -0,0 +1,142 @@
+#include <jni.h>
+#include <algorithm>
+#include <cstring>
+#include <functional>
+#include <vector>
+
+#include "me_walkerknapp_rapidopus_OpusMixer.h"
+#include <opus/opus.h>
+
+// Layout of a single participant in an OpusMixer's participant table.
+struct MixParticipant {
+    jlong decoder;
+    jlong encoder;
+    jint packetLength;
+    jint outputLength;
+    jfloat energy;
+    jint mixed;
+};
+
+static_assert(sizeof(MixParticipant) == 32, "MixParticipant must match OpusMixer.ENTRY_BYTES");
+
+JNIEXPORT void JNICALL Java_me_walkerknapp_rapidopus_OpusMixer_mixTick
+    (JNIEnv *env, jclass jClazz, jobject jEntries, jint jCount, jobject jInputBuffer, jint jMaxPacketSize, jobject jPcmBuffer,
+     jobject jSoftClipBuffer, jobject jOutputBuffer, jint jFrameSize, jint jChannels, jint jTopK) {
+
+    auto *participants = reinterpret_cast<MixParticipant *>(env->GetDirectBufferAddress(jEntries));
+    auto *input = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jInputBuffer));
+    auto *pcm = reinterpret_cast<float *>(env->GetDirectBufferAddress(jPcmBuffer));
+    auto *softClip = reinterpret_cast<float *>(env->GetDirectBufferAddress(jSoftClipBuffer));
+    auto *output = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jOutputBuffer));
+
+    const int samples = jFrameSize * jChannels;
+    float *mix = pcm + jCount * samples;
+    float *scratch = mix + samples;
+
+    // Decode every inbound packet, and measure its energy.
+    int active = 0;
+    for (int i = 0; i < jCount; i++) {
+        MixParticipant &p = participants[i];
+        p.energy = 0;
+        p.mixed = 0;
+
+        if (p.decoder == 0 || p.packetLength < 0) {
+            continue;
+        }
+
+        auto *decoder = reinterpret_cast<OpusDecoder *>(p.decoder);
+        float *frame = pcm + i * samples;
+
+        // Lost packets are passed as a null payload, so that the decoder runs packet loss concealment.
+        // Packets that fail to decode are concealed as well.
+        const unsigned char *packet = p.packetLength > 0 ? input + i * jMaxPacketSize : nullptr;
+        int decoded = opus_decode_float(decoder, packet, p.packetLength, frame, jFrameSize, 0);
+        if (decoded < 0) {
+            decoded = opus_decode_float(decoder, nullptr, 0, frame, jFrameSize, 0);
+        }
+        if (decoded < 0) {
+            continue;
+        }
+        if (decoded < jFrameSize) {
+            memset(frame + decoded * jChannels, 0, (jFrameSize - decoded) * jChannels * sizeof(float));
+        }
+
+        float energy = 0;
+        for (int s = 0; s < samples; s++) {
+            energy += frame[s] * frame[s];
+        }
+        p.energy = energy / samples;
+        p.mixed = 1;
+        active++;
+    }
+
+    // Keep only the K loudest participants. Selecting the K-th loudest energy with nth_element is linear in the number
+    // of active participants, however small K is.
+    if (jTopK > 0 && active > jTopK) {
+        static thread_local std::vector<float> energies;
+        energies.clear();
+        for (int i = 0; i < jCount; i++) {
+            if (participants[i].mixed) {
+                energies.push_back(participants[i].energy);
+            }
+        }
+
+        std::nth_element(energies.begin(), energies.begin() + (jTopK - 1), energies.end(), std::greater<float>());
+        const float threshold = energies[jTopK - 1];
+
+        // Participants tied with the threshold fill whatever room the strictly louder ones leave.
+        int ties = jTopK;
+        for (int k = 0; k < jTopK - 1; k++) {
+            if (energies[k] > threshold) {
+                ties--;
+            }
+        }
+
+        for (int i = 0; i < jCount; i++) {
+            MixParticipant &p = participants[i];
+            if (!p.mixed || p.energy > threshold) {
+                continue;
+            }
+            if (p.energy == threshold && ties > 0) {
+                ties--;
+            } else {
+                p.mixed = 0;
+            }
+        }
+    }
+
+    // Sum the total mix once.
+    memset(mix, 0, samples * sizeof(float));
+    for (int i = 0; i < jCount; i++) {
+        if (!participants[i].mixed) {
+            continue;
+        }
+
+        const float *frame = pcm + i * samples;
+        for (int s = 0; s < samples; s++) {
+            mix[s] += frame[s];
+        }
+    }
+
+    // Encode the total mix minus each listener's own contribution.
+    for (int i = 0; i < jCount; i++) {
+        MixParticipant &p = participants[i];
+        if (p.encoder == 0) {
+            continue;
+        }
+
+        if (p.mixed) {
+            const float *frame = pcm + i * samples;
+            for (int s = 0; s < samples; s++) {
+                scratch[s] = mix[s] - frame[s];
+            }
+        } else {
+            memcpy(scratch, mix, samples * sizeof(float));
+        }
+
+        opus_pcm_soft_clip(scratch, jFrameSize, jChannels, softClip + i * jChannels);
+
+        p.outputLength = opus_encode_float(reinterpret_cast<OpusEncoder *>(p.encoder), scratch, jFrameSize,
+                                           output + i * jMaxPacketSize, jMaxPacketSize);
+    }
+}
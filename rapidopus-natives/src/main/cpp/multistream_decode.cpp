@@ -0,0 +1,97 @@
+#include <jni.h>
+
+#include "me_walkerknapp_rapidopus_OpusMSDecoder.h"
+#include "pinned_array.h"
+#include <opus/opus_multistream.h>
+
+JNIEXPORT jlong JNICALL Java_me_walkerknapp_rapidopus_OpusMSDecoder_msDecoderCreate
+    (JNIEnv *env, jclass jClazz, jint jSampleRate, jint jChannels, jint jStreams, jint jCoupledStreams, jbyteArray jMapping) {
+
+    int err = OPUS_OK;
+
+    jboolean isCopy = JNI_FALSE;
+    jbyte *mapping = env->GetByteArrayElements(jMapping, &isCopy);
+
+    auto *decoder = opus_multistream_decoder_create(jSampleRate, jChannels, jStreams, jCoupledStreams,
+                                                    reinterpret_cast<unsigned char *>(mapping), &err);
+
+    env->ReleaseByteArrayElements(jMapping, mapping, JNI_ABORT);
+
+    if(err != OPUS_OK) {
+        env->ThrowNew(env->FindClass("java/lang/IllegalArgumentException"), opus_strerror(err));
+    }
+
+    return reinterpret_cast<jlong>(decoder);
+}
+
+JNIEXPORT void JNICALL Java_me_walkerknapp_rapidopus_OpusMSDecoder_msDecoderDestroy(JNIEnv *env, jclass jClazz, jlong pDecoder) {
+    opus_multistream_decoder_destroy(reinterpret_cast<OpusMSDecoder *>(pDecoder));
+}
+
+JNIEXPORT void JNICALL Java_me_walkerknapp_rapidopus_OpusMSDecoder_msDecoderResetState(JNIEnv *env, jclass jClazz, jlong pDecoder) {
+    opus_multistream_decoder_ctl(reinterpret_cast<OpusMSDecoder *>(pDecoder), OPUS_RESET_STATE);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusMSDecoder_msDecoderGetGain(JNIEnv *env, jclass jClazz, jlong pDecoder) {
+    opus_int32 gain;
+    opus_multistream_decoder_ctl(reinterpret_cast<OpusMSDecoder *>(pDecoder), OPUS_GET_GAIN(&gain));
+    return gain;
+}
+
+JNIEXPORT void JNICALL Java_me_walkerknapp_rapidopus_OpusMSDecoder_msDecoderSetGain(JNIEnv *env, jclass jClazz, jlong pDecoder, jint jGain) {
+    opus_multistream_decoder_ctl(reinterpret_cast<OpusMSDecoder *>(pDecoder), OPUS_SET_GAIN(jGain));
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusMSDecoder_msDecoderGetLastPacketDuration(JNIEnv *env, jclass jClazz, jlong pDecoder) {
+    opus_int32 duration;
+    opus_multistream_decoder_ctl(reinterpret_cast<OpusMSDecoder *>(pDecoder), OPUS_GET_LAST_PACKET_DURATION(&duration));
+    return duration;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusMSDecoder_msDecode__J_3BLjava_nio_ByteBuffer_2II
+    (JNIEnv *env, jclass jClazz, jlong pDecoder, jbyteArray jInputData, jobject jOutputBuffer, jint jFrameSize, jint jDecodeFec) {
+
+    int inSize = env->GetArrayLength(jInputData);
+    auto *outData = reinterpret_cast<opus_int16 *>(env->GetDirectBufferAddress(jOutputBuffer));
+
+    PinnedByteArray inData(env, jInputData, JNI_ABORT);
+    if(inData.get() == nullptr) {
+        return OPUS_ALLOC_FAIL;
+    }
+
+    return opus_multistream_decode(reinterpret_cast<OpusMSDecoder *>(pDecoder), reinterpret_cast<unsigned char *>(inData.get()), inSize, outData, jFrameSize, jDecodeFec);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusMSDecoder_msDecode__JLjava_nio_ByteBuffer_2Ljava_nio_ByteBuffer_2II
+    (JNIEnv *env, jclass jClazz, jlong pDecoder, jobject jInputBuffer, jobject jOutputBuffer, jint jFrameSize, jint jDecodeFec) {
+
+    auto *inData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jInputBuffer));
+    int inSize = env->GetDirectBufferCapacity(jInputBuffer);
+    auto *outData = reinterpret_cast<opus_int16 *>(env->GetDirectBufferAddress(jOutputBuffer));
+
+    return opus_multistream_decode(reinterpret_cast<OpusMSDecoder *>(pDecoder), inData, inSize, outData, jFrameSize, jDecodeFec);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusMSDecoder_msDecodeFloat__J_3BLjava_nio_ByteBuffer_2II
+    (JNIEnv *env, jclass jClazz, jlong pDecoder, jbyteArray jInputData, jobject jOutputBuffer, jint jFrameSize, jint jDecodeFec) {
+
+    int inSize = env->GetArrayLength(jInputData);
+    auto *outData = reinterpret_cast<float *>(env->GetDirectBufferAddress(jOutputBuffer));
+
+    PinnedByteArray inData(env, jInputData, JNI_ABORT);
+    if(inData.get() == nullptr) {
+        return OPUS_ALLOC_FAIL;
+    }
+
+    return opus_multistream_decode_float(reinterpret_cast<OpusMSDecoder *>(pDecoder), reinterpret_cast<unsigned char *>(inData.get()), inSize, outData, jFrameSize, jDecodeFec);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusMSDecoder_msDecodeFloat__JLjava_nio_ByteBuffer_2Ljava_nio_ByteBuffer_2II
+    (JNIEnv *env, jclass jClazz, jlong pDecoder, jobject jInputBuffer, jobject jOutputBuffer, jint jFrameSize, jint jDecodeFec) {
+
+    auto *inData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jInputBuffer));
+    int inSize = env->GetDirectBufferCapacity(jInputBuffer);
+    auto *outData = reinterpret_cast<float *>(env->GetDirectBufferAddress(jOutputBuffer));
+
+    return opus_multistream_decode_float(reinterpret_cast<OpusMSDecoder *>(pDecoder), inData, inSize, outData, jFrameSize, jDecodeFec);
+}
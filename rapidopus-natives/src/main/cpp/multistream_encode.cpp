@@ -0,0 +1,170 @@
+#include <jni.h>
+
+#include "me_walkerknapp_rapidopus_OpusMSEncoder.h"
+#include "pinned_array.h"
+#include <opus/opus_multistream.h>
+
+JNIEXPORT jlong JNICALL Java_me_walkerknapp_rapidopus_OpusMSEncoder_msEncoderCreate
+    (JNIEnv *env, jclass jClazz, jint jSampleRate, jint jChannels, jint jStreams, jint jCoupledStreams, jbyteArray jMapping, jint jApplicationMode) {
+
+    int error = OPUS_OK;
+
+    jboolean isCopy = JNI_FALSE;
+    jbyte *mapping = env->GetByteArrayElements(jMapping, &isCopy);
+
+    auto *encoder = opus_multistream_encoder_create(jSampleRate, jChannels, jStreams, jCoupledStreams,
+                                                    reinterpret_cast<unsigned char *>(mapping), jApplicationMode, &error);
+
+    env->ReleaseByteArrayElements(jMapping, mapping, JNI_ABORT);
+
+    if(error != OPUS_OK) {
+        env->ThrowNew(env->FindClass("java/lang/IllegalArgumentException"), opus_strerror(error));
+    }
+
+    return reinterpret_cast<jlong>(encoder);
+}
+
+JNIEXPORT jlong JNICALL Java_me_walkerknapp_rapidopus_OpusMSEncoder_msSurroundEncoderCreate
+    (JNIEnv *env, jclass jClazz, jint jSampleRate, jint jChannels, jint jMappingFamily, jint jApplicationMode, jintArray jLayout, jbyteArray jMapping) {
+
+    int error = OPUS_OK;
+    int streams = 0;
+    int coupledStreams = 0;
+    unsigned char mapping[255];
+
+    auto *encoder = opus_multistream_surround_encoder_create(jSampleRate, jChannels, jMappingFamily, &streams, &coupledStreams,
+                                                             mapping, jApplicationMode, &error);
+
+    if(error != OPUS_OK) {
+        env->ThrowNew(env->FindClass("java/lang/IllegalArgumentException"), opus_strerror(error));
+        return reinterpret_cast<jlong>(encoder);
+    }
+
+    jint layout[2] = {streams, coupledStreams};
+    env->SetIntArrayRegion(jLayout, 0, 2, layout);
+    env->SetByteArrayRegion(jMapping, 0, jChannels, reinterpret_cast<jbyte *>(mapping));
+
+    return reinterpret_cast<jlong>(encoder);
+}
+
+JNIEXPORT void JNICALL Java_me_walkerknapp_rapidopus_OpusMSEncoder_msEncoderDestroy(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_multistream_encoder_destroy(reinterpret_cast<OpusMSEncoder *>(pEncoder));
+}
+
+JNIEXPORT void JNICALL Java_me_walkerknapp_rapidopus_OpusMSEncoder_msEncoderResetState(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_multistream_encoder_ctl(reinterpret_cast<OpusMSEncoder *>(pEncoder), OPUS_RESET_STATE);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusMSEncoder_msEncoderGetLookahead(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_int32 lookahead;
+    opus_multistream_encoder_ctl(reinterpret_cast<OpusMSEncoder *>(pEncoder), OPUS_GET_LOOKAHEAD(&lookahead));
+    return lookahead;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusMSEncoder_msEncoderGetComplexity(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_int32 complexity;
+    opus_multistream_encoder_ctl(reinterpret_cast<OpusMSEncoder *>(pEncoder), OPUS_GET_COMPLEXITY(&complexity));
+    return complexity;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusMSEncoder_msEncoderSetComplexity(JNIEnv *env, jclass jClazz, jlong pEncoder, jint jComplexity) {
+    return opus_multistream_encoder_ctl(reinterpret_cast<OpusMSEncoder *>(pEncoder), OPUS_SET_COMPLEXITY(jComplexity));
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusMSEncoder_msEncoderGetBitrate(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_int32 bitrate;
+    opus_multistream_encoder_ctl(reinterpret_cast<OpusMSEncoder *>(pEncoder), OPUS_GET_BITRATE(&bitrate));
+    return bitrate;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusMSEncoder_msEncoderSetBitrate(JNIEnv *env, jclass jClazz, jlong pEncoder, jint jBitrate) {
+    return opus_multistream_encoder_ctl(reinterpret_cast<OpusMSEncoder *>(pEncoder), OPUS_SET_BITRATE(jBitrate));
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusMSEncoder_msEncoderGetVbr(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_int32 vbr;
+    opus_multistream_encoder_ctl(reinterpret_cast<OpusMSEncoder *>(pEncoder), OPUS_GET_VBR(&vbr));
+    return vbr;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusMSEncoder_msEncoderSetVbr(JNIEnv *env, jclass jClazz, jlong pEncoder, jint jVbr) {
+    return opus_multistream_encoder_ctl(reinterpret_cast<OpusMSEncoder *>(pEncoder), OPUS_SET_VBR(jVbr));
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusMSEncoder_msEncoderGetInbandFec(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_int32 inbandFec;
+    opus_multistream_encoder_ctl(reinterpret_cast<OpusMSEncoder *>(pEncoder), OPUS_GET_INBAND_FEC(&inbandFec));
+    return inbandFec;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusMSEncoder_msEncoderSetInbandFec(JNIEnv *env, jclass jClazz, jlong pEncoder, jint jInbandFec) {
+    return opus_multistream_encoder_ctl(reinterpret_cast<OpusMSEncoder *>(pEncoder), OPUS_SET_INBAND_FEC(jInbandFec));
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusMSEncoder_msEncoderGetPacketLossPerc(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_int32 packetLossPerc;
+    opus_multistream_encoder_ctl(reinterpret_cast<OpusMSEncoder *>(pEncoder), OPUS_GET_PACKET_LOSS_PERC(&packetLossPerc));
+    return packetLossPerc;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusMSEncoder_msEncoderSetPacketLossPerc(JNIEnv *env, jclass jClazz, jlong pEncoder, jint jPercentage) {
+    return opus_multistream_encoder_ctl(reinterpret_cast<OpusMSEncoder *>(pEncoder), OPUS_SET_PACKET_LOSS_PERC(jPercentage));
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusMSEncoder_msEncoderGetDtx(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_int32 dtx;
+    opus_multistream_encoder_ctl(reinterpret_cast<OpusMSEncoder *>(pEncoder), OPUS_GET_DTX(&dtx));
+    return dtx;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusMSEncoder_msEncoderSetDtx(JNIEnv *env, jclass jClazz, jlong pEncoder, jint jDtx) {
+    return opus_multistream_encoder_ctl(reinterpret_cast<OpusMSEncoder *>(pEncoder), OPUS_SET_DTX(jDtx));
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusMSEncoder_msEncode__J_3SILjava_nio_ByteBuffer_2
+    (JNIEnv *env, jclass jClazz, jlong pEncoder, jshortArray jInputData, jint jFrameSize, jobject jOutputBuffer) {
+
+    int outSize = env->GetDirectBufferCapacity(jOutputBuffer);
+    auto *outData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jOutputBuffer));
+
+    PinnedShortArray inData(env, jInputData, JNI_ABORT);
+    if(inData.get() == nullptr) {
+        return OPUS_ALLOC_FAIL;
+    }
+
+    return opus_multistream_encode(reinterpret_cast<OpusMSEncoder *>(pEncoder), inData.get(), jFrameSize, outData, outSize);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusMSEncoder_msEncode__JLjava_nio_ByteBuffer_2ILjava_nio_ByteBuffer_2
+    (JNIEnv *env, jclass jClazz, jlong pEncoder, jobject jInputBuffer, jint jFrameSize, jobject jOutputBuffer) {
+
+    auto *inData = reinterpret_cast<opus_int16 *>(env->GetDirectBufferAddress(jInputBuffer));
+    int outSize = env->GetDirectBufferCapacity(jOutputBuffer);
+    auto *outData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jOutputBuffer));
+
+    return opus_multistream_encode(reinterpret_cast<OpusMSEncoder *>(pEncoder), inData, jFrameSize, outData, outSize);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusMSEncoder_msEncodeFloat__J_3FILjava_nio_ByteBuffer_2
+    (JNIEnv *env, jclass jClazz, jlong pEncoder, jfloatArray jInputData, jint jFrameSize, jobject jOutputBuffer) {
+
+    int outSize = env->GetDirectBufferCapacity(jOutputBuffer);
+    auto *outData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jOutputBuffer));
+
+    PinnedFloatArray inData(env, jInputData, JNI_ABORT);
+    if(inData.get() == nullptr) {
+        return OPUS_ALLOC_FAIL;
+    }
+
+    return opus_multistream_encode_float(reinterpret_cast<OpusMSEncoder *>(pEncoder), inData.get(), jFrameSize, outData, outSize);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusMSEncoder_msEncodeFloat__JLjava_nio_ByteBuffer_2ILjava_nio_ByteBuffer_2
+    (JNIEnv *env, jclass jClazz, jlong pEncoder, jobject jInputBuffer, jint jFrameSize, jobject jOutputBuffer) {
+
+    auto *inData = reinterpret_cast<float *>(env->GetDirectBufferAddress(jInputBuffer));
+    int outSize = env->GetDirectBufferCapacity(jOutputBuffer);
+    auto *outData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jOutputBuffer));
+
+    return opus_multistream_encode_float(reinterpret_cast<OpusMSEncoder *>(pEncoder), inData, jFrameSize, outData, outSize);
+}
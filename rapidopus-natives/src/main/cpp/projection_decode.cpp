@@ -0,0 +1,77 @@
+#include <jni.h>
+
+#include "me_walkerknapp_rapidopus_OpusProjectionDecoder.h"
+#include "pinned_array.h"
+#include <opus/opus_projection.h>
+
+JNIEXPORT jlong JNICALL Java_me_walkerknapp_rapidopus_OpusProjectionDecoder_projectionDecoderCreate
+    (JNIEnv *env, jclass jClazz, jint jSampleRate, jint jChannels, jint jStreams, jint jCoupledStreams, jobject jMatrixBuffer, jint jMatrixSize) {
+
+    int err = OPUS_OK;
+
+    auto *matrix = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jMatrixBuffer));
+
+    auto *decoder = opus_projection_decoder_create(jSampleRate, jChannels, jStreams, jCoupledStreams, matrix, jMatrixSize, &err);
+
+    if(err != OPUS_OK) {
+        env->ThrowNew(env->FindClass("java/lang/IllegalArgumentException"), opus_strerror(err));
+    }
+
+    return reinterpret_cast<jlong>(decoder);
+}
+
+JNIEXPORT void JNICALL Java_me_walkerknapp_rapidopus_OpusProjectionDecoder_projectionDecoderDestroy(JNIEnv *env, jclass jClazz, jlong pDecoder) {
+    opus_projection_decoder_destroy(reinterpret_cast<OpusProjectionDecoder *>(pDecoder));
+}
+
+JNIEXPORT void JNICALL Java_me_walkerknapp_rapidopus_OpusProjectionDecoder_projectionDecoderResetState(JNIEnv *env, jclass jClazz, jlong pDecoder) {
+    opus_projection_decoder_ctl(reinterpret_cast<OpusProjectionDecoder *>(pDecoder), OPUS_RESET_STATE);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusProjectionDecoder_projectionDecode__J_3BLjava_nio_ByteBuffer_2II
+    (JNIEnv *env, jclass jClazz, jlong pDecoder, jbyteArray jInputData, jobject jOutputBuffer, jint jFrameSize, jint jDecodeFec) {
+
+    int inSize = env->GetArrayLength(jInputData);
+    auto *outData = reinterpret_cast<opus_int16 *>(env->GetDirectBufferAddress(jOutputBuffer));
+
+    PinnedByteArray inData(env, jInputData, JNI_ABORT);
+    if(inData.get() == nullptr) {
+        return OPUS_ALLOC_FAIL;
+    }
+
+    return opus_projection_decode(reinterpret_cast<OpusProjectionDecoder *>(pDecoder), reinterpret_cast<unsigned char *>(inData.get()), inSize, outData, jFrameSize, jDecodeFec);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusProjectionDecoder_projectionDecode__JLjava_nio_ByteBuffer_2Ljava_nio_ByteBuffer_2II
+    (JNIEnv *env, jclass jClazz, jlong pDecoder, jobject jInputBuffer, jobject jOutputBuffer, jint jFrameSize, jint jDecodeFec) {
+
+    auto *inData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jInputBuffer));
+    int inSize = env->GetDirectBufferCapacity(jInputBuffer);
+    auto *outData = reinterpret_cast<opus_int16 *>(env->GetDirectBufferAddress(jOutputBuffer));
+
+    return opus_projection_decode(reinterpret_cast<OpusProjectionDecoder *>(pDecoder), inData, inSize, outData, jFrameSize, jDecodeFec);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusProjectionDecoder_projectionDecodeFloat__J_3BLjava_nio_ByteBuffer_2II
+    (JNIEnv *env, jclass jClazz, jlong pDecoder, jbyteArray jInputData, jobject jOutputBuffer, jint jFrameSize, jint jDecodeFec) {
+
+    int inSize = env->GetArrayLength(jInputData);
+    auto *outData = reinterpret_cast<float *>(env->GetDirectBufferAddress(jOutputBuffer));
+
+    PinnedByteArray inData(env, jInputData, JNI_ABORT);
+    if(inData.get() == nullptr) {
+        return OPUS_ALLOC_FAIL;
+    }
+
+    return opus_projection_decode_float(reinterpret_cast<OpusProjectionDecoder *>(pDecoder), reinterpret_cast<unsigned char *>(inData.get()), inSize, outData, jFrameSize, jDecodeFec);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusProjectionDecoder_projectionDecodeFloat__JLjava_nio_ByteBuffer_2Ljava_nio_ByteBuffer_2II
+    (JNIEnv *env, jclass jClazz, jlong pDecoder, jobject jInputBuffer, jobject jOutputBuffer, jint jFrameSize, jint jDecodeFec) {
+
+    auto *inData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jInputBuffer));
+    int inSize = env->GetDirectBufferCapacity(jInputBuffer);
+    auto *outData = reinterpret_cast<float *>(env->GetDirectBufferAddress(jOutputBuffer));
+
+    return opus_projection_decode_float(reinterpret_cast<OpusProjectionDecoder *>(pDecoder), inData, inSize, outData, jFrameSize, jDecodeFec);
+}
@@ -0,0 +1,122 @@
+#include <jni.h>
+
+#include "me_walkerknapp_rapidopus_OpusProjectionEncoder.h"
+#include "pinned_array.h"
+#include <opus/opus_projection.h>
+
+JNIEXPORT jlong JNICALL Java_me_walkerknapp_rapidopus_OpusProjectionEncoder_projectionAmbisonicsEncoderCreate
+    (JNIEnv *env, jclass jClazz, jint jSampleRate, jint jChannels, jint jMappingFamily, jint jApplicationMode, jintArray jLayout) {
+
+    int error = OPUS_OK;
+    int streams = 0;
+    int coupledStreams = 0;
+
+    auto *encoder = opus_projection_ambisonics_encoder_create(jSampleRate, jChannels, jMappingFamily, &streams, &coupledStreams,
+                                                              jApplicationMode, &error);
+
+    if(error != OPUS_OK) {
+        env->ThrowNew(env->FindClass("java/lang/IllegalArgumentException"), opus_strerror(error));
+        return reinterpret_cast<jlong>(encoder);
+    }
+
+    jint layout[2] = {streams, coupledStreams};
+    env->SetIntArrayRegion(jLayout, 0, 2, layout);
+
+    return reinterpret_cast<jlong>(encoder);
+}
+
+JNIEXPORT void JNICALL Java_me_walkerknapp_rapidopus_OpusProjectionEncoder_projectionEncoderDestroy(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_projection_encoder_destroy(reinterpret_cast<OpusProjectionEncoder *>(pEncoder));
+}
+
+JNIEXPORT void JNICALL Java_me_walkerknapp_rapidopus_OpusProjectionEncoder_projectionEncoderResetState(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_projection_encoder_ctl(reinterpret_cast<OpusProjectionEncoder *>(pEncoder), OPUS_RESET_STATE);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusProjectionEncoder_projectionEncoderGetComplexity(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_int32 complexity;
+    opus_projection_encoder_ctl(reinterpret_cast<OpusProjectionEncoder *>(pEncoder), OPUS_GET_COMPLEXITY(&complexity));
+    return complexity;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusProjectionEncoder_projectionEncoderSetComplexity(JNIEnv *env, jclass jClazz, jlong pEncoder, jint jComplexity) {
+    return opus_projection_encoder_ctl(reinterpret_cast<OpusProjectionEncoder *>(pEncoder), OPUS_SET_COMPLEXITY(jComplexity));
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusProjectionEncoder_projectionEncoderGetBitrate(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_int32 bitrate;
+    opus_projection_encoder_ctl(reinterpret_cast<OpusProjectionEncoder *>(pEncoder), OPUS_GET_BITRATE(&bitrate));
+    return bitrate;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusProjectionEncoder_projectionEncoderSetBitrate(JNIEnv *env, jclass jClazz, jlong pEncoder, jint jBitrate) {
+    return opus_projection_encoder_ctl(reinterpret_cast<OpusProjectionEncoder *>(pEncoder), OPUS_SET_BITRATE(jBitrate));
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusProjectionEncoder_projectionEncoderGetDemixingMatrixSize(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_int32 size;
+    opus_projection_encoder_ctl(reinterpret_cast<OpusProjectionEncoder *>(pEncoder), OPUS_PROJECTION_GET_DEMIXING_MATRIX_SIZE(&size));
+    return size;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusProjectionEncoder_projectionEncoderGetDemixingMatrixGain(JNIEnv *env, jclass jClazz, jlong pEncoder) {
+    opus_int32 gain;
+    opus_projection_encoder_ctl(reinterpret_cast<OpusProjectionEncoder *>(pEncoder), OPUS_PROJECTION_GET_DEMIXING_MATRIX_GAIN(&gain));
+    return gain;
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusProjectionEncoder_projectionEncoderGetDemixingMatrix
+    (JNIEnv *env, jclass jClazz, jlong pEncoder, jobject jMatrixBuffer, jint jSize) {
+
+    auto *matrix = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jMatrixBuffer));
+
+    return opus_projection_encoder_ctl(reinterpret_cast<OpusProjectionEncoder *>(pEncoder), OPUS_PROJECTION_GET_DEMIXING_MATRIX(matrix, jSize));
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusProjectionEncoder_projectionEncode__J_3SILjava_nio_ByteBuffer_2
+    (JNIEnv *env, jclass jClazz, jlong pEncoder, jshortArray jInputData, jint jFrameSize, jobject jOutputBuffer) {
+
+    int outSize = env->GetDirectBufferCapacity(jOutputBuffer);
+    auto *outData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jOutputBuffer));
+
+    PinnedShortArray inData(env, jInputData, JNI_ABORT);
+    if(inData.get() == nullptr) {
+        return OPUS_ALLOC_FAIL;
+    }
+
+    return opus_projection_encode(reinterpret_cast<OpusProjectionEncoder *>(pEncoder), inData.get(), jFrameSize, outData, outSize);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusProjectionEncoder_projectionEncode__JLjava_nio_ByteBuffer_2ILjava_nio_ByteBuffer_2
+    (JNIEnv *env, jclass jClazz, jlong pEncoder, jobject jInputBuffer, jint jFrameSize, jobject jOutputBuffer) {
+
+    auto *inData = reinterpret_cast<opus_int16 *>(env->GetDirectBufferAddress(jInputBuffer));
+    int outSize = env->GetDirectBufferCapacity(jOutputBuffer);
+    auto *outData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jOutputBuffer));
+
+    return opus_projection_encode(reinterpret_cast<OpusProjectionEncoder *>(pEncoder), inData, jFrameSize, outData, outSize);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusProjectionEncoder_projectionEncodeFloat__J_3FILjava_nio_ByteBuffer_2
+    (JNIEnv *env, jclass jClazz, jlong pEncoder, jfloatArray jInputData, jint jFrameSize, jobject jOutputBuffer) {
+
+    int outSize = env->GetDirectBufferCapacity(jOutputBuffer);
+    auto *outData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jOutputBuffer));
+
+    PinnedFloatArray inData(env, jInputData, JNI_ABORT);
+    if(inData.get() == nullptr) {
+        return OPUS_ALLOC_FAIL;
+    }
+
+    return opus_projection_encode_float(reinterpret_cast<OpusProjectionEncoder *>(pEncoder), inData.get(), jFrameSize, outData, outSize);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusProjectionEncoder_projectionEncodeFloat__JLjava_nio_ByteBuffer_2ILjava_nio_ByteBuffer_2
+    (JNIEnv *env, jclass jClazz, jlong pEncoder, jobject jInputBuffer, jint jFrameSize, jobject jOutputBuffer) {
+
+    auto *inData = reinterpret_cast<float *>(env->GetDirectBufferAddress(jInputBuffer));
+    int outSize = env->GetDirectBufferCapacity(jOutputBuffer);
+    auto *outData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jOutputBuffer));
+
+    return opus_projection_encode_float(reinterpret_cast<OpusProjectionEncoder *>(pEncoder), inData, jFrameSize, outData, outSize);
+}
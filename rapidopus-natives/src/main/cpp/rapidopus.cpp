@@ -1,10 +1,17 @@
 #include <jni.h>
 
 #include "me_walkerknapp_rapidopus_RapidOpus.h"
+#include "pinned_array.h"
 #include <opus/opus.h>
 
+bool rapidopusCriticalArrays = true;
+
 JNIEXPORT jstring JNICALL Java_me_walkerknapp_rapidopus_RapidOpus_getVersion(JNIEnv *env, jclass jClazz) {
     const char *versionString = opus_get_version_string();
 
     return env->NewStringUTF(versionString);
 }
+
+JNIEXPORT void JNICALL Java_me_walkerknapp_rapidopus_RapidOpus_setCriticalArrays(JNIEnv *env, jclass jClazz, jboolean jEnabled) {
+    rapidopusCriticalArrays = jEnabled == JNI_TRUE;
+}
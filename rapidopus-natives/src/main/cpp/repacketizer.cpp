@@ -0,0 +1,83 @@
+#include <jni.h>
+
+#include "me_walkerknapp_rapidopus_OpusRepacketizer.h"
+#include "pinned_array.h"
+#include <opus/opus.h>
+
+JNIEXPORT jlong JNICALL Java_me_walkerknapp_rapidopus_OpusRepacketizer_repacketizerCreate(JNIEnv *env, jclass jClazz) {
+    auto *repacketizer = opus_repacketizer_create();
+
+    if(repacketizer == nullptr) {
+        env->ThrowNew(env->FindClass("java/lang/IllegalStateException"), opus_strerror(OPUS_ALLOC_FAIL));
+    }
+
+    return reinterpret_cast<jlong>(repacketizer);
+}
+
+JNIEXPORT void JNICALL Java_me_walkerknapp_rapidopus_OpusRepacketizer_repacketizerInit(JNIEnv *env, jclass jClazz, jlong pRepacketizer) {
+    opus_repacketizer_init(reinterpret_cast<OpusRepacketizer *>(pRepacketizer));
+}
+
+JNIEXPORT void JNICALL Java_me_walkerknapp_rapidopus_OpusRepacketizer_repacketizerDestroy(JNIEnv *env, jclass jClazz, jlong pRepacketizer) {
+    opus_repacketizer_destroy(reinterpret_cast<OpusRepacketizer *>(pRepacketizer));
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusRepacketizer_repacketizerCat
+    (JNIEnv *env, jclass jClazz, jlong pRepacketizer, jobject jPacketBuffer, jint jOffset, jint jLength) {
+
+    auto *packet = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jPacketBuffer));
+
+    return opus_repacketizer_cat(reinterpret_cast<OpusRepacketizer *>(pRepacketizer), packet + jOffset, jLength);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusRepacketizer_repacketizerGetNbFrames(JNIEnv *env, jclass jClazz, jlong pRepacketizer) {
+    return opus_repacketizer_get_nb_frames(reinterpret_cast<OpusRepacketizer *>(pRepacketizer));
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusRepacketizer_repacketizerOutRange
+    (JNIEnv *env, jclass jClazz, jlong pRepacketizer, jint jBegin, jint jEnd, jobject jOutputBuffer, jint jOffset, jint jMaxLength) {
+
+    auto *outData = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jOutputBuffer));
+
+    return opus_repacketizer_out_range(reinterpret_cast<OpusRepacketizer *>(pRepacketizer), jBegin, jEnd, outData + jOffset, jMaxLength);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusRepacketizer_packetPad__Ljava_nio_ByteBuffer_2II
+    (JNIEnv *env, jclass jClazz, jobject jPacketBuffer, jint jLength, jint jNewLength) {
+
+    auto *packet = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jPacketBuffer));
+
+    return opus_packet_pad(packet, jLength, jNewLength);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusRepacketizer_packetPad___3BII
+    (JNIEnv *env, jclass jClazz, jbyteArray jPacketData, jint jLength, jint jNewLength) {
+
+    // The packet is modified in place, so changes must be copied back.
+    PinnedByteArray packet(env, jPacketData, 0);
+    if(packet.get() == nullptr) {
+        return OPUS_ALLOC_FAIL;
+    }
+
+    return opus_packet_pad(reinterpret_cast<unsigned char *>(packet.get()), jLength, jNewLength);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusRepacketizer_packetUnpad__Ljava_nio_ByteBuffer_2I
+    (JNIEnv *env, jclass jClazz, jobject jPacketBuffer, jint jLength) {
+
+    auto *packet = reinterpret_cast<unsigned char *>(env->GetDirectBufferAddress(jPacketBuffer));
+
+    return opus_packet_unpad(packet, jLength);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusRepacketizer_packetUnpad___3BI
+    (JNIEnv *env, jclass jClazz, jbyteArray jPacketData, jint jLength) {
+
+    // The packet is modified in place, so changes must be copied back.
+    PinnedByteArray packet(env, jPacketData, 0);
+    if(packet.get() == nullptr) {
+        return OPUS_ALLOC_FAIL;
+    }
+
+    return opus_packet_unpad(reinterpret_cast<unsigned char *>(packet.get()), jLength);
+}
@@ -0,0 +1,33 @@
+#include <jni.h>
+#include <cstdlib>
+
+#include "me_walkerknapp_rapidopus_OpusCodecSlab.h"
+#include <opus/opus.h>
+
+JNIEXPORT jlong JNICALL Java_me_walkerknapp_rapidopus_OpusCodecSlab_slabAllocate(JNIEnv *env, jclass jClazz, jlong jBytes) {
+    return reinterpret_cast<jlong>(malloc(static_cast<size_t>(jBytes)));
+}
+
+JNIEXPORT void JNICALL Java_me_walkerknapp_rapidopus_OpusCodecSlab_slabFree(JNIEnv *env, jclass jClazz, jlong pSlab) {
+    free(reinterpret_cast<void *>(pSlab));
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusCodecSlab_encoderGetSize(JNIEnv *env, jclass jClazz, jint jChannels) {
+    return opus_encoder_get_size(jChannels);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusCodecSlab_decoderGetSize(JNIEnv *env, jclass jClazz, jint jChannels) {
+    return opus_decoder_get_size(jChannels);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusCodecSlab_encoderInit
+    (JNIEnv *env, jclass jClazz, jlong pEncoder, jint jSampleRate, jint jChannels, jint jApplicationMode) {
+
+    return opus_encoder_init(reinterpret_cast<OpusEncoder *>(pEncoder), jSampleRate, jChannels, jApplicationMode);
+}
+
+JNIEXPORT jint JNICALL Java_me_walkerknapp_rapidopus_OpusCodecSlab_decoderInit
+    (JNIEnv *env, jclass jClazz, jlong pDecoder, jint jSampleRate, jint jChannels) {
+
+    return opus_decoder_init(reinterpret_cast<OpusDecoder *>(pDecoder), jSampleRate, jChannels);
+}
@@ -0,0 +1,89 @@
+#ifndef RAPIDOPUS_PINNED_ARRAY_H
+#define RAPIDOPUS_PINNED_ARRAY_H
+
+#include <jni.h>
+
+// Whether heap arrays are pinned with GetPrimitiveArrayCritical.
+// Set from the "rapidopus.criticalArrays" system property when RapidOpus is loaded.
+extern bool rapidopusCriticalArrays;
+
+static inline jbyte *getArrayElements(JNIEnv *env, jbyteArray array) {
+    return env->GetByteArrayElements(array, nullptr);
+}
+
+static inline jshort *getArrayElements(JNIEnv *env, jshortArray array) {
+    return env->GetShortArrayElements(array, nullptr);
+}
+
+static inline jfloat *getArrayElements(JNIEnv *env, jfloatArray array) {
+    return env->GetFloatArrayElements(array, nullptr);
+}
+
+static inline void releaseArrayElements(JNIEnv *env, jbyteArray array, jbyte *elements, jint mode) {
+    env->ReleaseByteArrayElements(array, elements, mode);
+}
+
+static inline void releaseArrayElements(JNIEnv *env, jshortArray array, jshort *elements, jint mode) {
+    env->ReleaseShortArrayElements(array, elements, mode);
+}
+
+static inline void releaseArrayElements(JNIEnv *env, jfloatArray array, jfloat *elements, jint mode) {
+    env->ReleaseFloatArrayElements(array, elements, mode);
+}
+
+// Scoped access to the elements of a Java primitive array, for the duration of a single short libopus call.
+//
+// By default, the array is pinned with GetPrimitiveArrayCritical, which most JVMs serve in place instead of copying
+// the whole array on every call. While it is held, no other JNI function may be called and the thread must not block,
+// so any other lookups (array lengths, direct buffer addresses) have to happen before it is constructed.
+//
+// If critical arrays are disabled, this falls back to Get<Type>ArrayElements, which may copy the array. That is the
+// safer choice on collectors that can't pin objects, and have to hold off garbage collection while a critical
+// region is open.
+//
+// If the elements can't be accessed, get() returns nullptr, and an OutOfMemoryError is pending.
+template<typename T, typename A>
+class PinnedArray {
+public:
+    // releaseMode is JNI_ABORT for arrays that are only read, or 0 to write changes back to the Java array.
+    PinnedArray(JNIEnv *env, A array, jint releaseMode)
+            : env(env), array(array), releaseMode(releaseMode), critical(rapidopusCriticalArrays) {
+        if(critical) {
+            elements = static_cast<T *>(env->GetPrimitiveArrayCritical(array, nullptr));
+        } else {
+            elements = getArrayElements(env, array);
+        }
+    }
+
+    ~PinnedArray() {
+        if(elements == nullptr) {
+            return;
+        }
+
+        if(critical) {
+            env->ReleasePrimitiveArrayCritical(array, elements, releaseMode);
+        } else {
+            releaseArrayElements(env, array, elements, releaseMode);
+        }
+    }
+
+    PinnedArray(const PinnedArray &) = delete;
+    PinnedArray &operator=(const PinnedArray &) = delete;
+
+    T *get() const {
+        return elements;
+    }
+
+private:
+    JNIEnv *env;
+    A array;
+    jint releaseMode;
+    bool critical;
+    T *elements;
+};
+
+typedef PinnedArray<jbyte, jbyteArray> PinnedByteArray;
+typedef PinnedArray<jshort, jshortArray> PinnedShortArray;
+typedef PinnedArray<jfloat, jfloatArray> PinnedFloatArray;
+
+#endif //RAPIDOPUS_PINNED_ARRAY_H